@@ -0,0 +1,168 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import de.frankfurt.uni.vcp.comparable.AStarNode;
+import de.frankfurt.uni.vcp.game.Game;
+import de.frankfurt.uni.vcp.nodes.Field;
+import de.frankfurt.uni.vcp.nodes.HexAdjacency;
+
+/**
+ * <h3> Calculates the shortest path between two given fields using the A*
+ * algorithm. </h3>
+ *
+ * <p> Unlike {@link Dijkstra}, which expands the fields in all directions
+ *     alike, the search is directed towards the ending field by the number of
+ *     hexagon steps left, see {@link #distance(Field, Field)}. As every step
+ *     costs at least one, the estimate never exceeds the real cost, so the
+ *     path found is as short as the one found by {@link Dijkstra}, but far
+ *     fewer fields are visited on an open map. </p>
+ *
+ * <p> Fields are blocked by the same rule, see {@link Field#isUsable()}. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class AStar extends AbstractShortestPath {
+
+    /** Number of fields taken from the queue by the last search */
+    private int expanded;
+
+    /**
+     * @param startField
+     * @param endField
+     */
+    public AStar(Field startField, Field endField) {
+        this.endField = endField;
+        this.startField = startField;
+    }
+
+    /**
+     * Without a goal to direct the search, this is the same as
+     * {@link Dijkstra#getRange(int)}, but searched by the {@link PathEngine}
+     * of the map.
+     */
+    public Collection<Field> getRange(int range) {
+        return Game.getInstance().getHexMap().getPathEngine().getRange(startField, range);
+    }
+
+    /**
+     * This is the implementation of the abstract method inherited from
+     * {@link AbstractShortestPath}
+     */
+    public LinkedList<Field> getShortestPath() {
+        HexAdjacency adjacency = Game.getInstance().getHexMap().getAdjacency();
+        Map<Field, Field> hash = new HashMap<Field, Field>();
+        PriorityQueue<AStarNode> queue = new PriorityQueue<AStarNode>();
+        long sequence = 0;
+
+        expanded = 0;
+        queue.add(new AStarNode(startField, 0, startField, distance(startField, endField), sequence++));
+
+        while (queue.size() != 0) {
+            AStarNode node = queue.poll();
+            if (hash.get(node.getField()) != null)
+                continue;
+
+            hash.put(node.getField(), node.getParent());
+            ++expanded;
+
+            if (node.getField() == endField) {
+                LinkedList<Field> list = new LinkedList<Field>();
+                Field field = endField;
+                list.add(field);
+
+                while ((field = hash.get(field)) != startField)
+                    list.add(field);
+
+                Collections.reverse(list);
+                return list;
+            }
+
+            int index = adjacency.index(node.getField());
+            for (int k = adjacency.start(index); k < adjacency.end(index); ++k) {
+                Field f = adjacency.neighbour(k);
+                if (hash.get(f) == null && f.isUsable()) {
+                    queue.add(new AStarNode(f, node.getWeight() + getWeight(node.getField(), f), node.getField(),
+                            distance(f, endField), sequence++));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cost for each edge from one to another node within the graph
+     * used to determine the shortest path between two node. Must be at least
+     * one, or the path found may not be the shortest.
+     *
+     * @param from Start node
+     * @param to End node
+     * @return The cost the edge to move from the start to an end {@link Field}.
+     */
+    public int getWeight(Field from, Field to) {
+        return 1;
+    }
+
+    /**
+     * Get the number of fields visited by the last call of
+     * {@link #getShortestPath()}.
+     *
+     * @return The number of fields
+     */
+    public int getExpandedCount() {
+        return expanded;
+    }
+
+    /**
+     * Get the number of steps between two fields on an empty map.
+     *
+     * <p> The rows are offset against each other, even rows shifted by half a
+     *     field towards higher {@code i}, see {@link Field#getNeighbours()}.
+     *     Converted to axial coordinates {@code q = i - (j + (j & 1)) / 2},
+     *     {@code r = j}, the distance is the largest of the differences of
+     *     {@code q}, {@code r} and {@code q + r}. </p>
+     *
+     * @param a One field
+     * @param b The other field
+     * @return The number of steps
+     */
+    public static int distance(Field a, Field b) {
+        return distance(a.iIndex, a.jIndex, b.iIndex, b.jIndex);
+    }
+
+    /**
+     * Get the number of steps between two fields on an empty map.
+     *
+     * @param ai The column of one field
+     * @param aj The row of one field
+     * @param bi The column of the other field
+     * @param bj The row of the other field
+     * @return The number of steps
+     * @see #distance(Field, Field)
+     */
+    public static int distance(int ai, int aj, int bi, int bj) {
+        int dq = (bi - ((bj + (bj & 1)) >> 1)) - (ai - ((aj + (aj & 1)) >> 1));
+        int dr = bj - aj;
+
+        return Math.max(Math.abs(dq), Math.max(Math.abs(dr), Math.abs(dq + dr)));
+    }
+}
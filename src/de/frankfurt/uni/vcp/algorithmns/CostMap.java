@@ -0,0 +1,49 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+/**
+ * <h3> The cost of entering the fields of a map </h3>
+ *
+ * <p> Fields are numbered {@code j * width + i}, as by the
+ *     {@link de.frankfurt.uni.vcp.nodes.HexAdjacency} of the map. Costs are
+ *     small positive integers, so they can be searched by {@link Dial}, whose
+ *     effort grows with {@link #getMaxCost()}. Different unit types may use
+ *     different cost maps, see
+ *     {@link de.frankfurt.uni.vcp.nodes.HexMap#getCostMap(String)}. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public interface CostMap {
+
+    /** The cost of a field, that cannot be entered at all */
+    int BLOCKED = 0;
+
+    /**
+     * Get the cost of entering a field.
+     *
+     * @param index The number of the field
+     * @return The cost, between 1 and {@link #getMaxCost()}, or
+     *         {@link #BLOCKED}
+     */
+    int getCost(int index);
+
+    /**
+     * Get the highest cost of any field.
+     *
+     * @return The highest cost, at least 1
+     */
+    int getMaxCost();
+}
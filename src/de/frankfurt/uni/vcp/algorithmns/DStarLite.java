@@ -0,0 +1,384 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import de.frankfurt.uni.vcp.nodes.Field;
+import de.frankfurt.uni.vcp.nodes.HexAdjacency;
+
+/**
+ * <h3> Keeps the cheapest path towards a goal up to date, while units come
+ * and go, using the D* Lite algorithm </h3>
+ *
+ * <p> The search runs backwards, from the goal towards the unit, and keeps
+ *     for every field the cost of its cheapest path to the goal. When units
+ *     enter or leave fields, only the fields whose costs depend on them are
+ *     searched again, see {@link #repair(Field)}, instead of the whole
+ *     path. The costs are taken from a {@link CostMap}, and the search is
+ *     directed by the lower bounds of a {@link DistanceOracle}, like the one
+ *     of {@link Dial}. </p>
+ *
+ * <p> A planner keeps the state of a single path, usually the next part of
+ *     the way planning of a single unit, see
+ *     {@link de.frankfurt.uni.vcp.nodes.movables.Movable}. It must only be
+ *     used on the render thread. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class DStarLite {
+
+    private static final int NONE = -1;
+
+    private static final int INFINITE = Integer.MAX_VALUE;
+
+    /** The fields and their neighbours */
+    private final HexAdjacency adjacency;
+
+    private final CostMap costs;
+
+    private final DistanceOracle oracle;
+
+    /** The cost from every field to the goal, as far as known */
+    private final int[] g;
+
+    /** The cost from every field to the goal, as seen from its neighbours */
+    private final int[] rhs;
+
+    /** A bit for every field occupied by a unit, as last seen */
+    private final long[] occupied;
+
+    /** The fields changed since the last search */
+    private final int[] changed;
+
+    /** Binary heap of field numbers, ordered by {@link #key1} and {@link #key2} */
+    private final int[] heap;
+
+    /** Position of every queued field in the {@link #heap}, {@link #NONE} if not queued */
+    private final int[] position;
+
+    private final long[] key1;
+
+    private final long[] key2;
+
+    private int heapSize;
+
+    /** The ending field, {@link #NONE} before the first plan */
+    private int goal = NONE;
+
+    /** The starting field of the current search */
+    private int start;
+
+    /** The starting field when the costs last changed */
+    private int last;
+
+    /** Sum of the moves of the starting field, added to all keys */
+    private long km;
+
+    /** Number of fields taken from the queue since the last plan or repair */
+    private int expanded;
+
+    /**
+     * Construct a new planner for the fields of a map.
+     *
+     * @param adjacency The fields of the map and their neighbours
+     * @param costs The cost of entering the fields
+     * @param oracle Directs the search, built for the same costs
+     */
+    public DStarLite(HexAdjacency adjacency, CostMap costs, DistanceOracle oracle) {
+        int n = adjacency.size();
+
+        this.adjacency = adjacency;
+        this.costs = costs;
+        this.oracle = oracle;
+        this.g = new int[n];
+        this.rhs = new int[n];
+        this.occupied = new long[(n + 63) >> 6];
+        this.changed = new int[n];
+        this.heap = new int[n];
+        this.position = new int[n];
+        this.key1 = new long[n];
+        this.key2 = new long[n];
+    }
+
+    /**
+     * Search the cheapest path between two fields from scratch.
+     *
+     * @param startField The starting field
+     * @param goalField The ending field
+     * @return The fields as returned by {@link Dial#getShortestPath()},
+     *         {@code null} if the ending field is not reachable
+     */
+    public LinkedList<Field> plan(Field startField, Field goalField) {
+        Arrays.fill(g, INFINITE);
+        Arrays.fill(rhs, INFINITE);
+        Arrays.fill(position, NONE);
+        Arrays.fill(occupied, 0L);
+        for (int f = 0; f < adjacency.size(); ++f)
+            if (isOccupied(f))
+                occupied[f >> 6] |= 1L << f;
+
+        heapSize = 0;
+        km = 0;
+        expanded = 0;
+        goal = adjacency.index(goalField);
+        start = last = adjacency.index(startField);
+
+        rhs[goal] = 0;
+        queue(goal);
+        search();
+        return path();
+    }
+
+    /**
+     * Update the cheapest path after units entered or left fields, or the
+     * starting field moved, searching only the fields affected. Without a
+     * previous {@link #plan(Field, Field)}, nothing is searched.
+     *
+     * @param startField The starting field, usually the one the unit stands
+     *        on now
+     * @return The fields as returned by {@link Dial#getShortestPath()},
+     *         {@code null} if the ending field is not reachable
+     */
+    public LinkedList<Field> repair(Field startField) {
+        if (goal == NONE)
+            return null;
+
+        int count = 0;
+        for (int f = 0; f < adjacency.size(); ++f) {
+            boolean now = isOccupied(f);
+            if (now != ((occupied[f >> 6] & (1L << f)) != 0)) {
+                occupied[f >> 6] ^= 1L << f;
+                changed[count++] = f;
+            }
+        }
+
+        expanded = 0;
+        start = adjacency.index(startField);
+        if (count > 0) {
+            // the keys queued so far were computed for the old starting
+            // field, and are raised by the distance moved instead of
+            // computing them again
+            int moved = estimate(last, start);
+            if (moved != INFINITE)
+                km += moved;
+            last = start;
+
+            // entering a changed field costs differently, which changes the
+            // cost of its neighbours
+            for (int c = 0; c < count; ++c) {
+                int f = changed[c];
+                for (int k = adjacency.start(f), end = adjacency.end(f); k < end; ++k)
+                    update(adjacency.neighbourIndex(k));
+            }
+        }
+        search();
+        return path();
+    }
+
+    /**
+     * Get the ending field of the current plan.
+     *
+     * @return The field, {@code null} before the first plan
+     */
+    public Field getGoal() {
+        return (goal == NONE) ? null : adjacency.field(goal);
+    }
+
+    /**
+     * Get the number of fields taken from the queue by the last plan or
+     * repair.
+     *
+     * @return The number of fields
+     */
+    public int getExpandedCount() {
+        return expanded;
+    }
+
+    /** Whether a field cannot be entered now */
+    private boolean isOccupied(int f) {
+        Field field = adjacency.field(f);
+        return field != null && !field.isUsable();
+    }
+
+    /** The cost of entering a field, {@link #INFINITE} if it is blocked */
+    private int cost(int f) {
+        int c = costs.getCost(f);
+        if (c == CostMap.BLOCKED || (occupied[f >> 6] & (1L << f)) != 0)
+            return INFINITE;
+        return c;
+    }
+
+    private static int add(int a, int b) {
+        return (a == INFINITE || b == INFINITE) ? INFINITE : a + b;
+    }
+
+    private int estimate(int from, int to) {
+        int e = oracle.lowerBound(from, to);
+        return (e == DistanceOracle.UNREACHABLE) ? INFINITE : e;
+    }
+
+    /** Recompute the cost of a field from its neighbours, and queue it if it changed */
+    private void update(int f) {
+        if (f != goal) {
+            int best = INFINITE;
+            for (int k = adjacency.start(f), end = adjacency.end(f); k < end; ++k) {
+                int n = adjacency.neighbourIndex(k);
+                best = Math.min(best, add(cost(n), g[n]));
+            }
+            rhs[f] = best;
+        }
+
+        if (position[f] != NONE)
+            remove(f);
+        if (g[f] != rhs[f])
+            queue(f);
+    }
+
+    /** Take fields from the queue, until the cost of the starting field is known */
+    private void search() {
+        while (heapSize > 0) {
+            int top = heap[0];
+            long k1 = key1[top];
+            long k2 = key2[top];
+
+            if (!less(k1, k2, first(start), second(start)) && rhs[start] <= g[start])
+                break;
+
+            ++expanded;
+            if (less(k1, k2, first(top), second(top))) {
+                // queued before the starting field moved
+                remove(top);
+                queue(top);
+            } else if (g[top] > rhs[top]) {
+                g[top] = rhs[top];
+                remove(top);
+                for (int k = adjacency.start(top), end = adjacency.end(top); k < end; ++k)
+                    update(adjacency.neighbourIndex(k));
+            } else {
+                g[top] = INFINITE;
+                update(top);
+                for (int k = adjacency.start(top), end = adjacency.end(top); k < end; ++k)
+                    update(adjacency.neighbourIndex(k));
+            }
+        }
+    }
+
+    /** Follow the cheapest neighbours from the starting field to the goal */
+    private LinkedList<Field> path() {
+        if (rhs[start] == INFINITE)
+            return null;
+
+        LinkedList<Field> list = new LinkedList<Field>();
+        for (int f = start; f != goal;) {
+            int next = NONE;
+            int best = INFINITE;
+
+            for (int k = adjacency.start(f), end = adjacency.end(f); k < end; ++k) {
+                int n = adjacency.neighbourIndex(k);
+                int c = add(cost(n), g[n]);
+                if (c < best) {
+                    best = c;
+                    next = n;
+                }
+            }
+            if (next == NONE || list.size() >= adjacency.size())
+                return null;
+
+            list.add(adjacency.field(next));
+            f = next;
+        }
+        return list;
+    }
+
+    // QUEUE
+
+    private long first(int f) {
+        long m = Math.min(g[f], rhs[f]);
+        int e = estimate(start, f);
+        if (m == INFINITE || e == INFINITE)
+            return Long.MAX_VALUE;
+        return m + e + km;
+    }
+
+    private long second(int f) {
+        return Math.min(g[f], rhs[f]);
+    }
+
+    private static boolean less(long a1, long a2, long b1, long b2) {
+        return a1 < b1 || (a1 == b1 && a2 < b2);
+    }
+
+    private boolean before(int a, int b) {
+        return less(key1[a], key2[a], key1[b], key2[b]);
+    }
+
+    private void queue(int f) {
+        key1[f] = first(f);
+        key2[f] = second(f);
+        heap[heapSize] = f;
+        position[f] = heapSize;
+        up(heapSize++);
+    }
+
+    private void remove(int f) {
+        int k = position[f];
+        int moved = heap[--heapSize];
+
+        position[f] = NONE;
+        if (k == heapSize)
+            return;
+
+        heap[k] = moved;
+        position[moved] = k;
+        up(k);
+        down(position[moved]);
+    }
+
+    private void up(int k) {
+        int f = heap[k];
+
+        while (k > 0) {
+            int p = (k - 1) >> 1;
+            if (!before(f, heap[p]))
+                break;
+            heap[k] = heap[p];
+            position[heap[k]] = k;
+            k = p;
+        }
+        heap[k] = f;
+        position[f] = k;
+    }
+
+    private void down(int k) {
+        int f = heap[k];
+
+        while (true) {
+            int c = 2 * k + 1;
+            if (c >= heapSize)
+                break;
+            if (c + 1 < heapSize && before(heap[c + 1], heap[c]))
+                ++c;
+            if (!before(heap[c], f))
+                break;
+            heap[k] = heap[c];
+            position[heap[k]] = k;
+            k = c;
+        }
+        heap[k] = f;
+        position[f] = k;
+    }
+}
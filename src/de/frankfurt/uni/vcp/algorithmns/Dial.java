@@ -0,0 +1,183 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+import java.util.Collection;
+import java.util.LinkedList;
+
+import de.frankfurt.uni.vcp.game.Game;
+import de.frankfurt.uni.vcp.nodes.Field;
+
+/**
+ * <h3> Calculates the cheapest path between two given fields using Dial's
+ * bucket queue. </h3>
+ *
+ * <p> Like {@link Dijkstra}, but every step costs as much as entering the
+ *     next field, see {@link CostMap}. As the costs are small integers, the
+ *     queue is not a heap, but a ring of {@code getMaxCost() + 1} buckets,
+ *     so the whole search is linear in the number of fields plus the cost of
+ *     the path. The search runs on the {@link PathEngine} of the map, whose
+ *     arrays are reused by every search, see
+ *     {@link PathEngine#findCheapestPath(int, int, CostMap, DistanceOracle, int)}. </p>
+ *
+ * <p> Given a {@link DistanceOracle}, the search becomes an A* search: the
+ *     fields are queued by their cost plus the lower bound of the cost left
+ *     to the ending field. </p>
+ *
+ * <p> Fields are blocked by the same rule as in {@link Dijkstra}, see
+ *     {@link Field#isUsable()}, and additionally by fields costing
+ *     {@link CostMap#BLOCKED}. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class Dial extends AbstractShortestPath {
+
+    private final CostMap costs;
+
+    /** Directs the search towards the ending field, {@code null} if none */
+    private final DistanceOracle oracle;
+
+    private PathEngine engine;
+
+    /** Whether a unit on the ending field blocks it, like any other field */
+    private boolean endFieldBlocking = true;
+
+    /** Cost of the last path found, -1 if none */
+    private int pathCost = -1;
+
+    /** Number of fields taken from the queue by the last search */
+    private int expanded;
+
+    /**
+     * @param startField
+     * @param endField
+     * @param costs The cost of entering the fields
+     */
+    public Dial(Field startField, Field endField, CostMap costs) {
+        this(null, startField, endField, costs, null);
+    }
+
+    /**
+     * @param startField
+     * @param endField
+     * @param costs The cost of entering the fields
+     * @param oracle Directs the search, built for the same costs, see
+     *        {@link de.frankfurt.uni.vcp.nodes.HexMap#getDistanceOracle(CostMap)}
+     */
+    public Dial(Field startField, Field endField, CostMap costs, DistanceOracle oracle) {
+        this(null, startField, endField, costs, oracle);
+    }
+
+    /**
+     * @param engine The engine to search with, {@code null} for the one of
+     *        the game's map
+     */
+    private Dial(PathEngine engine, Field startField, Field endField, CostMap costs, DistanceOracle oracle) {
+        this.engine = engine;
+        this.startField = startField;
+        this.endField = endField;
+        this.costs = costs;
+        this.oracle = oracle;
+    }
+
+    /**
+     * Decide whether a unit on the ending field blocks the path, as on all
+     * other fields. Paths towards another unit must enter its field.
+     *
+     * @param blocking {@code false} to ignore the unit on the ending field
+     */
+    public void setEndFieldBlocking(boolean blocking) {
+        this.endFieldBlocking = blocking;
+    }
+
+    /**
+     * Like {@link Dijkstra#getRange(int)}, only the terrain is taken into
+     * account, not the units.
+     *
+     * @param range The maximum cost
+     * @return The fields, whose cheapest path costs at most {@code range},
+     *         including the starting field, in the order of their cost
+     */
+    public Collection<Field> getRange(int range) {
+        Collection<Field> fields = engine().getRange(startField, range, costs);
+        expanded = engine.getExpandedCount();
+        return fields;
+    }
+
+    /**
+     * Compute the cost of the cheapest path from the starting field to all
+     * fields. Like {@link #getRange(int)}, only the terrain is taken into
+     * account, not the units.
+     *
+     * @return A new array of the costs by field number,
+     *         {@link DistanceOracle#UNREACHABLE} for fields not connected to
+     *         the starting field
+     */
+    public int[] getCosts() {
+        int[] dest = new int[engine().size()];
+        engine.findCosts(engine.index(startField), costs, dest);
+        expanded = engine.getExpandedCount();
+        return dest;
+    }
+
+    /**
+     * This is the implementation of the abstract method inherited from
+     * {@link AbstractShortestPath}
+     */
+    public LinkedList<Field> getShortestPath() {
+        LinkedList<Field> path = engine().getCheapestPath(startField, endField, costs, oracle, endFieldBlocking);
+        pathCost = engine.getPathCost();
+        expanded = engine.getExpandedCount();
+        return path;
+    }
+
+    /**
+     * Returns the cost for each edge from one to another node within the graph
+     * used to determine the shortest path between two node.
+     *
+     * @param from Start node
+     * @param to End node
+     * @return The cost of entering the end {@link Field}, see {@link CostMap}.
+     */
+    public int getWeight(Field from, Field to) {
+        return costs.getCost(engine().index(to));
+    }
+
+    /**
+     * Get the cost of the path found by the last call of
+     * {@link #getShortestPath()}.
+     *
+     * @return The sum of the costs of all fields entered, -1 if no path has
+     *         been found
+     */
+    public int getPathCost() {
+        return pathCost;
+    }
+
+    /**
+     * Get the number of fields visited by the last search.
+     *
+     * @return The number of fields
+     */
+    public int getExpandedCount() {
+        return expanded;
+    }
+
+    private PathEngine engine() {
+        if (engine == null)
+            engine = Game.getInstance().getHexMap().getPathEngine();
+        return engine;
+    }
+}
@@ -22,7 +22,9 @@ import java.util.Map;
 import java.util.PriorityQueue;
 
 import de.frankfurt.uni.vcp.comparable.SearchNode;
+import de.frankfurt.uni.vcp.game.Game;
 import de.frankfurt.uni.vcp.nodes.Field;
+import de.frankfurt.uni.vcp.nodes.HexAdjacency;
 
 /**
  * <h3> Calculates the shortest path between two given fields using Dijkstra's
@@ -48,6 +50,7 @@ public class Dijkstra extends AbstractShortestPath {
 
 
     public Collection<Field> getRange(int range) {
+        HexAdjacency adjacency = Game.getInstance().getHexMap().getAdjacency();
         hash = new HashMap<Field, Field>();
         queue = new PriorityQueue<SearchNode>();
 
@@ -66,8 +69,11 @@ public class Dijkstra extends AbstractShortestPath {
             if (node.getWeight() > range)
                 continue;
 
-            for (Field f : node.getField().getNeighbours())
+            int index = adjacency.index(node.getField());
+            for (int k = adjacency.start(index); k < adjacency.end(index); ++k) {
+                Field f = adjacency.neighbour(k);
                 queue.add(new SearchNode(f, node.getWeight() + this.getWeight(node.getField(), f), node.getField()));
+            }
         }
 
         return hash.keySet ();
@@ -78,6 +84,7 @@ public class Dijkstra extends AbstractShortestPath {
      * {@link AbstractShortesPath}
      */
     public LinkedList<Field> getShortestPath() {
+        HexAdjacency adjacency = Game.getInstance().getHexMap().getAdjacency();
         hash = new HashMap<Field, Field>();
         queue = new PriorityQueue<SearchNode>();
 
@@ -102,7 +109,9 @@ public class Dijkstra extends AbstractShortestPath {
                 return list;
             }
 
-            for (Field f : node.getField().getNeighbours()) {
+            int index = adjacency.index(node.getField());
+            for (int k = adjacency.start(index); k < adjacency.end(index); ++k) {
+                Field f = adjacency.neighbour(k);
                 if (hash.get(f) == null) {
                     if (f.isUsable())
                         queue.add(new SearchNode(f, node.getWeight() + this.getWeight(node.getField(), f), node.getField()));
@@ -0,0 +1,218 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+import java.util.Arrays;
+
+import de.frankfurt.uni.vcp.nodes.HexAdjacency;
+
+/**
+ * <h3> Estimates the cost of paths without searching them </h3>
+ *
+ * <p> A few fields far apart from each other are chosen as landmarks, and
+ *     the cost of the cheapest path from every landmark to every field is
+ *     computed once, taking only the terrain into account, see
+ *     {@link CostMap}. As a path can never be cheaper than the detour
+ *     through a landmark minus the part of it already paid for, this gives a
+ *     lower bound of the cost between any two fields in time proportional to
+ *     the number of landmarks, see {@link #lowerBound(int, int)}. </p>
+ *
+ * <p> Units only make paths more expensive, so the bound also holds, when
+ *     units block fields. Used as estimate by {@link Dial}, it directs the
+ *     search along the path around the obstacles of the terrain, so only the
+ *     detours around units need to be searched. </p>
+ *
+ * <p> The costs of entering a field are the same from every side, so the
+ *     cost from a field {@code u} to a landmark {@code L} is the cost from
+ *     {@code L} to {@code u} plus the cost of {@code L} minus the cost of
+ *     {@code u}, and only the costs from the landmarks need to be kept. </p>
+ *
+ * <p> The oracle never changes once built, so it may be read on any
+ *     thread. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class DistanceOracle {
+
+    /** The cost between fields, that are not connected */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /** The number of landmarks chosen, if the map has that many fields */
+    public static final int LANDMARKS = 8;
+
+    private final CostMap costs;
+
+    /** The numbers of the landmarks */
+    private final int[] landmarks;
+
+    /** The cost from every landmark to every field */
+    private final int[][] distances;
+
+    /**
+     * Choose the landmarks of a map and compute their costs.
+     *
+     * @param adjacency The fields of the map and their neighbours
+     * @param costs The cost of entering the fields
+     */
+    public DistanceOracle(HexAdjacency adjacency, CostMap costs) {
+        this(new PathEngine(adjacency), costs);
+    }
+
+    /**
+     * Choose the landmarks of a map and compute their costs, searching with
+     * the engine of the map.
+     *
+     * @param engine Searches the fields of the map, see
+     *        {@link de.frankfurt.uni.vcp.nodes.HexMap#getPathEngine()}
+     * @param costs The cost of entering the fields
+     */
+    public DistanceOracle(PathEngine engine, CostMap costs) {
+        int n = engine.size();
+        int[] nearest = new int[n];
+        int[] chosen = new int[LANDMARKS];
+        int[][] computed = new int[LANDMARKS][];
+        int count = 0;
+
+        this.costs = costs;
+
+        // the first landmark is the field farthest from any field, every
+        // further one the field farthest from all landmarks so far; fields
+        // not connected to them count as farthest
+        Arrays.fill(nearest, UNREACHABLE);
+        int candidate = first(engine);
+        if (candidate >= 0)
+            candidate = farthest(engine, search(engine, candidate), nearest);
+
+        while (candidate >= 0 && count < LANDMARKS) {
+            int[] d = search(engine, candidate);
+
+            chosen[count] = candidate;
+            computed[count++] = d;
+            for (int f = 0; f < n; ++f)
+                nearest[f] = Math.min(nearest[f], d[f]);
+
+            candidate = farthest(engine, nearest, null);
+            if (candidate >= 0 && nearest[candidate] == 0)
+                break;
+        }
+
+        this.landmarks = Arrays.copyOf(chosen, count);
+        this.distances = Arrays.copyOf(computed, count);
+    }
+
+    /**
+     * Get a lower bound of the cost of the cheapest path between two fields.
+     *
+     * @param from The number of the starting field
+     * @param to The number of the ending field
+     * @return The bound, {@link #UNREACHABLE} if the fields are not connected
+     */
+    public int lowerBound(int from, int to) {
+        int bound = 0;
+
+        for (int[] d : distances) {
+            int df = d[from];
+            int dt = d[to];
+
+            if (df == UNREACHABLE || dt == UNREACHABLE) {
+                // connected fields are reached from the same landmarks
+                if (df != dt)
+                    return UNREACHABLE;
+                continue;
+            }
+
+            // through the landmark: L -> to is at most L -> from -> to, and
+            // from -> L is at most from -> to -> L
+            bound = Math.max(bound, dt - df);
+            bound = Math.max(bound, (df - costs.getCost(from)) - (dt - costs.getCost(to)));
+        }
+        return bound;
+    }
+
+    /**
+     * Get the cost of the cheapest path from a landmark to a field.
+     *
+     * @param landmark The position of the landmark, below
+     *        {@link #getLandmarkCount()}
+     * @param to The number of the field
+     * @return The cost, {@link #UNREACHABLE} if the field is not connected
+     */
+    public int getDistance(int landmark, int to) {
+        return distances[landmark][to];
+    }
+
+    /**
+     * Get the number of a landmark.
+     *
+     * @param landmark The position of the landmark, below
+     *        {@link #getLandmarkCount()}
+     * @return The number of the field
+     */
+    public int getLandmark(int landmark) {
+        return landmarks[landmark];
+    }
+
+    /**
+     * Get the number of landmarks chosen.
+     *
+     * @return At most {@link #LANDMARKS}
+     */
+    public int getLandmarkCount() {
+        return landmarks.length;
+    }
+
+    /**
+     * Get the cost map the oracle has been built for.
+     *
+     * @return The cost map
+     */
+    public CostMap getCostMap() {
+        return costs;
+    }
+
+    /** Find any field, that can be entered, -1 if none */
+    private int first(PathEngine engine) {
+        for (int f = 0; f < engine.size(); ++f)
+            if (engine.field(f) != null && costs.getCost(f) != CostMap.BLOCKED)
+                return f;
+        return -1;
+    }
+
+    /**
+     * Find the field with the highest distance, -1 if none. Unless
+     * {@code exclude} is {@code null}, fields with a finite value in it are
+     * left out.
+     */
+    private int farthest(PathEngine engine, int[] distance, int[] exclude) {
+        int best = -1;
+
+        for (int f = 0; f < engine.size(); ++f) {
+            if (engine.field(f) == null || costs.getCost(f) == CostMap.BLOCKED)
+                continue;
+            if (exclude != null && exclude[f] != UNREACHABLE)
+                continue;
+            if (best < 0 || distance[f] > distance[best])
+                best = f;
+        }
+        return best;
+    }
+
+    /** Compute the cost from a field to all fields, ignoring units */
+    private int[] search(PathEngine engine, int start) {
+        int[] d = new int[engine.size()];
+        engine.findCosts(start, costs, d);
+        return d;
+    }
+}
@@ -0,0 +1,670 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+import de.frankfurt.uni.vcp.nodes.Field;
+import de.frankfurt.uni.vcp.nodes.HexAdjacency;
+
+/**
+ * <h3> Searches paths on the fields of a map without creating objects </h3>
+ *
+ * <p> Every field is numbered {@code j * width + i}, and its neighbours are
+ *     taken from the {@link HexAdjacency} of the map. The costs, parents and
+ *     queue positions of a search are kept in {@code int} arrays, which are
+ *     reused by the next search: instead of clearing them, every search increases a
+ *     generation number, and an entry only counts, if it is stamped with the
+ *     current generation. The queue is a binary heap of field numbers, which
+ *     knows the position of every field in it, so a cheaper path to a queued
+ *     field moves it up instead of adding it once more. </p>
+ *
+ * <p> Searches by the cost of entering the fields, see {@link CostMap}, use
+ *     Dial's bucket queue instead of the heap: as the costs are small
+ *     integers, the queue is a ring of buckets, one for every cost between
+ *     the current one and the highest one reachable in a single step. Fields
+ *     waiting with the same cost are linked through {@code int} arrays, so
+ *     queueing, moving and taking a field costs constant time. Given a
+ *     {@link DistanceOracle}, the fields are queued by their cost plus the
+ *     lower bound of the cost left, see
+ *     {@link #findCheapestPath(int, int, CostMap, DistanceOracle, int)}. </p>
+ *
+ * <p> Apart from the paths returned, a search creates no garbage. Paths are
+ *     field numbers, which are converted to {@link Field}s only at the edges,
+ *     see {@link #getShortestPath(Field, Field)} and
+ *     {@link #toFields(int[], int)}. Fields are blocked by the same rule as in {@link Dijkstra}: by the terrain of
+ *     the map and by units, see {@link Field#isUsable()}. </p>
+ *
+ * <p> The engine belongs to a {@link de.frankfurt.uni.vcp.nodes.HexMap} and
+ *     must only be used by one thread at a time, usually the render
+ *     thread. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class PathEngine {
+
+    /** Marks a missing parent */
+    public static final int NONE = -1;
+
+    /** The cost of fields not reached, see {@link #findCosts(int, CostMap, int[])} */
+    public static final int UNREACHED = DistanceOracle.UNREACHABLE;
+
+    private final int width;
+
+    /** The fields and their neighbours */
+    private final HexAdjacency adjacency;
+
+    /** Cost of the best path found so far */
+    private final int[] cost;
+
+    /** Previous field on the best path found so far */
+    private final int[] parent;
+
+    /** Set to {@link #generation} once a field has been reached */
+    private final int[] reached;
+
+    /** Set to {@link #generation} once the best path to a field is known */
+    private final int[] closed;
+
+    /** Estimated cost of the whole path through a field */
+    private final int[] estimate;
+
+    /** Binary heap of field numbers, ordered by {@link #estimate} */
+    private final int[] heap;
+
+    /** Position of every queued field in the {@link #heap} */
+    private final int[] position;
+
+    private int heapSize;
+
+    /** The next and previous field waiting in the same bucket */
+    private final int[] next;
+    private final int[] prev;
+
+    /** The first field waiting in every bucket, grown for higher costs */
+    private int[] head = new int[0];
+
+    /** The number of buckets in use by the current search */
+    private int buckets;
+
+    /** Number of fields waiting in the buckets */
+    private int queued;
+
+    /** The key of the fields taken from the buckets last, never decreasing */
+    private int current;
+
+    private int generation = 0;
+
+    /** Path of the last search, from the end back to the first step */
+    private final int[] path;
+
+    private int pathLength;
+
+    /** Cost of the path found by the last search, -1 if none */
+    private int pathCost = -1;
+
+    /** Number of fields taken from the queue by the last search */
+    private int expanded;
+
+    /**
+     * Construct a new engine for the fields of a map.
+     *
+     * @param adjacency The fields of the map and their neighbours
+     */
+    public PathEngine(HexAdjacency adjacency) {
+        int n = adjacency.size();
+
+        this.width = adjacency.width;
+        this.adjacency = adjacency;
+        this.cost = new int[n];
+        this.parent = new int[n];
+        this.reached = new int[n];
+        this.closed = new int[n];
+        this.estimate = new int[n];
+        this.heap = new int[n];
+        this.position = new int[n];
+        this.next = new int[n];
+        this.prev = new int[n];
+        this.path = new int[n];
+    }
+
+    /**
+     * Get the number of a field.
+     *
+     * @param field The field
+     * @return The number {@code j * width + i}
+     */
+    public int index(Field field) {
+        return adjacency.index(field);
+    }
+
+    /**
+     * Get the field with a number.
+     *
+     * @param index The number of the field
+     * @return The field, {@code null} if the terrain is not usable
+     */
+    public Field field(int index) {
+        return adjacency.field(index);
+    }
+
+    /**
+     * Get the number of fields, including the unusable ones.
+     *
+     * @return {@code width * height}
+     */
+    public int size() {
+        return adjacency.size();
+    }
+
+    /**
+     * Find the shortest path between two fields with the A* algorithm and
+     * the estimate {@link AStar#distance(int, int, int, int)}. The path can
+     * be fetched by {@link #getPath(int[])} afterwards.
+     *
+     * @param start The number of the starting field
+     * @param end The number of the ending field
+     * @return The number of steps, -1 if the ending field is not reachable
+     */
+    public int findPath(int start, int end) {
+        int ei = end % width;
+        int ej = end / width;
+
+        begin();
+        pathLength = -1;
+        pathCost = -1;
+        reach(start, 0, NONE, distance(start, ei, ej));
+
+        while (heapSize > 0) {
+            int f = pop();
+            closed[f] = generation;
+            ++expanded;
+
+            if (f == end) {
+                pathLength = 0;
+                for (int p = end; p != start; p = parent[p])
+                    path[pathLength++] = p;
+                pathCost = pathLength;
+                return pathLength;
+            }
+
+            for (int k = adjacency.start(f), last = adjacency.end(f); k < last; ++k) {
+                int n = adjacency.neighbourIndex(k);
+
+                if (closed[n] == generation || !adjacency.field(n).isUsable())
+                    continue;
+
+                int c = cost[f] + 1;
+                if (reached[n] != generation)
+                    reach(n, c, f, c + distance(n, ei, ej));
+                else if (c < cost[n])
+                    improve(n, c, f, c + (estimate[n] - cost[n]));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the cheapest path between two fields by the cost of entering the
+     * fields, like {@link Dial#getShortestPath()}. The path can be fetched by
+     * {@link #getPath(int[])} afterwards, its cost by {@link #getPathCost()}.
+     *
+     * @param start The number of the starting field
+     * @param end The number of the ending field
+     * @param costs The cost of entering the fields
+     * @param oracle Directs the search, built for the same costs,
+     *        {@code null} to search in all directions
+     * @param enterable A field entered despite a unit on it, e.g. the ending
+     *        field when following a unit, {@link #NONE} if none
+     * @return The number of steps, -1 if the ending field is not reachable
+     */
+    public int findCheapestPath(int start, int end, CostMap costs, DistanceOracle oracle, int enterable) {
+        pathLength = -1;
+        pathCost = -1;
+
+        // the estimate grows by at most the highest cost per step, so twice
+        // as many buckets suffice
+        beginBuckets((oracle == null) ? costs.getMaxCost() + 1 : 2 * costs.getMaxCost() + 1);
+        int e = (oracle == null) ? 0 : oracle.lowerBound(start, end);
+        if (e == DistanceOracle.UNREACHABLE)
+            return -1;
+
+        link(start, 0, e, NONE);
+        for (int f = take(); f != NONE; f = take()) {
+            if (f == end) {
+                pathLength = 0;
+                for (int p = end; p != start; p = parent[p])
+                    path[pathLength++] = p;
+                pathCost = cost[end];
+                return pathLength;
+            }
+            expand(f, costs, UNREACHED - 1, oracle, end, enterable);
+        }
+        return -1;
+    }
+
+    /**
+     * Compute the cost of the cheapest path from a field to all fields. Like
+     * {@link #findRange(int, int, CostMap, int[])}, only the terrain is taken
+     * into account, not the units.
+     *
+     * @param start The number of the starting field
+     * @param costs The cost of entering the fields
+     * @param dest Receives the costs by field number, {@link #UNREACHED} for
+     *        fields not connected to the starting field
+     */
+    public void findCosts(int start, CostMap costs, int[] dest) {
+        beginBuckets(costs.getMaxCost() + 1);
+        link(start, 0, 0, NONE);
+        for (int f = take(); f != NONE; f = take())
+            expand(f, costs, UNREACHED - 1, null, NONE, NONE);
+
+        for (int f = 0; f < dest.length; ++f)
+            dest[f] = (reached[f] == generation) ? cost[f] : UNREACHED;
+    }
+
+    /**
+     * Find all fields within a cost from a field. Like
+     * {@link Dijkstra#getRange(int)}, only the terrain is taken into
+     * account, not the units.
+     *
+     * @param start The number of the starting field
+     * @param range The maximum cost
+     * @param costs The cost of entering the fields
+     * @param dest Receives the numbers of the fields found, including the
+     *        starting field, in the order of their cost, must be large enough
+     *        for all of them
+     * @return The number of fields found
+     */
+    public int findRange(int start, int range, CostMap costs, int[] dest) {
+        int count = 0;
+
+        beginBuckets(costs.getMaxCost() + 1);
+        link(start, 0, 0, NONE);
+        for (int f = take(); f != NONE; f = take()) {
+            dest[count++] = f;
+            expand(f, costs, range, null, NONE, NONE);
+        }
+        return count;
+    }
+
+    /**
+     * Copy the path found by the last call of {@link #findPath(int, int)}.
+     *
+     * @param dest Receives the numbers of the fields, the first step first
+     *        and the ending field last, the starting field is not included
+     * @return The number of steps, -1 if no path has been found
+     */
+    public int getPath(int[] dest) {
+        for (int k = 0; k < pathLength; ++k)
+            dest[k] = path[pathLength - 1 - k];
+        return pathLength;
+    }
+
+    /**
+     * Get the cost of the path found by the last search.
+     *
+     * @return The sum of the costs of all fields entered, -1 if no path has
+     *         been found
+     */
+    public int getPathCost() {
+        return pathCost;
+    }
+
+    /**
+     * Get the path found by the last call of {@link #findPath(int, int)}.
+     *
+     * @return The numbers of the fields as in {@link #getPath(int[])},
+     *         {@code null} if no path has been found
+     */
+    public int[] getPath() {
+        if (pathLength < 0)
+            return null;
+
+        int[] dest = new int[pathLength];
+        getPath(dest);
+        return dest;
+    }
+
+    /**
+     * Find all fields within a number of steps from a field. Like
+     * {@link Dijkstra#getRange(int)}, only the terrain is taken into
+     * account, not the units.
+     *
+     * @param start The number of the starting field
+     * @param range The maximum number of steps
+     * @param dest Receives the numbers of the fields found, including the
+     *        starting field, must be large enough for all of them
+     * @return The number of fields found
+     */
+    public int findRange(int start, int range, int[] dest) {
+        int count = 0;
+
+        // the steps all cost one, so the fields are found in the order of
+        // their distance, and dest serves as queue
+        begin();
+        reached[start] = generation;
+        cost[start] = 0;
+        dest[count++] = start;
+
+        for (int head = 0; head < count; ++head) {
+            int f = dest[head];
+            ++expanded;
+            if (cost[f] >= range)
+                continue;
+
+            for (int k = adjacency.start(f), last = adjacency.end(f); k < last; ++k) {
+                int n = adjacency.neighbourIndex(k);
+                if (reached[n] == generation)
+                    continue;
+
+                reached[n] = generation;
+                cost[n] = cost[f] + 1;
+                dest[count++] = n;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Convert field numbers to fields.
+     *
+     * @param indices The numbers of the fields
+     * @param count The number of fields to convert
+     * @return The fields, in the same order
+     */
+    public LinkedList<Field> toFields(int[] indices, int count) {
+        LinkedList<Field> list = new LinkedList<Field>();
+        for (int k = 0; k < count; ++k)
+            list.add(adjacency.field(indices[k]));
+        return list;
+    }
+
+    /**
+     * Get the shortest path between two fields.
+     *
+     * @param start The starting field
+     * @param end The ending field
+     * @return The fields as returned by {@link AStar#getShortestPath()},
+     *         {@code null} if the ending field is not reachable
+     */
+    public LinkedList<Field> getShortestPath(Field start, Field end) {
+        return toFields(findPath(index(start), index(end)));
+    }
+
+    /**
+     * Get the cheapest path between two fields by the cost of entering the
+     * fields.
+     *
+     * @param start The starting field
+     * @param end The ending field
+     * @param costs The cost of entering the fields
+     * @param oracle Directs the search, built for the same costs,
+     *        {@code null} to search in all directions
+     * @param endFieldBlocking {@code false} to enter the ending field despite
+     *        a unit on it
+     * @return The fields as returned by {@link Dial#getShortestPath()},
+     *         {@code null} if the ending field is not reachable
+     */
+    public LinkedList<Field> getCheapestPath(Field start, Field end, CostMap costs, DistanceOracle oracle, boolean endFieldBlocking) {
+        int e = index(end);
+        return toFields(findCheapestPath(index(start), e, costs, oracle, endFieldBlocking ? NONE : e));
+    }
+
+    /**
+     * Get all fields within a number of steps from a field.
+     *
+     * @param start The starting field
+     * @param range The maximum number of steps
+     * @return The fields as returned by {@link Dijkstra#getRange(int)}
+     */
+    public Collection<Field> getRange(Field start, int range) {
+        return toRange(findRange(index(start), range, path));
+    }
+
+    /**
+     * Get all fields within a cost from a field.
+     *
+     * @param start The starting field
+     * @param range The maximum cost
+     * @param costs The cost of entering the fields
+     * @return The fields as returned by {@link Dial#getRange(int)}
+     */
+    public Collection<Field> getRange(Field start, int range, CostMap costs) {
+        return toRange(findRange(index(start), range, costs, path));
+    }
+
+    /**
+     * Get the number of fields visited by the last search.
+     *
+     * @return The number of fields
+     */
+    public int getExpandedCount() {
+        return expanded;
+    }
+
+    /** Convert the path of the last search, {@code null} if there is none */
+    private LinkedList<Field> toFields(int length) {
+        if (length < 0)
+            return null;
+
+        LinkedList<Field> list = new LinkedList<Field>();
+        for (int k = length - 1; k >= 0; --k)
+            list.add(adjacency.field(path[k]));
+        return list;
+    }
+
+    /** Convert the fields a range search left in the {@link #path} */
+    private List<Field> toRange(int count) {
+        List<Field> list = new ArrayList<Field>(count);
+        for (int k = 0; k < count; ++k)
+            list.add(adjacency.field(path[k]));
+        pathLength = -1;
+        pathCost = -1;
+        return list;
+    }
+
+    private int distance(int index, int ei, int ej) {
+        return AStar.distance(index % width, index / width, ei, ej);
+    }
+
+    /** Start a new search, forgetting the last one */
+    private void begin() {
+        if (++generation == Integer.MAX_VALUE) {
+            // a stamp could be mistaken for a current one, after wrapping around
+            Arrays.fill(reached, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+        heapSize = 0;
+        expanded = 0;
+    }
+
+    /** Start a new search with the bucket queue, using a number of buckets */
+    private void beginBuckets(int count) {
+        begin();
+        if (head.length < count)
+            head = new int[count];
+        Arrays.fill(head, 0, count, NONE);
+        buckets = count;
+        queued = 0;
+        current = 0;
+    }
+
+    /**
+     * Queue the neighbours of a field, which are cheaper to reach through it.
+     *
+     * @param f The field
+     * @param costs The cost of entering the fields
+     * @param limit The highest cost queued
+     * @param oracle Estimates the cost left to the ending field, {@code null}
+     *        if none
+     * @param end The ending field, {@link #NONE} to ignore the units on the
+     *        fields
+     * @param enterable A field entered despite a unit on it, {@link #NONE} if
+     *        none
+     */
+    private void expand(int f, CostMap costs, int limit, DistanceOracle oracle, int end, int enterable) {
+        for (int k = adjacency.start(f), last = adjacency.end(f); k < last; ++k) {
+            int n = adjacency.neighbourIndex(k);
+            int w = costs.getCost(n);
+
+            if (w == CostMap.BLOCKED || (end != NONE && n != enterable && !adjacency.field(n).isUsable()))
+                continue;
+
+            int c = cost[f] + w;
+            if (c > limit || (reached[n] == generation && c >= cost[n]))
+                continue;
+
+            if (reached[n] == generation && closed[n] != generation)
+                unlink(n);
+            link(n, c, (oracle == null) ? c : c + oracle.lowerBound(n, end), f);
+        }
+    }
+
+    // QUEUE
+
+    /** Reach a field for the first time and queue it */
+    private void reach(int f, int c, int from, int e) {
+        reached[f] = generation;
+        cost[f] = c;
+        parent[f] = from;
+        estimate[f] = e;
+
+        heap[heapSize] = f;
+        position[f] = heapSize;
+        up(heapSize++);
+    }
+
+    /** Reach a queued field on a cheaper path */
+    private void improve(int f, int c, int from, int e) {
+        cost[f] = c;
+        parent[f] = from;
+        estimate[f] = e;
+        up(position[f]);
+    }
+
+    /** Queue a field in the bucket of its key */
+    private void link(int f, int c, int k, int from) {
+        int b = k % buckets;
+
+        reached[f] = generation;
+        closed[f] = 0;
+        cost[f] = c;
+        parent[f] = from;
+        estimate[f] = k;
+        prev[f] = NONE;
+        next[f] = head[b];
+        if (head[b] != NONE)
+            prev[head[b]] = f;
+        head[b] = f;
+        ++queued;
+    }
+
+    /** Remove a waiting field from its bucket */
+    private void unlink(int f) {
+        int b = estimate[f] % buckets;
+
+        if (prev[f] != NONE)
+            next[prev[f]] = next[f];
+        else
+            head[b] = next[f];
+        if (next[f] != NONE)
+            prev[next[f]] = prev[f];
+        --queued;
+    }
+
+    /**
+     * Take one of the cheapest waiting fields. All waiting fields have keys
+     * below {@code current + buckets}, so every bucket holds fields of a
+     * single key.
+     *
+     * @return The field, {@link #NONE} if no field is waiting
+     */
+    private int take() {
+        if (queued == 0)
+            return NONE;
+
+        while (head[current % buckets] == NONE)
+            ++current;
+
+        int f = head[current % buckets];
+        unlink(f);
+        closed[f] = generation;
+        ++expanded;
+        return f;
+    }
+
+    private int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+
+        if (heapSize > 0) {
+            heap[0] = last;
+            position[last] = 0;
+            down(0);
+        }
+        return top;
+    }
+
+    /**
+     * Order by the estimated cost of the whole path, of equal ones take the
+     * field nearer to the goal first, i.e. the one with the higher cost so
+     * far, as {@link de.frankfurt.uni.vcp.comparable.AStarNode} does.
+     */
+    private boolean before(int a, int b) {
+        if (estimate[a] != estimate[b])
+            return estimate[a] < estimate[b];
+        return cost[a] > cost[b];
+    }
+
+    private void up(int k) {
+        int f = heap[k];
+
+        while (k > 0) {
+            int p = (k - 1) >> 1;
+            if (!before(f, heap[p]))
+                break;
+            heap[k] = heap[p];
+            position[heap[k]] = k;
+            k = p;
+        }
+        heap[k] = f;
+        position[f] = k;
+    }
+
+    private void down(int k) {
+        int f = heap[k];
+
+        while (true) {
+            int c = 2 * k + 1;
+            if (c >= heapSize)
+                break;
+            if (c + 1 < heapSize && before(heap[c + 1], heap[c]))
+                ++c;
+            if (!before(heap[c], f))
+                break;
+            heap[k] = heap[c];
+            position[heap[k]] = k;
+            k = c;
+        }
+        heap[k] = f;
+        position[f] = k;
+    }
+}
@@ -0,0 +1,223 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import de.frankfurt.uni.vcp.nodes.Field;
+import de.frankfurt.uni.vcp.nodes.HexAdjacency;
+import de.frankfurt.uni.vcp.nodes.movables.Movable;
+
+/**
+ * <h3> Finds the fields a unit can reach, and remembers them </h3>
+ *
+ * <p> The fields are searched breadth first, step by step, as far as the
+ *     movement of the unit allows. Occupied fields are neither entered nor
+ *     passed, see {@link Field#isUsable()}. Which fields have been visited,
+ *     and which ones are occupied, is kept in two bitsets of one bit per
+ *     field, numbered as by the {@link HexAdjacency} of the map. </p>
+ *
+ * <p> The result is remembered for every unit, together with the starting
+ *     field and the number of steps it was searched for, and with the area
+ *     examined: the fields reached and the occupied fields bordering them.
+ *     Selecting the unit once more returns the same result without a search,
+ *     until a unit enters or leaves a field of that area, see
+ *     {@link #occupancyChanged(int, boolean)}. Units elsewhere on the map do
+ *     not affect the result, and keep it. </p>
+ *
+ * <p> The service belongs to a {@link de.frankfurt.uni.vcp.nodes.HexMap} and
+ *     must only be used on the render thread. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class Reachability {
+
+    /**
+     * <h3> The fields reachable by a unit </h3>
+     */
+    private static class Entry {
+
+        /** The number of the starting field */
+        final int origin;
+
+        /** The maximum number of steps */
+        final int budget;
+
+        /** The numbers of the fields reached, in the order they were found */
+        final int[] fields;
+
+        /** A bit for every field examined by the search */
+        final long[] area;
+
+        Entry(int origin, int budget, int[] fields, long[] area) {
+            this.origin = origin;
+            this.budget = budget;
+            this.fields = fields;
+            this.area = area;
+        }
+    }
+
+    /** The fields and their neighbours */
+    private final HexAdjacency adjacency;
+
+    /** A bit for every occupied field */
+    private final long[] blocked;
+
+    /** A bit for every field visited by the current search, cleared afterwards */
+    private final long[] visited;
+
+    /** The fields found by the current search, in the order they were found */
+    private final int[] queue;
+
+    /** The last result of every unit */
+    private final Map<Movable, Entry> cache = new HashMap<Movable, Entry>();
+
+    /** Number of searches done, not answered from the cache */
+    private int searches;
+
+    /**
+     * Construct a new service for the fields of a map. The occupied fields
+     * are taken from the map once; afterwards every change must be reported
+     * by {@link #occupancyChanged(int, boolean)}.
+     *
+     * @param adjacency The fields of the map and their neighbours
+     */
+    public Reachability(HexAdjacency adjacency) {
+        int n = adjacency.size();
+
+        this.adjacency = adjacency;
+        this.blocked = new long[(n + 63) >> 6];
+        this.visited = new long[blocked.length];
+        this.queue = new int[n];
+
+        for (int f = 0; f < n; ++f) {
+            Field field = adjacency.field(f);
+            if (field != null && !field.isUsable())
+                set(blocked, f);
+        }
+    }
+
+    /**
+     * Find the fields a unit can reach.
+     *
+     * @param unit The unit, whose last result is reused if possible
+     * @param origin The number of the field the unit stands on
+     * @param budget The maximum number of steps
+     * @return The numbers of the fields reached, in the order of their
+     *         distance, without the starting field. The array is shared with
+     *         the cache and must not be changed.
+     */
+    public int[] findReachable(Movable unit, int origin, int budget) {
+        Entry entry = cache.get(unit);
+        if (entry != null && entry.origin == origin && entry.budget == budget)
+            return entry.fields;
+
+        entry = search(origin, budget);
+        cache.put(unit, entry);
+        return entry.fields;
+    }
+
+    /**
+     * Get the fields a unit can reach.
+     *
+     * @param unit The unit, whose last result is reused if possible
+     * @param origin The field the unit stands on
+     * @param budget The maximum number of steps
+     * @return The fields as found by {@link #findReachable(Movable, int, int)}
+     */
+    public LinkedList<Field> getReachableFields(Movable unit, Field origin, int budget) {
+        int[] fields = findReachable(unit, adjacency.index(origin), budget);
+
+        LinkedList<Field> list = new LinkedList<Field>();
+        for (int f : fields)
+            list.add(adjacency.field(f));
+        return list;
+    }
+
+    /**
+     * Report that a unit entered or left a field. Results, whose search
+     * examined the field, are forgotten.
+     *
+     * @param index The number of the field
+     * @param occupied {@code true} if a unit stands on the field now
+     */
+    public void occupancyChanged(int index, boolean occupied) {
+        if (get(blocked, index) == occupied)
+            return;
+
+        if (occupied)
+            set(blocked, index);
+        else
+            blocked[index >> 6] &= ~(1L << index);
+
+        Iterator<Entry> it = cache.values().iterator();
+        while (it.hasNext()) {
+            if (get(it.next().area, index))
+                it.remove();
+        }
+    }
+
+    /**
+     * Get the number of searches done so far, i.e. the number of calls of
+     * {@link #findReachable(Movable, int, int)} not answered from the cache.
+     *
+     * @return The number of searches
+     */
+    public int getSearchCount() {
+        return searches;
+    }
+
+    private Entry search(int origin, int budget) {
+        int count = 0;
+        int head = 0;
+
+        ++searches;
+        set(visited, origin);
+        queue[count++] = origin;
+
+        for (int step = 0; step < budget && head < count; ++step) {
+            for (int last = count; head < last; ++head) {
+                int f = queue[head];
+
+                for (int k = adjacency.start(f), end = adjacency.end(f); k < end; ++k) {
+                    int n = adjacency.neighbourIndex(k);
+                    if (get(visited, n))
+                        continue;
+
+                    // occupied fields belong to the area, but are not entered
+                    set(visited, n);
+                    if (!get(blocked, n))
+                        queue[count++] = n;
+                }
+            }
+        }
+
+        Entry entry = new Entry(origin, budget, Arrays.copyOfRange(queue, 1, count), visited.clone());
+        Arrays.fill(visited, 0L);
+        return entry;
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >> 6] & (1L << index)) != 0;
+    }
+
+    private static void set(long[] bits, int index) {
+        bits[index >> 6] |= 1L << index;
+    }
+}
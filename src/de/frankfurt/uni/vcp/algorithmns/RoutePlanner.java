@@ -0,0 +1,227 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import de.frankfurt.uni.vcp.nodes.Field;
+
+/**
+ * <h3> Remembers the path segments between waypoints </h3>
+ *
+ * <p> A way planning consists of segments between waypoints, each one
+ *     searched by the {@link PathEngine} of the map, like {@link Dial} does.
+ *     Segments are remembered by their starting
+ *     field, ending field and cost map, so undoing and redoing waypoints, or
+ *     clicking the same waypoint again, needs no search. The least recently
+ *     used segments are forgotten beyond {@link #CAPACITY}. </p>
+ *
+ * <p> Every time a unit enters or leaves a field, the occupancy version of
+ *     the map is increased, and the field is stamped with it, see
+ *     {@link #occupancyChanged(int)}. A remembered segment is only searched
+ *     again, if a field stamped after the segment was last checked is now
+ *     occupied, and only those fields are checked again, see
+ *     {@link #isPassable(List, int)}. A segment is not searched again, when
+ *     units leave fields next to it, so it may be a little longer than
+ *     necessary until then. </p>
+ *
+ * <p> The planner belongs to a {@link de.frankfurt.uni.vcp.nodes.HexMap} and
+ *     must only be used on the render thread. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class RoutePlanner {
+
+    /** The number of segments remembered */
+    public static final int CAPACITY = 256;
+
+    /**
+     * <h3> The key of a remembered segment </h3>
+     */
+    private static class Key {
+
+        final int from;
+
+        final int to;
+
+        final CostMap costs;
+
+        Key(int from, int to, CostMap costs) {
+            this.from = from;
+            this.to = to;
+            this.costs = costs;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return from == k.from && to == k.to && costs == k.costs;
+        }
+
+        @Override
+        public int hashCode() {
+            return (from * 31 + to) * 31 + System.identityHashCode(costs);
+        }
+    }
+
+    /**
+     * <h3> A remembered segment </h3>
+     */
+    private static class Segment {
+
+        /** The numbers of the fields, {@code null} if the end is not reachable */
+        final int[] fields;
+
+        /** The occupancy version the segment was last checked at */
+        int version;
+
+        Segment(int[] fields, int version) {
+            this.fields = fields;
+            this.version = version;
+        }
+    }
+
+    /** Searches the segments on the fields of the map */
+    private final PathEngine engine;
+
+    /** The occupancy version every field last changed at */
+    private final int[] stamps;
+
+    /** Increased by every unit entering or leaving a field */
+    private int version;
+
+    private final Map<Key, Segment> segments = new LinkedHashMap<Key, Segment>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Segment> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    /** Number of segments searched, not taken from the cache */
+    private int searches;
+
+    /**
+     * Construct a new planner for the fields of a map.
+     *
+     * @param engine Searches the fields of the map, see
+     *        {@link de.frankfurt.uni.vcp.nodes.HexMap#getPathEngine()}
+     */
+    public RoutePlanner(PathEngine engine) {
+        this.engine = engine;
+        this.stamps = new int[engine.size()];
+    }
+
+    /**
+     * Get the cheapest path between two waypoints, from the cache if it is
+     * still passable.
+     *
+     * @param from The starting field
+     * @param to The ending field
+     * @param costs The cost of entering the fields
+     * @param oracle Directs the search, built for the same costs
+     * @return A new list of the fields as returned by
+     *         {@link Dial#getShortestPath()}, {@code null} if the ending field
+     *         is not reachable
+     */
+    public LinkedList<Field> getSegment(Field from, Field to, CostMap costs, DistanceOracle oracle) {
+        Key key = new Key(engine.index(from), engine.index(to), costs);
+        Segment segment = segments.get(key);
+
+        if (segment == null || !isValid(segment)) {
+            ++searches;
+            int[] fields = (engine.findCheapestPath(key.from, key.to, costs, oracle, PathEngine.NONE) < 0) ? null : engine.getPath();
+            segments.put(key, new Segment(fields, version));
+            return toFields(fields);
+        }
+
+        segment.version = version;
+        return toFields(segment.fields);
+    }
+
+    /**
+     * Check whether units entered any field of a path since a version.
+     *
+     * @param path The fields of the path
+     * @param since The occupancy version the path was known to be passable
+     *        at, fields not changed since are not checked again
+     * @return {@code true} if no unit stands on any field changed since
+     */
+    public boolean isPassable(List<Field> path, int since) {
+        for (Field f : path)
+            if (stamps[engine.index(f)] > since && !f.isUsable())
+                return false;
+        return true;
+    }
+
+    /**
+     * Report that a unit entered or left a field.
+     *
+     * @param index The number of the field
+     */
+    public void occupancyChanged(int index) {
+        stamps[index] = ++version;
+    }
+
+    /**
+     * Get the occupancy version, increased by every unit entering or leaving
+     * a field.
+     *
+     * @return The version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the number of segments searched so far, i.e. the number of calls
+     * of {@link #getSegment(Field, Field, CostMap, DistanceOracle)} not
+     * answered from the cache.
+     *
+     * @return The number of searches
+     */
+    public int getSearchCount() {
+        return searches;
+    }
+
+    private boolean isValid(Segment segment) {
+        if (segment.version == version)
+            return true;
+        // an unreachable end may have become reachable
+        if (segment.fields == null)
+            return false;
+
+        for (int f : segment.fields)
+            if (stamps[f] > segment.version && !engine.field(f).isUsable())
+                return false;
+        return true;
+    }
+
+    private LinkedList<Field> toFields(int[] indices) {
+        if (indices == null)
+            return null;
+
+        LinkedList<Field> list = new LinkedList<Field>();
+        for (int f : indices)
+            list.add(engine.field(f));
+        return list;
+    }
+}
@@ -0,0 +1,88 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+import de.frankfurt.uni.vcp.config.MapConfig;
+
+/**
+ * <h3> Costs of the fields taken from the values of the map </h3>
+ *
+ * <p> Every value of the map's csv data is looked up in a table of costs.
+ *     The value 0 marks an obstacle, which is never entered, whatever the
+ *     table says. Values beyond the end of the table cost as much as the last
+ *     entry. By default, see {@link #DEFAULT_COSTS}, the cost of a field is
+ *     its value, up to 3, so a map may mark soft sand with 2 and dunes with 3,
+ *     while maps using only 1 cost one per step, as before. </p>
+ *
+ * <p> The costs are computed once, when the cost map is created. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class TerrainCostMap implements CostMap {
+
+    /** Obstacle, open sand, soft sand, dunes */
+    public static final int[] DEFAULT_COSTS = { BLOCKED, 1, 2, 3 };
+
+    /** The cost of every field by number */
+    private final int[] costs;
+
+    private final int maxCost;
+
+    /**
+     * Construct the cost map of a map with the {@link #DEFAULT_COSTS}.
+     *
+     * @param terrain The map
+     */
+    public TerrainCostMap(MapConfig terrain) {
+        this(terrain, DEFAULT_COSTS);
+    }
+
+    /**
+     * Construct the cost map of a map.
+     *
+     * @param terrain The map
+     * @param table The cost of every value of the map, {@link #BLOCKED} or
+     *        positive
+     */
+    public TerrainCostMap(MapConfig terrain, int[] table) {
+        int width = terrain.width;
+        int max = 1;
+
+        costs = new int[width * terrain.height];
+        for (int j = 0; j < terrain.height; ++j) {
+            for (int i = 0; i < width; ++i) {
+                int value = terrain.get(i, j);
+                int cost = (value <= 0) ? BLOCKED : table[Math.min(value, table.length - 1)];
+
+                if (cost < 0)
+                    throw new IllegalArgumentException("negative cost " + cost + " for terrain " + value);
+
+                costs[j * width + i] = cost;
+                max = Math.max(max, cost);
+            }
+        }
+        maxCost = max;
+    }
+
+    @Override
+    public int getCost(int index) {
+        return costs[index];
+    }
+
+    @Override
+    public int getMaxCost() {
+        return maxCost;
+    }
+}
@@ -0,0 +1,350 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.algorithmns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.frankfurt.uni.vcp.nodes.Field;
+import de.frankfurt.uni.vcp.nodes.HexAdjacency;
+import de.frankfurt.uni.vcp.nodes.movables.Movable;
+import de.frankfurt.uni.vcp.units.Player;
+
+/**
+ * <h3> How much damage the units of the other players can do on every field </h3>
+ *
+ * <p> Every unit threatens the fields it can attack within one turn: the
+ *     fields it can move to, and their neighbours. The fields are flooded from
+ *     the unit's field over the terrain, ignoring other units, up to
+ *     {@code maxmovement + 1} steps. The threat is the unit's
+ *     {@code maxfirepower} on its own field and falls off linearly with the
+ *     number of steps, see {@link #threat(int, int, int)}. The threats of
+ *     all units of a player are summed up in a {@code float} grid numbered as
+ *     by the {@link HexAdjacency} of the map, and the threat to a player is
+ *     the sum of the grids of all other players, see
+ *     {@link #getThreats(Player, float[])}. </p>
+ *
+ * <p> The contribution of every unit is kept, so {@link #update(Collection)}
+ *     only floods the fields of units that moved or changed, subtracts their
+ *     old contributions and adds the new ones. The floods are computed in
+ *     parallel by a fork/join pool, several units per task; merging them
+ *     into the grids is left to the calling thread. </p>
+ *
+ * <p> The map belongs to a {@link de.frankfurt.uni.vcp.nodes.HexMap} and must
+ *     only be used on the render thread, which reads the units. </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class ThreatMap {
+
+    /** The number of units flooded by a single task */
+    public static final int UNITS_PER_TASK = 4;
+
+    /** Computes the floods, its threads do not keep the game running */
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    /**
+     * <h3> What a unit threatens, and from where </h3>
+     */
+    private static class Contribution {
+
+        final Player owner;
+
+        /** The number of the unit's field */
+        final int origin;
+
+        final int firepower;
+
+        final int movement;
+
+        /** The numbers of the fields threatened, set by the flood */
+        int[] fields;
+
+        /** The threat on every field in {@link #fields} */
+        float[] values;
+
+        Contribution(Player owner, int origin, int firepower, int movement) {
+            this.owner = owner;
+            this.origin = origin;
+            this.firepower = firepower;
+            this.movement = movement;
+        }
+
+        boolean sameAs(Contribution c) {
+            return c != null && owner == c.owner && origin == c.origin && firepower == c.firepower && movement == c.movement;
+        }
+    }
+
+    /**
+     * <h3> Floods the fields of some units </h3>
+     */
+    private class Flood extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Contribution[] contributions;
+
+        private final int from;
+
+        private final int to;
+
+        Flood(Contribution[] contributions, int from, int to) {
+            this.contributions = contributions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > UNITS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Flood(contributions, from, middle), new Flood(contributions, middle, to));
+                return;
+            }
+
+            // the steps of every field, stamped by the unit flooded
+            int n = adjacency.size();
+            int[] steps = new int[n];
+            int[] stamp = new int[n];
+            int[] queue = new int[n];
+
+            for (int k = from; k < to; ++k)
+                flood(contributions[k], k + 1, steps, stamp, queue);
+        }
+    }
+
+    /** The fields and their neighbours */
+    private final HexAdjacency adjacency;
+
+    /** The contribution of every unit flooded */
+    private final Map<Movable, Contribution> contributions = new HashMap<Movable, Contribution>();
+
+    /** The sum of the threats of the units of every player */
+    private final Map<Player, float[]> grids = new HashMap<Player, float[]>();
+
+    /** Number of units flooded by the last update */
+    private int flooded;
+
+    /**
+     * Construct a new, empty threat map for the fields of a map.
+     *
+     * @param adjacency The fields of the map and their neighbours
+     */
+    public ThreatMap(HexAdjacency adjacency) {
+        this.adjacency = adjacency;
+    }
+
+    /**
+     * Bring the map up to date with the units. Units that did not move or
+     * change since the last update are not flooded again, units missing or
+     * destroyed are removed.
+     *
+     * @param units All units on the map
+     * @return The number of units flooded
+     */
+    public int update(Collection<Movable> units) {
+        List<Movable> changed = new ArrayList<Movable>();
+        List<Contribution> fresh = new ArrayList<Contribution>();
+        Set<Movable> present = new HashSet<Movable>();
+
+        for (Movable unit : units) {
+            Contribution c = describe(unit);
+            if (c == null)
+                continue;
+
+            present.add(unit);
+            if (!c.sameAs(contributions.get(unit))) {
+                changed.add(unit);
+                fresh.add(c);
+            }
+        }
+
+        Iterator<Map.Entry<Movable, Contribution>> it = contributions.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Movable, Contribution> e = it.next();
+            if (!present.contains(e.getKey())) {
+                subtract(e.getValue());
+                it.remove();
+            }
+        }
+
+        Contribution[] floods = fresh.toArray(new Contribution[fresh.size()]);
+        Flood task = new Flood(floods, 0, floods.length);
+        if (floods.length > UNITS_PER_TASK)
+            POOL.invoke(task);
+        else
+            task.compute();
+
+        for (int k = 0; k < floods.length; ++k) {
+            Contribution old = contributions.put(changed.get(k), floods[k]);
+            if (old != null)
+                subtract(old);
+            add(floods[k]);
+        }
+
+        flooded = floods.length;
+        return flooded;
+    }
+
+    /**
+     * Get the threat to a player on a field.
+     *
+     * @param index The number of the field
+     * @param viewer The player threatened, whose own units do not count
+     * @return The sum of the threats of the units of all other players
+     */
+    public float getThreat(int index, Player viewer) {
+        float sum = 0f;
+        for (Map.Entry<Player, float[]> e : grids.entrySet())
+            if (e.getKey() != viewer)
+                sum += e.getValue()[index];
+        return sum;
+    }
+
+    /**
+     * Get the threat to a player on a field.
+     *
+     * @param field The field
+     * @param viewer The player threatened, whose own units do not count
+     * @return The threat as by {@link #getThreat(int, Player)}
+     */
+    public float getThreat(Field field, Player viewer) {
+        return getThreat(adjacency.index(field), viewer);
+    }
+
+    /**
+     * Get the threat to a player on all fields.
+     *
+     * @param viewer The player threatened, whose own units do not count
+     * @param dest Receives the threat on every field by number, a new array
+     *        is created if {@code null}
+     * @return The threats, {@code dest} if given
+     */
+    public float[] getThreats(Player viewer, float[] dest) {
+        if (dest == null)
+            dest = new float[adjacency.size()];
+        Arrays.fill(dest, 0f);
+
+        for (Map.Entry<Player, float[]> e : grids.entrySet()) {
+            if (e.getKey() == viewer)
+                continue;
+
+            float[] grid = e.getValue();
+            for (int f = 0; f < grid.length; ++f)
+                dest[f] += grid[f];
+        }
+        return dest;
+    }
+
+    /**
+     * Get the number of units flooded by the last call of
+     * {@link #update(Collection)}.
+     *
+     * @return The number of units
+     */
+    public int getFloodedCount() {
+        return flooded;
+    }
+
+    /**
+     * Get the threat of a unit on a field.
+     *
+     * @param firepower The maximum firepower of the unit
+     * @param movement The maximum movement of the unit
+     * @param steps The number of steps from the unit to the field
+     * @return The threat, 0 beyond {@code movement + 1} steps
+     */
+    public static float threat(int firepower, int movement, int steps) {
+        int reach = movement + 1;
+        if (steps > reach)
+            return 0f;
+        return firepower * (float) (reach + 1 - steps) / (reach + 1);
+    }
+
+    /** Read what a unit threatens, {@code null} if nothing */
+    private Contribution describe(Movable unit) {
+        if (unit.info == null || unit.info.utype == null || unit.info.destroyed)
+            return null;
+
+        Field field = unit.getField();
+        if (field == null)
+            return null;
+
+        return new Contribution(unit.info.owner, adjacency.index(field), unit.info.utype.maxfirepower, unit.info.utype.maxmovement);
+    }
+
+    /** Flood the fields threatened by a unit, breadth first */
+    private void flood(Contribution c, int mark, int[] steps, int[] stamp, int[] queue) {
+        int reach = c.movement + 1;
+        int count = 0;
+
+        stamp[c.origin] = mark;
+        steps[c.origin] = 0;
+        queue[count++] = c.origin;
+
+        for (int head = 0; head < count; ++head) {
+            int f = queue[head];
+            if (steps[f] >= reach)
+                continue;
+
+            for (int k = adjacency.start(f), end = adjacency.end(f); k < end; ++k) {
+                int n = adjacency.neighbourIndex(k);
+                if (stamp[n] == mark)
+                    continue;
+
+                stamp[n] = mark;
+                steps[n] = steps[f] + 1;
+                queue[count++] = n;
+            }
+        }
+
+        c.fields = Arrays.copyOf(queue, count);
+        c.values = new float[count];
+        for (int k = 0; k < count; ++k)
+            c.values[k] = threat(c.firepower, c.movement, steps[queue[k]]);
+    }
+
+    private void add(Contribution c) {
+        float[] grid = grids.get(c.owner);
+        if (grid == null) {
+            grid = new float[adjacency.size()];
+            grids.put(c.owner, grid);
+        }
+
+        for (int k = 0; k < c.fields.length; ++k)
+            grid[c.fields[k]] += c.values[k];
+    }
+
+    private void subtract(Contribution c) {
+        float[] grid = grids.get(c.owner);
+        for (int k = 0; k < c.fields.length; ++k)
+            grid[c.fields[k]] -= c.values[k];
+
+        // the last unit of a player leaves no rounding errors behind
+        for (Contribution other : contributions.values())
+            if (other != c && other.owner == c.owner)
+                return;
+        grids.remove(c.owner);
+    }
+}
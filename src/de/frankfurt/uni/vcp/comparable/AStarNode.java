@@ -0,0 +1,76 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.comparable;
+
+import de.frankfurt.uni.vcp.nodes.Field;
+
+/**
+ * <h3>Datastructure used to implement the A* algorithm</h3>
+ *
+ * <p>A {@link SearchNode}, which additionally holds the estimated cost
+ * from its field to the goal. Nodes are ordered by the estimated cost of
+ * the whole path; of two equally promising nodes, the one nearer to the goal
+ * comes first, and of two equally near ones, the one created first.</p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class AStarNode extends SearchNode {
+
+	/** estimated cost from the field to the goal */
+	private final int estimate;
+
+	/** creation order, to break the remaining ties */
+	private final long sequence;
+
+	/**
+	 * @param field The field reached
+	 * @param weight The cost of the path from the start to the field
+	 * @param parent The field the path comes from
+	 * @param estimate The estimated cost from the field to the goal
+	 * @param sequence A number increasing with every node created
+	 */
+	public AStarNode(Field field, int weight, Field parent, int estimate, long sequence) {
+		super(field, weight, parent);
+		this.estimate = estimate;
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Compare the estimated path costs, then the estimates, then the
+	 * creation order.
+	 */
+	@Override
+	public int compareTo(SearchNode other) {
+		AStarNode o = (AStarNode) other;
+
+		int c = (getWeight() + estimate) - (o.getWeight() + o.estimate);
+		if (c != 0)
+			return c;
+
+		c = estimate - o.estimate;
+		if (c != 0)
+			return c;
+
+		return (sequence < o.sequence) ? -1 : (sequence > o.sequence) ? 1 : 0;
+	}
+
+	/**
+	 * Get the estimated cost from the stored field to the goal
+	 * @return The estimate
+	 */
+	public int getEstimate() {
+		return estimate;
+	}
+}
@@ -146,9 +146,7 @@ public class ConfigLoader {
 
 			map.setMapLayout(readCSV("data/maps/" + map.getHexMapCSV()));
 
-			map.csv = parseCsv(new BufferedReader(new StringReader(map.getMapLayout())));
-			map.height = map.csv.length;
-			map.width = map.csv[0].length;
+			map.setGrid(MapGrid.fromRows(parseCsv(new BufferedReader(new StringReader(map.getMapLayout())))));
 
 			return map;
 		} catch (JAXBException jaxbe) {
@@ -16,6 +16,7 @@ package de.frankfurt.uni.vcp.config;
 
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
 /**
  * <h3>Visual-Computing Praktikum - Aufgabe 2</h3>
@@ -36,34 +37,64 @@ public class MapConfig {
 	public int width;
 	public int height;
 	/**
-	 * 2d array which provides the map topology used to generate the height map.<br />
-	 * A
+	 * Grid which provides the map topology used to generate the height map.
 	 */
-	public int[][] csv;
+	private MapGrid grid;
 
 	
 	@Override
 	public String toString() {
-		String string = "";
+		StringBuilder string = new StringBuilder();
 		
 		for (int j=0; j<height; ++j) {
 			for (int i =0; i<width; ++i) {
-				string += csv[j][i] + " ";
+				string.append(grid.get(i, j)).append(' ');
 			}
 			if (j < height -1)
-				string += "\n";
+				string.append('\n');
 		}
 		
-		return string;
+		return string.toString();
 	}
 	
 	public MapConfig () {
 	}
 	
-	public MapConfig (int[][] csv) {	
-		this.csv = csv;
-		this.height = csv.length;
-		this.width = csv[0].length;
+	/**
+	 * Wrap a grid without copying it.
+	 * @param grid The map topology
+	 */
+	public MapConfig (MapGrid grid) {	
+		setGrid(grid);
+	}
+	
+	/**
+	 * Get the value of a field of this map.
+	 * @param i The i-index of the field
+	 * @param j The j-index of the field
+	 * @return The value of the field
+	 */
+	public int get(int i, int j) {
+		return grid.get(i, j);
+	}
+	
+	/**
+	 * Get the grid holding the map topology.
+	 * @return The grid of this map
+	 */
+	@XmlTransient
+	public MapGrid getGrid() {
+		return grid;
+	}
+	
+	/**
+	 * Set the grid holding the map topology, updating {@link #width} and {@link #height}.
+	 * @param grid The new grid of this map
+	 */
+	public void setGrid(MapGrid grid) {
+		this.grid = grid;
+		this.width = grid.width;
+		this.height = grid.height;
 	}
 	
 	
@@ -76,7 +107,7 @@ public class MapConfig {
 	 */
 	public boolean isUsable(int i, int j) {
 		if (j >= 0 && j < height && i >= 0 && i < width)
-			if (csv[j][i] != 0)
+			if (grid.get(i, j) != 0)
 				return true;
 		return false;
 	}
@@ -0,0 +1,130 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.config;
+
+/**
+ * <h3>Rectangular grid of {@code int} values backed by a single array</h3>
+ *
+ * <p>
+ * Cells are addressed by their i-index (column) and j-index (row), the same
+ * way as the fields of the {@link de.frankfurt.uni.vcp.nodes.HexMap}. They are
+ * stored column after column, which is the order the server sends its maps
+ * in, so a map can be decoded straight into the backing array.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class MapGrid {
+
+	/** Number of columns */
+	public final int width;
+
+	/** Number of rows */
+	public final int height;
+
+	/** The values, column after column. May be longer than needed. */
+	private final int[] cells;
+
+	/**
+	 * Create a grid with all cells set to 0.
+	 *
+	 * @param width
+	 *            Number of columns
+	 * @param height
+	 *            Number of rows
+	 */
+	public MapGrid(int width, int height) {
+		this(new int[width * height], width, height);
+	}
+
+	/**
+	 * Wrap an array of values without copying it.
+	 *
+	 * @param cells
+	 *            The values, column after column
+	 * @param width
+	 *            Number of columns
+	 * @param height
+	 *            Number of rows
+	 */
+	public MapGrid(int[] cells, int width, int height) {
+		if (cells.length < width * height)
+			throw new IllegalArgumentException("grid of " + width + "x" + height + " needs " + width * height + " cells, got "
+					+ cells.length);
+
+		this.cells = cells;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Copy a table given row by row, as it is read from a csv file.
+	 *
+	 * @param rows
+	 *            The rows of the table, all of the same length
+	 * @return The new grid
+	 */
+	public static MapGrid fromRows(int[][] rows) {
+		int height = rows.length;
+		int width = (height > 0) ? rows[0].length : 0;
+
+		MapGrid grid = new MapGrid(width, height);
+		for (int j = 0; j < height; ++j)
+			for (int i = 0; i < width; ++i)
+				grid.set(i, j, rows[j][i]);
+
+		return grid;
+	}
+
+	/**
+	 * Get the value of a cell.
+	 *
+	 * @param i
+	 *            The i-index (column) of the cell
+	 * @param j
+	 *            The j-index (row) of the cell
+	 * @return The value of the cell
+	 */
+	public int get(int i, int j) {
+		return cells[i * height + j];
+	}
+
+	/**
+	 * Set the value of a cell.
+	 *
+	 * @param i
+	 *            The i-index (column) of the cell
+	 * @param j
+	 *            The j-index (row) of the cell
+	 * @param value
+	 *            The new value of the cell
+	 */
+	public void set(int i, int j, int value) {
+		cells[i * height + j] = value;
+	}
+
+	/**
+	 * Check whether indices lie inside the grid.
+	 *
+	 * @param i
+	 *            The i-index (column) of the cell
+	 * @param j
+	 *            The j-index (row) of the cell
+	 * @return {@code true} if the cell exists
+	 */
+	public boolean contains(int i, int j) {
+		return i >= 0 && i < width && j >= 0 && j < height;
+	}
+}
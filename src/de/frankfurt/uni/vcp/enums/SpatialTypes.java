@@ -8,5 +8,5 @@ import de.frankfurt.uni.vcp.factories.SpatialFactory;
  * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
  */
 public enum SpatialTypes {
-	CARPET, CAMEL, ROSA, SPHINX, ROC_THE_EAGLE, MARKER_FIGHT, MARKER_TRADE, MARKER_MOVE, MARKER_END, OKTAHEDRON, MARKER_FIELD
+	CARPET, CAMEL, ROSA, SPHINX, JINN, ROC_THE_EAGLE, MARKER_FIGHT, MARKER_TRADE, MARKER_MOVE, MARKER_END, OKTAHEDRON, MARKER_FIELD
 }
@@ -43,6 +43,9 @@ public class SpatialFactory {
 		case SPHINX:
 			s = assetManager.loadModel("sphinx.mesh.xml");
 			break;
+		case JINN:
+			s = assetManager.loadModel("jinn.mesh.xml");
+			break;
 		case ROC_THE_EAGLE:
 			s = assetManager.loadModel("roc.mesh.xml");
 			s.setMaterial(MaterialFactory.create(MaterialTypes.ROC_THE_EAGLE));
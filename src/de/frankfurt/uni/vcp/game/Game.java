@@ -23,9 +23,18 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.jme3.animation.LoopMode;
 import com.jme3.app.SimpleApplication;
@@ -63,6 +72,7 @@ import de.frankfurt.uni.vcp.audio.GameMusic;
 import de.frankfurt.uni.vcp.audio.Sounds;
 import de.frankfurt.uni.vcp.audio.enums.SoundType;
 import de.frankfurt.uni.vcp.config.MapConfig;
+import de.frankfurt.uni.vcp.config.MapGrid;
 import de.frankfurt.uni.vcp.enums.FogMode;
 import de.frankfurt.uni.vcp.enums.PlayerStates;
 import de.frankfurt.uni.vcp.enums.SelectionMode;
@@ -70,6 +80,7 @@ import de.frankfurt.uni.vcp.enums.SpatialTypes;
 import de.frankfurt.uni.vcp.factories.SpatialFactory;
 import de.frankfurt.uni.vcp.gui.controllers.Help2ScreenController;
 import de.frankfurt.uni.vcp.gui.controllers.HudScreenController;
+import de.frankfurt.uni.vcp.gui.controllers.LoadingScreenController;
 import de.frankfurt.uni.vcp.gui.controllers.MapScreenController;
 import de.frankfurt.uni.vcp.gui.controllers.PlayerScreenController;
 import de.frankfurt.uni.vcp.gui.controllers.ScenarioScreenController;
@@ -80,8 +91,13 @@ import de.frankfurt.uni.vcp.helpers.LogHelper;
 import de.frankfurt.uni.vcp.listeners.KeyBoardActionListener;
 import de.frankfurt.uni.vcp.listeners.KeyBoardAnalogListener;
 import de.frankfurt.uni.vcp.listeners.MouseActionListener;
+import de.frankfurt.uni.vcp.net.AsyncTCPClient;
 import de.frankfurt.uni.vcp.net.GameInfo;
-import de.frankfurt.uni.vcp.net.MessageInfo;
+import de.frankfurt.uni.vcp.net.GameInfoDiff;
+import de.frankfurt.uni.vcp.net.GameInfoMonitor;
+import de.frankfurt.uni.vcp.net.PollScheduler;
+import de.frankfurt.uni.vcp.net.MessagePump;
+import de.frankfurt.uni.vcp.net.NetworkMetrics;
 import de.frankfurt.uni.vcp.net.ProtocolError;
 import de.frankfurt.uni.vcp.net.StatusError;
 import de.frankfurt.uni.vcp.net.TCPClient;
@@ -101,6 +117,7 @@ import de.frankfurt.uni.vcp.nodes.movables.Rosa;
 import de.frankfurt.uni.vcp.nodes.movables.Sphinx;
 import de.frankfurt.uni.vcp.units.Inventory;
 import de.frankfurt.uni.vcp.units.Player;
+import de.frankfurt.uni.vcp.units.UnitRefresher;
 import de.lessvoid.nifty.Nifty;
 import de.lessvoid.nifty.controls.Button;
 
@@ -124,7 +141,12 @@ public class Game extends SimpleApplication {
 
     // CONSTANTS
     static final float SQRT_3_2 = sqrt(3) / 2f;
-    static final float UPDATE_INTERVAL = 1f;
+
+    /** Number of concurrent unitinfo requests in {@link #distributeUnits()} */
+    static final int UNIT_LOADER_THREADS = 4;
+
+    /** Chat messages shown per frame at most, the rest waits for the next frame */
+    static final int MESSAGES_PER_FRAME = 8;
 
     /** Holds persistent game settings. */
     private GameSettings gameSettings;
@@ -185,9 +207,6 @@ public class Game extends SimpleApplication {
     /** Currently selected unit by {@link #activePlayer} */
     public Movable activeUnit;
 
-    /** Game time timer */
-    private float time = 0f;
-
     /** Toggles the {@link #simpleUpdate(float)} execution */
     private boolean running = false;
 
@@ -215,6 +234,9 @@ public class Game extends SimpleApplication {
     /** Screen where to add players */
     private PlayerScreenController playerScreen;
 
+    /** Controller for the screen showing the progress of loading a game */
+    private LoadingScreenController loadingScreen;
+
     /** Screen where to select the game on the server */
     public ServerScreenController serverScreen;
 
@@ -244,6 +266,73 @@ public class Game extends SimpleApplication {
     /** The actial client that handles the player aktion to the server */
     private TCPClient client = new TCPClient("localhost", 1504,	TCPClient.CLIENT_INFO);
 
+    /** Non-blocking facade of {@link #client}, results arrive on the render thread */
+    private AsyncTCPClient asyncClient;
+
+    /** Fetches the chat messages on a thread of its own */
+    private MessagePump messagePump;
+
+    /** Receives the chat messages in {@link #simpleUpdate(float)}, may be {@code null} */
+    private MessagePump.Listener chatListener;
+
+    /** Fetches the unit infos at the start of every turn, see {@link #refreshUnits()} */
+    private UnitRefresher unitRefresher;
+
+    /** Schedules all periodic server requests */
+    private final PollScheduler pollScheduler = new PollScheduler();
+
+    /**
+     * Seconds the game info is polled at most apart, while we wait for our
+     * turn or for a trade partner, as often as the game used to poll.
+     */
+    static final float WAITING_POLL_INTERVAL = 1f;
+
+    /**
+     * The info of the joined game, every reply is passed to
+     * {@link #setGameInfo(GameInfo)}. While idle, e.g. in the lobby, it backs
+     * off to four seconds. Waiting for our turn lowers this to
+     * {@link #WAITING_POLL_INTERVAL}.
+     */
+    private final PollScheduler.Topic<GameInfo> gameInfoTopic = new PollScheduler.Topic<GameInfo>("gameinfo", 0.25f, 4f) {
+        @Override
+        protected void request(AsyncTCPClient.Callback<GameInfo> callback) {
+            getAsyncClient().gameinfo(gameId, dummyPlayerId, callback);
+        }
+
+        @Override
+        protected void received(GameInfo info) {
+            setGameInfo(info);
+        }
+
+        @Override
+        protected boolean changed(GameInfo previous, GameInfo info) {
+            return !GameInfoDiff.compute(previous, info).isEmpty();
+        }
+    };
+
+    /** The games running on the server */
+    private final PollScheduler.Topic<List<String>> gameListTopic = new PollScheduler.Topic<List<String>>("gamelist", 1f, 8f) {
+        @Override
+        protected void request(AsyncTCPClient.Callback<List<String>> callback) {
+            getAsyncClient().gamelist(callback);
+        }
+    };
+
+    /** Keeps the game info up to date, while we wait for our turn. Changes are handled by {@link #onGameInfoChanged(GameInfoDiff)}. */
+    private final AsyncTCPClient.Callback<GameInfo> turnSubscriber = new AsyncTCPClient.Callback<GameInfo>() {
+        @Override
+        public void onSuccess(GameInfo info) {
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            onPollFailure(e);
+        }
+    };
+
+    /** Set while the server has not yet acknowledged the end of our turn */
+    private boolean endTurnPending = false;
+
     /** The id of the current map this client plays on. */
     private String mapId = "";
     
@@ -256,11 +345,21 @@ public class Game extends SimpleApplication {
     /** Logical game information provided by tcp client-server */
     public GameInfo gameInfo;
 
+    /** Publishes the changes of {@link #gameInfo}, see {@link #setGameInfo(GameInfo)} */
+    private final GameInfoMonitor gameInfoMonitor = new GameInfoMonitor();
+
     // CONSTRUCTOR
     private Game() throws IOException, ClassNotFoundException {
         this.gameSettings = getGameSettings();
         // Thread resumes even if the window has no focus.
         setPauseOnLostFocus(false);
+
+        gameInfoMonitor.addListener(new GameInfoMonitor.Listener() {
+            @Override
+            public void gameInfoChanged(GameInfoDiff diff) {
+                onGameInfoChanged(diff);
+            }
+        });
     };
 
     /** Heightmap for the hexmap */
@@ -392,54 +491,198 @@ public class Game extends SimpleApplication {
 	 * Distribute a set of units given by a unitmap to the players actually
 	 * participation in the game
 	 * 
-	 * @param unitMap
-	 *            The unimap
+	 * <p>
+	 * The unit infos are fetched concurrently by up to
+	 * {@link #UNIT_LOADER_THREADS} requests. Afterwards every distinct model is
+	 * loaded once into the asset cache, before all units are created and
+	 * attached in a single pass.
+	 * </p>
+	 * 
 	 * @throws Exception
 	 */
 	public void distributeUnits() throws Exception {
 		try {
-			int unitId;
+			attachUnits(unitMap, loadUnits(unitMap, getPlayerIds()));
+		} catch (Exception e) {
+			LogHelper.getLogger().error("distributeUnits(): " + e.getMessage());
+		}
+	}
 
-			for (int i = 0; i < unitMap.height; ++i) {
-				for (int j = 0; j < unitMap.width; ++j) {
-					unitId = unitMap.csv[j][i];
+	/**
+	 * Fetch the infos of all units on a unitmap and load their models into
+	 * the asset cache. May be called on any thread, once the unit types are
+	 * known. The infos are not resolved yet, see {@link UnitInfo#resolve()}.
+	 * 
+	 * @param unitMap
+	 *            The unitmap as reported by the server
+	 * @param playerIds
+	 *            The ids of the players, see {@link #getPlayerIds()}
+	 * @return The unit infos, in the order the unitmap is scanned by
+	 *         {@link #attachUnits(MapConfig, List)}
+	 * @throws Exception
+	 *             The first exception thrown by any of the requests
+	 */
+	List<UnitInfo> loadUnits(MapConfig unitMap, Map<String, String> playerIds) throws Exception {
+		List<Callable<UnitInfo>> requests = new ArrayList<Callable<UnitInfo>>();
 
-					if (unitId != 0) {
+		for (int i = 0; i < unitMap.width; ++i) {
+			for (int j = 0; j < unitMap.height; ++j) {
+				int unitId = unitMap.get(i, j);
 
-						UnitInfo info = client.unitinfo(gameId, dummyPlayerId, unitId);
-						Player player = info.owner;
+				if (unitId != 0)
+					requests.add(unitInfoRequest(unitId, playerIds));
+			}
+		}
 
-						if (player.playerId != null) {
-							info = client.unitinfo(gameId, player.playerId, unitId);
-						}
+		List<UnitInfo> infos = fetchUnitInfos(requests);
 
-						LogHelper.getLogger().info("Adding unit: " + info);
-						Field field = hexMap.getField(i, j);
-
-						Movable unit;
-						if (info.utype.name.equals("fightersmall"))
-							unit = new Rosa(info);
-						else if (info.utype.name.equals("fightermedium"))
-							unit = new Sphinx(info);
-						else if (info.utype.name.equals("fighterheavy"))
-							unit = new Jinn(info);
-						else if (info.utype.name.equals("cargosmall"))
-							unit = new Carpet(info);
-						else if (info.utype.name.equals("cargoheavy"))
-							unit = new Camel(info);
-						else {
-							LogHelper.getLogger().info("No model for unittype: " + info.utype + " using default model.");
-							unit = new Rosa(info);
-						}
+		// PRELOAD MODELS
+		Set<SpatialTypes> models = EnumSet.noneOf(SpatialTypes.class);
+		for (UnitInfo info : infos)
+			models.add(getUnitModel(info));
+		for (SpatialTypes model : models)
+			SpatialFactory.create(model);
+
+		return infos;
+	}
+
+	/**
+	 * Create the units loaded by {@link #loadUnits(MapConfig)} and put them
+	 * onto their fields of the {@link #hexMap}. Must be called on the render
+	 * thread.
+	 * 
+	 * @param unitMap
+	 *            The unitmap the units were loaded from
+	 * @param infos
+	 *            The unit infos, in the order of the unitmap
+	 * @throws Exception
+	 */
+	void attachUnits(MapConfig unitMap, List<UnitInfo> infos) throws Exception {
+		int k = 0;
 
-						unit.setMarker(new UnitMarker(
-								getPlayerPosition(player.playerName)));
-						player.addUnit(field, unit);
-					}
+		for (int i = 0; i < unitMap.width; ++i) {
+			for (int j = 0; j < unitMap.height; ++j) {
+				if (unitMap.get(i, j) == 0)
+					continue;
+
+				UnitInfo info = infos.get(k++);
+				info.resolve();
+				Player player = info.owner;
+
+				LogHelper.getLogger().info("Adding unit: " + info);
+				Movable unit = createUnit(info);
+
+				unit.setMarker(new UnitMarker(
+						getPlayerPosition(player.playerName)));
+				player.addUnit(hexMap.getField(i, j), unit);
+			}
+		}
+	}
+
+	/**
+	 * Create the request for the info of a single unit. The owner's view of a
+	 * unit is only requested, if the owner is not the player behind
+	 * {@link #dummyPlayerId} anyway.
+	 * 
+	 * @param unitId
+	 *            The id of the unit
+	 * @param playerIds
+	 *            The ids of the players, see {@link #getPlayerIds()}
+	 * @return The request, to be executed on any thread
+	 */
+	private Callable<UnitInfo> unitInfoRequest(final int unitId, final Map<String, String> playerIds) {
+		final TCPClient client = this.client;
+		final String gameId = this.gameId;
+		final String dummyPlayerId = this.dummyPlayerId;
+
+		return new Callable<UnitInfo>() {
+			@Override
+			public UnitInfo call() throws Exception {
+				UnitInfo info = client.unitinfo(gameId, dummyPlayerId, unitId);
+				String playerId = playerIds.get(info.ownername);
+
+				if (playerId != null && !playerId.equals(dummyPlayerId)) {
+					info = client.unitinfo(gameId, playerId, unitId);
 				}
+				return info;
 			}
-		} catch (Exception e) {
-			LogHelper.getLogger().error("distributeUnits(): " + e.getMessage());
+		};
+	}
+
+	/**
+	 * Execute the given unitinfo requests on a bounded pool of worker threads.
+	 * 
+	 * @param requests
+	 *            The requests to execute
+	 * @return The unit infos, in the order of the requests
+	 * @throws Exception
+	 *             The first exception thrown by any of the requests
+	 */
+	private List<UnitInfo> fetchUnitInfos(List<Callable<UnitInfo>> requests) throws Exception {
+		List<UnitInfo> infos = new ArrayList<UnitInfo>(requests.size());
+		if (requests.isEmpty())
+			return infos;
+
+		ExecutorService loader = Executors.newFixedThreadPool(Math.min(UNIT_LOADER_THREADS, requests.size()));
+		try {
+			for (Future<UnitInfo> future : loader.invokeAll(requests)) {
+				try {
+					infos.add(future.get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Exception)
+						throw (Exception) e.getCause();
+					throw e;
+				}
+			}
+		} finally {
+			loader.shutdownNow();
+		}
+		return infos;
+	}
+
+	/**
+	 * Get the model used to display a unit.
+	 * 
+	 * @param info
+	 *            The info of the unit
+	 * @return The model type of the unit
+	 */
+	private SpatialTypes getUnitModel(UnitInfo info) {
+		if ("fightersmall".equals(info.utypename))
+			return SpatialTypes.ROSA;
+		else if ("fightermedium".equals(info.utypename))
+			return SpatialTypes.SPHINX;
+		else if ("fighterheavy".equals(info.utypename))
+			return SpatialTypes.JINN;
+		else if ("cargosmall".equals(info.utypename))
+			return SpatialTypes.CARPET;
+		else if ("cargoheavy".equals(info.utypename))
+			return SpatialTypes.CAMEL;
+
+		LogHelper.getLogger().info("No model for unittype: " + info.utypename + " using default model.");
+		return SpatialTypes.ROSA;
+	}
+
+	/**
+	 * Create the {@link Movable} matching the type of a unit.
+	 * 
+	 * @param info
+	 *            The info of the unit
+	 * @return The new unit
+	 * @throws Exception
+	 */
+	private Movable createUnit(UnitInfo info) throws Exception {
+		switch (getUnitModel(info)) {
+		case SPHINX:
+			return new Sphinx(info);
+		case JINN:
+			return new Jinn(info);
+		case CARPET:
+			return new Carpet(info);
+		case CAMEL:
+			return new Camel(info);
+		default:
+			return new Rosa(info);
 		}
 	}
 
@@ -465,10 +708,160 @@ public class Game extends SimpleApplication {
     }
 
     public GameInfo getGameInfo() throws IOException, StatusError, ProtocolError {
-        gameInfo = client.gameinfo(gameId, dummyPlayerId);
+        setGameInfo(client.gameinfo(gameId, dummyPlayerId));
         return gameInfo;
     }
 
+    /**
+     * Replace {@link #gameInfo} by a newer one and publish the changes to the
+     * listeners of the {@link #getGameInfoMonitor()}. Must be called on the
+     * render thread.
+     *
+     * @param info
+     *            The latest game info
+     */
+    public void setGameInfo(GameInfo info) {
+        info.resolve();
+        gameInfo = info;
+        if (messagePump != null) {
+            messagePump.setPlayerNames(info.playernames);
+        }
+        gameInfoMonitor.update(info);
+    }
+
+    /**
+     * Get the monitor, which publishes what has changed, whenever a new
+     * {@link GameInfo} arrives.
+     *
+     * @return The game info monitor
+     */
+    public GameInfoMonitor getGameInfoMonitor() {
+        return gameInfoMonitor;
+    }
+
+    /**
+     * Get the scheduler, which sends all periodic requests to the server.
+     *
+     * @return The poll scheduler
+     */
+    public PollScheduler getPollScheduler() {
+        return pollScheduler;
+    }
+
+    /**
+     * Get the topic polling the info of the joined game. Every reply is
+     * published through the {@link #getGameInfoMonitor()}.
+     *
+     * @return The game info topic
+     */
+    public PollScheduler.Topic<GameInfo> getGameInfoTopic() {
+        return gameInfoTopic;
+    }
+
+    /**
+     * Poll the game info at its minimum interval again, after an action of
+     * our own was accepted by the server and will change it.
+     */
+    public void hurryGameInfo() {
+        pollScheduler.hurry(gameInfoTopic);
+    }
+
+    /**
+     * Poll the game info while waiting for a trade partner, at most
+     * {@link #WAITING_POLL_INTERVAL} apart.
+     *
+     * @param subscriber
+     *            Receives every game info, until it unsubscribes
+     */
+    public void waitForTradePartner(AsyncTCPClient.Callback<GameInfo> subscriber) {
+        pollScheduler.subscribe(gameInfoTopic, subscriber, WAITING_POLL_INTERVAL);
+        pollScheduler.hurry(gameInfoTopic);
+    }
+
+    /**
+     * Get the pump fetching the chat messages sent to this client. It is
+     * started by the screen joining a game.
+     *
+     * @return The message pump
+     */
+    public MessagePump getMessagePump() {
+        if (messagePump == null) {
+            messagePump = new MessagePump(client);
+            if (gameInfo != null) {
+                messagePump.setPlayerNames(gameInfo.playernames);
+            }
+        }
+        return messagePump;
+    }
+
+    /**
+     * Set the listener receiving the chat messages on the render thread.
+     * Messages arriving while there is no listener are kept for the next one,
+     * e.g. while the game is loading.
+     *
+     * @param listener
+     *            The listener, {@code null} to remove the current one
+     */
+    public void setChatListener(MessagePump.Listener listener) {
+        chatListener = listener;
+    }
+
+    /**
+     * Get the topic polling the games running on the server.
+     *
+     * @return The game list topic
+     */
+    public PollScheduler.Topic<List<String>> getGameListTopic() {
+        return gameListTopic;
+    }
+
+    /**
+     * Show trade offers made to us and the end of the game.
+     *
+     * @param diff
+     *            The changes of the game info
+     */
+    private void onGameInfoChanged(GameInfoDiff diff) {
+        if (!running) {
+            return;
+        }
+
+        // TRADE
+        if (diff.has(GameInfoDiff.Change.TRADE_OFFERED) && getPlayer() == diff.current.tradepartner) {
+            if (!hud.isOfferVisible()) {
+                hud.showOffer();
+            }
+        }
+
+        if (diff.has(GameInfoDiff.Change.GAME_ENDED)) {
+            hud.errorMessage("The winner is: " + diff.current.winner);
+            running = false;
+        }
+    }
+
+    /**
+     * Fetch the latest {@link GameInfo} without blocking the render thread.
+     * {@link #gameInfo} is updated and its changes are published, before the
+     * callback is notified.
+     *
+     * @param callback
+     *            Receives the game info on the render thread
+     */
+    public void requestGameInfo(final AsyncTCPClient.Callback<GameInfo> callback) {
+        getAsyncClient().gameinfo(gameId, dummyPlayerId, new AsyncTCPClient.Callback<GameInfo>() {
+            @Override
+            public void onSuccess(GameInfo info) {
+                setGameInfo(info);
+                callback.onSuccess(info);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                callback.onFailure(e);
+            }
+        });
+    }
+
     /**
      * Triggers the trade action along the network.
      * @param from The unit who wants to trade.
@@ -493,23 +886,41 @@ public class Game extends SimpleApplication {
      * <p>The usage of this method could be redundant in the future.</p>
      */
     public void fixUnitMap() {
+        getAsyncClient().unitmap(gameId, dummyPlayerId, new AsyncTCPClient.Callback<MapGrid>() {
+            @Override
+            public void onSuccess(MapGrid grid) {
+                applyUnitMap(new MapConfig(grid));
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                LogHelper.getLogger().error("fixUnitMap(): " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Reset every unit onto the field given by a freshly fetched unitmap.
+     *
+     * @param map
+     *            The unitmap as reported by the server
+     */
+    private void applyUnitMap(MapConfig map) {
         try {
             int unitId;
-            unitMap = new MapConfig(client.unitmap(gameId, dummyPlayerId));
+            unitMap = map;
 
-            for (int i = 0; i < unitMap.height; ++i) {
-                for (int j = 0; j < unitMap.width; ++j) {
-                    unitId = unitMap.csv[j][i];
+            for (int i = 0; i < unitMap.width; ++i) {
+                for (int j = 0; j < unitMap.height; ++j) {
+                    unitId = unitMap.get(i, j);
                     if (unitId != 0) {
-                        UnitInfo info = client.unitinfo(gameId, dummyPlayerId, unitId);
-                        LogHelper.getLogger().info("Fixing unit position for unit: " + info);
-
                         Field field = hexMap.getField(i, j);
                         Movable m = getUnit(unitId);
+                        LogHelper.getLogger().info("Fixing unit position for unit: " + m.info);
 
-                        m.getField().unit=null;
+                        m.getField().setUnit(null);
                         m.setLocalTranslation((field.getLocalTranslation()));
-                        field.unit=m;
+                        field.setUnit(m);
                     }
                 }
             }
@@ -526,7 +937,7 @@ public class Game extends SimpleApplication {
 	public void nextPlayer() {
 		try {
 			// don't end this move, until the player has acted with a unit.
-			if (activeUnit == null) {
+			if (activeUnit == null || endTurnPending) {
 				return;
 			}
 
@@ -537,12 +948,37 @@ public class Game extends SimpleApplication {
 				selectedUnit.unselect();
 				selectedUnit = null;
 			}
-			
-			client.endturn(playerId, activeUnit.info.unitid, gameId);
-			gameInfo = client.gameinfo(gameId, dummyPlayerId);
-			hud.logConsole("It's \"" + gameInfo.activeplayer.playerName + "\"s turn.");
-			hud.disableEndTurnButton();
-			lastPlayer = null;
+
+			// The turn is handed over, once the server acknowledged it.
+			endTurnPending = true;
+			getAsyncClient().endturn(playerId, activeUnit.info.unitid, gameId, new AsyncTCPClient.Callback<Void>() {
+				@Override
+				public void onSuccess(Void result) {
+					getAsyncClient().gameinfo(gameId, dummyPlayerId, new AsyncTCPClient.Callback<GameInfo>() {
+						@Override
+						public void onSuccess(GameInfo info) {
+							setGameInfo(info);
+							hud.logConsole("It's \"" + gameInfo.activeplayer.playerName + "\"s turn.");
+							hud.disableEndTurnButton();
+							lastPlayer = null;
+							endTurnPending = false;
+
+							// the other players will act soon
+							pollScheduler.hurry();
+						}
+
+						@Override
+						public void onFailure(Exception e) {
+							onNextPlayerFailure(e);
+						}
+					});
+				}
+
+				@Override
+				public void onFailure(Exception e) {
+					onNextPlayerFailure(e);
+				}
+			});
 		} catch (Exception e) {
 			LogHelper.getLogger().error(e.getMessage());
 			hud.errorMessage("nextPlayer(): " + e.getMessage());
@@ -551,6 +987,12 @@ public class Game extends SimpleApplication {
 		updateVisibleUnits();
 	}
 
+	private void onNextPlayerFailure(Exception e) {
+		endTurnPending = false;
+		LogHelper.getLogger().error(e.getMessage());
+		hud.errorMessage("nextPlayer(): " + e.getMessage());
+	}
+
     public void updateFog(){
         for (Player p : players.values()) {
             if (p != getActivePlayer())
@@ -585,6 +1027,23 @@ public class Game extends SimpleApplication {
         }
     }
 
+    /**
+     * Bring the threat map of the hex map up to date with the positions of
+     * all units, before it is read, e.g. by
+     * {@link Movable#highlightThreat(List)}. Only the units, that moved or
+     * changed since the last update, are flooded again, see
+     * {@link HexMap#getThreatMap()}.
+     */
+    public void updateThreatMap() {
+        if (hexMap == null)
+            return;
+
+        List<Movable> units = new ArrayList<Movable>();
+        for (Player p : players.values())
+            units.addAll(p.units);
+        hexMap.getThreatMap().update(units);
+    }
+
     /**
      * Refresh every players units
      * 
@@ -597,20 +1056,28 @@ public class Game extends SimpleApplication {
 
         refreshUnits();
         if (selectedUnit != null) {
+            selectedUnit.revalidateWays();
             selectedUnit.highlightPath();
         }
     }
     
     /**
-     * Updates all units data by getting them from the server.
+     * Updates all units data by getting them from the server. The units of
+     * all players are fetched concurrently and updated in the same frame.
      * @throws IOException
      * @throws StatusError
      * @throws ProtocolError
      */
     private void refreshUnits() throws IOException, StatusError, ProtocolError {
+        if (unitRefresher == null) {
+            unitRefresher = new UnitRefresher(client, this);
+        }
+
+        UnitRefresher.Batch batch = unitRefresher.newBatch(gameInfo.turn, gameId, dummyPlayerId);
         for (Player p : players.values()) {
-            p.refreshUnits();
+            p.refreshUnits(batch);
         }
+        batch.submit(null);
     }
 
     /**
@@ -717,17 +1184,43 @@ public class Game extends SimpleApplication {
      */
     public void setClient(TCPClient client) {
         this.client = client;
+
+        if (asyncClient != null) {
+            asyncClient.shutdown();
+            asyncClient = null;
+        }
+        if (messagePump != null) {
+            messagePump.shutdown();
+            messagePump = null;
+        }
+        if (unitRefresher != null) {
+            unitRefresher.shutdown();
+            unitRefresher = null;
+        }
     }
 
     /**
      * Get the {@link TCPClient} used by this game
-     * 
+     *
      * @return The client of this game
      */
     public TCPClient getClient() {
         return client;
     }
 
+    /**
+     * Get the non-blocking facade of the {@link TCPClient} used by this game.
+     * Callbacks passed to it are executed on the render thread.
+     *
+     * @return The asynchronous client of this game
+     */
+    public AsyncTCPClient getAsyncClient() {
+        if (asyncClient == null) {
+            asyncClient = new AsyncTCPClient(client, this);
+        }
+        return asyncClient;
+    }
+
     /**
      * Set the id of this game
      * 
@@ -736,6 +1229,7 @@ public class Game extends SimpleApplication {
      */
     public void setGameId(String gameId) {
         this.gameId = gameId;
+        gameInfoMonitor.reset();
     }
 
     /**
@@ -843,30 +1337,6 @@ public class Game extends SimpleApplication {
         });
     }
 
-    /**
-     * Add a {@link DesertHeightMap} to this game The heightmap will be
-     * generated from the map config associated with this game
-     */
-    private void addHeightMap() {
-        try {
-            map = new DesertHeightMap(terrainMap, assetManager);
-            rootNode.attachChild(map);
-            LogHelper.getLogger().info("Attached desert height map");
-        } catch (IOException e) {
-            LogHelper.getLogger().error("addHeightMap(): " + e.getMessage());
-        }
-    }
-
-    /**
-     * Add a {@link HextMap} to this game The map will be generated from the map
-     * config associated with this game
-     */
-    public void addHexMap() {
-        hexMap = (new HexMap(terrainMap));
-        clickables.attachChild(getHexMap());
-        LogHelper.getLogger().info("Attached hex map");
-    }
-
     /**
      * Move the camera, so we have a nice viewing perspective
      */
@@ -897,40 +1367,61 @@ public class Game extends SimpleApplication {
     }
 
     /**
-     * Start the game
+     * Start loading the game in the background, see {@link GameLoader}.
      * 
-     * @throws Exception
+     * @param listener
+     *            Is told about the progress on the render thread, and
+     *            switches to the hud as soon as the game is loaded
+     * @return The running loader
      */
-    public void startgame() throws Exception {
+    public GameLoader startgame(GameLoader.Listener listener) {
         LogHelper.getLogger().info("Game started");
 
-        // MAPDATA
-        LogHelper.getLogger().info("Loading mapdata");
+        GameLoader loader = new GameLoader(this, listener);
+        loader.start();
+        return loader;
+    }
 
-        // TERRAINMAP
-        terrainMap = new MapConfig(client.terrainmap(gameId, playerId));
+    // LOADING STAGES, see GameLoader
 
-        LogHelper.getLogger().info("Loaded terrainmap:\n " + terrainMap);
+    MapGrid fetchTerrainMap() throws IOException, StatusError, ProtocolError {
+        return client.terrainmap(gameId, playerId);
+    }
+
+    MapGrid fetchUnitMap() throws IOException, StatusError, ProtocolError {
+        return client.unitmap(gameId, playerId);
+    }
 
-        LogHelper.getLogger().info("Generating heightmap");
-        addHeightMap();
-        LogHelper.getLogger().info("Adding hexmap");
-        addHexMap();
-        miniMap = new MiniMap(terrainMap);
+    List<TypeInfo> fetchUnitTypes() throws IOException, StatusError, ProtocolError {
+        return client.unittype(mapId);
+    }
 
-        // UNITMAP
-        unitMap = new MapConfig(client.unitmap(gameId, playerId));
+    GameInfo fetchGameInfo() throws IOException, StatusError, ProtocolError {
+        return client.gameinfo(gameId, dummyPlayerId);
+    }
 
-        LogHelper.getLogger().info("Loaded unitmap:\n" + unitMap);
+    DesertHeightMap createHeightMap(MapConfig terrainMap) {
+        return new DesertHeightMap(terrainMap, assetManager);
+    }
 
+    /**
+     * Register the unit types and add the players of the game. Must be called
+     * on the render thread.
+     * 
+     * @param types
+     *            The unit types of the map
+     * @param info
+     *            The game info naming the players
+     */
+    void addPlayers(List<TypeInfo> types, GameInfo info) {
         // FILL UNITINFO DATABASE
         LogHelper.getLogger().info("Loading unit types:");
-        for (TypeInfo info : client.unittype(mapId)) {
-            LogHelper.getLogger().info("  adding: " + info);
-            unitTypes.put(info.name, info);
+        for (TypeInfo type : types) {
+            LogHelper.getLogger().info("  adding: " + type);
+            unitTypes.put(type.name, type);
         }
 
-        this.gameInfo = client.gameinfo(gameId, dummyPlayerId);
+        setGameInfo(info);
         LogHelper.getLogger().info("Loaded gameinfo: " + gameInfo);
 
         // ADD PLAYERS
@@ -939,12 +1430,61 @@ public class Game extends SimpleApplication {
                 LogHelper.getLogger().info(" adding Player:" + name);
                 addPlayer(name, null);
             }
+        gameInfo.resolve();
+    }
+
+    /**
+     * Copy the ids of the players, for the threads loading the units, which
+     * must not read the players themselves. Render thread only.
+     * 
+     * @return The id of every player by name, {@code null} for the players
+     *         not playing on this client
+     */
+    Map<String, String> getPlayerIds() {
+        Map<String, String> ids = new HashMap<String, String>();
+        for (Player p : players.values())
+            ids.put(p.playerName, p.playerId);
+        return ids;
+    }
+
+    /**
+     * Attach everything built by the {@link GameLoader} to the scene in one
+     * go, and start the game. Must be called on the render thread.
+     * 
+     * @param terrainMap
+     *            The terrainmap
+     * @param unitMap
+     *            The unitmap
+     * @param map
+     *            The terrain built from the terrainmap
+     * @param hexMap
+     *            The fields built from the terrainmap
+     * @param miniMap
+     *            The mini map of the terrainmap
+     * @param units
+     *            The units of the unitmap, see {@link #loadUnits(MapConfig)}
+     * @param info
+     *            The game info fetched after the units
+     * @throws Exception
+     */
+    void attachScene(MapConfig terrainMap, MapConfig unitMap, DesertHeightMap map, HexMap hexMap, MiniMap miniMap,
+            List<UnitInfo> units, GameInfo info) throws Exception {
+        this.terrainMap = terrainMap;
+        this.unitMap = unitMap;
+        this.map = map;
+        this.hexMap = hexMap;
+        this.miniMap = miniMap;
+
+        rootNode.attachChild(map);
+        LogHelper.getLogger().info("Attached desert height map");
+        clickables.attachChild(hexMap);
+        LogHelper.getLogger().info("Attached hex map");
 
         // DISTRIBUTE UNITS
         LogHelper.getLogger().info("Distributing units: " + gameInfo);
-        distributeUnits();
+        attachUnits(unitMap, units);
 
-        gameInfo = client.gameinfo(gameId, dummyPlayerId);
+        setGameInfo(info);
 
 		for (Player p : players.values()) {
 			for (Movable m : p.units) {
@@ -1157,6 +1697,10 @@ public class Game extends SimpleApplication {
 
 	@Override
 	public void simpleUpdate(float tpf) {
+		// the screens poll the server as well, before the game is running
+		pollScheduler.update(tpf);
+		drainMessages();
+
 		if (!running) {
 			return;
 		}
@@ -1166,67 +1710,13 @@ public class Game extends SimpleApplication {
 		// attaching the listening location to the camera.
 		listener.setLocation(cam.getLocation());
 
-		// we have to wait for our next turn.
-		if (getPlayer() != getActivePlayer()) {
-
-			time += tpf;
-			if (time > UPDATE_INTERVAL) {
-				// Reset timer
-				time = 0f;
-
-				try {		
-					// CHAT MESSAGES
-					List<MessageInfo> messages = client.getdata();
-					for (MessageInfo i : messages) {
-						// TODO: ATTENTION WORKAROUND TO FIND THE PLAYERS NAME FOR
-						// THE CHAT
-						// The problem now is that we only have the player id
-						// and we try
-						// to match is with the playername to get the real name
-						// for the chat display.
-						for (String playerName : gameInfo.playernames) {
-							if (i.senderplayerid.startsWith(playerName)) {
-								hud.logConsole(playerName + "> " + i.message);
-							}
-						}
-					}
-
-					// Get latest server info
-					gameInfo = client.gameinfo(gameId, playerId);
+		// we have to wait for our next turn, but not while the server has
+		// not yet acknowledged the end of our turn.
+		boolean waiting = !endTurnPending && getPlayer() != getActivePlayer();
+		waitForTurn(waiting);
 
-					// TRADE
-					if (gameInfo.tradepartner != null) {
-						if (getPlayer() == gameInfo.tradepartner) {
-							if (!hud.isOfferVisible()) {
-								hud.showOffer();
-							}
-						}
-					}
-				} catch (Exception e) {
-					// TODO: Doesn't work, the exception is thrown somewhere else.
-					// The winning condition is stupidly returned from the
-					// server as error. However, it needs to be caught here.
-					try {
-						if (e.getMessage().equals("game_ended")) {
-						    String reply = ((StatusError) e).fullMessage;
-						    String infoString = reply.split(" ")[2];
-						    
-						    GameInfo info = new GameInfo(infoString);
-						    
-							hud.errorMessage("The winner is: " + info.winner);
-							running = false;
-							return;
-						} else {
-							throw new Exception(e.getMessage());
-						}		
-					} catch (Exception e2) {
-						LogHelper.getLogger().error("simpleUpdate(): " + e.getMessage());
-					}
-				}
-			}
-		}
 		// check if we have been activated. This is the wait condition until it's our turn.
-		else if (lastPlayer != getPlayer()) {		
+		if (!endTurnPending && !waiting && lastPlayer != getPlayer()) {		
 			lastPlayer = getPlayer();
 			hud.logConsole("It's \"" + getActivePlayerName() + "\"s turn.");
 			// Has been disabled when our turn has been finished.
@@ -1282,6 +1772,80 @@ public class Game extends SimpleApplication {
 		}
 	}
 
+	/**
+	 * Poll the server for the latest game info, while we are waiting for our
+	 * turn. Trade offers and the end of the game are
+	 * picked up by {@link #onGameInfoChanged(GameInfoDiff)}.
+	 *
+	 * @param waiting
+	 *            {@code true} while another player is active
+	 */
+	private void waitForTurn(boolean waiting) {
+		if (waiting == pollScheduler.isSubscribed(gameInfoTopic, turnSubscriber)) {
+			return;
+		}
+
+		if (waiting) {
+			pollScheduler.subscribe(gameInfoTopic, turnSubscriber, WAITING_POLL_INTERVAL);
+		} else {
+			pollScheduler.unsubscribe(gameInfoTopic, turnSubscriber);
+		}
+	}
+
+	/**
+	 * Pass the chat messages fetched by the {@link MessagePump} to the
+	 * {@link #chatListener}, at most {@link #MESSAGES_PER_FRAME} per frame.
+	 */
+	private void drainMessages() {
+		if (messagePump != null && chatListener != null) {
+			messagePump.drain(chatListener, MESSAGES_PER_FRAME);
+		}
+	}
+
+	/**
+	 * The winning condition is stupidly returned from the server as error.
+	 * However, it needs to be caught here.
+	 *
+	 * @param e
+	 *            The exception thrown by a polling request
+	 */
+	private void onPollFailure(Exception e) {
+		try {
+			if (e.getMessage().equals("game_ended")) {
+			    String reply = ((StatusError) e).fullMessage;
+			    String infoString = reply.split(" ")[2];
+
+			    GameInfo info = new GameInfo(infoString);
+			    info.resolve();
+			    gameInfoMonitor.gameEnded(info);
+			} else {
+				throw new Exception(e.getMessage());
+			}
+		} catch (Exception e2) {
+			LogHelper.getLogger().error("simpleUpdate(): " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Stop the network I/O thread when the application shuts down, and log
+	 * the {@link NetworkMetrics} collected during the session.
+	 */
+	@Override
+	public void destroy() {
+		super.destroy();
+
+		if (asyncClient != null) {
+			asyncClient.shutdown();
+		}
+		if (messagePump != null) {
+			messagePump.shutdown();
+		}
+		if (unitRefresher != null) {
+			unitRefresher.shutdown();
+		}
+		LogHelper.getLogger().info("network metrics (us, bytes):\n" + NetworkMetrics.getDefault().dump());
+	}
+
     /**
      * TODO: not used right now, but can do a mouse over animation.
      * @param tpf
@@ -1311,6 +1875,7 @@ public class Game extends SimpleApplication {
 		hud = new HudScreenController();
 		mapScreen = new MapScreenController();
 		playerScreen = new PlayerScreenController();
+		loadingScreen = new LoadingScreenController();
 		serverScreen = new ServerScreenController();
 		helpScreen = new Help2ScreenController();
 
@@ -1320,6 +1885,7 @@ public class Game extends SimpleApplication {
 		stateManager.attach(hud);
 		stateManager.attach(mapScreen);
 		stateManager.attach(playerScreen);
+		stateManager.attach(loadingScreen);
 		stateManager.attach(serverScreen);
 		stateManager.attach(helpScreen);
 
@@ -1327,7 +1893,7 @@ public class Game extends SimpleApplication {
 
 		nifty = niftyDisplay.getNifty();
 
-		nifty.fromXml("screen_game.xml", "start", startScreen, hud, scenarioScreen, getSettingsScreen(), mapScreen, playerScreen, serverScreen, helpScreen);
+		nifty.fromXml("screen_game.xml", "start", startScreen, hud, scenarioScreen, getSettingsScreen(), mapScreen, playerScreen, loadingScreen, serverScreen, helpScreen);
 
 		guiViewPort.addProcessor(niftyDisplay);
 
@@ -1534,11 +2100,12 @@ public class Game extends SimpleApplication {
     }
     
     /**
-     * Returns the player who has the current turn.
+     * Returns the player who has the current turn, from the same
+     * {@link #gameInfo} as {@link #getActivePlayer()}.
      * @return Player name.
      */
     public String getActivePlayerName() {
-    	return gameInfo.activeplayer.playerName;
+    	return getActivePlayer().playerName;
     }
 
     public void setPlayerName(String playerName) {
@@ -0,0 +1,430 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.game;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import de.frankfurt.uni.vcp.config.MapConfig;
+import de.frankfurt.uni.vcp.config.MapGrid;
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+import de.frankfurt.uni.vcp.net.GameInfo;
+import de.frankfurt.uni.vcp.net.TypeInfo;
+import de.frankfurt.uni.vcp.net.UnitInfo;
+import de.frankfurt.uni.vcp.nodes.DesertHeightMap;
+import de.frankfurt.uni.vcp.nodes.HexMap;
+
+/**
+ * <h3>Loads a started game in stages</h3>
+ *
+ * <p>
+ * The stages depend on each other like this:
+ * </p>
+ *
+ * <pre>
+ * TERRAIN_MAP --+--> HEIGHT_MAP --------------+
+ *               +--> HEX_MAP -----------------+
+ *               +--> MINI_MAP ----------------+--> SCENE
+ * UNIT_TYPES ---+                             |
+ * GAME_INFO ----+--> PLAYERS --+--> UNITS ----+
+ * UNIT_MAP --------------------+
+ * </pre>
+ *
+ * <p>
+ * All requests of the first column are sent at once. The terrain and the
+ * fields are built on worker threads, while the units are fetched. Only
+ * {@link Stage#PLAYERS} and {@link Stage#SCENE} touch the scene graph; they
+ * are run as single batches on the render thread, which keeps rendering the
+ * progress meanwhile.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class GameLoader {
+
+	/**
+	 * The stages of loading a game.
+	 */
+	public enum Stage {
+		TERRAIN_MAP("Terrain map"),
+		UNIT_MAP("Unit map"),
+		UNIT_TYPES("Unit types"),
+		GAME_INFO("Game info"),
+		HEIGHT_MAP("Desert"),
+		HEX_MAP("Hex fields"),
+		MINI_MAP("Mini map"),
+		PLAYERS("Players"),
+		UNITS("Units"),
+		SCENE("Scene");
+
+		/** The name shown on the progress screen */
+		public final String label;
+
+		private Stage(String label) {
+			this.label = label;
+		}
+	}
+
+	/**
+	 * <h3>Receives the progress of a {@link GameLoader}</h3>
+	 *
+	 * <p>
+	 * All methods are called on the render thread.
+	 * </p>
+	 */
+	public interface Listener {
+
+		/**
+		 * A stage has started.
+		 *
+		 * @param stage
+		 *            The stage
+		 */
+		public void stageStarted(Stage stage);
+
+		/**
+		 * A stage has finished.
+		 *
+		 * @param stage
+		 *            The stage
+		 * @param millis
+		 *            The time the stage took
+		 */
+		public void stageFinished(Stage stage, long millis);
+
+		/**
+		 * The game is attached to the scene and running.
+		 *
+		 * @param millis
+		 *            The time from {@link GameLoader#start()} up to now
+		 */
+		public void loaded(long millis);
+
+		/**
+		 * Loading has been given up.
+		 *
+		 * @param stage
+		 *            The stage that failed
+		 * @param e
+		 *            The reason
+		 */
+		public void failed(Stage stage, Exception e);
+	}
+
+	private final Game game;
+
+	private final Listener listener;
+
+	/** Runs the stages, threads are created as needed */
+	private final ExecutorService workers;
+
+	/** Time taken per stage, -1 while not finished */
+	private final AtomicLongArray millis = new AtomicLongArray(Stage.values().length);
+
+	private long startNanos;
+
+	/**
+	 * Construct a new loader, see {@link Game#startgame(Listener)}.
+	 *
+	 * @param game
+	 *            The game to load, with game, map and player ids set
+	 * @param listener
+	 *            Receives the progress
+	 */
+	public GameLoader(Game game, Listener listener) {
+		this.game = game;
+		this.listener = listener;
+
+		final AtomicInteger count = new AtomicInteger();
+		this.workers = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "game-loader-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		for (int k = 0; k < millis.length(); ++k)
+			millis.set(k, -1);
+	}
+
+	/**
+	 * Start loading in the background.
+	 */
+	public void start() {
+		startNanos = System.nanoTime();
+
+		workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					load();
+				} catch (StageFailure e) {
+					fail(e.stage, e.getCause());
+				} catch (Exception e) {
+					fail(Stage.SCENE, e);
+				} finally {
+					workers.shutdown();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get the time a stage took.
+	 *
+	 * @param stage
+	 *            The stage
+	 * @return The time in milliseconds, -1 if the stage has not finished yet
+	 */
+	public long getMillis(Stage stage) {
+		return millis.get(stage.ordinal());
+	}
+
+	/**
+	 * Run all stages, waiting for each only when its result is needed.
+	 */
+	private void load() throws Exception {
+		// NETWORK
+		Future<MapGrid> terrainGrid = submit(Stage.TERRAIN_MAP, new Callable<MapGrid>() {
+			@Override
+			public MapGrid call() throws Exception {
+				return game.fetchTerrainMap();
+			}
+		});
+		Future<MapGrid> unitGrid = submit(Stage.UNIT_MAP, new Callable<MapGrid>() {
+			@Override
+			public MapGrid call() throws Exception {
+				return game.fetchUnitMap();
+			}
+		});
+		Future<List<TypeInfo>> types = submit(Stage.UNIT_TYPES, new Callable<List<TypeInfo>>() {
+			@Override
+			public List<TypeInfo> call() throws Exception {
+				return game.fetchUnitTypes();
+			}
+		});
+		Future<GameInfo> gameInfo = submit(Stage.GAME_INFO, new Callable<GameInfo>() {
+			@Override
+			public GameInfo call() throws Exception {
+				return game.fetchGameInfo();
+			}
+		});
+
+		// TERRAIN
+		final MapConfig terrainMap = new MapConfig(get(terrainGrid));
+		LogHelper.getLogger().info("Loaded terrainmap:\n " + terrainMap);
+
+		Future<DesertHeightMap> heightMap = submit(Stage.HEIGHT_MAP, new Callable<DesertHeightMap>() {
+			@Override
+			public DesertHeightMap call() {
+				return game.createHeightMap(terrainMap);
+			}
+		});
+		Future<HexMap> hexMap = submit(Stage.HEX_MAP, new Callable<HexMap>() {
+			@Override
+			public HexMap call() {
+				return new HexMap(terrainMap);
+			}
+		});
+		Future<MiniMap> miniMap = submit(Stage.MINI_MAP, new Callable<MiniMap>() {
+			@Override
+			public MiniMap call() {
+				return new MiniMap(terrainMap);
+			}
+		});
+
+		// PLAYERS, needed to parse the unit infos
+		final List<TypeInfo> typeList = get(types);
+		final GameInfo firstInfo = get(gameInfo);
+		final Map<String, String> playerIds = render(Stage.PLAYERS, new Callable<Map<String, String>>() {
+			@Override
+			public Map<String, String> call() {
+				game.addPlayers(typeList, firstInfo);
+				return game.getPlayerIds();
+			}
+		});
+
+		// UNITS
+		final MapConfig unitMap = new MapConfig(get(unitGrid));
+		LogHelper.getLogger().info("Loaded unitmap:\n" + unitMap);
+
+		Future<List<UnitInfo>> units = submit(Stage.UNITS, new Callable<List<UnitInfo>>() {
+			@Override
+			public List<UnitInfo> call() throws Exception {
+				return game.loadUnits(unitMap, playerIds);
+			}
+		});
+		Future<GameInfo> latestInfo = workers.submit(new Callable<GameInfo>() {
+			@Override
+			public GameInfo call() throws Exception {
+				try {
+					return game.fetchGameInfo();
+				} catch (Exception e) {
+					throw new StageFailure(Stage.GAME_INFO, e);
+				}
+			}
+		});
+
+		// SCENE
+		final DesertHeightMap heightMapNode = get(heightMap);
+		final HexMap hexMapNode = get(hexMap);
+		final MiniMap miniMapImage = get(miniMap);
+		final List<UnitInfo> unitList = get(units);
+		final GameInfo info = get(latestInfo);
+
+		render(Stage.SCENE, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				game.attachScene(terrainMap, unitMap, heightMapNode, hexMapNode, miniMapImage, unitList, info);
+				return null;
+			}
+		});
+
+		final long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		LogHelper.getLogger().info("Loaded game in " + total + " ms: " + this);
+
+		game.enqueue(new Callable<Void>() {
+			@Override
+			public Void call() {
+				listener.loaded(total);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Run a stage on a worker thread.
+	 */
+	private <T> Future<T> submit(Stage stage, Callable<T> task) {
+		return workers.submit(timed(stage, task));
+	}
+
+	/**
+	 * Run a stage on the render thread and wait for it.
+	 */
+	private <T> T render(Stage stage, Callable<T> task) throws Exception {
+		return get(game.enqueue(timed(stage, task)));
+	}
+
+	/**
+	 * Wait for a stage.
+	 *
+	 * @throws StageFailure
+	 *             The stage failed
+	 */
+	private static <T> T get(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Wrap a stage to report its progress and failure.
+	 */
+	private <T> Callable<T> timed(final Stage stage, final Callable<T> task) {
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				notifyStarted(stage);
+				long start = System.nanoTime();
+
+				T result;
+				try {
+					result = task.call();
+				} catch (Exception e) {
+					throw new StageFailure(stage, e);
+				}
+
+				long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+				millis.set(stage.ordinal(), time);
+				notifyFinished(stage, time);
+				return result;
+			}
+		};
+	}
+
+	private void notifyStarted(final Stage stage) {
+		game.enqueue(new Callable<Void>() {
+			@Override
+			public Void call() {
+				listener.stageStarted(stage);
+				return null;
+			}
+		});
+	}
+
+	private void notifyFinished(final Stage stage, final long time) {
+		game.enqueue(new Callable<Void>() {
+			@Override
+			public Void call() {
+				listener.stageFinished(stage, time);
+				return null;
+			}
+		});
+	}
+
+	private void fail(final Stage stage, Throwable cause) {
+		final Exception e = (cause instanceof Exception) ? (Exception) cause : new Exception(cause);
+		LogHelper.getLogger().error("GameLoader: " + stage.label + ": " + e.getMessage());
+
+		game.enqueue(new Callable<Void>() {
+			@Override
+			public Void call() {
+				listener.failed(stage, e);
+				return null;
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder string = new StringBuilder();
+		for (Stage stage : Stage.values()) {
+			if (string.length() > 0)
+				string.append(", ");
+			string.append(stage.label).append(' ').append(getMillis(stage)).append(" ms");
+		}
+		return string.toString();
+	}
+
+	/**
+	 * A stage failed, the cause is the original exception.
+	 */
+	private static class StageFailure extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		final Stage stage;
+
+		StageFailure(Stage stage, Exception cause) {
+			super(cause.getMessage(), cause);
+			this.stage = stage;
+		}
+	}
+}
@@ -66,7 +66,7 @@ public class MiniMap {
 		int startp = 0;
 		for (int j = 0; j < 25; j++) {
 			for (int i = 0; i < 25; i++) {
-				if (mapConfig.csv[i][j] == 1)
+				if (mapConfig.get(j, i) == 1)
 					drawHex(j, i, new Color(0.7f, 0.5f, 0.0f, 1.0f));
 			}
 			startp = (startp == 0) ? (int) (g / 2f) : 0;
@@ -1,7 +1,5 @@
 package de.frankfurt.uni.vcp.gui.controllers;
 
-import java.io.IOException;
-
 import com.jme3.app.Application;
 import com.jme3.app.state.AppStateManager;
 import com.jme3.asset.AssetManager;
@@ -26,10 +24,13 @@ import de.frankfurt.uni.vcp.enums.SelectionMode;
 import de.frankfurt.uni.vcp.game.Game;
 import de.frankfurt.uni.vcp.game.MiniMap;
 import de.frankfurt.uni.vcp.helpers.LogHelper;
+import de.frankfurt.uni.vcp.net.AsyncTCPClient;
 import de.frankfurt.uni.vcp.net.GameInfo;
 import de.frankfurt.uni.vcp.net.GameInfo.TradeStatus;
-import de.frankfurt.uni.vcp.net.ProtocolError;
-import de.frankfurt.uni.vcp.net.StatusError;
+import de.frankfurt.uni.vcp.net.GameInfoDiff;
+import de.frankfurt.uni.vcp.net.GameInfoMonitor;
+import de.frankfurt.uni.vcp.net.MessageInfo;
+import de.frankfurt.uni.vcp.net.MessagePump;
 import de.frankfurt.uni.vcp.nodes.movables.Movable;
 import de.frankfurt.uni.vcp.units.Inventory;
 import de.lessvoid.nifty.Nifty;
@@ -56,11 +57,44 @@ import de.lessvoid.nifty.screen.Screen;
 public class HudScreenController extends AbstractScreenController {
 
     
-    private static final float UPDATE_INTERVAL = 1000;
-    private float time;
-    
     Movable to;    
 
+    /** The unit that made a trade offer, while we wait for the partner's decision */
+    private Movable tradeOfferUnit;
+
+    /** Polls the game info, while we wait for the partner's decision */
+    private final AsyncTCPClient.Callback<GameInfo> tradeSubscriber = new AsyncTCPClient.Callback<GameInfo>() {
+        @Override
+        public void onSuccess(GameInfo info) {
+            // the decision is picked up by the tradeListener
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            game.getPollScheduler().unsubscribe(game.getGameInfoTopic(), this);
+            tradeOfferUnit = null;
+            logConsole(e.getMessage());
+            game.setSelectionMode(SelectionMode.ANY);
+        }
+    };
+
+    /** Finishes our trade offer, as soon as the partner has made a decision. */
+    private final GameInfoMonitor.Listener tradeListener = new GameInfoMonitor.Listener() {
+        @Override
+        public void gameInfoChanged(GameInfoDiff diff) {
+            if (tradeOfferUnit != null && diff.has(GameInfoDiff.Change.TRADE_RESOLVED))
+                tradeResolved(diff.current);
+        }
+    };
+
+    /** Shows the chat messages sent to this client in the console. */
+    private final MessagePump.Listener chatListener = new MessagePump.Listener() {
+        @Override
+        public void messageReceived(MessageInfo message) {
+            logConsole(message.sendername + "> " + message.message);
+        }
+    };
+
     /** The trade's layer container. */
     public static String TRADE_LAYER = "tradeLayer";
 
@@ -88,6 +122,8 @@ public class HudScreenController extends AbstractScreenController {
     	im.addMapping("ZoomIn", new MouseAxisTrigger(MouseInput.AXIS_WHEEL,	false));
     	im.addMapping("ZoomOut", new MouseAxisTrigger(MouseInput.AXIS_WHEEL, true));
     	im.addMapping("toggleFog", new KeyTrigger(KeyInput.KEY_F1));    	
+
+    	game.getGameInfoMonitor().addListener(tradeListener);
     }
     
     /** Confirm button for error message. */
@@ -232,37 +268,56 @@ public class HudScreenController extends AbstractScreenController {
         }
 		screen.findElementByName("tradeLayer").hide();
 
-		try {
-			game.trade(from, to, give, get);
-
-			// TRADEPARTNER PLAYS ON ANOTHER CLIENT
-			// ... we have to wait until he makes a decision
-			while (true) {
-				GameInfo info = game.getGameInfo();
+		final Movable offerUnit = from;
+		game.getAsyncClient().trade(game.getGameId(), game.gameInfo.activeplayer.playerId, from.info.unitid, to.info.unitid, give, get,
+				new AsyncTCPClient.Callback<Void>() {
+					@Override
+					public void onSuccess(Void result) {
+						// TRADEPARTNER PLAYS ON ANOTHER CLIENT
+						// ... we have to wait until he makes a decision,
+						// see tradeListener
+						tradeOfferUnit = offerUnit;
+						game.waitForTradePartner(tradeSubscriber);
+					}
 
-				if (info.tradepartner == null) {
-					if (info.tradestatuslast == TradeStatus.ACCEPTED) {
-						from.updateStats();
-						updateInventoryDisplay();
-						logConsole("You offer has been accepted.");
-						game.nextPlayer();
+					@Override
+					public void onFailure(Exception e) {
+						logConsole(e.getMessage());
+						game.setSelectionMode(SelectionMode.ANY);
 					}
-					return;
+				});
+	}
+
+	/**
+	 * Stop waiting for the trade partner and apply an accepted offer.
+	 * 
+	 * @param info
+	 *            The game info reporting the partner's decision
+	 */
+	private void tradeResolved(GameInfo info) {
+		final Movable from = tradeOfferUnit;
+		tradeOfferUnit = null;
+		game.getPollScheduler().unsubscribe(game.getGameInfoTopic(), tradeSubscriber);
+		game.setSelectionMode(SelectionMode.ANY);
+
+		if (info.tradestatuslast == TradeStatus.ACCEPTED) {
+			from.requestStatsUpdate(new Runnable() {
+				@Override
+				public void run() {
+					updateInventoryDisplay();
+					logConsole("You offer has been accepted.");
+					game.nextPlayer();
 				}
-				Thread.sleep(1000);
-			}
-		} catch (Exception e) {
-			logConsole(e.getMessage());
+			});
 		}
-		game.setSelectionMode(SelectionMode.ANY);
 	}
 
     /**
      * Shows the offer, that another player has made.
      */
-    public void showOffer() throws IOException, StatusError, ProtocolError {
+    public void showOffer() {
 
-        GameInfo info = game.getGameInfo();
+        GameInfo info = game.gameInfo;
 
         Inventory give = info.tradegive;
         Inventory get = info.tradeget;
@@ -284,17 +339,21 @@ public class HudScreenController extends AbstractScreenController {
      */
     public void acceptOffer() {
 
-        try {
-            GameInfo info = game.getGameInfo();
-            
-            game.tradereply(info.tradepartner.playerId, "accepted");
-            info.tradepartnerunit.updateStats();
-            
-        }
-        catch (Exception e) {
-            errorMessage(e.getMessage());
-            e.printStackTrace();
-        }
+        final GameInfo info = game.gameInfo;
+
+        game.getAsyncClient().tradereply(info.tradepartner.playerId, game.getGameId(), "accepted", new AsyncTCPClient.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                info.tradepartnerunit.requestStatsUpdate();
+                game.hurryGameInfo();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                errorMessage(e.getMessage());
+                e.printStackTrace();
+            }
+        });
 
         screen.findElementByName("trade_receiver").hide();
     }
@@ -303,13 +362,19 @@ public class HudScreenController extends AbstractScreenController {
      * Decline the actual offer.
      */
     public void declineOffer() {
-        try {
-            GameInfo info = game.getGameInfo();
-            game.tradereply(info.tradepartner.playerId, "rejected");
-        }
-        catch (Exception e) {
-        	LogHelper.getLogger().error(e.getMessage());
-        }
+        GameInfo info = game.gameInfo;
+
+        game.getAsyncClient().tradereply(info.tradepartner.playerId, game.getGameId(), "rejected", new AsyncTCPClient.Callback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                game.hurryGameInfo();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                LogHelper.getLogger().error(e.getMessage());
+            }
+        });
         screen.findElementByName("trade_receiver").hide();
     }
 
@@ -444,15 +509,6 @@ public class HudScreenController extends AbstractScreenController {
         hideUndoRedoPanel();
     }
     
-    @Override
-    public void update(float tpf) {
-        time += tpf;
-        if (time > UPDATE_INTERVAL) {
-            time = 0;
-            // TODO: do something useful here.
-        } 
-    };
-    
     /**
      * Redraws the mini map.
      */
@@ -564,6 +620,7 @@ public class HudScreenController extends AbstractScreenController {
         super.onEndScreen();
         im.removeListener(analogListener);
         im.removeListener(actionListener);
+        game.setChatListener(null);
     }
 
     @Override
@@ -577,6 +634,7 @@ public class HudScreenController extends AbstractScreenController {
 
     	this.inventoryLabel = screen.findNiftyControl("inventoryLabel", Label.class);
     	addListeners();
+    	game.setChatListener(chatListener);
     }
     
     public void focusQuickOptionsButton() {
@@ -610,13 +668,18 @@ public class HudScreenController extends AbstractScreenController {
 		
 		String currentPlayerId = game.getPlayer().playerId;
 		
-		try {
-            game.getClient().chat(currentPlayerId, null, null, consoleInput);
-        }
-        catch (Exception e) {
-            logConsole(e.getMessage());
-            LogHelper.getLogger().error("onConsoleExecuteCommandEvent(): " + e.getMessage());
-        }
+		game.getAsyncClient().chat(currentPlayerId, null, null, consoleInput, new AsyncTCPClient.Callback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				game.getMessagePump().hurry();
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				logConsole(e.getMessage());
+				LogHelper.getLogger().error("onConsoleExecuteCommandEvent(): " + e.getMessage());
+			}
+		});
 		focusQuickOptionsButton();
 	}
 
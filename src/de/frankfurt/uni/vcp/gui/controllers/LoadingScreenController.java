@@ -0,0 +1,73 @@
+package de.frankfurt.uni.vcp.gui.controllers;
+
+import de.frankfurt.uni.vcp.game.GameLoader;
+import de.frankfurt.uni.vcp.game.GameLoader.Stage;
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+import de.lessvoid.nifty.controls.Label;
+
+/**
+ * <h3>Shows the progress of the {@link GameLoader}</h3>
+ *
+ * <p>
+ * Loading starts as soon as the screen is shown. Every stage is listed with
+ * the time it took; when the game is running the hud is shown.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class LoadingScreenController extends AbstractScreenController implements GameLoader.Listener {
+
+	@Override
+	public void onStartScreen() {
+		super.onStartScreen();
+
+		for (Stage stage : Stage.values()) {
+			setText("stage_" + stage.name(), stage.label);
+			setText("stage_" + stage.name() + "_time", "");
+		}
+		setText("loadingStatus", "Loading game...");
+		hide("loadingBack");
+
+		game.startgame(this);
+	}
+
+	@Override
+	public void stageStarted(Stage stage) {
+		setText("stage_" + stage.name() + "_time", "...");
+	}
+
+	@Override
+	public void stageFinished(Stage stage, long millis) {
+		setText("stage_" + stage.name() + "_time", millis + " ms");
+	}
+
+	@Override
+	public void loaded(long millis) {
+		setText("loadingStatus", "Ready after " + millis + " ms");
+		nifty.gotoScreen("hud");
+	}
+
+	@Override
+	public void failed(Stage stage, Exception e) {
+		String message = (e.getMessage() == null) ? e.getClass().getSimpleName() : e.getMessage();
+		LogHelper.getLogger().error("Loading failed: " + message);
+
+		setText("stage_" + stage.name() + "_time", "failed");
+		setText("loadingStatus", "Loading failed: " + message);
+		show("loadingBack");
+	}
+
+	/**
+	 * Go back to the list of games after loading failed.
+	 */
+	public void back() {
+		game.getMessagePump().stop();
+		gotoScreen("server");
+	}
+
+	private void setText(String labelId, String text) {
+		Label label = screen.findNiftyControl(labelId, Label.class);
+		if (label != null)
+			label.setText(text);
+	}
+}
@@ -1,16 +1,17 @@
 package de.frankfurt.uni.vcp.gui.controllers;
 
-import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import de.frankfurt.uni.vcp.helpers.LogHelper;
+import de.frankfurt.uni.vcp.net.AsyncTCPClient;
 import de.frankfurt.uni.vcp.net.GameInfo;
-import de.frankfurt.uni.vcp.net.GameInfo.GameStatus;
+import de.frankfurt.uni.vcp.net.GameInfoDiff;
+import de.frankfurt.uni.vcp.net.GameInfoMonitor;
 import de.frankfurt.uni.vcp.net.MapPreview;
 import de.frankfurt.uni.vcp.net.MessageInfo;
-import de.frankfurt.uni.vcp.net.ProtocolError;
-import de.frankfurt.uni.vcp.net.StatusError;
+import de.frankfurt.uni.vcp.net.MessagePump;
 import de.frankfurt.uni.vcp.net.TCPClient;
 import de.frankfurt.uni.vcp.units.Player;
 import de.lessvoid.nifty.NiftyEventSubscriber;
@@ -39,11 +40,40 @@ public class PlayerScreenController extends AbstractScreenController {
 	/** If true then the {@link #playerBox} will be updated with the server information about joined players. */
 	private boolean startJoinedPlayerUpdate = false;
 	
-	/** Update intervall in seconds in which  the {@link #playerBox} shall be updated */
-	private final float UPDATE_INTERVALL_JOINED_PLAYERS = 2.0f;
-	
-	/** This timer is currently used by {@link #update(float)} to update the {@link #playerBox}. */
-	private float timer = 0.0f;
+	/** Polls the game info, while this screen is shown. Changes are handled by the {@link #gameInfoListener}. */
+	private final AsyncTCPClient.Callback<GameInfo> gameInfoSubscriber = new AsyncTCPClient.Callback<GameInfo>() {
+		@Override
+		public void onSuccess(GameInfo info) {
+		}
+
+		@Override
+		public void onFailure(Exception e) {
+			if (startJoinedPlayerUpdate)
+				updateFailed(e);
+		}
+	};
+
+	/** Shows the chat messages sent to this client, while this screen is shown. */
+	private final MessagePump.Listener chatListener = new MessagePump.Listener() {
+		@Override
+		public void messageReceived(MessageInfo message) {
+			writeChat(message.sendername + "> " + message.message);
+		}
+	};
+
+	/** Keeps the {@link #playerBox} in sync and starts the game, while this screen is shown. */
+	private final GameInfoMonitor.Listener gameInfoListener = new GameInfoMonitor.Listener() {
+		@Override
+		public void gameInfoChanged(GameInfoDiff diff) {
+			if (!startJoinedPlayerUpdate)
+				return;
+
+			if (diff.has(GameInfoDiff.Change.PLAYERS_CHANGED))
+				updatePlayers(diff.current);
+			if (diff.has(GameInfoDiff.Change.GAME_STARTED))
+				gameStarted();
+		}
+	};
 	
 	 /** 
    * Hide the error message currently displayed
@@ -67,19 +97,17 @@ public class PlayerScreenController extends AbstractScreenController {
 	
 	/**
 	 * Cancel player setup and return to the previous screen
-	 * @throws ProtocolError 
-	 * @throws StatusError 
-	 * @throws IOException 
 	 */
-	public void cancel() throws IOException, StatusError, ProtocolError{
+	public void cancel() {
 	    
 	    if (game.getClient().getGameOwnerKey() != null) {
 	        removeGame();
 	    }
 	    else {
 	        String playerId = game.getPlayer().playerId;
-	        game.getClient().delplayer(game.getGameId(), playerId);
+	        game.getAsyncClient().delplayer(game.getGameId(), playerId, null);
 	    }
+	    game.getMessagePump().stop();
 	    
 		nifty.gotoScreen("map");
 	}
@@ -95,14 +123,18 @@ public class PlayerScreenController extends AbstractScreenController {
 		
 		String currentPlayerId = game.getPlayer().playerId;
 		
-		try {
-            game.getClient().chat(currentPlayerId, null, null, consoleInput);
-        }
-        catch (Exception e) {
-        	writeChat(e.getMessage());
-            LogHelper.getLogger().error("onConsoleExecuteCommandEvent(): " + e.getMessage());
-            e.printStackTrace();
-        }
+		game.getAsyncClient().chat(currentPlayerId, null, null, consoleInput, new AsyncTCPClient.Callback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				game.getMessagePump().hurry();
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				writeChat(e.getMessage());
+				LogHelper.getLogger().error("onConsoleExecuteCommandEvent(): " + e.getMessage());
+			}
+		});
 	}
 	
     /**
@@ -115,26 +147,44 @@ public class PlayerScreenController extends AbstractScreenController {
     
 	
 	/**
-	 * Start the game
-	 * @throws Exception
+	 * Start the game.
+	 * 
+	 * <p> The player count check and the start request are executed on the I/O thread,
+	 * the game itself is set up by the {@link #gameInfoListener} as soon as the server reports it as started. </p>
 	 */
-	public void start() throws Exception {
-	    TCPClient client = game.getClient();
-	    
-	    GameInfo info = game.getGameInfo();
-	    MapPreview preview = client.mappreview(info.mapid);
-	    
+	public void start() {
+	    final TCPClient client = game.getClient();
+	    final String gameId = game.getGameId();
+	    final String dummyPlayerId = game.getDummyPlayerId();
 	    
-	    if (info.playernames.size() != preview.numberOfPlayers) {
-	        errorMessage(preview.numberOfPlayers + " players are required to start the game!\nPlease wait until all players have joined.");
-	        return;
-	    }
-	    
-        LogHelper.getLogger().info("Starting game");
-        client.startgame(game.getGameId());
+	    game.getAsyncClient().submit(new Callable<String>() {
+	        @Override
+	        public String call() throws Exception {
+	            GameInfo info = client.gameinfo(gameId, dummyPlayerId);
+	            MapPreview preview = client.mappreview(info.mapid);
+	            
+	            if (info.playernames.size() != preview.numberOfPlayers)
+	                return preview.numberOfPlayers + " players are required to start the game!\nPlease wait until all players have joined.";
+	            
+	            LogHelper.getLogger().info("Starting game");
+	            client.startgame(gameId);
+	            return null;
+	        }
+	    }, new AsyncTCPClient.Callback<String>() {
+	        @Override
+	        public void onSuccess(String error) {
+	            if (error != null)
+	                errorMessage(error);
+	        }
+	        
+	        @Override
+	        public void onFailure(Exception e) {
+	            errorMessage(e.getMessage());
+	        }
+	    });
 	}
 
-	public void removePlayer () throws IOException, StatusError, ProtocolError {
+	public void removePlayer () {
 	    
 	    List<String> selection = playerBox.getSelection();
 	    
@@ -150,7 +200,16 @@ public class PlayerScreenController extends AbstractScreenController {
 	        return;
 	    
 	    String playerId = game.getPlayer().playerId;
-	    game.getClient().delplayer(game.getGameId(), playerId, playerName);
+	    game.getAsyncClient().delplayer(game.getGameId(), playerId, playerName, new AsyncTCPClient.Callback<Void>() {
+	        @Override
+	        public void onSuccess(Void result) {
+	        }
+	        
+	        @Override
+	        public void onFailure(Exception e) {
+	            errorMessage(e.getMessage());
+	        }
+	    });
 	}
 	
 	
@@ -158,15 +217,20 @@ public class PlayerScreenController extends AbstractScreenController {
 	 * Remove the created game and go back to the maps overview.
 	 */
 	public void removeGame() {
-		try {
-			game.getClient().removegame(game.getGameId());
-			// Set it back to null.
-			game.setGameId(null);
-		} catch (Exception e) {
-			errorMessage(e.getMessage());
-			LogHelper.getLogger().error(e.getMessage());
-			e.printStackTrace();
-		}
+		String gameId = game.getGameId();
+		// Set it back to null.
+		game.setGameId(null);
+		
+		game.getAsyncClient().removegame(gameId, new AsyncTCPClient.Callback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				errorMessage(e.getMessage());
+			}
+		});
 	}
 
 	 /** 
@@ -180,6 +244,8 @@ public class PlayerScreenController extends AbstractScreenController {
 		//nameField.setFocus();
 	    playerBox = screen.findNiftyControl("players_listBox", ListBox.class);
 	    this.startJoinedPlayerUpdate = true;
+	    game.getGameInfoMonitor().addListener(gameInfoListener);
+	    game.getPollScheduler().subscribe(game.getGameInfoTopic(), gameInfoSubscriber);
 	    
 	    // Toggle start game visibility.
 	    if (game.getClient().getGameOwnerKey() != null) {
@@ -188,122 +254,100 @@ public class PlayerScreenController extends AbstractScreenController {
 	    	
 	    	screen.findElementByName("creatorPanel").setVisible(true);
 	    }
-	    try {
-			game.setMapId(game.getGameInfo().mapid);
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (StatusError e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (ProtocolError e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+	    game.requestGameInfo(new AsyncTCPClient.Callback<GameInfo>() {
+			@Override
+			public void onSuccess(GameInfo info) {
+				game.setMapId(info.mapid);
+
+				// the chat needs the player names to look up the senders
+				if (startJoinedPlayerUpdate) {
+					game.setChatListener(chatListener);
+					game.getMessagePump().start();
+				}
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				LogHelper.getLogger().error("onStartScreen(): " + e.getMessage());
+			}
+		});
 	}
 	
 	@Override
 	public void onEndScreen() {
 		super.onEndScreen();
 		startJoinedPlayerUpdate = false;
+		game.getGameInfoMonitor().removeListener(gameInfoListener);
+		game.getPollScheduler().unsubscribe(game.getGameInfoTopic(), gameInfoSubscriber);
+		game.setChatListener(null);
 	}
-
+	
 	/**
-	 * Check each {@link #UPDATE_INTERVALL_JOINED_PLAYERS} seconds if any user
-	 * has joined. If two user join, then the game will be started
-	 * automatically.
+	 * Synchronize the {@link #playerBox} with the players of the game.
+	 * 
+	 * @param gameInfo The latest game info
 	 */
-	@Override
-	public void update(float tpf) {
-		super.update(tpf);
-		timer += tpf;
-
-		try {
-			if (startJoinedPlayerUpdate	&& (timer >= UPDATE_INTERVALL_JOINED_PLAYERS)) {
-				timer = 0.0f;
-
-				GameInfo gameInfo = game.getGameInfo();
-				game.gameInfo = gameInfo;
-
-				List<String> boxNames = playerBox.getItems();
-				
-				
-				List<String> list = new LinkedList<String> ();
-				
-				// ADD NEW PLAYERS
-				for (String gn : gameInfo.playernames) {
-				    boolean found = false;
-				    for (String bn : boxNames)
-				        if (gn.equals(bn))
-				            found = true;
-				    if (!found)
-				        list.add(gn);
-				}
-				for (String s : list)
-				    playerBox.addItem(s);
-				
-				list.clear();
-				
-				// REMOVE PLAYERS
-				for (String bn : boxNames) {
-                    boolean found = false;
-                    for (String gn : gameInfo.playernames)
-                        if (gn.equals(bn))
-                            found = true;
-                    if (!found)
-                        list.add(bn);        
-                }
-				for (String s : list)
-				    playerBox.removeItem(s);
-				
-				
-				//playerBox.clear();
-				//playerBox.addAllItems(gameInfo.playernames);
-				
-				
-				
-				
-				// CHAT MESSAGES
-				List<MessageInfo> messages = game.getClient().getdata();
-				for (MessageInfo i : messages) {
-					// TODO: ATTENTION WORKAROUND TO FIND THE PLAYERS NAME FOR
-					// THE CHAT. The problem now is that we only have the player id
-					// and we try to match is with the player name to get the real name
-					// for the chat display.
-					for (String playerName : gameInfo.playernames) {
-						if (i.senderplayerid.startsWith(playerName)) {
-							writeChat(playerName + "> " + i.message);
-						}
-					}
-				}
-				// CHAT END
-
-				if (gameInfo.gamestatus == GameStatus.STARTED) {
-					startJoinedPlayerUpdate = false;
+	private void updatePlayers(GameInfo gameInfo) {
+		List<String> boxNames = playerBox.getItems();
+		
+		
+		List<String> list = new LinkedList<String> ();
+		
+		// ADD NEW PLAYERS
+		for (String gn : gameInfo.playernames) {
+		    boolean found = false;
+		    for (String bn : boxNames)
+		        if (gn.equals(bn))
+		            found = true;
+		    if (!found)
+		        list.add(gn);
+		}
+		for (String s : list)
+		    playerBox.addItem(s);
+		
+		list.clear();
+		
+		// REMOVE PLAYERS
+		for (String bn : boxNames) {
+            boolean found = false;
+            for (String gn : gameInfo.playernames)
+                if (gn.equals(bn))
+                    found = true;
+            if (!found)
+                list.add(bn);        
+        }
+		for (String s : list)
+		    playerBox.removeItem(s);
 
-					game.startgame();
-					nifty.gotoScreen("hud");
-				}
+		LogHelper.getLogger().info("Updated player list.");
+	}
 
-				LogHelper.getLogger().info("Updated player list.");
-			}
-		} catch (Exception e) {
-			String message = "";
-			if (e.getMessage().isEmpty() || (e.getMessage() == null)) {
-				message = "no exception messsage";
-			}
-			else {
-				message = e.getMessage();
-			}
-			errorMessage(message);
-			LogHelper.getLogger().error(message);
-//			if (e.getMessage() != null)
-//			    if (e.getMessage().endsWith ("_is_not_a_vaild_player")
-//			            || e.getMessage().endsWith ("unkown_gameid")) {
-			        nifty.gotoScreen("server");
-//			    }
-//			e.printStackTrace();
+	/**
+	 * Switch to the loading screen, which sets up the game, as soon as the
+	 * server reports the game as started.
+	 */
+	private void gameStarted() {
+		startJoinedPlayerUpdate = false;
+		nifty.gotoScreen("loading");
+	}
+	
+	/**
+	 * Show the error of a failed update and go back to the server screen.
+	 * 
+	 * @param e The exception thrown by the update
+	 */
+	private void updateFailed(Exception e) {
+		String message = "";
+		if ((e.getMessage() == null) || e.getMessage().isEmpty()) {
+			message = "no exception messsage";
+		}
+		else {
+			message = e.getMessage();
 		}
+		errorMessage(message);
+		LogHelper.getLogger().error(message);
+		game.getMessagePump().stop();
+		nifty.gotoScreen("server");
 	}
 	
 }
@@ -3,19 +3,27 @@ package de.frankfurt.uni.vcp.gui.controllers;
 import java.util.List;
 
 import de.frankfurt.uni.vcp.helpers.LogHelper;
-import de.frankfurt.uni.vcp.net.TCPClient;
+import de.frankfurt.uni.vcp.net.AsyncTCPClient;
 import de.lessvoid.nifty.controls.ListBox;
 
 public class ServerScreenController extends AbstractScreenController {
 
-	/** Used to determine in {@link #update(float)} if it shall be checked for map with a server request. */
+	/** Set while this screen is shown and the {@link #gameList} shall be kept up to date. */
 	private boolean checkServerMapUpdates = false;
 	
-	/** Update intervals for {@link #update(float)} */
-	private final float UPDATE_INTERVALL = 2.0f;
-	
-	/** Time counter for {@link #update(float)}. */
-	private float timer = 0.0f;
+	/** Receives the games running on the server, while this screen is shown. */
+	private final AsyncTCPClient.Callback<List<String>> gameListSubscriber = new AsyncTCPClient.Callback<List<String>>() {
+		@Override
+		public void onSuccess(List<String> serverGames) {
+			if (checkServerMapUpdates)
+				updateGameList(serverGames);
+		}
+
+		@Override
+		public void onFailure(Exception e) {
+			LogHelper.getLogger().error(e.getMessage());
+		}
+	};
 	
 	/** List of available games on the server */
 	private ListBox<String> gameList;
@@ -44,20 +52,24 @@ public class ServerScreenController extends AbstractScreenController {
 	}
 
 	/**
-	 * Adds all games to the drop down list on the "Server" screen if they are not already listen in there.
+	 * Request the game list at once, instead of waiting for the next poll.
 	 */
 	public void refresh() {
-		try {
-			TCPClient client = game.getClient();
-			removeDeletedGames(client.gamelist());
+		game.getPollScheduler().pollNow(game.getGameListTopic());
+	}
 
-			for (String s : client.gamelist()) {
-				if (!isInGameList(s)) {
-					gameList.addItem(s);
-				}
+	/**
+	 * Adds all games to the drop down list on the "Server" screen if they are not already listen in there.
+	 * 
+	 * @param serverGames The games running on the server
+	 */
+	private void updateGameList(List<String> serverGames) {
+		removeDeletedGames(serverGames);
+
+		for (String s : serverGames) {
+			if (!isInGameList(s)) {
+				gameList.addItem(s);
 			}
-		} catch (Exception e) {
-			LogHelper.getLogger().error(e.getMessage());
 		}
 	}
 	
@@ -123,27 +135,14 @@ public class ServerScreenController extends AbstractScreenController {
 		
 		gameList = screen.findNiftyControl("games_listBox",	ListBox.class);
 		checkServerMapUpdates = true;
+		game.getPollScheduler().subscribe(game.getGameListTopic(), gameListSubscriber);
 	}
 	
 	@Override
 	public void onEndScreen() {
 		super.onEndScreen();
 		checkServerMapUpdates = false;
-	}
-	
-	/**
-	 * Updates after each {@link #UPDATE_INTERVALL} time span the
-	 * {@link #gameList} by calling the {@link #refresh()} method.
-	 */
-	@Override
-	public void update(float tpf) {
-		super.update(tpf);
-		
-		timer += tpf;
-		if (checkServerMapUpdates && (timer >= UPDATE_INTERVALL)) {
-			timer = 0.0f;
-			refresh();
-		}
+		game.getPollScheduler().unsubscribe(game.getGameListTopic(), gameListSubscriber);
 	}
 	
 }
@@ -0,0 +1,431 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.jme3.app.Application;
+
+import de.frankfurt.uni.vcp.config.MapGrid;
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+import de.frankfurt.uni.vcp.nodes.Field;
+import de.frankfurt.uni.vcp.units.Inventory;
+
+/**
+ * <h3>Non-blocking facade for a {@link TCPClient}</h3>
+ *
+ * <p>
+ * Every request is executed on a dedicated I/O thread, so the render thread
+ * never waits for a server round trip. Requests are executed one after
+ * another in the order they were submitted, which keeps the server side state
+ * machine (move, attack, endturn, ...) consistent.
+ * </p>
+ *
+ * <p>
+ * Results are delivered to a {@link Callback}. If an {@link Application} was
+ * given, callbacks are handed back to the render thread via
+ * {@link Application#enqueue(Callable)}, so they may safely touch the scene
+ * graph and the nifty gui.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class AsyncTCPClient {
+
+	/**
+	 * Receives the outcome of an asynchronous request.
+	 *
+	 * @param <T>
+	 *            Type of the request result
+	 */
+	public interface Callback<T> {
+
+		/**
+		 * Called with the result of a successful request.
+		 *
+		 * @param result
+		 *            The parsed server reply
+		 */
+		public void onSuccess(T result);
+
+		/**
+		 * Called if the request failed, e.g. with a {@link StatusError}.
+		 *
+		 * @param e
+		 *            The exception thrown by the request
+		 */
+		public void onFailure(Exception e);
+	}
+
+	/** The blocking client doing the actual work. */
+	private final TCPClient client;
+
+	/** Application used to get back onto the render thread. */
+	private final Application app;
+
+	/** Single thread executing all requests in submission order. */
+	private final ExecutorService executor;
+
+	/**
+	 * Construct a new asynchronous facade.
+	 *
+	 * @param client
+	 *            The client used to talk to the server
+	 * @param app
+	 *            The application whose render thread receives the callbacks,
+	 *            {@code null} to call them directly on the I/O thread
+	 */
+	public AsyncTCPClient(TCPClient client, Application app) {
+		this.client = client;
+		this.app = app;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "tcp-io");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Get the blocking client wrapped by this facade.
+	 *
+	 * @return The {@link TCPClient}
+	 */
+	public TCPClient getClient() {
+		return client;
+	}
+
+	/**
+	 * Execute an arbitrary request on the I/O thread.
+	 *
+	 * @param request
+	 *            The request to execute
+	 * @param callback
+	 *            Receives the result, may be {@code null}
+	 * @return Future of the request result
+	 */
+	public <T> Future<T> submit(final Callable<T> request, final Callback<T> callback) {
+		return executor.submit(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				T result;
+				try {
+					result = request.call();
+				} catch (Exception e) {
+					deliverFailure(callback, e);
+					throw e;
+				}
+				deliverSuccess(callback, result);
+				return result;
+			}
+		});
+	}
+
+	private <T> void deliverSuccess(final Callback<T> callback, final T result) {
+		if (callback == null)
+			return;
+
+		if (app == null) {
+			resolve(result);
+			callback.onSuccess(result);
+			return;
+		}
+		app.enqueue(new Callable<Void>() {
+			@Override
+			public Void call() {
+				resolve(result);
+				callback.onSuccess(result);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Look up the players and units named in a result, on the thread
+	 * receiving it, see {@link Info#resolve()}.
+	 */
+	private static void resolve(Object result) {
+		if (result instanceof Info) {
+			((Info) result).resolve();
+		} else if (result instanceof Iterable) {
+			for (Object o : (Iterable<?>) result)
+				if (o instanceof Info)
+					((Info) o).resolve();
+		}
+	}
+
+	private <T> void deliverFailure(final Callback<T> callback, final Exception e) {
+		if (callback == null) {
+			LogHelper.getLogger().error("AsyncTCPClient: " + e.getMessage());
+			return;
+		}
+
+		if (app == null) {
+			callback.onFailure(e);
+			return;
+		}
+		app.enqueue(new Callable<Void>() {
+			@Override
+			public Void call() {
+				callback.onFailure(e);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Stop the I/O thread. Requests already queued will still be executed.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	// REQUESTS
+
+	/**
+	 * @see TCPClient#getdata()
+	 */
+	public Future<List<MessageInfo>> getdata(Callback<List<MessageInfo>> callback) {
+		return submit(new Callable<List<MessageInfo>>() {
+			@Override
+			public List<MessageInfo> call() throws Exception {
+				return client.getdata();
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#gamelist()
+	 */
+	public Future<List<String>> gamelist(Callback<List<String>> callback) {
+		return submit(new Callable<List<String>>() {
+			@Override
+			public List<String> call() throws Exception {
+				return client.gamelist();
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#maplist()
+	 */
+	public Future<List<String>> maplist(Callback<List<String>> callback) {
+		return submit(new Callable<List<String>>() {
+			@Override
+			public List<String> call() throws Exception {
+				return client.maplist();
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#mappreview(String)
+	 */
+	public Future<MapPreview> mappreview(final String mapId, Callback<MapPreview> callback) {
+		return submit(new Callable<MapPreview>() {
+			@Override
+			public MapPreview call() throws Exception {
+				return client.mappreview(mapId);
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#unittype(String)
+	 */
+	public Future<List<TypeInfo>> unittype(final String mapId, Callback<List<TypeInfo>> callback) {
+		return submit(new Callable<List<TypeInfo>>() {
+			@Override
+			public List<TypeInfo> call() throws Exception {
+				return client.unittype(mapId);
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#startgame(String)
+	 */
+	public Future<Void> startgame(final String gameId, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.startgame(gameId);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#delplayer(String, String, String)
+	 */
+	public Future<Void> delplayer(final String gameId, final String playerId, final String playerDelName, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.delplayer(gameId, playerId, playerDelName);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#delplayer(String, String)
+	 */
+	public Future<Void> delplayer(final String gameId, final String playerId, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.delplayer(gameId, playerId);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#removegame(String)
+	 */
+	public Future<Void> removegame(final String gameId, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.removegame(gameId);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#gameinfo(String, String)
+	 */
+	public Future<GameInfo> gameinfo(final String gameId, final String playerId, Callback<GameInfo> callback) {
+		return submit(new Callable<GameInfo>() {
+			@Override
+			public GameInfo call() throws Exception {
+				return client.gameinfo(gameId, playerId);
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#unitmap(String, String)
+	 */
+	public Future<MapGrid> unitmap(final String gameId, final String playerId, Callback<MapGrid> callback) {
+		return submit(new Callable<MapGrid>() {
+			@Override
+			public MapGrid call() throws Exception {
+				return client.unitmap(gameId, playerId);
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#unitinfo(String, String, int)
+	 */
+	public Future<UnitInfo> unitinfo(final String gameId, final String playerId, final int unitId, Callback<UnitInfo> callback) {
+		return submit(new Callable<UnitInfo>() {
+			@Override
+			public UnitInfo call() throws Exception {
+				return client.unitinfo(gameId, playerId, unitId);
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#move(String, String, int, List)
+	 */
+	public Future<Void> move(final String gameId, final String playerId, final int unitId, final List<Field> fields, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.move(gameId, playerId, unitId, fields);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#trade(String, String, int, int, Inventory, Inventory)
+	 */
+	public Future<Void> trade(final String gameId, final String playerId, final int tradeOfferUnit, final int tradePartnerUnit,
+			final Inventory giveGoods, final Inventory getGoods, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.trade(gameId, playerId, tradeOfferUnit, tradePartnerUnit, giveGoods, getGoods);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#attack(String, String, int, int)
+	 */
+	public Future<Integer> attack(final String gameId, final String playerId, final int attackerId, final int defenderId,
+			Callback<Integer> callback) {
+		return submit(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				return client.attack(gameId, playerId, attackerId, defenderId);
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#endturn(String, int, String)
+	 */
+	public Future<Void> endturn(final String playerId, final int unitId, final String gameId, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.endturn(playerId, unitId, gameId);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#tradereply(String, String, String)
+	 */
+	public Future<Void> tradereply(final String playerId, final String gameId, final String response, Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.tradereply(playerId, gameId, response);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * @see TCPClient#chat(String, String, String, String)
+	 */
+	public Future<Void> chat(final String playerId, final String targetPlayerId, final String targetGameId, final String messageString,
+			Callback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				client.chat(playerId, targetPlayerId, targetGameId, messageString);
+				return null;
+			}
+		}, callback);
+	}
+}
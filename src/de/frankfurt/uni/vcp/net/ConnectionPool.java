@@ -0,0 +1,252 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * <h3>Bounded pool of kept alive server connections</h3>
+ *
+ * <p>
+ * Requests and replies are framed by {@link DataOutputStream#writeUTF(String)}
+ * and {@link DataInputStream#readUTF()}, so a socket can carry any number of
+ * request / reply pairs, as long as the server does not close it.
+ * </p>
+ *
+ * <p>
+ * At most {@code maxConnections} sockets are open at the same time. Callers
+ * exceeding this limit wait, until a connection is handed back by
+ * {@link #release(Connection)} or {@link #discard(Connection)}.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class ConnectionPool {
+
+	/**
+	 * A single socket together with its streams.
+	 */
+	static class Connection {
+
+		final Socket socket;
+		final DataInputStream iStream;
+		final DataOutputStream oStream;
+
+		/** Number of replies received over this connection. */
+		int uses = 0;
+
+		/** Time taken to open the socket */
+		final long connectNanos;
+
+		Connection(Socket socket, long connectNanos) throws IOException {
+			this.socket = socket;
+			this.connectNanos = connectNanos;
+			this.iStream = new DataInputStream(socket.getInputStream());
+			this.oStream = new DataOutputStream(socket.getOutputStream());
+		}
+
+		/**
+		 * Send a request and wait for its reply.
+		 *
+		 * @param request
+		 *            The request to send
+		 * @return The unchecked reply of the server
+		 */
+		String exchange(RequestEncoder request) throws IOException {
+			send(request);
+			return receive();
+		}
+
+		/**
+		 * Send a request, without waiting for its reply.
+		 *
+		 * @param request
+		 *            The request to send
+		 */
+		void send(RequestEncoder request) throws IOException {
+			request.writeTo(oStream);
+			oStream.flush();
+		}
+
+		/**
+		 * Wait for the reply to the request sent last.
+		 *
+		 * @return The unchecked reply of the server
+		 */
+		String receive() throws IOException {
+			String reply = iStream.readUTF();
+			++uses;
+			return reply;
+		}
+
+		void close() {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// nothing left to clean up
+			}
+		}
+	}
+
+	/** The server address to connect to */
+	private final String serverAddress;
+
+	/** The server port to connect to */
+	private final int port;
+
+	/** Maximum number of open connections */
+	private final int maxConnections;
+
+	/** One permit per connection, which may still be opened. */
+	private final Semaphore permits;
+
+	/** Idle connections, the most recently used one first. */
+	private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<Connection>();
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Construct a new pool.
+	 *
+	 * @param serverAddress
+	 *            The server address to use
+	 * @param port
+	 *            The Port to use in network communication
+	 * @param maxConnections
+	 *            The maximum number of simultaneously open connections
+	 */
+	public ConnectionPool(String serverAddress, int port, int maxConnections) {
+		if (maxConnections < 1)
+			throw new IllegalArgumentException("maxConnections must be positive: " + maxConnections);
+
+		this.serverAddress = serverAddress;
+		this.port = port;
+		this.maxConnections = maxConnections;
+		this.permits = new Semaphore(maxConnections, true);
+	}
+
+	/**
+	 * Get the maximum number of simultaneously open connections.
+	 *
+	 * @return The pool size
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Take an idle connection, or open a new one if there is none.
+	 *
+	 * @return A connection exclusively owned by the caller
+	 */
+	Connection acquire() throws IOException {
+		acquirePermit();
+
+		Connection c = idle.pollFirst();
+		if (c != null)
+			return c;
+
+		return openWithPermit();
+	}
+
+	/**
+	 * Open a new connection, ignoring all idle ones. Used to retry a request,
+	 * after a kept alive connection was found closed by the server.
+	 *
+	 * @return A connection exclusively owned by the caller
+	 */
+	Connection acquireFresh() throws IOException {
+		acquirePermit();
+		return openWithPermit();
+	}
+
+	/**
+	 * Hand a healthy connection back to the pool.
+	 *
+	 * @param c
+	 *            The connection to keep alive
+	 */
+	void release(Connection c) {
+		if (closed)
+			c.close();
+		else
+			idle.offerFirst(c);
+
+		permits.release();
+
+		// close() may have drained the queue in the meantime
+		if (closed)
+			drain();
+	}
+
+	/**
+	 * Close a broken connection and free its slot.
+	 *
+	 * @param c
+	 *            The connection to throw away
+	 */
+	void discard(Connection c) {
+		c.close();
+		permits.release();
+	}
+
+	/**
+	 * Close all idle connections. Connections currently in use are closed as
+	 * soon as they are handed back.
+	 */
+	public void close() {
+		closed = true;
+		drain();
+	}
+
+	private void drain() {
+		Connection c;
+		while ((c = idle.pollFirst()) != null)
+			c.close();
+	}
+
+	private void acquirePermit() throws IOException {
+		if (closed)
+			throw new IOException("connection pool closed");
+
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a connection");
+		}
+	}
+
+	private Connection openWithPermit() throws IOException {
+		try {
+			long start = System.nanoTime();
+			Socket socket = new Socket(serverAddress, port);
+			long connectNanos = System.nanoTime() - start;
+
+			socket.setTcpNoDelay(true);
+			socket.setKeepAlive(true);
+			return new Connection(socket, connectNanos);
+		} catch (IOException e) {
+			permits.release();
+			throw e;
+		}
+	}
+}
@@ -14,7 +14,6 @@
 
 package de.frankfurt.uni.vcp.net;
 
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -59,27 +58,7 @@ public class GameInfo extends Info{
         STARTED
     }
 
-    
-    private static final HashMap<String,TradeStatus> TRADE_STATUS_MAP;
-    private static final HashMap<String,GameStatus> GAME_STATUS_MAP;
-
-    static {
-        // TRADE STATUS
-        TRADE_STATUS_MAP = new HashMap<String,TradeStatus>();
-
-        TRADE_STATUS_MAP.put("none", TradeStatus.NONE);
-        TRADE_STATUS_MAP.put("accepted", TradeStatus.ACCEPTED);
-        TRADE_STATUS_MAP.put("rejected", TradeStatus.REJECTED);
-        TRADE_STATUS_MAP.put ("DND", TradeStatus.DND);
-
 
-        // GAME STATUS
-        GAME_STATUS_MAP = new HashMap<String,GameStatus>();
-
-        GAME_STATUS_MAP.put("inited", GameStatus.INITED);
-        GAME_STATUS_MAP.put("started", GameStatus.STARTED);
-    }
-    
     // FIELDS
     /**
      * The id of this game.
@@ -110,12 +89,18 @@ public class GameInfo extends Info{
      * this filed will hold {@code null} as its value.
      */
     public Player winner;
+
+    /** The name of the {@link #winner}, as reported by the server */
+    public String winnername;
 	
     /**
      * This field will contain a reference to the {@link Player}, that is the active
      * player of the game.
      */    
     public Player activeplayer;
+
+    /** The name of the {@link #activeplayer}, as reported by the server */
+    public String activeplayername;
     
     
     /**
@@ -132,6 +117,9 @@ public class GameInfo extends Info{
      * in a trade
      */    
     public Player tradepartner;
+
+    /** The name of the {@link #tradepartner}, as reported by the server */
+    public String tradepartnername;
     
 
     /**
@@ -139,6 +127,9 @@ public class GameInfo extends Info{
      * in a trade
      */    
     public Movable tradepartnerunit;
+
+    /** The id of the {@link #tradepartnerunit}, -1 if there is none */
+    public int tradepartnerunitid = -1;
 	
     
     /**
@@ -165,14 +156,14 @@ public class GameInfo extends Info{
     /**
      * The names of all Players participating in the game.
      */  
-    public List<String> playernames;
+    public List<String> playernames = new LinkedList<String>();
     
     
     /**
      * The values of the key "turnstaken" as they are reported from the
      * server.
      */  
-    public List<Boolean> turnstaken;
+    public List<Boolean> turnstaken = new LinkedList<Boolean>();
 	
     
 	/**
@@ -182,63 +173,96 @@ public class GameInfo extends Info{
 	 * pairs.
 	 */
     public GameInfo (String info) {
-        super(info);
-        Game game = Game.getInstance();
-          
-        gameid = tags.get("gameid");
-        name = tags.get("name");
-        
-        mapid = tags.get("mapid");
-        
-        gamestatus = GAME_STATUS_MAP.get(tags.get("gamestatus"));
-
-        turn = Integer.parseInt(tags.get("turn"));
+        this(new ReplyTokenizer(info));
+    }
 
-        winner = game.getPlayer(tags.get("winner"));
-        activeplayer = game.getPlayer(tags.get("activeplayer"));
+    /**
+     * Construct a new GameInfo instance from the key value pairs up to the end
+     * of the current group.
+     * @param t The tokenizer, positioned in front of the first pair
+     */
+    GameInfo (ReplyTokenizer t) {
+        parse(t);
+    }
 
+    @Override
+    void parseValue (ReplyTokenizer t) {
+        if (t.is("gameid"))
+            gameid = nextString(t);
+        else if (t.is("name"))
+            name = nextString(t);
+        else if (t.is("mapid"))
+            mapid = nextString(t);
+        else if (t.is("gamestatus")) {
+            t.next();
+            gamestatus = t.is("started") ? GameStatus.STARTED : t.is("inited") ? GameStatus.INITED : null;
+        }
+        else if (t.is("turn"))
+            turn = nextInt(t);
+        else if (t.is("winner"))
+            winnername = nextName(t);
+        else if (t.is("activeplayer"))
+            activeplayername = nextName(t);
 
         // TODO: use an enum instead !!
-        activeunitslastaction = tags.get("activeunitslastaction");
-
+        else if (t.is("activeunitslastaction"))
+            activeunitslastaction = nextString(t);
 
         // TRADE
-        tradepartner = game.getPlayer(tags.get("tradepartner"));
-        
-        String value;
-        value = tags.get("tradepartnerunit");
-        if (value.equals (""))
-            tradepartnerunit = null;
-        else  {
-        	// TODO: Commented line below, unused?
-            //int id = Integer.parseInt(value);
-            tradepartnerunit =  game.getUnit(Integer.parseInt(value));
+        else if (t.is("tradepartner"))
+            tradepartnername = nextName(t);
+        else if (t.is("tradepartnerunit")) {
+            t.next();
+            tradepartnerunitid = t.isEmpty() ? -1 : t.intValue();
+        }
+        else if (t.is("tradegive")) {
+            if (t.next() == ReplyTokenizer.OPEN)
+                tradegive = new Inventory(t);
+        }
+        else if (t.is("tradeget")) {
+            if (t.next() == ReplyTokenizer.OPEN)
+                tradeget = new Inventory(t);
+        }
+        else if (t.is("tradestatuslast")) {
+            t.next();
+            if (t.is("none"))
+                tradestatuslast = TradeStatus.NONE;
+            else if (t.is("accepted"))
+                tradestatuslast = TradeStatus.ACCEPTED;
+            else if (t.is("rejected"))
+                tradestatuslast = TradeStatus.REJECTED;
+            else if (t.is("DND"))
+                tradestatuslast = TradeStatus.DND;
         }
-            
-        // TODO: sollte Inventory sein !!
-        value = tags.get("tradegive");
-        if (! value.equals(""))
-            tradegive = new Inventory(value);
-        
-        value = tags.get("tradeget");
-        if (! value.equals(""))
-            tradeget = new Inventory(value);
-        
-        tradestatuslast = TRADE_STATUS_MAP.get(tags.get("tradestatuslast"));
-	
 
         // PLAYERS
-        playernames = new LinkedList<String>();
-        String string = TCPClient.splitBrace(tags.get("playernames")).get(0);
-        for (String s : TCPClient.splitBrace(string))
-            playernames.add(s);
-
+        else if (t.is("playernames")) {
+            if (t.next() == ReplyTokenizer.OPEN)
+                while (t.nextGroup())
+                    if (t.next() != ReplyTokenizer.CLOSE) {
+                        playernames.add(t.text());
+                        t.skipGroup();
+                    }
+        }
 
         // TURNSTAKEN
-        string = TCPClient.splitBrace(tags.get("turnsTaken")).get(0);
-        
-        turnstaken = new LinkedList<Boolean>();
-        for (String s : TCPClient.splitBrace(string))
-            turnstaken.add(s.equals("true"));
+        else if (t.is("turnsTaken")) {
+            if (t.next() == ReplyTokenizer.OPEN)
+                while (t.nextGroup())
+                    if (t.next() != ReplyTokenizer.CLOSE) {
+                        turnstaken.add(t.is("true"));
+                        t.skipGroup();
+                    }
+        }
+        else
+            t.skipValue();
+    }
+
+    @Override
+    public void resolve () {
+        winner = player(winnername);
+        activeplayer = player(activeplayername);
+        tradepartner = player(tradepartnername);
+        tradepartnerunit = (tradepartnerunitid < 0) ? null : Game.getInstance().getUnit(tradepartnerunitid);
     }
 }
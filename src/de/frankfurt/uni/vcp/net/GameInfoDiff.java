@@ -0,0 +1,171 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import de.frankfurt.uni.vcp.net.GameInfo.GameStatus;
+import de.frankfurt.uni.vcp.net.GameInfo.TradeStatus;
+
+/**
+ * <h3>The differences between two consecutive {@link GameInfo} snapshots</h3>
+ *
+ * <p>
+ * A diff is computed by {@link #compute(GameInfo, GameInfo)} and handed to
+ * the listeners of the {@link GameInfoMonitor}. Listeners ask for the
+ * changes they are interested in by {@link #has(Change)} and read the new
+ * values from {@link #current}.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class GameInfoDiff {
+
+	/**
+	 * The kinds of changes reported.
+	 */
+	public enum Change {
+		/** A player joined or left the game. */
+		PLAYERS_CHANGED,
+		/** The game status switched to {@link GameStatus#STARTED}. */
+		GAME_STARTED,
+		/** A new round has begun. */
+		TURN_ADVANCED,
+		/** Another player is active now. */
+		ACTIVE_PLAYER_CHANGED,
+		/** A trade partner has been set, i.e. an offer is waiting for a reply. */
+		TRADE_OFFERED,
+		/** A pending offer has been accepted or rejected. */
+		TRADE_RESOLVED,
+		/** The server reported a winner. */
+		GAME_ENDED
+	}
+
+	/** The snapshot before, {@code null} for the first one */
+	public final GameInfo previous;
+
+	/** The latest snapshot */
+	public final GameInfo current;
+
+	private final Set<Change> changes;
+
+	/**
+	 * Construct a diff from already known changes.
+	 *
+	 * @param previous
+	 *            The snapshot before, {@code null} if there is none
+	 * @param current
+	 *            The latest snapshot
+	 * @param changes
+	 *            The changes between both snapshots
+	 */
+	public GameInfoDiff(GameInfo previous, GameInfo current, Set<Change> changes) {
+		this.previous = previous;
+		this.current = current;
+		this.changes = Collections.unmodifiableSet(changes);
+	}
+
+	/**
+	 * Compare two snapshots. Without a previous snapshot, the latest one is
+	 * compared to a game nobody has joined yet.
+	 *
+	 * @param previous
+	 *            The snapshot before, {@code null} if there is none
+	 * @param current
+	 *            The latest snapshot
+	 * @return The differences, which may be empty
+	 */
+	public static GameInfoDiff compute(GameInfo previous, GameInfo current) {
+		EnumSet<Change> changes = EnumSet.noneOf(Change.class);
+
+		if (previous == null) {
+			if (!current.playernames.isEmpty())
+				changes.add(Change.PLAYERS_CHANGED);
+			if (current.gamestatus == GameStatus.STARTED)
+				changes.add(Change.GAME_STARTED);
+			if (current.activeplayer != null)
+				changes.add(Change.ACTIVE_PLAYER_CHANGED);
+			if (current.tradepartner != null)
+				changes.add(Change.TRADE_OFFERED);
+			if (current.winner != null)
+				changes.add(Change.GAME_ENDED);
+
+			return new GameInfoDiff(null, current, changes);
+		}
+
+		if (!previous.playernames.equals(current.playernames))
+			changes.add(Change.PLAYERS_CHANGED);
+
+		if (previous.gamestatus != GameStatus.STARTED && current.gamestatus == GameStatus.STARTED)
+			changes.add(Change.GAME_STARTED);
+
+		if (current.turn > previous.turn)
+			changes.add(Change.TURN_ADVANCED);
+
+		if (previous.activeplayer != current.activeplayer)
+			changes.add(Change.ACTIVE_PLAYER_CHANGED);
+
+		// TRADE
+		if (current.tradepartner != null && previous.tradepartner != current.tradepartner)
+			changes.add(Change.TRADE_OFFERED);
+
+		boolean offerClosed = previous.tradepartner != null && current.tradepartner == null;
+		boolean replied = current.tradestatuslast != previous.tradestatuslast
+				&& (current.tradestatuslast == TradeStatus.ACCEPTED || current.tradestatuslast == TradeStatus.REJECTED);
+		if (offerClosed || replied)
+			changes.add(Change.TRADE_RESOLVED);
+
+		if (previous.winner == null && current.winner != null)
+			changes.add(Change.GAME_ENDED);
+
+		return new GameInfoDiff(previous, current, changes);
+	}
+
+	/**
+	 * Check whether a specific change happened.
+	 *
+	 * @param change
+	 *            The change to check for
+	 * @return {@code true} if the change is part of this diff
+	 */
+	public boolean has(Change change) {
+		return changes.contains(change);
+	}
+
+	/**
+	 * Check whether both snapshots are the same in every observed aspect.
+	 *
+	 * @return {@code true} if nothing changed
+	 */
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	/**
+	 * Get all changes of this diff.
+	 *
+	 * @return The unmodifiable set of changes
+	 */
+	public Set<Change> getChanges() {
+		return changes;
+	}
+
+	@Override
+	public String toString() {
+		return "GameInfoDiff " + changes;
+	}
+}
@@ -0,0 +1,136 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.util.EnumSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+
+/**
+ * <h3>Publishes the changes between consecutive {@link GameInfo} snapshots</h3>
+ *
+ * <p>
+ * Every game info fetched from the server is passed to {@link #update(GameInfo)}.
+ * The monitor compares it to the previous one and notifies its listeners,
+ * but only if something they may care about has changed, see
+ * {@link GameInfoDiff.Change}.
+ * </p>
+ *
+ * <p>
+ * The monitor is meant to be used on the render thread only. Listeners may
+ * feed the monitor themselves, the nested diff is published right away.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class GameInfoMonitor {
+
+	/**
+	 * Receives the changes of the game info.
+	 */
+	public interface Listener {
+
+		/**
+		 * Called once per snapshot, that differs from the previous one.
+		 *
+		 * @param diff
+		 *            The changes, never empty
+		 */
+		public void gameInfoChanged(GameInfoDiff diff);
+	}
+
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+	/** The last snapshot passed to {@link #update(GameInfo)} */
+	private GameInfo snapshot;
+
+	/**
+	 * Register a listener. Registering the same listener twice has no effect.
+	 *
+	 * @param listener
+	 *            The listener to add
+	 */
+	public void addListener(Listener listener) {
+		listeners.addIfAbsent(listener);
+	}
+
+	/**
+	 * Unregister a listener.
+	 *
+	 * @param listener
+	 *            The listener to remove
+	 */
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Get the last snapshot.
+	 *
+	 * @return The game info last passed to {@link #update(GameInfo)},
+	 *         {@code null} if there is none
+	 */
+	public GameInfo getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Compare a new snapshot to the previous one and publish the differences.
+	 *
+	 * @param info
+	 *            The latest game info
+	 * @return The differences, which may be empty
+	 */
+	public GameInfoDiff update(GameInfo info) {
+		GameInfoDiff diff = GameInfoDiff.compute(snapshot, info);
+		snapshot = info;
+
+		if (!diff.isEmpty())
+			publish(diff);
+		return diff;
+	}
+
+	/**
+	 * Publish the end of the game. The server reports the winner as error, so
+	 * the final game info does not replace the current snapshot.
+	 *
+	 * @param info
+	 *            The final game info containing the winner
+	 */
+	public void gameEnded(GameInfo info) {
+		publish(new GameInfoDiff(snapshot, info, EnumSet.of(GameInfoDiff.Change.GAME_ENDED)));
+	}
+
+	/**
+	 * Forget the previous snapshot, e.g. when another game is joined. The
+	 * next snapshot will be compared to an empty game.
+	 */
+	public void reset() {
+		snapshot = null;
+	}
+
+	private void publish(GameInfoDiff diff) {
+		LogHelper.getLogger().debug(diff);
+
+		for (Listener listener : listeners) {
+			try {
+				listener.gameInfoChanged(diff);
+			} catch (RuntimeException e) {
+				LogHelper.getLogger().error("GameInfoMonitor: listener failed on " + diff + ": " + e.getMessage());
+			}
+		}
+	}
+}
@@ -1,42 +1,105 @@
 package de.frankfurt.uni.vcp.net;
 
 import java.lang.reflect.Field;
-import java.util.HashMap;
+
+import de.frankfurt.uni.vcp.game.Game;
+import de.frankfurt.uni.vcp.units.Player;
 
 /**
  *  <h3> This is the base class, from which all other network relevant information 
  *  datastructures are inherited. </h3>
  *  
  *  <p> To prepare for a more or less easy mapping between network-messages and
- *      corresponding info-datastructures the string value given to the constructor
- *      will be split into "key=value", wich are inserted in a hash-table.
+ *      corresponding info-datastructures the reply is walked by a {@link ReplyTokenizer},
+ *      which hands every "key=value" pair to {@link #parseValue(ReplyTokenizer)}.
  *  </p>
  */
-
 public class Info {
 
-  HashMap<String,String> tags = new HashMap<String,String>();
-  
   /**
-   * <h3> Create a new Info instance. </h3>
+   * <h3> Read all key-value pairs up to the end of the current group. </h3>
    * 
-   * <p> The string given will be split at spaces. </p>
-   * <p> Every part of the form key=value" will be inserted in a hash
-   *     map as mapping "key" to "value"
+   * <p> Pairs nested in deeper groups are read as well, unless the group is the value
+   *     of a key skipped by {@link #parseValue(ReplyTokenizer)}. </p>
    * 
-   * @param string The string, from which to initialize key-value mappings
+   * @param t The tokenizer, positioned in front of the first pair
    */
-  public Info (String string) {
- 
-    for (String part : string.split(" ")){
-      String[] s = part.split ("=");
+  void parse (ReplyTokenizer t) {
+    int level = t.depth();
 
-      String key = s[0];
-      String value = (s.length > 1)? s[1] : "";
-      
-      tags.put(key, value);
+    while (t.next() != ReplyTokenizer.END && t.depth() >= level) {
+      if (t.token() == ReplyTokenizer.KEY)
+        parseValue(t);
     }
   }
+
+  /**
+   * Read the value of the key the tokenizer is positioned on. Subclasses pick the
+   * keys they know about and skip all others.
+   * 
+   * @param t The tokenizer, positioned on a {@link ReplyTokenizer#KEY} token
+   */
+  void parseValue (ReplyTokenizer t) {
+    t.skipValue();
+  }
+
+  /**
+   * Read the flat value following the current key.
+   * 
+   * @param t The tokenizer, positioned on a {@link ReplyTokenizer#KEY} token
+   * @return The value, the raw contents if the value is a group
+   */
+  static String nextString (ReplyTokenizer t) {
+    if (t.next() == ReplyTokenizer.OPEN)
+      return t.readGroup();
+    return t.text();
+  }
+
+  /**
+   * Read the number following the current key.
+   * 
+   * @param t The tokenizer, positioned on a {@link ReplyTokenizer#KEY} token
+   * @return The value
+   */
+  static int nextInt (ReplyTokenizer t) {
+    t.next();
+    return t.intValue();
+  }
+
+  /**
+   * Read the name of a player, or the id of a unit, following the current key.
+   * 
+   * @param t The tokenizer, positioned on a {@link ReplyTokenizer#KEY} token
+   * @return The value, {@code null} if it is empty
+   */
+  static String nextName (ReplyTokenizer t) {
+    t.next();
+    if (t.isEmpty())
+      return null;
+    return t.text();
+  }
+
+  /**
+   * <h3> Look up the players, units and unit types named in the reply. </h3>
+   * 
+   * <p> The replies are parsed on the network threads, which must not touch the players
+   *     and units of the game, as the render thread changes them. So only their names
+   *     and ids are read while parsing, and the references are set by this method, which
+   *     must be called on the render thread before they are used. Replies delivered by
+   *     the {@link AsyncTCPClient} are resolved already. </p>
+   */
+  public void resolve () {
+  }
+
+  /**
+   * Look up a player of the game. Render thread only.
+   * 
+   * @param name The name of the player, may be {@code null}
+   * @return The player, {@code null} if there is none of this name
+   */
+  static Player player (String name) {
+    return Game.getInstance().getPlayer(name);
+  }
   
   
   /**
@@ -1,12 +1,14 @@
 package de.frankfurt.uni.vcp.net;
 
+import de.frankfurt.uni.vcp.config.MapGrid;
+
 public class MapPreview {
  
-    public int[][] terrainMap;
-    public int[][] unitMap;
+    public MapGrid terrainMap;
+    public MapGrid unitMap;
     public int numberOfPlayers;
     
-    public MapPreview(int[][] t, int[][] u, int i) {
+    public MapPreview(MapGrid t, MapGrid u, int i) {
         terrainMap = t;
         unitMap = u;
         numberOfPlayers = i;
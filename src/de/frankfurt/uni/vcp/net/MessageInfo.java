@@ -32,18 +32,34 @@ public class MessageInfo extends Info implements Comparable<MessageInfo> {
      * The message contents
      */
     public String message;
+
+    /**
+     * The name of the sending player, not part of the reply but resolved by
+     * the {@link MessagePump}
+     */
+    public String sendername;
     
     
-    public MessageInfo (String incomingtime, String senderid, String message, String info) {
-        super (info);
-        
-        tags.remove("message");
-        
-        this.incomingtime = incomingtime;
-        this.senderid = senderid;
-        this.message = message;
-        
-        senderplayerid = tags.get("senderplayerid");
+    /**
+     * Construct a new MessageInfo from a single entry of a getdata reply.
+     * @param t The tokenizer, positioned on the opening brace of the entry
+     */
+    MessageInfo (ReplyTokenizer t) {
+        parse(t);
+    }
+
+    @Override
+    void parseValue (ReplyTokenizer t) {
+        if (t.is("incomingtime"))
+            incomingtime = nextString(t);
+        else if (t.is("senderid"))
+            senderid = nextString(t);
+        else if (t.is("senderplayerid"))
+            senderplayerid = nextString(t);
+        else if (t.is("message"))
+            message = nextString(t);
+        else
+            t.skipValue();
     }
 
 
@@ -0,0 +1,333 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+
+/**
+ * <h3>Fetches the chat messages in the background</h3>
+ *
+ * <p>
+ * A thread of its own drains {@link TCPClient#getdata()}, every
+ * {@link #MIN_INTERVAL} seconds while messages are coming in, backing off up
+ * to {@link #MAX_INTERVAL} seconds while there are none. The sender of every
+ * message is resolved to a player name on this thread as well, see
+ * {@link MessageInfo#sendername}, and the messages are handed to the render
+ * thread through a {@link RingBuffer}. The render thread just takes them
+ * from there, see {@link #drain(Listener, int)}.
+ * </p>
+ *
+ * <p>
+ * The server only reports the player id of the sender, which begins with the
+ * name of the player. Every id is matched against the player names once, and
+ * then looked up in an index, which is rebuilt when the players change.
+ * </p>
+ *
+ * <p>
+ * While the buffer is full, the pump keeps the messages it has and stops
+ * fetching, so the server holds back the rest.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class MessagePump {
+
+	/** Seconds between two requests, while messages are coming in */
+	public static final float MIN_INTERVAL = 0.5f;
+
+	/** Seconds between two requests at most */
+	public static final float MAX_INTERVAL = 4f;
+
+	/** Number of messages buffered for the render thread */
+	public static final int CAPACITY = 256;
+
+	/**
+	 * <h3>Receives the messages on the render thread</h3>
+	 */
+	public interface Listener {
+
+		/**
+		 * A message has arrived.
+		 *
+		 * @param message
+		 *            The message, with the {@link MessageInfo#sendername}
+		 *            resolved
+		 */
+		public void messageReceived(MessageInfo message);
+	}
+
+	private final TCPClient client;
+
+	private final RingBuffer<MessageInfo> queue = new RingBuffer<MessageInfo>(CAPACITY);
+
+	private final ScheduledExecutorService executor;
+
+	/** Messages not yet fitting into the {@link #queue}, pump thread only */
+	private final LinkedList<MessageInfo> pending = new LinkedList<MessageInfo>();
+
+	/** Names of the players, the senders are resolved against */
+	private volatile List<String> playerNames = Collections.emptyList();
+
+	/** Player name per sender id, "" if the sender is no player */
+	private final Map<String, String> senders = new ConcurrentHashMap<String, String>();
+
+	/** Seconds until the next request, pump thread only */
+	private float interval = MIN_INTERVAL;
+
+	private ScheduledFuture<?> next;
+
+	/**
+	 * Increased by every {@link #schedule(float)}, a scheduled pump only runs
+	 * if no other one has been scheduled since, so there is a single chain
+	 */
+	private int generation = 0;
+
+	/** Whether a pump is fetching right now */
+	private boolean pumping = false;
+
+	/** Whether {@link #hurry()} was called while pumping */
+	private boolean hurried = false;
+
+	private boolean running = false;
+
+	/**
+	 * Construct a new pump, which is not yet running.
+	 *
+	 * @param client
+	 *            The client used to fetch the messages
+	 */
+	public MessagePump(TCPClient client) {
+		this.client = client;
+
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "message-pump");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		this.executor = executor;
+	}
+
+	/**
+	 * Start fetching messages, if not running yet.
+	 */
+	public synchronized void start() {
+		if (running)
+			return;
+
+		running = true;
+		interval = MIN_INTERVAL;
+		fetchSoon();
+	}
+
+	/**
+	 * Stop fetching messages. Messages already fetched can still be drained.
+	 */
+	public synchronized void stop() {
+		running = false;
+		if (next != null)
+			next.cancel(false);
+	}
+
+	/**
+	 * Check whether messages are fetched.
+	 *
+	 * @return {@code true} if running
+	 */
+	public synchronized boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Fetch the messages right now, e.g. after sending one.
+	 */
+	public synchronized void hurry() {
+		if (!running)
+			return;
+
+		interval = MIN_INTERVAL;
+		fetchSoon();
+	}
+
+	/**
+	 * Stop the thread for good.
+	 */
+	public synchronized void shutdown() {
+		stop();
+		executor.shutdown();
+	}
+
+	/**
+	 * Set the names the senders are resolved against. Cheap, if the names
+	 * did not change.
+	 *
+	 * @param names
+	 *            The names of all players of the game
+	 */
+	public void setPlayerNames(List<String> names) {
+		if (names == null || names.equals(playerNames))
+			return;
+
+		playerNames = Collections.unmodifiableList(new ArrayList<String>(names));
+		senders.clear();
+	}
+
+	/**
+	 * Hand the fetched messages to a listener. Render thread only.
+	 *
+	 * @param listener
+	 *            Receives the messages
+	 * @param max
+	 *            The maximum number of messages handed over by this call
+	 * @return The number of messages handed over
+	 */
+	public int drain(Listener listener, int max) {
+		int count = 0;
+		MessageInfo message;
+
+		while (count < max && (message = queue.poll()) != null) {
+			listener.messageReceived(message);
+			++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of messages waiting for the render thread.
+	 *
+	 * @return The number of messages
+	 */
+	public int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * Fetch at once, or right after the pump fetching now, which would
+	 * otherwise schedule itself once more.
+	 */
+	private synchronized void fetchSoon() {
+		if (pumping) {
+			hurried = true;
+			return;
+		}
+
+		if (next != null)
+			next.cancel(false);
+		schedule(0);
+	}
+
+	private synchronized void schedule(float seconds) {
+		if (!running || executor.isShutdown())
+			return;
+
+		final int scheduled = ++generation;
+		next = executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				pump(scheduled);
+			}
+		}, (long) (seconds * 1000), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Begin a pump, unless it has been replaced by a later one in the
+	 * meantime.
+	 */
+	private synchronized boolean begin(int scheduled) {
+		if (!running || scheduled != generation)
+			return false;
+
+		pumping = true;
+		hurried = false;
+		return true;
+	}
+
+	/** End a pump and schedule the next one */
+	private synchronized void end(float seconds) {
+		pumping = false;
+		schedule(hurried ? 0 : seconds);
+		hurried = false;
+	}
+
+	/**
+	 * Fetch the messages, if there is room for them, and pass them on.
+	 *
+	 * @param scheduled
+	 *            The {@link #generation} this pump was scheduled with
+	 */
+	private void pump(int scheduled) {
+		if (!begin(scheduled))
+			return;
+
+		if (pending.isEmpty()) {
+			try {
+				List<MessageInfo> messages = client.getdata();
+				for (MessageInfo message : messages) {
+					message.sendername = resolve(message.senderplayerid);
+					if (message.sendername != null)
+						pending.add(message);
+				}
+				interval = messages.isEmpty() ? Math.min(interval * PollScheduler.BACKOFF, MAX_INTERVAL) : MIN_INTERVAL;
+			} catch (Exception e) {
+				LogHelper.getLogger().error("MessagePump: " + e.getMessage());
+				interval = MAX_INTERVAL;
+			}
+		}
+
+		while (!pending.isEmpty() && queue.offer(pending.getFirst()))
+			pending.removeFirst();
+
+		// while the render thread is behind, only retry the hand over
+		end(pending.isEmpty() ? interval : MIN_INTERVAL);
+	}
+
+	/**
+	 * Get the name of the player sending a message.
+	 *
+	 * @param senderId
+	 *            The player id of the sender
+	 * @return The name, {@code null} if the sender is no player
+	 */
+	String resolve(String senderId) {
+		if (senderId == null)
+			return null;
+
+		String name = senders.get(senderId);
+		if (name == null) {
+			// the longest name, in case one name begins with another
+			name = "";
+			for (String playerName : playerNames)
+				if (senderId.startsWith(playerName) && playerName.length() > name.length())
+					name = playerName;
+			senders.put(senderId, name);
+		}
+		return name.isEmpty() ? null : name;
+	}
+}
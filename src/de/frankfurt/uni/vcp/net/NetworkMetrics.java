@@ -0,0 +1,251 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+
+/**
+ * <h3>Network metrics of the {@link TCPClient}, per type of request</h3>
+ *
+ * <p>
+ * For every type of request, e.g. {@code gameinfo} or {@code move}, the
+ * client records the time to open connections, the round trip time, the
+ * time spent parsing the reply, the bytes sent and received and the number
+ * of failed requests, see {@link RequestMetrics}. Comparing round trip and
+ * parse times tells whether a stutter comes from the server and network, or
+ * from the client itself.
+ * </p>
+ *
+ * <p>
+ * The metrics of the {@link #getDefault() default instance} are published
+ * through JMX as {@code de.frankfurt.uni.vcp.net:type=NetworkMetrics,request=NAME},
+ * e.g. to be watched by jconsole. {@link #dump()} formats all of them as
+ * table, which is logged when the game shuts down.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class NetworkMetrics {
+
+	/** Domain and type of the published MBeans */
+	public static final String JMX_NAME = "de.frankfurt.uni.vcp.net:type=NetworkMetrics";
+
+	private static final NetworkMetrics DEFAULT = new NetworkMetrics(true);
+
+	private final ConcurrentMap<String, RequestMetrics> requests = new ConcurrentHashMap<String, RequestMetrics>();
+
+	/** Whether new metrics are registered with the platform MBean server */
+	private final boolean publish;
+
+	private volatile boolean enabled = true;
+
+	/** Time the reply of the current request was received on this thread */
+	private final ThreadLocal<long[]> received = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	/**
+	 * Construct new metrics.
+	 *
+	 * @param publish
+	 *            {@code true} to publish them through JMX
+	 */
+	public NetworkMetrics(boolean publish) {
+		this.publish = publish;
+	}
+
+	/**
+	 * Get the metrics used by all clients, unless told otherwise by
+	 * {@link TCPClient#setMetrics(NetworkMetrics)}. They are published through
+	 * JMX.
+	 *
+	 * @return The shared metrics
+	 */
+	public static NetworkMetrics getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Stop or resume recording. Recording costs a few atomic increments per
+	 * request.
+	 *
+	 * @param enabled
+	 *            {@code false} to stop recording
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Check whether requests are recorded.
+	 *
+	 * @return {@code true} if recording
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Get the metrics of a type of request.
+	 *
+	 * @param name
+	 *            The type of request, e.g. {@code gameinfo}
+	 * @return The metrics, which are created if there were none yet
+	 */
+	public RequestMetrics get(String name) {
+		RequestMetrics metrics = requests.get(name);
+		if (metrics != null)
+			return metrics;
+
+		metrics = new RequestMetrics(name);
+		RequestMetrics existing = requests.putIfAbsent(name, metrics);
+		if (existing != null)
+			return existing;
+
+		if (publish)
+			register(metrics);
+		return metrics;
+	}
+
+	/**
+	 * Get the metrics of all types of request seen so far.
+	 *
+	 * @return The metrics sorted by name
+	 */
+	public List<RequestMetrics> getAll() {
+		List<RequestMetrics> list = new ArrayList<RequestMetrics>(requests.values());
+		Collections.sort(list, new Comparator<RequestMetrics>() {
+			@Override
+			public int compare(RequestMetrics a, RequestMetrics b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Set the counters of all types of request back to zero.
+	 */
+	public void reset() {
+		for (RequestMetrics metrics : requests.values())
+			metrics.reset();
+	}
+
+	private void register(RequestMetrics metrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(JMX_NAME + ",request=" + ObjectName.quote(metrics.getName()));
+			if (!server.isRegistered(name))
+				server.registerMBean(metrics, name);
+		} catch (JMException e) {
+			LogHelper.getLogger().error("NetworkMetrics.register(): " + e.getMessage());
+		}
+	}
+
+	// RECORDING, see TCPClient.sendMessage()
+
+	void sent(String name, int bytes) {
+		if (enabled)
+			get(name).sent(bytes);
+	}
+
+	void connected(String name, long nanos) {
+		if (enabled)
+			get(name).connected(nanos);
+	}
+
+	void replied(String name, long nanos, int bytes) {
+		received.get()[0] = System.nanoTime();
+		if (enabled)
+			get(name).replied(nanos, bytes);
+	}
+
+	void parsed(String name) {
+		if (enabled)
+			get(name).parsed(System.nanoTime() - received.get()[0]);
+	}
+
+	void statusError(String name) {
+		if (enabled)
+			get(name).statusError();
+	}
+
+	void protocolError(String name) {
+		if (enabled)
+			get(name).protocolError();
+	}
+
+	void ioError(String name) {
+		if (enabled)
+			get(name).ioError();
+	}
+
+	/**
+	 * Count the bytes of the frame {@link java.io.DataOutputStream#writeUTF(String)}
+	 * produces for a string, without encoding it.
+	 *
+	 * @param string
+	 *            The string
+	 * @return The length of the frame, including its two bytes header
+	 */
+	static int frameLength(String string) {
+		int bytes = 2;
+		for (int i = 0; i < string.length(); ++i) {
+			char c = string.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F)
+				bytes += 1;
+			else if (c <= 0x07FF)
+				bytes += 2;
+			else
+				bytes += 3;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Format the metrics of all types of request as table. Times are given
+	 * in microseconds.
+	 *
+	 * @return The table, one line per type of request
+	 */
+	public String dump() {
+		StringBuilder string = new StringBuilder(String.format("%-12s %7s %6s %8s %8s %8s %8s %8s %8s %10s %10s", "request", "count", "errors",
+				"connect", "mean", "p50", "p99", "max", "parse", "sent", "received"));
+
+		for (RequestMetrics metrics : getAll())
+			string.append('\n').append(metrics);
+		return string.toString();
+	}
+
+	@Override
+	public String toString() {
+		return dump();
+	}
+}
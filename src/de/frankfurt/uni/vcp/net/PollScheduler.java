@@ -0,0 +1,349 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <h3>Central scheduler for all periodic server requests</h3>
+ *
+ * <p>
+ * Every kind of periodically requested data is a {@link Topic}. A topic is
+ * only polled while anybody is subscribed to it, and there is never more than
+ * one request per topic on its way: all subscribers share the same reply.
+ * </p>
+ *
+ * <p>
+ * The interval between two polls adapts to what happens in the game:
+ * </p>
+ *
+ * <ul>
+ * <li>After a reply that differs from the previous one, or after
+ * {@link #hurry()} was called because of an action of our own, a topic is
+ * polled at its minimum interval.</li>
+ * <li>Each reply without changes multiplies the interval by
+ * {@link #BACKOFF}, up to the maximum interval of the topic. A subscriber
+ * waiting for something urgent may lower this maximum, while it is
+ * subscribed.</li>
+ * <li>Every delay is randomly stretched or shortened by up to
+ * {@link #JITTER}, so clients started together do not poll in sync.</li>
+ * </ul>
+ *
+ * <p>
+ * The scheduler is driven by {@link #update(float)} and must only be used on
+ * the render thread. Replies are expected on the render thread as well, as
+ * delivered by the {@link AsyncTCPClient}.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class PollScheduler {
+
+	/** Factor applied to the interval after a reply without changes */
+	public static final float BACKOFF = 1.5f;
+
+	/** Maximum relative deviation of a delay from the interval */
+	public static final float JITTER = 0.2f;
+
+	/** Seconds after which a reply is no longer waited for */
+	public static final float REQUEST_TIMEOUT = 10f;
+
+	/**
+	 * Periodically requested data, e.g. the game info.
+	 *
+	 * @param <T>
+	 *            Type of the reply
+	 */
+	public static abstract class Topic<T> {
+
+		/** Name used for logging */
+		final String name;
+
+		/** Seconds between two polls right after a change */
+		final float minInterval;
+
+		/** Seconds between two polls after a long time without changes */
+		final float maxInterval;
+
+		final List<AsyncTCPClient.Callback<T>> subscribers = new ArrayList<AsyncTCPClient.Callback<T>>();
+
+		/** Lower maximum intervals requested by some of the subscribers */
+		final Map<AsyncTCPClient.Callback<T>, Float> ceilings = new HashMap<AsyncTCPClient.Callback<T>, Float>();
+
+		/** The current interval */
+		float interval;
+
+		/** Seconds until the next poll */
+		float due;
+
+		/** Seconds the current request is on its way, negative if there is none */
+		float pending = -1f;
+
+		/** Identifies the current request, later replies of older ones are dropped */
+		int generation = 0;
+
+		/** The previous reply, {@code null} if there was none */
+		T last;
+
+		/**
+		 * Construct a new topic.
+		 *
+		 * @param name
+		 *            Name used for logging
+		 * @param minInterval
+		 *            Seconds between two polls right after a change
+		 * @param maxInterval
+		 *            Seconds between two polls after a long time without
+		 *            changes
+		 */
+		public Topic(String name, float minInterval, float maxInterval) {
+			if (minInterval <= 0 || maxInterval < minInterval)
+				throw new IllegalArgumentException("invalid intervals for " + name + ": " + minInterval + ", " + maxInterval);
+
+			this.name = name;
+			this.minInterval = minInterval;
+			this.maxInterval = maxInterval;
+			this.interval = minInterval;
+		}
+
+		/**
+		 * Send the request.
+		 *
+		 * @param callback
+		 *            Must receive the reply on the render thread
+		 */
+		protected abstract void request(AsyncTCPClient.Callback<T> callback);
+
+		/**
+		 * Called with every reply, before it is handed to the subscribers.
+		 *
+		 * @param reply
+		 *            The reply
+		 */
+		protected void received(T reply) {
+		}
+
+		/**
+		 * Decide whether a reply differs from the previous one. By default
+		 * replies are compared by {@link Object#equals(Object)}.
+		 *
+		 * @param previous
+		 *            The previous reply, {@code null} if there was none
+		 * @param reply
+		 *            The new reply
+		 * @return {@code true} if something has changed
+		 */
+		protected boolean changed(T previous, T reply) {
+			return previous == null || !previous.equals(reply);
+		}
+
+		/**
+		 * @return The maximum interval, as lowered by the current subscribers
+		 */
+		float ceiling() {
+			float ceiling = maxInterval;
+			for (float c : ceilings.values())
+				ceiling = Math.min(ceiling, c);
+			return ceiling;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private final List<Topic<?>> topics = new ArrayList<Topic<?>>();
+
+	private final Random random = new Random();
+
+	/**
+	 * Receive the replies of a topic, until {@link #unsubscribe} is called.
+	 * The topic is polled at its minimum interval at once.
+	 *
+	 * @param topic
+	 *            The topic to subscribe to
+	 * @param subscriber
+	 *            Receives every reply of the topic
+	 */
+	public <T> void subscribe(Topic<T> topic, AsyncTCPClient.Callback<T> subscriber) {
+		subscribe(topic, subscriber, topic.maxInterval);
+	}
+
+	/**
+	 * Receive the replies of a topic, until {@link #unsubscribe} is called.
+	 * While subscribed, the topic backs off no further than the given
+	 * interval, e.g. while waiting for our turn.
+	 *
+	 * @param topic
+	 *            The topic to subscribe to
+	 * @param subscriber
+	 *            Receives every reply of the topic
+	 * @param maxInterval
+	 *            Seconds between two polls after a long time without changes,
+	 *            at most the maximum interval of the topic is used
+	 */
+	public <T> void subscribe(Topic<T> topic, AsyncTCPClient.Callback<T> subscriber, float maxInterval) {
+		if (maxInterval < topic.maxInterval)
+			topic.ceilings.put(subscriber, Math.max(maxInterval, topic.minInterval));
+		else
+			topic.ceilings.remove(subscriber);
+		topic.interval = Math.min(topic.interval, topic.ceiling());
+		if (topic.subscribers.contains(subscriber))
+			return;
+
+		topic.subscribers.add(subscriber);
+		if (!topics.contains(topic))
+			topics.add(topic);
+
+		hurry(topic);
+	}
+
+	/**
+	 * Stop receiving the replies of a topic. Without subscribers a topic is
+	 * no longer polled.
+	 *
+	 * @param topic
+	 *            The topic to unsubscribe from
+	 * @param subscriber
+	 *            The subscriber to remove
+	 */
+	public <T> void unsubscribe(Topic<T> topic, AsyncTCPClient.Callback<T> subscriber) {
+		topic.subscribers.remove(subscriber);
+		topic.ceilings.remove(subscriber);
+	}
+
+	/**
+	 * Check whether a subscriber receives the replies of a topic.
+	 *
+	 * @param topic
+	 *            The topic
+	 * @param subscriber
+	 *            The subscriber
+	 * @return {@code true} if the subscriber is registered
+	 */
+	public <T> boolean isSubscribed(Topic<T> topic, AsyncTCPClient.Callback<T> subscriber) {
+		return topic.subscribers.contains(subscriber);
+	}
+
+	/**
+	 * Poll every topic at its minimum interval again, e.g. right after the
+	 * end of our turn, when the next change is to be expected soon.
+	 */
+	public void hurry() {
+		for (Topic<?> topic : topics)
+			hurry(topic);
+	}
+
+	/**
+	 * Poll a topic at its minimum interval again.
+	 *
+	 * @param topic
+	 *            The topic to hurry
+	 */
+	public void hurry(Topic<?> topic) {
+		topic.interval = topic.minInterval;
+		topic.due = Math.min(topic.due, jitter(topic.minInterval));
+	}
+
+	/**
+	 * Poll a topic with the next call of {@link #update(float)}, unless a
+	 * request is already on its way. In this case its reply is used.
+	 *
+	 * @param topic
+	 *            The topic to poll
+	 */
+	public void pollNow(Topic<?> topic) {
+		topic.interval = topic.minInterval;
+		topic.due = 0f;
+	}
+
+	/**
+	 * Send the requests, which are due.
+	 *
+	 * @param tpf
+	 *            Seconds passed since the last call
+	 */
+	public void update(float tpf) {
+		for (Topic<?> topic : topics) {
+			if (topic.subscribers.isEmpty())
+				continue;
+
+			if (topic.pending >= 0f) {
+				topic.pending += tpf;
+				if (topic.pending < REQUEST_TIMEOUT)
+					continue;
+
+				// the reply got lost, e.g. because the client was replaced
+				topic.pending = -1f;
+				++topic.generation;
+			}
+
+			topic.due -= tpf;
+			if (topic.due <= 0f)
+				poll(topic);
+		}
+	}
+
+	private <T> void poll(final Topic<T> topic) {
+		final int generation = ++topic.generation;
+		topic.pending = 0f;
+
+		topic.request(new AsyncTCPClient.Callback<T>() {
+			@Override
+			public void onSuccess(T reply) {
+				if (generation != topic.generation)
+					return;
+
+				topic.pending = -1f;
+				topic.received(reply);
+
+				if (topic.changed(topic.last, reply))
+					topic.interval = topic.minInterval;
+				else
+					topic.interval = Math.min(topic.interval * BACKOFF, topic.ceiling());
+
+				topic.last = reply;
+				topic.due = jitter(topic.interval);
+
+				for (AsyncTCPClient.Callback<T> subscriber : new ArrayList<AsyncTCPClient.Callback<T>>(topic.subscribers))
+					if (topic.subscribers.contains(subscriber))
+						subscriber.onSuccess(reply);
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				if (generation != topic.generation)
+					return;
+
+				topic.pending = -1f;
+				topic.interval = Math.min(topic.interval * BACKOFF, topic.ceiling());
+				topic.due = jitter(topic.interval);
+
+				for (AsyncTCPClient.Callback<T> subscriber : new ArrayList<AsyncTCPClient.Callback<T>>(topic.subscribers))
+					if (topic.subscribers.contains(subscriber))
+						subscriber.onFailure(e);
+			}
+		});
+	}
+
+	private float jitter(float interval) {
+		return interval * (1f + JITTER * (2f * random.nextFloat() - 1f));
+	}
+}
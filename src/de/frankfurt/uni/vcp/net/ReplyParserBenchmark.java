@@ -0,0 +1,253 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import de.frankfurt.uni.vcp.game.Game;
+import de.frankfurt.uni.vcp.units.Inventory;
+
+/**
+ * <h3>Compares the reply parsing before and after the {@link ReplyTokenizer}</h3>
+ *
+ * <p>
+ * The legacy methods of this class repeat the parsing, that was done by
+ * {@link Info} and its subclasses before, based on {@code String.split},
+ * {@link TCPClient#splitBrace(String)} and a {@code HashMap} per reply.
+ * </p>
+ *
+ * <p>
+ * {@link #main(String[])} parses the same replies both ways and prints the
+ * time taken and the bytes allocated per reply. Allocation is measured with
+ * {@code com.sun.management.ThreadMXBean}, so a HotSpot JVM is required.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class ReplyParserBenchmark {
+
+	static final String GAMEINFO = "status:ok [gameinfo][gameid=TESTGAME1326996639716 name=TESTGAME mapid=Two gamestatus=started turn=12"
+			+ " winner= activeplayer=PLAYER_A activeunitslastaction=NONE tradepartner= tradepartnerunit= tradegive= tradeget="
+			+ " tradestatuslast=none playernames=[[PLAYER_A][PLAYER_B]] turnsTaken=[[true][false]]] end:end";
+
+	static final String TRADE_GAMEINFO = GAMEINFO.replace("tradegive= tradeget=", "tradegive=[[1][0][2][0][0]] tradeget=[[0][3][0][0][1]]");
+
+	static final String UNITINFO = "status:ok [unitinfo][unitid=7 owner=PLAYER_A utype=fightersmall destroyed=false movement=3"
+			+ " lastmovement=[[4,5][4,6]] hitpoints=10 cargo=[[1][0][2][0][0]]] end:end";
+
+	static final String GETDATA = "status:ok data[[incomingtime:1326996658522 senderid:Client0001 data[[system][senderplayerid=PLAYER_A1326996639716"
+			+ " playeridreciever=PLAYER_B1326996640647 message=[Unit 1 has been attacked by unit 6]]]]"
+			+ "[incomingtime:1326996658600 senderid:Client0002 data[[chat][senderplayerid=PLAYER_B1326996640647 message=[hello there]]]]] end:end";
+
+	// LEGACY PARSING
+
+	static HashMap<String, String> legacyTags(String string) {
+		HashMap<String, String> tags = new HashMap<String, String>();
+		for (String part : string.split(" ")) {
+			String[] s = part.split("=");
+			tags.put(s[0], (s.length > 1) ? s[1] : "");
+		}
+		return tags;
+	}
+
+	static int[] legacyInventory(String string) {
+		int[] items = new int[5];
+		string = TCPClient.splitBrace(string).get(0);
+
+		int i = 0;
+		for (String s : TCPClient.splitBrace(string))
+			items[i++] = Integer.parseInt(s);
+		return items;
+	}
+
+	static Object legacyGameInfo(String reply) {
+		Game game = Game.getInstance();
+		HashMap<String, String> tags = legacyTags(reply.substring(21, reply.length() - 9));
+
+		Object[] fields = new Object[8];
+		fields[0] = Integer.parseInt(tags.get("turn"));
+		fields[1] = game.getPlayer(tags.get("activeplayer"));
+		fields[2] = game.getPlayer(tags.get("tradepartner"));
+		if (!tags.get("tradegive").equals(""))
+			fields[3] = legacyInventory(tags.get("tradegive"));
+		if (!tags.get("tradeget").equals(""))
+			fields[4] = legacyInventory(tags.get("tradeget"));
+
+		List<String> playernames = new LinkedList<String>();
+		for (String s : TCPClient.splitBrace(TCPClient.splitBrace(tags.get("playernames")).get(0)))
+			playernames.add(s);
+		fields[5] = playernames;
+
+		List<Boolean> turnstaken = new LinkedList<Boolean>();
+		for (String s : TCPClient.splitBrace(TCPClient.splitBrace(tags.get("turnsTaken")).get(0)))
+			turnstaken.add(s.equals("true"));
+		fields[6] = turnstaken;
+		fields[7] = tags;
+		return fields;
+	}
+
+	static Object legacyUnitInfo(String reply) {
+		Game game = Game.getInstance();
+		HashMap<String, String> tags = legacyTags(reply.substring(21, reply.length() - 9));
+
+		Object[] fields = new Object[6];
+		fields[0] = Integer.parseInt(tags.get("unitid"));
+		fields[1] = game.getPlayer(tags.get("owner"));
+		fields[2] = game.getUnitType(tags.get("utype"));
+		fields[3] = Integer.parseInt(tags.get("movement"));
+		fields[4] = Integer.parseInt(tags.get("hitpoints"));
+		fields[5] = legacyInventory(tags.get("cargo"));
+		return fields;
+	}
+
+	static Object legacyGetdata(String reply) {
+		List<Object> list = new LinkedList<Object>();
+		for (String s : TCPClient.splitBrace(TCPClient.splitBrace(reply).get(0))) {
+			String incomingtime = TCPClient.parseValue(s, "incomingtime");
+			String senderid = TCPClient.parseValue(s, "senderid");
+
+			String data = TCPClient.splitBrace(TCPClient.splitBrace(s).get(0)).get(1);
+			String messageString = TCPClient.splitBrace(data).get(0);
+
+			HashMap<String, String> tags = legacyTags(data);
+			tags.remove("message");
+			list.add(new Object[] { incomingtime, senderid, messageString, tags.get("senderplayerid") });
+		}
+		return list;
+	}
+
+	// TOKENIZER PARSING
+
+	static Object gameInfo(String reply) throws ProtocolError {
+		return new GameInfo(TCPClient.infoGroup("gameinfo", reply));
+	}
+
+	static Object unitInfo(String reply) throws ProtocolError {
+		return new UnitInfo(TCPClient.infoGroup("unitinfo", reply));
+	}
+
+	static Object getdata(String reply) {
+		return TCPClient.parseMessages(reply);
+	}
+
+	// MEASUREMENT
+
+	interface Parser {
+		Object parse(String reply) throws Exception;
+	}
+
+	static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/** Keeps the results reachable, so the parsing is not optimized away. */
+	static Object sink;
+
+	static void measure(String name, String reply, Parser parser, int rounds) throws Exception {
+		// WARM UP
+		for (int i = 0; i < rounds; ++i)
+			sink = parser.parse(reply);
+
+		long tid = Thread.currentThread().getId();
+		long bytes = THREADS.getThreadAllocatedBytes(tid);
+		long start = System.nanoTime();
+
+		for (int i = 0; i < rounds; ++i)
+			sink = parser.parse(reply);
+
+		long nanos = System.nanoTime() - start;
+		bytes = THREADS.getThreadAllocatedBytes(tid) - bytes;
+
+		System.out.println(String.format("%-24s %8.0f bytes/reply %8.2f us/reply", name, (double) bytes / rounds, nanos / 1e3 / rounds));
+	}
+
+	static void check(boolean condition, String what) {
+		if (!condition)
+			throw new IllegalStateException("tokenizer parsed " + what + " wrong");
+	}
+
+	/**
+	 * Check the tokenizer based parsing against the sample replies, then
+	 * measure both implementations.
+	 *
+	 * @param argv
+	 *            Optionally the number of rounds per measurement
+	 */
+	public static void main(String argv[]) throws Exception {
+		int rounds = (argv.length > 0) ? Integer.parseInt(argv[0]) : 200000;
+
+		GameInfo gameInfo = (GameInfo) gameInfo(TRADE_GAMEINFO);
+		check(gameInfo.turn == 12, "turn");
+		check(gameInfo.gamestatus == GameInfo.GameStatus.STARTED, "gamestatus");
+		check(gameInfo.tradestatuslast == GameInfo.TradeStatus.NONE, "tradestatuslast");
+		check(gameInfo.playernames.toString().equals("[PLAYER_A, PLAYER_B]"), "playernames");
+		check(gameInfo.turnstaken.toString().equals("[true, false]"), "turnsTaken");
+		check(gameInfo.tradegive.toString().equals("[1,0,2,0,0]"), "tradegive");
+		check(gameInfo.tradeget.toString().equals("[0,3,0,0,1]"), "tradeget");
+		check("Two".equals(gameInfo.mapid), "mapid");
+		check("PLAYER_A".equals(gameInfo.activeplayername) && gameInfo.tradepartnerunitid < 0, "activeplayer");
+
+		UnitInfo unitInfo = (UnitInfo) unitInfo(UNITINFO);
+		check(unitInfo.unitid == 7 && unitInfo.movement == 3 && unitInfo.hitpoints == 10, "unitinfo numbers");
+		check(!unitInfo.destroyed, "destroyed");
+		check("PLAYER_A".equals(unitInfo.ownername) && "fightersmall".equals(unitInfo.utypename), "owner");
+		check(unitInfo.cargo.toString().equals(new Inventory("[[1][0][2][0][0]]").toString()), "cargo");
+
+		@SuppressWarnings("unchecked")
+		List<MessageInfo> messages = (List<MessageInfo>) getdata(GETDATA);
+		check(messages.size() == 2, "message count");
+		check(messages.get(0).message.equals("Unit 1 has been attacked by unit 6"), "message");
+		check(messages.get(1).senderplayerid.equals("PLAYER_B1326996640647"), "senderplayerid");
+		check(messages.get(1).incomingtime.equals("1326996658600"), "incomingtime");
+
+		measure("gameinfo   legacy", GAMEINFO, new Parser() {
+			@Override
+			public Object parse(String reply) {
+				return legacyGameInfo(reply);
+			}
+		}, rounds);
+		measure("gameinfo   tokenizer", GAMEINFO, new Parser() {
+			@Override
+			public Object parse(String reply) throws Exception {
+				return gameInfo(reply);
+			}
+		}, rounds);
+		measure("unitinfo   legacy", UNITINFO, new Parser() {
+			@Override
+			public Object parse(String reply) {
+				return legacyUnitInfo(reply);
+			}
+		}, rounds);
+		measure("unitinfo   tokenizer", UNITINFO, new Parser() {
+			@Override
+			public Object parse(String reply) throws Exception {
+				return unitInfo(reply);
+			}
+		}, rounds);
+		measure("getdata    legacy", GETDATA, new Parser() {
+			@Override
+			public Object parse(String reply) {
+				return legacyGetdata(reply);
+			}
+		}, rounds);
+		measure("getdata    tokenizer", GETDATA, new Parser() {
+			@Override
+			public Object parse(String reply) {
+				return getdata(reply);
+			}
+		}, rounds);
+	}
+}
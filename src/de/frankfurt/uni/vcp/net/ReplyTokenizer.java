@@ -0,0 +1,304 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+/**
+ * <h3>Single pass tokenizer for the bracketed reply format</h3>
+ *
+ * <p>
+ * Walks over a server reply once and reports one token per call of
+ * {@link #next()}:
+ * </p>
+ *
+ * <ul>
+ * <li>{@link #OPEN} and {@link #CLOSE} for {@code [} and {@code ]}</li>
+ * <li>{@link #KEY} for the part of {@code key=value} or {@code key:value} in
+ * front of the separator</li>
+ * <li>{@link #VALUE} for the flat value following a key, which may be empty.
+ * If the value is a group, {@link #OPEN} is reported instead.</li>
+ * <li>{@link #ATOM} for any other sequence of characters</li>
+ * </ul>
+ *
+ * <p>
+ * Tokens are only described by their position in the reply, no substrings
+ * are created, unless a caller asks for {@link #text()} or
+ * {@link #readGroup()}.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class ReplyTokenizer {
+
+	/** No more tokens. */
+	public static final int END = 0;
+
+	/** An opening brace. */
+	public static final int OPEN = 1;
+
+	/** A closing brace. */
+	public static final int CLOSE = 2;
+
+	/** The key of a key value pair. */
+	public static final int KEY = 3;
+
+	/** The flat value of a key value pair. */
+	public static final int VALUE = 4;
+
+	/** Anything else. */
+	public static final int ATOM = 5;
+
+	private final CharSequence reply;
+
+	/** End of the range to tokenize, exclusive. */
+	private final int end;
+
+	/** Position of the next character to look at. */
+	private int pos;
+
+	private int tokenStart;
+	private int tokenEnd;
+	private int token = END;
+
+	/** Number of currently open braces. */
+	private int depth = 0;
+
+	/**
+	 * Tokenize a whole reply.
+	 *
+	 * @param reply
+	 *            The reply to tokenize
+	 */
+	public ReplyTokenizer(CharSequence reply) {
+		this(reply, 0, reply.length());
+	}
+
+	/**
+	 * Tokenize a part of a reply.
+	 *
+	 * @param reply
+	 *            The reply to tokenize
+	 * @param start
+	 *            Index of the first character to tokenize
+	 * @param end
+	 *            Index after the last character to tokenize
+	 */
+	public ReplyTokenizer(CharSequence reply, int start, int end) {
+		this.reply = reply;
+		this.pos = start;
+		this.end = end;
+	}
+
+	/**
+	 * Advance to the next token.
+	 *
+	 * @return The type of the token, {@link #END} if there is none left
+	 */
+	public int next() {
+		// VALUE
+		if (token == KEY && (pos >= end || reply.charAt(pos) != '[')) {
+			tokenStart = pos;
+			while (pos < end && !isDelimiter(reply.charAt(pos)))
+				++pos;
+			tokenEnd = pos;
+			return token = VALUE;
+		}
+
+		while (pos < end && reply.charAt(pos) == ' ')
+			++pos;
+
+		if (pos >= end) {
+			tokenStart = tokenEnd = pos;
+			return token = END;
+		}
+
+		tokenStart = pos;
+		char c = reply.charAt(pos);
+
+		if (c == '[') {
+			++depth;
+			tokenEnd = ++pos;
+			return token = OPEN;
+		}
+		if (c == ']') {
+			--depth;
+			tokenEnd = ++pos;
+			return token = CLOSE;
+		}
+
+		// KEY OR ATOM
+		while (pos < end) {
+			c = reply.charAt(pos);
+			if (isDelimiter(c))
+				break;
+			if (c == '=' || c == ':') {
+				tokenEnd = pos++;
+				return token = KEY;
+			}
+			++pos;
+		}
+		tokenEnd = pos;
+		return token = ATOM;
+	}
+
+	private static boolean isDelimiter(char c) {
+		return c == ' ' || c == '[' || c == ']';
+	}
+
+	/**
+	 * Get the type of the current token.
+	 *
+	 * @return The type last returned by {@link #next()}
+	 */
+	public int token() {
+		return token;
+	}
+
+	/**
+	 * Get the number of braces opened, but not yet closed.
+	 *
+	 * @return The current nesting depth
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * Check whether the current token is made up of a given string.
+	 *
+	 * @param string
+	 *            The string to compare to
+	 * @return {@code true} if the token equals the string
+	 */
+	public boolean is(String string) {
+		int length = tokenEnd - tokenStart;
+		if (length != string.length())
+			return false;
+
+		for (int i = 0; i < length; ++i)
+			if (reply.charAt(tokenStart + i) != string.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Check whether the current token is empty, like the value of
+	 * {@code winner=}.
+	 *
+	 * @return {@code true} if the token has no characters
+	 */
+	public boolean isEmpty() {
+		return tokenEnd == tokenStart;
+	}
+
+	/**
+	 * Get the current token as string.
+	 *
+	 * @return A new string holding the characters of the token
+	 */
+	public String text() {
+		return reply.subSequence(tokenStart, tokenEnd).toString();
+	}
+
+	/**
+	 * Parse the current token as decimal number.
+	 *
+	 * @return The value of the token
+	 * @throws NumberFormatException
+	 *             The token is not a number
+	 */
+	public int intValue() {
+		return (int) longValue();
+	}
+
+	/**
+	 * Parse the current token as decimal number.
+	 *
+	 * @return The value of the token
+	 * @throws NumberFormatException
+	 *             The token is not a number
+	 */
+	public long longValue() {
+		int i = tokenStart;
+		boolean negative = false;
+
+		if (i < tokenEnd && reply.charAt(i) == '-') {
+			negative = true;
+			++i;
+		}
+		if (i >= tokenEnd)
+			throw new NumberFormatException("not a number: \"" + text() + "\"");
+
+		long value = 0;
+		for (; i < tokenEnd; ++i) {
+			char c = reply.charAt(i);
+			if (c < '0' || c > '9')
+				throw new NumberFormatException("not a number: \"" + text() + "\"");
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Skip to the end of the innermost open group, including everything nested
+	 * inside it. This is either the group opened by the current {@link #OPEN}
+	 * token, or the one containing the current token. Afterwards the tokenizer
+	 * is positioned on the matching {@link #CLOSE} token.
+	 */
+	public void skipGroup() {
+		int target = depth - 1;
+		while (depth > target && next() != END)
+			;
+	}
+
+	/**
+	 * Read the raw contents of the group opened by the current {@link #OPEN}
+	 * token, e.g. the text of a chat message. Afterwards the tokenizer is
+	 * positioned on the matching {@link #CLOSE} token.
+	 *
+	 * @return The characters between the braces
+	 */
+	public String readGroup() {
+		int start = tokenEnd;
+		skipGroup();
+		return reply.subSequence(start, tokenStart).toString();
+	}
+
+	/**
+	 * Skip the value following the current {@link #KEY} token, whether it is
+	 * flat or a group.
+	 */
+	public void skipValue() {
+		if (next() == OPEN)
+			skipGroup();
+	}
+
+	/**
+	 * Advance to the next token at the current depth, which opens a group.
+	 *
+	 * @return {@code true} if such a token was found, {@code false} if the
+	 *         enclosing group or the reply ended before.
+	 */
+	public boolean nextGroup() {
+		int level = depth;
+		int t;
+		while ((t = next()) != END) {
+			if (t == OPEN && depth == level + 1)
+				return true;
+			if (depth < level)
+				return false;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,331 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import de.frankfurt.uni.vcp.nodes.Field;
+import de.frankfurt.uni.vcp.units.Inventory;
+
+/**
+ * <h3>Reusable buffer for building a single request</h3>
+ *
+ * <p>
+ * Characters are encoded as modified UTF-8 while they are appended, behind
+ * two bytes reserved for the length. The buffer therefore always holds the
+ * complete frame {@link DataOutputStream#writeUTF(String)} would produce,
+ * and {@link #writeTo(DataOutputStream)} hands it to the socket with a single
+ * write, without creating a string or a temporary byte array.
+ * </p>
+ *
+ * <p>
+ * Encoders are taken from a small pool by {@link #obtain()} and must be
+ * handed back by {@link #release()}, once the request was sent.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public final class RequestEncoder {
+
+	/** Initial size of the buffer, enough for every request but long moves. */
+	static final int INITIAL_CAPACITY = 512;
+
+	/** Maximum number of idle encoders kept for reuse. */
+	static final int POOL_SIZE = 8;
+
+	/** Largest frame accepted by {@link DataInputStream#readUTF()}. */
+	static final int MAX_FRAME = 0xFFFF + 2;
+
+	private static final ArrayBlockingQueue<RequestEncoder> pool = new ArrayBlockingQueue<RequestEncoder>(POOL_SIZE);
+
+	/** The frame: two bytes length, followed by the encoded characters. */
+	private byte[] buffer = new byte[INITIAL_CAPACITY];
+
+	/** Number of bytes of the buffer in use, including the length. */
+	private int length = 2;
+
+	private boolean released = false;
+
+	/** The type of the request, for the {@link NetworkMetrics} */
+	private String name = "unknown";
+
+	private RequestEncoder() {
+	}
+
+	/**
+	 * Take an empty encoder from the pool, or create a new one if there is
+	 * none.
+	 *
+	 * @return An encoder exclusively owned by the caller
+	 */
+	public static RequestEncoder obtain() {
+		RequestEncoder encoder = pool.poll();
+		if (encoder == null)
+			return new RequestEncoder();
+
+		encoder.released = false;
+		return encoder;
+	}
+
+	/**
+	 * Hand this encoder back to the pool. It must not be used afterwards.
+	 */
+	public void release() {
+		if (released)
+			return;
+		released = true;
+
+		length = 2;
+		name = "unknown";
+		if (buffer.length > MAX_FRAME)
+			buffer = new byte[INITIAL_CAPACITY];
+		pool.offer(this);
+	}
+
+	/**
+	 * Set the type of the request, under which it is recorded by the
+	 * {@link NetworkMetrics}.
+	 *
+	 * @param name
+	 *            The type, e.g. {@code gameinfo}
+	 * @return This encoder
+	 */
+	public RequestEncoder named(String name) {
+		this.name = name;
+		return this;
+	}
+
+	/**
+	 * Get the type of the request.
+	 *
+	 * @return The type set by {@link #named(String)}, {@code "unknown"} if
+	 *         there is none
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Append a string, e.g. a fixed part of the request or an id.
+	 *
+	 * @param string
+	 *            The string to append, {@code null} is appended as
+	 *            {@code "null"}
+	 * @return This encoder
+	 */
+	public RequestEncoder append(String string) {
+		if (string == null)
+			string = "null";
+
+		int n = string.length();
+		ensureCapacity(n);
+
+		for (int k = 0; k < n; ++k) {
+			char c = string.charAt(k);
+			if (c >= 0x0001 && c <= 0x007F)
+				buffer[length++] = (byte) c;
+			else
+				appendWide(c, n - k - 1);
+		}
+		return this;
+	}
+
+	/**
+	 * Append a single character.
+	 *
+	 * @param c
+	 *            The character to append
+	 * @return This encoder
+	 */
+	public RequestEncoder append(char c) {
+		if (c >= 0x0001 && c <= 0x007F) {
+			ensureCapacity(1);
+			buffer[length++] = (byte) c;
+		} else {
+			appendWide(c, 0);
+		}
+		return this;
+	}
+
+	/**
+	 * Append the decimal representation of a number.
+	 *
+	 * @param value
+	 *            The number to append
+	 * @return This encoder
+	 */
+	public RequestEncoder append(int value) {
+		return append((long) value);
+	}
+
+	/**
+	 * Append the decimal representation of a number.
+	 *
+	 * @param value
+	 *            The number to append
+	 * @return This encoder
+	 */
+	public RequestEncoder append(long value) {
+		if (value == Long.MIN_VALUE)
+			return append(Long.toString(value));
+
+		ensureCapacity(20);
+		if (value < 0) {
+			buffer[length++] = '-';
+			value = -value;
+		}
+
+		int digits = 1;
+		for (long v = value; v >= 10; v /= 10)
+			++digits;
+
+		int pos = length + digits;
+		length = pos;
+		do {
+			buffer[--pos] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+
+		return this;
+	}
+
+	/**
+	 * Append the coordinates of a single field, e.g. {@code [4,5]}.
+	 *
+	 * @param i
+	 *            The i-index of the field
+	 * @param j
+	 *            The j-index of the field
+	 * @return This encoder
+	 */
+	public RequestEncoder appendCoordinate(int i, int j) {
+		return append('[').append(i).append(',').append(j).append(']');
+	}
+
+	/**
+	 * Append a path as list of coordinates, e.g. {@code [[4,5][4,6]]}.
+	 *
+	 * @param fields
+	 *            The fields along the path
+	 * @return This encoder
+	 */
+	public RequestEncoder appendPath(List<Field> fields) {
+		append('[');
+		for (Field f : fields)
+			appendCoordinate(f.iIndex, f.jIndex);
+		return append(']');
+	}
+
+	/**
+	 * Append the amounts of an inventory, e.g. {@code [1,0,2,0,0]}, the same
+	 * way as {@link Inventory#toString()} does.
+	 *
+	 * @param inventory
+	 *            The inventory to append
+	 * @return This encoder
+	 */
+	public RequestEncoder appendInventory(Inventory inventory) {
+		if (inventory == null)
+			return append("null");
+
+		append('[');
+		for (int i = 0; i < inventory.items.length; ++i) {
+			if (i > 0)
+				append(',');
+			append(inventory.items[i]);
+		}
+		return append(']');
+	}
+
+	/**
+	 * Get the size of the frame built so far.
+	 *
+	 * @return The number of bytes {@link #writeTo(DataOutputStream)} will
+	 *         write, including the length
+	 */
+	public int size() {
+		return length;
+	}
+
+	/**
+	 * Write the frame to a stream, the same way
+	 * {@link DataOutputStream#writeUTF(String)} would write the request as
+	 * string. The stream is not flushed. The encoder keeps its contents, so
+	 * the frame may be written again, e.g. to retry a request.
+	 *
+	 * @param out
+	 *            The stream to write to
+	 * @throws UTFDataFormatException
+	 *             The request is too long to be sent as a single frame
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+		int utflen = length - 2;
+		if (utflen > 0xFFFF)
+			throw new UTFDataFormatException("encoded request too long: " + utflen + " bytes");
+
+		buffer[0] = (byte) (utflen >>> 8);
+		buffer[1] = (byte) utflen;
+		out.write(buffer, 0, length);
+	}
+
+	/**
+	 * Decode the request, e.g. for logging or error reports.
+	 *
+	 * @return The request as string
+	 */
+	@Override
+	public String toString() {
+		int utflen = length - 2;
+		if (utflen > 0xFFFF)
+			return "<request of " + utflen + " bytes>";
+
+		buffer[0] = (byte) (utflen >>> 8);
+		buffer[1] = (byte) utflen;
+		try {
+			return new DataInputStream(new ByteArrayInputStream(buffer, 0, length)).readUTF();
+		} catch (IOException e) {
+			return "<malformed request>";
+		}
+	}
+
+	private void appendWide(char c, int remaining) {
+		ensureCapacity(3 + remaining);
+
+		if (c > 0x07FF) {
+			buffer[length++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+			buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			buffer[length++] = (byte) (0x80 | (c & 0x3F));
+		} else {
+			buffer[length++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+			buffer[length++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	private void ensureCapacity(int extra) {
+		int needed = length + extra;
+		if (needed <= buffer.length)
+			return;
+
+		byte[] grown = new byte[Math.max(needed, buffer.length * 2)];
+		System.arraycopy(buffer, 0, grown, 0, length);
+		buffer = grown;
+	}
+}
@@ -0,0 +1,224 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import de.frankfurt.uni.vcp.units.Inventory;
+
+/**
+ * <h3>Compares building requests by string concatenation and by the
+ * {@link RequestEncoder}</h3>
+ *
+ * <p>
+ * The legacy methods of this class build the requests the way
+ * {@link TCPClient} did before, using {@code String +} and
+ * {@link DataOutputStream#writeUTF(String)}.
+ * </p>
+ *
+ * <p>
+ * {@link #main(String[])} first checks, that both ways produce the same
+ * frames byte by byte, then prints the time taken and the bytes allocated
+ * per request. Allocation is measured with
+ * {@code com.sun.management.ThreadMXBean}, so a HotSpot JVM is required.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class RequestEncoderBenchmark {
+
+	static final String CLIENT_ID = "6f1c2a64-5d1e-4c8a-9a51-3f0d2b7c9e10";
+	static final String CLIENT_KEY = "1326996639716";
+	static final String PLAYER_ID = "PLAYER_A1326996639716";
+	static final String GAME_ID = "TESTGAME1326996639716";
+
+	// LEGACY ENCODING
+
+	static String legacyMove(int unitId, int[][] path) {
+		String message = "type:sendgamedata clientid:" + CLIENT_ID + " clientkey:" + CLIENT_KEY + " playerid:" + PLAYER_ID
+				+ " data[[action][[move][unitid=" + unitId + " path=[";
+		for (int[] f : path)
+			message += "[" + f[0] + "," + f[1] + "]";
+		message += "] gameid=" + GAME_ID + "]]] end:end";
+		return message;
+	}
+
+	static String legacyTrade(Inventory give, Inventory get) {
+		return "type:sendgamedata clientid:" + CLIENT_ID + " clientkey:" + CLIENT_KEY + " playerid:" + PLAYER_ID
+				+ " data[[action][[trade][gameid=" + GAME_ID + " tradeoffererunitid=" + 3 + " tradepartnerunitid=" + 7 + " givegoods="
+				+ give + " getgoods=" + get + " ]]] end:end";
+	}
+
+	static String legacyChat(String text) {
+		return "type:sendgamedata clientid:" + CLIENT_ID + " clientkey:" + CLIENT_KEY + " playerid:" + PLAYER_ID
+				+ " data[[chat][senderplayerid=" + PLAYER_ID + " gameidreceiver=" + GAME_ID + " message=[" + text + "]]] end:end";
+	}
+
+	// ENCODER
+
+	static RequestEncoder gameData() {
+		return RequestEncoder.obtain().append("type:sendgamedata clientid:").append(CLIENT_ID).append(" clientkey:").append(CLIENT_KEY)
+				.append(" playerid:").append(PLAYER_ID);
+	}
+
+	/**
+	 * Same as {@link RequestEncoder#appendPath(java.util.List)}, which can not
+	 * be used here, because creating a {@link de.frankfurt.uni.vcp.nodes.Field}
+	 * requires a running application.
+	 */
+	static RequestEncoder move(int unitId, int[][] path) {
+		RequestEncoder request = gameData().append(" data[[action][[move][unitid=").append(unitId).append(" path=[");
+		for (int[] f : path)
+			request.appendCoordinate(f[0], f[1]);
+		return request.append("] gameid=").append(GAME_ID).append("]]] end:end");
+	}
+
+	static RequestEncoder trade(Inventory give, Inventory get) {
+		return gameData().append(" data[[action][[trade][gameid=").append(GAME_ID).append(" tradeoffererunitid=").append(3)
+				.append(" tradepartnerunitid=").append(7).append(" givegoods=").appendInventory(give).append(" getgoods=")
+				.appendInventory(get).append(" ]]] end:end");
+	}
+
+	static RequestEncoder chat(String text) {
+		return gameData().append(" data[[chat][senderplayerid=").append(PLAYER_ID).append(" gameidreceiver=").append(GAME_ID)
+				.append(" message=[").append(text).append("]]] end:end");
+	}
+
+	// MEASUREMENT
+
+	interface Encoder {
+		void encode(DataOutputStream out) throws IOException;
+	}
+
+	static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/** Discards everything, so only the encoding itself is measured. */
+	static final DataOutputStream NULL_STREAM = new DataOutputStream(new OutputStream() {
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	});
+
+	static void measure(String name, Encoder encoder, int rounds) throws IOException {
+		// WARM UP
+		for (int i = 0; i < rounds; ++i)
+			encoder.encode(NULL_STREAM);
+
+		long tid = Thread.currentThread().getId();
+		long bytes = THREADS.getThreadAllocatedBytes(tid);
+		long start = System.nanoTime();
+
+		for (int i = 0; i < rounds; ++i)
+			encoder.encode(NULL_STREAM);
+
+		long nanos = System.nanoTime() - start;
+		bytes = THREADS.getThreadAllocatedBytes(tid) - bytes;
+
+		System.out.println(String.format("%-24s %8.0f bytes/request %8.2f us/request", name, (double) bytes / rounds, nanos / 1e3
+				/ rounds));
+	}
+
+	static void check(String legacy, RequestEncoder encoder, String what) throws IOException {
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new DataOutputStream(expected).writeUTF(legacy);
+
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		encoder.writeTo(new DataOutputStream(actual));
+
+		if (!Arrays.equals(expected.toByteArray(), actual.toByteArray()) || !legacy.equals(encoder.toString()))
+			throw new IllegalStateException("encoder wrote " + what + " wrong");
+		encoder.release();
+	}
+
+	static int[][] path(int length) {
+		int[][] path = new int[length][];
+		for (int k = 0; k < length; ++k)
+			path[k] = new int[] { k / 2, k - k / 2 };
+		return path;
+	}
+
+	/**
+	 * Check the encoder against the legacy requests, then measure both
+	 * implementations.
+	 *
+	 * @param argv
+	 *            Optionally the number of rounds per measurement
+	 */
+	public static void main(String argv[]) throws Exception {
+		int rounds = (argv.length > 0) ? Integer.parseInt(argv[0]) : 200000;
+
+		final int[][] shortPath = path(4);
+		final int[][] longPath = path(60);
+		final Inventory give = new Inventory("[[1][0][2][0][0]]");
+		final Inventory get = new Inventory("[[0][3][0][0][1]]");
+
+		check(legacyMove(-12, shortPath), move(-12, shortPath), "short move");
+		check(legacyMove(Integer.MAX_VALUE, longPath), move(Integer.MAX_VALUE, longPath), "long move");
+		check(legacyTrade(give, get), trade(give, get), "trade");
+		check(legacyChat("Gr\u00fc\u00dfe \u20ac \u0000 []"), chat("Gr\u00fc\u00dfe \u20ac \u0000 []"), "chat");
+
+		measure("move (4)   legacy", new Encoder() {
+			@Override
+			public void encode(DataOutputStream out) throws IOException {
+				out.writeUTF(legacyMove(7, shortPath));
+			}
+		}, rounds);
+		measure("move (4)   encoder", new Encoder() {
+			@Override
+			public void encode(DataOutputStream out) throws IOException {
+				RequestEncoder request = move(7, shortPath);
+				request.writeTo(out);
+				request.release();
+			}
+		}, rounds);
+		measure("move (60)  legacy", new Encoder() {
+			@Override
+			public void encode(DataOutputStream out) throws IOException {
+				out.writeUTF(legacyMove(7, longPath));
+			}
+		}, rounds / 10);
+		measure("move (60)  encoder", new Encoder() {
+			@Override
+			public void encode(DataOutputStream out) throws IOException {
+				RequestEncoder request = move(7, longPath);
+				request.writeTo(out);
+				request.release();
+			}
+		}, rounds / 10);
+		measure("trade      legacy", new Encoder() {
+			@Override
+			public void encode(DataOutputStream out) throws IOException {
+				out.writeUTF(legacyTrade(give, get));
+			}
+		}, rounds);
+		measure("trade      encoder", new Encoder() {
+			@Override
+			public void encode(DataOutputStream out) throws IOException {
+				RequestEncoder request = trade(give, get);
+				request.writeTo(out);
+				request.release();
+			}
+		}, rounds);
+	}
+}
@@ -0,0 +1,281 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <h3>Counters and latency histogram of one type of request</h3>
+ *
+ * <p>
+ * The histogram has one bucket per power of two microseconds, so recording
+ * a sample takes a handful of atomic increments and no allocation.
+ * Percentiles are reported as the upper bound of their bucket, i.e. they
+ * may be up to twice the exact value.
+ * </p>
+ *
+ * <p>
+ * All methods are thread safe.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class RequestMetrics implements RequestMetricsMBean {
+
+	/** Number of buckets, the last one takes everything above 2^30 us */
+	static final int BUCKETS = 32;
+
+	private final String name;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong statusErrors = new AtomicLong();
+	private final AtomicLong protocolErrors = new AtomicLong();
+	private final AtomicLong ioErrors = new AtomicLong();
+
+	private final AtomicLong connects = new AtomicLong();
+	private final AtomicLong connectNanos = new AtomicLong();
+
+	private final AtomicLong replies = new AtomicLong();
+	private final AtomicLong latencyNanos = new AtomicLong();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong parses = new AtomicLong();
+	private final AtomicLong parseNanos = new AtomicLong();
+
+	private final AtomicLong requestBytes = new AtomicLong();
+	private final AtomicLong replyBytes = new AtomicLong();
+
+	/**
+	 * Construct empty metrics.
+	 *
+	 * @param name
+	 *            The type of request
+	 */
+	public RequestMetrics(String name) {
+		this.name = name;
+	}
+
+	// RECORDING
+
+	void sent(int bytes) {
+		requests.incrementAndGet();
+		requestBytes.addAndGet(bytes);
+	}
+
+	void connected(long nanos) {
+		connects.incrementAndGet();
+		connectNanos.addAndGet(nanos);
+	}
+
+	void replied(long nanos, int bytes) {
+		replies.incrementAndGet();
+		replyBytes.addAndGet(bytes);
+		latencyNanos.addAndGet(nanos);
+		histogram.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+
+		long max;
+		while (nanos > (max = maxLatencyNanos.get()))
+			if (maxLatencyNanos.compareAndSet(max, nanos))
+				break;
+	}
+
+	void parsed(long nanos) {
+		parses.incrementAndGet();
+		parseNanos.addAndGet(nanos);
+	}
+
+	void statusError() {
+		statusErrors.incrementAndGet();
+	}
+
+	void protocolError() {
+		protocolErrors.incrementAndGet();
+	}
+
+	void ioError() {
+		ioErrors.incrementAndGet();
+	}
+
+	/** Bucket k takes the values up to 2^k us. */
+	static int bucket(long micros) {
+		if (micros <= 1)
+			return 0;
+		return Math.min(64 - Long.numberOfLeadingZeros(micros - 1), BUCKETS - 1);
+	}
+
+	// READING
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	@Override
+	public long getStatusErrorCount() {
+		return statusErrors.get();
+	}
+
+	@Override
+	public long getProtocolErrorCount() {
+		return protocolErrors.get();
+	}
+
+	@Override
+	public long getIoErrorCount() {
+		return ioErrors.get();
+	}
+
+	@Override
+	public double getErrorRate() {
+		long n = requests.get();
+		return (n == 0) ? 0 : (double) (statusErrors.get() + protocolErrors.get() + ioErrors.get()) / n;
+	}
+
+	@Override
+	public long getConnectCount() {
+		return connects.get();
+	}
+
+	@Override
+	public long getMeanConnectMicros() {
+		return meanMicros(connectNanos.get(), connects.get());
+	}
+
+	@Override
+	public long getMeanLatencyMicros() {
+		return meanMicros(latencyNanos.get(), replies.get());
+	}
+
+	@Override
+	public long getMaxLatencyMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(maxLatencyNanos.get());
+	}
+
+	@Override
+	public long getLatency50thPercentileMicros() {
+		return percentile(0.5);
+	}
+
+	@Override
+	public long getLatency90thPercentileMicros() {
+		return percentile(0.9);
+	}
+
+	@Override
+	public long getLatency99thPercentileMicros() {
+		return percentile(0.99);
+	}
+
+	/**
+	 * Estimate a percentile of the round trip time.
+	 *
+	 * @param p
+	 *            The percentile, between 0 and 1
+	 * @return The upper bound of the bucket holding the percentile, 0 if
+	 *         there were no replies
+	 */
+	public long percentile(double p) {
+		long[] counts = snapshot();
+		long total = 0;
+		for (long c : counts)
+			total += c;
+		if (total == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(p * total);
+		long seen = 0;
+		for (int k = 0; k < BUCKETS; ++k) {
+			seen += counts[k];
+			if (seen >= rank && counts[k] > 0)
+				return 1L << k;
+		}
+		return 1L << (BUCKETS - 1);
+	}
+
+	@Override
+	public String getLatencyHistogram() {
+		long[] counts = snapshot();
+		StringBuilder string = new StringBuilder();
+
+		for (int k = 0; k < BUCKETS; ++k) {
+			if (counts[k] == 0)
+				continue;
+			if (string.length() > 0)
+				string.append(' ');
+			string.append("<=").append(1L << k).append("us:").append(counts[k]);
+		}
+		return string.toString();
+	}
+
+	@Override
+	public long getMeanParseMicros() {
+		return meanMicros(parseNanos.get(), parses.get());
+	}
+
+	@Override
+	public long getRequestBytes() {
+		return requestBytes.get();
+	}
+
+	@Override
+	public long getReplyBytes() {
+		return replyBytes.get();
+	}
+
+	@Override
+	public void reset() {
+		requests.set(0);
+		statusErrors.set(0);
+		protocolErrors.set(0);
+		ioErrors.set(0);
+		connects.set(0);
+		connectNanos.set(0);
+		replies.set(0);
+		latencyNanos.set(0);
+		maxLatencyNanos.set(0);
+		for (int k = 0; k < BUCKETS; ++k)
+			histogram.set(k, 0);
+		parses.set(0);
+		parseNanos.set(0);
+		requestBytes.set(0);
+		replyBytes.set(0);
+	}
+
+	private long[] snapshot() {
+		long[] counts = new long[BUCKETS];
+		for (int k = 0; k < BUCKETS; ++k)
+			counts[k] = histogram.get(k);
+		return counts;
+	}
+
+	private static long meanMicros(long nanos, long count) {
+		return (count == 0) ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos / count);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-12s %7d %5.1f%% %8d %8d %8d %8d %8d %8d %10d %10d", name, getRequestCount(), 100 * getErrorRate(),
+				getMeanConnectMicros(), getMeanLatencyMicros(), getLatency50thPercentileMicros(), getLatency99thPercentileMicros(),
+				getMaxLatencyMicros(), getMeanParseMicros(), getRequestBytes(), getReplyBytes());
+	}
+}
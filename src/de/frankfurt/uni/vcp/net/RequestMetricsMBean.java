@@ -0,0 +1,85 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+/**
+ * <h3>JMX view of the {@link RequestMetrics} of one type of request</h3>
+ *
+ * <p>
+ * Times are reported in microseconds. Latency is the time from sending a
+ * request to receiving the complete reply, parse time the time from
+ * receiving the reply to the parsed result.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public interface RequestMetricsMBean {
+
+	/** @return The type of request, e.g. {@code gameinfo} */
+	public String getName();
+
+	/** @return The number of requests sent */
+	public long getRequestCount();
+
+	/** @return The number of replies reporting {@code status:error} */
+	public long getStatusErrorCount();
+
+	/** @return The number of replies not conforming to the protocol */
+	public long getProtocolErrorCount();
+
+	/** @return The number of requests, which got no reply at all */
+	public long getIoErrorCount();
+
+	/** @return The share of requests failed for any reason, between 0 and 1 */
+	public double getErrorRate();
+
+	/** @return The number of connections opened for this type of request */
+	public long getConnectCount();
+
+	/** @return The mean time to open a connection */
+	public long getMeanConnectMicros();
+
+	/** @return The mean round trip time */
+	public long getMeanLatencyMicros();
+
+	/** @return The longest round trip time */
+	public long getMaxLatencyMicros();
+
+	/** @return The round trip time not exceeded by half of the requests */
+	public long getLatency50thPercentileMicros();
+
+	/** @return The round trip time not exceeded by 90% of the requests */
+	public long getLatency90thPercentileMicros();
+
+	/** @return The round trip time not exceeded by 99% of the requests */
+	public long getLatency99thPercentileMicros();
+
+	/** @return The round trip times as {@code <=upper bound:count} pairs */
+	public String getLatencyHistogram();
+
+	/** @return The mean time spent parsing a reply */
+	public long getMeanParseMicros();
+
+	/** @return The number of bytes sent, including the frame headers */
+	public long getRequestBytes();
+
+	/** @return The number of bytes received, including the frame headers */
+	public long getReplyBytes();
+
+	/**
+	 * Set all counters back to zero.
+	 */
+	public void reset();
+}
@@ -0,0 +1,248 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h3>Cache for replies to requests, whose answer does not change</h3>
+ *
+ * <p>
+ * Entries are keyed by the type of the request, e.g. {@code "mappreview"},
+ * and its argument, e.g. the map id. Every type has its own time to live,
+ * types without one are not cached at all. If more than
+ * {@code maxEntries} replies are cached, the least recently used one is
+ * evicted.
+ * </p>
+ *
+ * <p>
+ * All methods are thread safe. Cached values are shared between all callers,
+ * so they must not be modified.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class ResponseCache {
+
+	/** Identifies a request by its type and argument. */
+	private static class Key {
+
+		final String type;
+		final String argument;
+
+		Key(String type, String argument) {
+			this.type = type;
+			this.argument = argument;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+
+			Key other = (Key) o;
+			return type.equals(other.type) && (argument == null ? other.argument == null : argument.equals(other.argument));
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * type.hashCode() + (argument == null ? 0 : argument.hashCode());
+		}
+	}
+
+	/** A cached reply together with the time it expires. */
+	private static class Entry {
+
+		final Object value;
+
+		/** Expiry time in terms of {@link System#nanoTime()} */
+		final long expires;
+
+		Entry(Object value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+
+	/** Maximum number of cached replies */
+	private final int maxEntries;
+
+	/** Time to live per request type, in nanoseconds */
+	private final Map<String, Long> timesToLive = new HashMap<String, Long>();
+
+	/** The cached replies, the least recently used one first. */
+	private final LinkedHashMap<Key, Entry> entries;
+
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Construct a new, empty cache. No request type is cached, until its time
+	 * to live is set.
+	 *
+	 * @param maxEntries
+	 *            The maximum number of cached replies
+	 */
+	public ResponseCache(final int maxEntries) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Get the maximum number of cached replies.
+	 *
+	 * @return The size of the cache
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Set how long replies to a type of request are cached.
+	 *
+	 * @param type
+	 *            The type of the request
+	 * @param time
+	 *            The time to live, 0 to stop caching this type
+	 * @param unit
+	 *            The unit of {@code time}
+	 */
+	public synchronized void setTimeToLive(String type, long time, TimeUnit unit) {
+		if (time <= 0) {
+			timesToLive.remove(type);
+			invalidate(type);
+		} else {
+			timesToLive.put(type, unit.toNanos(time));
+		}
+	}
+
+	/**
+	 * Look up a cached reply.
+	 *
+	 * @param type
+	 *            The type of the request
+	 * @param argument
+	 *            The argument of the request, {@code null} if there is none
+	 * @return The cached reply, {@code null} if there is none or it has
+	 *         expired
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T get(String type, String argument) {
+		Key key = new Key(type, argument);
+		Entry entry = entries.get(key);
+
+		if (entry != null && System.nanoTime() - entry.expires < 0) {
+			++hits;
+			return (T) entry.value;
+		}
+
+		if (entry != null)
+			entries.remove(key);
+		++misses;
+		return null;
+	}
+
+	/**
+	 * Cache a reply, if its type of request is cached at all.
+	 *
+	 * @param type
+	 *            The type of the request
+	 * @param argument
+	 *            The argument of the request, {@code null} if there is none
+	 * @param value
+	 *            The reply to cache
+	 */
+	public synchronized void put(String type, String argument, Object value) {
+		Long ttl = timesToLive.get(type);
+		if (ttl == null || value == null)
+			return;
+
+		entries.put(new Key(type, argument), new Entry(value, System.nanoTime() + ttl));
+	}
+
+	/**
+	 * Drop the cached reply to a single request.
+	 *
+	 * @param type
+	 *            The type of the request
+	 * @param argument
+	 *            The argument of the request, {@code null} if there is none
+	 */
+	public synchronized void invalidate(String type, String argument) {
+		entries.remove(new Key(type, argument));
+	}
+
+	/**
+	 * Drop all cached replies to a type of request.
+	 *
+	 * @param type
+	 *            The type of the request
+	 */
+	public synchronized void invalidate(String type) {
+		Iterator<Key> it = entries.keySet().iterator();
+		while (it.hasNext())
+			if (it.next().type.equals(type))
+				it.remove();
+	}
+
+	/**
+	 * Drop all cached replies.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Get the number of currently cached replies, including expired ones not
+	 * yet looked up again.
+	 *
+	 * @return The number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Get the number of lookups answered from the cache.
+	 *
+	 * @return The number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the number of lookups, which had to be sent to the server.
+	 *
+	 * @return The number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
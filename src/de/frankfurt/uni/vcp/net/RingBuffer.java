@@ -0,0 +1,135 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <h3>Bounded lock-free queue for one producer and one consumer thread</h3>
+ *
+ * <p>
+ * Hands elements from a background thread to the render thread without
+ * locking either of them. The producer only writes {@link #tail}, the
+ * consumer only writes {@link #head}; each publishes its progress with an
+ * ordered write, which is all the other thread needs to see the slots
+ * filled or freed.
+ * </p>
+ *
+ * <p>
+ * {@link #offer(Object)} must always be called by the same thread, and so
+ * must {@link #poll()}. The other methods may be called by any thread.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class RingBuffer<E> {
+
+	private final AtomicReferenceArray<E> slots;
+
+	private final int mask;
+
+	/** Number of elements taken so far, written by the consumer only */
+	private final AtomicLong head = new AtomicLong();
+
+	/** Number of elements added so far, written by the producer only */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Construct a new empty buffer.
+	 *
+	 * @param capacity
+	 *            The minimum number of elements held, rounded up to a power
+	 *            of two
+	 */
+	public RingBuffer(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity " + capacity);
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+
+		slots = new AtomicReferenceArray<E>(size);
+		mask = size - 1;
+	}
+
+	/**
+	 * Add an element, if there is room. Producer thread only.
+	 *
+	 * @param element
+	 *            The element, not {@code null}
+	 * @return {@code false} if the buffer is full
+	 */
+	public boolean offer(E element) {
+		if (element == null)
+			throw new NullPointerException();
+
+		long t = tail.get();
+		if (t - head.get() >= slots.length())
+			return false;
+
+		slots.lazySet((int) t & mask, element);
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Take the oldest element. Consumer thread only.
+	 *
+	 * @return The element, {@code null} if the buffer is empty
+	 */
+	public E poll() {
+		long h = head.get();
+		if (h >= tail.get())
+			return null;
+
+		int index = (int) h & mask;
+		E element = slots.get(index);
+		slots.lazySet(index, null);
+		head.lazySet(h + 1);
+		return element;
+	}
+
+	/**
+	 * Get the number of elements held. Only a snapshot, if the producer or
+	 * consumer are active.
+	 *
+	 * @return The number of elements
+	 */
+	public int size() {
+		// read head first, so the difference never becomes negative
+		long h = head.get();
+		return (int) (tail.get() - h);
+	}
+
+	/**
+	 * Check whether there are no elements.
+	 *
+	 * @return {@code true} if empty
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Get the number of elements the buffer can hold.
+	 *
+	 * @return The capacity, a power of two
+	 */
+	public int capacity() {
+		return slots.length();
+	}
+}
@@ -18,11 +18,15 @@ import java.io.*;
 import java.net.*;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import de.frankfurt.uni.vcp.config.MapGrid;
 import de.frankfurt.uni.vcp.helpers.LogHelper;
 import de.frankfurt.uni.vcp.nodes.Field;
 import de.frankfurt.uni.vcp.units.Inventory;
@@ -76,6 +80,43 @@ public class TCPClient {
 
 	private String gameOwnerKey;
 
+	/**
+	 * Number of consecutive kept alive connections found closed by the server,
+	 * after which the client falls back to one socket per request.
+	 */
+	static final int STALE_CONNECTION_LIMIT = 3;
+
+	/**
+	 * The pool of kept alive connections, {@code null} if every request opens
+	 * its own socket.
+	 */
+	private volatile ConnectionPool pool;
+
+	/** Consecutive kept alive connections found closed by the server. */
+	private int staleConnections = 0;
+
+	/**
+	 * Requests, which only read the state of the server. They may safely be
+	 * sent again, if the connection was lost while waiting for the reply.
+	 */
+	static final Set<String> READ_ONLY_REQUESTS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("getclients", "getinfo",
+			"gamelist", "maplist", "mappreview", "unittype", "gameinfo", "terrainmap", "unitmap", "unitinfo", "playerinfo")));
+
+	/** Maximum number of replies kept by the {@link #getResponseCache()} */
+	static final int RESPONSE_CACHE_SIZE = 64;
+
+	/** Minutes a map list is cached, maps are rarely added to a server. */
+	static final long MAPLIST_TTL = 1;
+
+	/** Minutes map previews and unit types are cached, they never change. */
+	static final long MAP_DATA_TTL = 30;
+
+	/** Replies to requests for static data, i.e. maps and unit types */
+	private final ResponseCache cache = new ResponseCache(RESPONSE_CACHE_SIZE);
+
+	/** Records latency, size and errors of every request */
+	private volatile NetworkMetrics metrics = NetworkMetrics.getDefault();
+
 	/**
 	 * To ensure charaters entered by players only contains valid characters
 	 * every non-valid charater has to be removed from the string entered.
@@ -234,63 +275,96 @@ public class TCPClient {
 	}
 
 	/**
-	 * Parse a 2 dimensional array of int values from a string consisting of a
-	 * sequence of row descriptions enclosed in braces. Each row description of
-	 * the input string hast to consist of a string representation of the stored
-	 * int values enclosed in braces.
+	 * Find the value of a {@code key=value} pair in a string, without
+	 * splitting it.
+	 * 
+	 * @param string
+	 *            The string to search
+	 * @param key
+	 *            The key to search for
+	 * @return The index of the first character of the value, or -1 if the key
+	 *         is not found
+	 */
+	public static int indexOfValue(String string, String key) {
+		int from = 0;
+		int pos;
+
+		while ((pos = string.indexOf(key, from)) >= 0) {
+			int end = pos + key.length();
+			boolean start = (pos == 0) || string.charAt(pos - 1) == ' ' || string.charAt(pos - 1) == '[';
+
+			if (start && end < string.length() && string.charAt(end) == '=')
+				return end + 1;
+			from = pos + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Parse a grid of int values from a string consisting of a sequence of
+	 * column descriptions enclosed in braces, e.g.
+	 * {@code [[[1][0]][[1][1]]]} for a grid of two columns and two rows.
+	 * 
+	 * <p>
+	 * The values are parsed in a single pass straight into the array backing
+	 * the {@link MapGrid}, no intermediate rows or strings are created.
+	 * </p>
 	 * 
 	 * @param string
-	 *            The string to convert
-	 * @return The Array consisting of the values extracted from the string
+	 *            The string to parse
+	 * @param start
+	 *            The index of the opening brace of the grid
+	 * @return The grid consisting of the values extracted from the string
+	 * @throws ProtocolError
+	 *             The columns are of different length
 	 */
-	public static int[][] parseIntTable(String string) {
+	public static MapGrid parseGrid(String string, int start) throws ProtocolError {
+		if (start < 0 || start >= string.length() || string.charAt(start) != '[')
+			throw new ProtocolError("grid", string);
+
+		// every value takes at least three characters: [0]
+		int[] cells = new int[(string.length() - start) / 3];
+		int n = 0;
+
 		int depth = 0;
-		List<int[]> rows = new LinkedList<int[]>();
-		List<Integer> row = null;
+		int width = 0;
+		int height = -1;
+		int columnStart = 0;
 
-		for (int pos = 0; pos < string.length(); ++pos) {
+		for (int pos = start; pos < string.length(); ++pos) {
 			char c = string.charAt(pos);
-			switch (c) {
-			case '[':
+
+			if (c == '[') {
 				++depth;
-				if (depth == 1)
-					row = new ArrayList<Integer>();
-				break;
-			case ']':
+			} else if (c == ']') {
 				--depth;
-				if (depth == 1 && string.charAt(pos + 1) == ']') {
-					int[] rowData = new int[row.size()];
-					for (int i = 0; i < row.size(); ++i)
-						rowData[i] = row.get(i);
-					rows.add(rowData);
+				if (depth == 1) {
+					// COLUMN
+					int length = n - columnStart;
+					if (height < 0)
+						height = length;
+					else if (length != height)
+						throw new ProtocolError("grid", string);
+
+					++width;
+					columnStart = n;
+				} else if (depth == 0) {
+					break;
 				}
-				break;
-			default:
-				int start = pos;
-				while (Character.isDigit(string.charAt(pos + 1)))
+			} else if (depth >= 2 && (c == '-' || (c >= '0' && c <= '9'))) {
+				// VALUE
+				boolean negative = (c == '-');
+				int value = negative ? 0 : c - '0';
+
+				while (pos + 1 < string.length() && (c = string.charAt(pos + 1)) >= '0' && c <= '9') {
+					value = value * 10 + (c - '0');
 					++pos;
-				row.add(Integer.parseInt(string.substring(start, pos + 1)));
-				break;
+				}
+				cells[n++] = negative ? -value : value;
 			}
 		}
 
-		int csv[][] = new int[rows.size()][];
-		for (int i = 0; i < rows.size(); ++i)
-			csv[i] = rows.get(i);
-
-		int width = csv.length;
-		int height = csv[0].length;
-
-		int correctCsv[][] = new int[height][];
-
-		for (int i = 0; i < height; ++i)
-			correctCsv[i] = new int[width];
-
-		for (int i = 0; i < width; ++i)
-			for (int j = 0; j < height; ++j)
-				correctCsv[i][j] = csv[j][i];
-
-		return correctCsv;
+		return new MapGrid(cells, width, Math.max(height, 0));
 	}
 
 	/**
@@ -312,6 +386,40 @@ public class TCPClient {
 		this.clientId = uuid.toString();
 
 		this.clientInfo = clientInfo;
+
+		cache.setTimeToLive("maplist", MAPLIST_TTL, TimeUnit.MINUTES);
+		cache.setTimeToLive("mappreview", MAP_DATA_TTL, TimeUnit.MINUTES);
+		cache.setTimeToLive("unittype", MAP_DATA_TTL, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Get the cache answering the maplist, mappreview and unittype requests.
+	 * It may be used to change the times to live, or to invalidate replies.
+	 * 
+	 * @return The response cache of this client
+	 */
+	public ResponseCache getResponseCache() {
+		return cache;
+	}
+
+	/**
+	 * Get the metrics recording every request of this client.
+	 * 
+	 * @return The metrics, shared with all clients by default
+	 */
+	public NetworkMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Record the requests of this client somewhere else, e.g. to keep the
+	 * metrics of several clients in a benchmark apart.
+	 * 
+	 * @param metrics
+	 *            The metrics to record to
+	 */
+	public void setMetrics(NetworkMetrics metrics) {
+		this.metrics = metrics;
 	}
 
 	/**
@@ -329,37 +437,219 @@ public class TCPClient {
 	 */
 	// SEND
 	String sendMessage(String message) throws IOException, StatusError, ProtocolError {
+		return sendMessage(RequestEncoder.obtain().append(message));
+	}
 
-		Socket socket = new Socket(serverAddress, port);
-		DataOutputStream oStream = new DataOutputStream(new DataOutputStream(socket.getOutputStream()));
-		DataInputStream iStream = new DataInputStream(new DataInputStream(socket.getInputStream()));
-
-		// REQUEST
-		LogHelper.getLogger().debug("WRITE: " + message);
-		oStream.writeUTF(message);
-		oStream.flush();
-
-		// REPLY
+	/**
+	 * Send an encoded request to the server, and wait for the server reply,
+	 * checking the server reply for possible errors. The encoder is released
+	 * afterwards.
+	 * 
+	 * @param request
+	 *            The request to send to the server
+	 * @return The reply sent by the server
+	 * @throws StatusError
+	 *             The server reply reports an error in the previous
+	 *             transmission
+	 * @throws ProtocolError
+	 *             The reply does not conform to the protocol specification
+	 */
+	String sendMessage(RequestEncoder request) throws IOException, StatusError, ProtocolError {
+		String name = request.getName();
+		String message;
 		String reply;
-		reply = iStream.readUTF();
 
-		LogHelper.getLogger().debug("READ:  " + reply);
+		try {
+			// REQUEST
+			if (LogHelper.getLogger().isDebugEnabled())
+				LogHelper.getLogger().debug("WRITE: " + request);
+			metrics.sent(name, request.size());
+
+			// REPLY
+			long start = System.nanoTime();
+			try {
+				ConnectionPool pool = this.pool;
+				reply = (pool != null) ? sendPooled(pool, request) : sendSingle(request);
+			} catch (IOException e) {
+				metrics.ioError(name);
+				throw e;
+			}
+			metrics.replied(name, System.nanoTime() - start, NetworkMetrics.frameLength(reply));
+
+			if (LogHelper.getLogger().isDebugEnabled())
+				LogHelper.getLogger().debug("READ:  " + reply);
+			if (isStatusOk(reply))
+				return reply;
 
-		socket.close();
+			// keep the request for the error report
+			message = request.toString();
+		} finally {
+			request.release();
+		}
 
 		// ERROR
 		String[] parts = reply.split(" ");
-		if (parts[0].equals("status:ok"))
-			return reply;
-		else if (parts[0].equals("status:error")) {
+		if (parts[0].equals("status:error")) {
 		    String msg = parts[1].split(":")[1];
 		    for (int i=2; i<parts.length; ++i)
 		        msg += " " + parts[i];
+		    metrics.statusError(name);
 			throw new StatusError(msg, reply);
 		}
-		else
+		else {
+			metrics.protocolError(name);
 			throw new ProtocolError(message, reply);
+		}
+
+	}
+
+	private static boolean isStatusOk(String reply) {
+		String ok = "status:ok";
+		return reply.startsWith(ok) && (reply.length() == ok.length() || reply.charAt(ok.length()) == ' ');
+	}
+
+	/**
+	 * Send a request over a socket opened for this request only.
+	 * 
+	 * @param request
+	 *            The request to send to the server
+	 * @return The unchecked reply of the server
+	 */
+	private String sendSingle(RequestEncoder request) throws IOException {
+		long start = System.nanoTime();
+		Socket socket = new Socket(serverAddress, port);
+		metrics.connected(request.getName(), System.nanoTime() - start);
+
+		try {
+			DataOutputStream oStream = new DataOutputStream(socket.getOutputStream());
+			DataInputStream iStream = new DataInputStream(socket.getInputStream());
+
+			request.writeTo(oStream);
+			oStream.flush();
+
+			return iStream.readUTF();
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Send a message over a kept alive connection of the pool.
+	 * 
+	 * <p>
+	 * If a reused connection turns out to be closed by the server, the request
+	 * is sent again over a fresh connection. This happens only, if writing the
+	 * request failed, or if it is one of the {@link #READ_ONLY_REQUESTS}.
+	 * Otherwise the server may have performed it already, e.g. a move, and the
+	 * error is passed on to the caller. After
+	 * {@link #STALE_CONNECTION_LIMIT} such connections in a row, the server is
+	 * assumed to close the stream after every reply and the client falls back
+	 * to one socket per request.
+	 * </p>
+	 * 
+	 * @param pool
+	 *            The pool to take the connection from
+	 * @param request
+	 *            The request to send to the server
+	 * @return The unchecked reply of the server
+	 */
+	private String sendPooled(ConnectionPool pool, RequestEncoder request) throws IOException {
+		ConnectionPool.Connection c = pool.acquire();
+		boolean reused = c.uses > 0;
+		if (!reused)
+			metrics.connected(request.getName(), c.connectNanos);
+
+		boolean sent = false;
+		try {
+			c.send(request);
+			sent = true;
+			String reply = c.receive();
+			pool.release(c);
+			if (reused)
+				connectionReused();
+			return reply;
+		} catch (IOException e) {
+			pool.discard(c);
+
+			// a fresh connection failed, so there is nothing to fall back to.
+			if (!reused)
+				throw e;
+
+			// the server may have received the request and performed it
+			if (sent && !READ_ONLY_REQUESTS.contains(request.getName())) {
+				connectionStale(pool);
+				throw e;
+			}
+		}
+
+		// The server closed the kept alive connection, before we got a reply.
+		LogHelper.getLogger().debug("Kept alive connection was closed by the server, retrying.");
+		if (connectionStale(pool)) {
+			LogHelper.getLogger().info("Server closes connections after every reply, using one socket per request.");
+			return sendSingle(request);
+		}
+
+		ConnectionPool.Connection fresh = pool.acquireFresh();
+		metrics.connected(request.getName(), fresh.connectNanos);
+		try {
+			String reply = fresh.exchange(request);
+			pool.release(fresh);
+			return reply;
+		} catch (IOException e) {
+			pool.discard(fresh);
+			throw e;
+		}
+	}
+
+	private synchronized void connectionReused() {
+		staleConnections = 0;
+	}
+
+	private synchronized boolean connectionStale(ConnectionPool stale) {
+		if (++staleConnections < STALE_CONNECTION_LIMIT)
+			return false;
+
+		// pooling may have been enabled again in the meantime
+		if (pool == stale)
+			disablePooling();
+		return true;
+	}
 
+	/**
+	 * Keep connections to the server alive and reuse them for subsequent
+	 * requests, instead of opening a new socket for every request.
+	 * 
+	 * <p>
+	 * If the server turns out to close the stream after every reply, the
+	 * client silently falls back to one socket per request.
+	 * </p>
+	 * 
+	 * @param maxConnections
+	 *            The maximum number of simultaneously open connections
+	 */
+	public synchronized void enablePooling(int maxConnections) {
+		disablePooling();
+		staleConnections = 0;
+		pool = new ConnectionPool(serverAddress, port, maxConnections);
+	}
+
+	/**
+	 * Close all kept alive connections and open one socket per request again.
+	 */
+	public synchronized void disablePooling() {
+		if (pool != null) {
+			pool.close();
+			pool = null;
+		}
+	}
+
+	/**
+	 * Check whether this client keeps its connections alive.
+	 * 
+	 * @return {@code true} if requests are sent over pooled connections
+	 */
+	public boolean isPooling() {
+		return pool != null;
 	}
 
 	// REQUESTS
@@ -617,6 +907,58 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	
 	
 	
+	/**
+	 * Start a request of a given type, sent on behalf of this client.
+	 * 
+	 * @param type
+	 *            The type of the request
+	 * @return The encoder holding the beginning of the request
+	 */
+	private RequestEncoder request(String type) {
+		return RequestEncoder.obtain().named(type).append("type:").append(type).append(" clientid:").append(clientId);
+	}
+
+	/**
+	 * Start a sendgamedata request, which is not sent on behalf of a player.
+	 * 
+	 * @param name
+	 *            The name of the request within the data part, e.g.
+	 *            {@code gamelist}, under which it is recorded by the
+	 *            {@link NetworkMetrics}
+	 * @return The encoder holding the beginning of the request
+	 */
+	private RequestEncoder gameData(String name) {
+		return request("sendgamedata").named(name).append(" clientkey:").append(clientKey);
+	}
+
+	/**
+	 * Start a sendgamedata request on behalf of a player.
+	 * 
+	 * @param name
+	 *            The name of the request within the data part, e.g.
+	 *            {@code gameinfo}
+	 * @param playerId
+	 *            The id of the player performing the request
+	 * @return The encoder holding the beginning of the request
+	 */
+	private RequestEncoder gameData(String name, String playerId) {
+		return gameData(name).append(" playerid:").append(playerId);
+	}
+
+	/**
+	 * Record the time spent parsing a reply since it was received.
+	 * 
+	 * @param name
+	 *            The type of the request
+	 * @param result
+	 *            The parsed reply
+	 * @return The parsed reply
+	 */
+	private <T> T parsed(String name, T result) {
+		metrics.parsed(name);
+		return result;
+	}
+
 	/**
 	 * Request a list of all clients currently connected to the server
 	 * 
@@ -628,12 +970,11 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public List<String> getclients() throws IOException, StatusError, ProtocolError {
-		String message = "type:getclients clientid:" + clientId + " end:end";
-		String reply = sendMessage(message);
+		String reply = sendMessage(request("getclients").append(" end:end"));
 
 		String clients = getPart(reply.split(" "), "clients");
 		if (clients == null)
-			throw new ProtocolError(message, reply);
+			throw new ProtocolError("getclients", reply);
 
 		clients = clients.substring("clients".length() + 1, clients.length() - 1);
 		return Arrays.asList(clients.split(","));
@@ -650,8 +991,7 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public void logon() throws IOException, StatusError, ProtocolError {
-		String message = "type:logon clientid:" + clientId + " clientinfo:" + clientInfo + " end:end";
-		String reply = sendMessage(message);
+		String reply = sendMessage(request("logon").append(" clientinfo:").append(clientInfo).append(" end:end"));
 
 		clientKey = parseValue(reply, "clientkey");
 	}
@@ -668,10 +1008,9 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public String getinfo() throws IOException, StatusError, ProtocolError {
-		String message = "type:getinfo clientid:" + clientId + " clientkey:" + clientKey + " requestclientid:" + clientId + " end:end";
-
 		@SuppressWarnings("unused")
-		String reply = sendMessage(message);
+		String reply = sendMessage(request("getinfo").append(" clientkey:").append(clientKey).append(" requestclientid:").append(clientId)
+				.append(" end:end"));
 
 		return null;
 	}
@@ -687,20 +1026,26 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public List<MessageInfo> getdata() throws IOException, StatusError, ProtocolError {
-		String message = "type:getdata clientid:" + clientId + " clientkey:" + clientKey + " end:end";
-		String reply = sendMessage(message);
+		String reply = sendMessage(request("getdata").append(" clientkey:").append(clientKey).append(" end:end"));
 
-		String string = splitBrace(reply).get(0);
-		List<MessageInfo> list = new LinkedList<MessageInfo>();
-		for (String s : splitBrace(string)) {
-			String incomingtime = parseValue(s, "incomingtime");
-			String senderid = parseValue(s, "senderid");
+		return parsed("getdata", parseMessages(reply));
+	}
 
-			String data = splitBrace(splitBrace(s).get(0)).get(1);
-			String messageString = splitBrace(data).get(0);
+	/**
+	 * Parse the messages of a getdata reply.
+	 * 
+	 * @param reply
+	 *            The reply of the server
+	 * @return The list of messages contained in the reply
+	 */
+	static List<MessageInfo> parseMessages(String reply) {
+		List<MessageInfo> list = new LinkedList<MessageInfo>();
 
-			MessageInfo info = new MessageInfo(incomingtime, senderid, messageString, data);
-			list.add(info);
+		// data[[...] [...] ...]
+		ReplyTokenizer t = new ReplyTokenizer(reply);
+		if (t.nextGroup()) {
+			while (t.nextGroup())
+				list.add(new MessageInfo(t));
 		}
 
 		return list;
@@ -730,12 +1075,11 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 */
 	// [INFO]
 	public List<String> gamelist() throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " data[[info][infotype=gamelist]] end:end";
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("gamelist").append(" data[[info][infotype=gamelist]] end:end"));
 
 		String gameString = getPart(reply.split(" "), "gamelist=");
 		if (gameString == null)
-			throw new ProtocolError(message, reply);
+			throw new ProtocolError("gamelist", reply);
 
 		gameString = gameString.substring(10, gameString.length() - 1);
 
@@ -745,13 +1089,14 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 			if (!s.equals(""))
 				gameList.add(s);
 
-		return gameList;
+		return parsed("gamelist", gameList);
 	}
 
 	/**
-	 * Request a list of all maps known to the server
+	 * Request a list of all maps known to the server. The list is cached for
+	 * {@link #MAPLIST_TTL} minutes.
 	 * 
-	 * @return The list of maps
+	 * @return The unmodifiable list of maps
 	 * @throws StatusError
 	 *             The server reply reports an error in the previous
 	 *             transmission
@@ -759,12 +1104,15 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public List<String> maplist() throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " data[[info][infotype=maplist]] end:end";
-		String reply = sendMessage(message);
+		List<String> cached = cache.get("maplist", null);
+		if (cached != null)
+			return cached;
+
+		String reply = sendMessage(gameData("maplist").append(" data[[info][infotype=maplist]] end:end"));
 
 		String mapString = getPart(reply.split(" "), "maplist=");
 		if (mapString == null)
-			throw new ProtocolError(message, reply);
+			throw new ProtocolError("maplist", reply);
 
 		mapString = mapString.substring(9, mapString.length() - 1);
 
@@ -774,11 +1122,14 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 			if (!s.equals(""))
 				mapList.add(s);
 
-		return mapList;
+		mapList = Collections.unmodifiableList(mapList);
+		cache.put("maplist", null, mapList);
+		return parsed("maplist", mapList);
 	}
 
 	/**
-	 * Request a preview of a named map
+	 * Request a preview of a named map. Previews are cached, so they must not
+	 * be modified.
 	 * 
 	 * @return An array consisting of the terrainmap and the unitmap
 	 * @throws StatusError
@@ -788,29 +1139,28 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public MapPreview mappreview(String mapId) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " data[[info][infotype=mappreview" + " mapid="
-				+ mapId + "]] end:end";
-		String reply = sendMessage(message);
-
-		reply = reply.substring(23, reply.length() - 1);
+		MapPreview cached = cache.get("mappreview", mapId);
+		if (cached != null)
+			return cached;
 
-		String terrainmap = parseValue(reply, "=", "terrainmappreview");
-		String unitmap = parseValue(reply, "=", "unitmappreview");
+		String reply = sendMessage(gameData("mappreview").append(" data[[info][infotype=mappreview mapid=").append(mapId).append("]] end:end"));
 
-		// TODO: Was soll bitte damit werden?:
-		// int[][][] info = new int[2][][];
+		MapGrid terrainmap = parseGrid(reply, indexOfValue(reply, "terrainmappreview"));
+		MapGrid unitmap = parseGrid(reply, indexOfValue(reply, "unitmappreview"));
 
-		return new MapPreview(parseIntTable(terrainmap.substring(1, terrainmap.length() - 1)), parseIntTable(unitmap.substring(1,
-				unitmap.length() - 1)), 2);
+		MapPreview preview = new MapPreview(terrainmap, unitmap, 2);
+		cache.put("mappreview", mapId, preview);
+		return parsed("mappreview", preview);
 	}
 
 	/**
-	 * Request info about the unit types present on a given map
+	 * Request info about the unit types present on a given map. The types are
+	 * cached per map.
 	 * 
 	 * @param mapId
 	 *            The name of the map to request information about.
-	 * @return A List of {@link TypeInfo} objects, each describing a particluar
-	 *         unittype in the game
+	 * @return An unmodifiable List of {@link TypeInfo} objects, each
+	 *         describing a particluar unittype in the game
 	 * @throws StatusError
 	 *             The server reply reports an error in the previous
 	 *             transmission
@@ -818,31 +1168,34 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public List<TypeInfo> unittype(String mapId) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " data[[info][infotype=unittype" + " mapid=" + mapId
-				+ "]] end:end";
-		String reply = sendMessage(message);
-
-		List<TypeInfo> list = new LinkedList<TypeInfo>();
-
-		if (splitBrace(reply).isEmpty())
-			throw new ProtocolError(message, reply);
+		List<TypeInfo> cached = cache.get("unittype", mapId);
+		if (cached != null)
+			return cached;
 
-		String string = splitBrace(reply).get(0);
+		String reply = sendMessage(gameData("unittype").append(" data[[info][infotype=unittype mapid=").append(mapId).append("]] end:end"));
 
-		List<String> parts = splitBrace(string);
-		if (parts.size() == 0 || parts.size() % 2 != 1)
-			throw new ProtocolError(message, reply);
-
-		Iterator<String> i = parts.iterator();
-		i.next();
-		while (i.hasNext()) {
-			String name = i.next();
-			String values = i.next();
+		List<TypeInfo> list = new LinkedList<TypeInfo>();
 
-			TypeInfo info = new TypeInfo("name=" + name + " " + values);
-			list.add(info);
+		// unittypeinfo=[types[[...]] [NAME][...] ...]
+		ReplyTokenizer t = new ReplyTokenizer(reply);
+		if (!t.nextGroup() || !t.nextGroup())
+			throw new ProtocolError("unittype", reply);
+		t.skipGroup();
+
+		while (t.nextGroup()) {
+			if (t.next() != ReplyTokenizer.ATOM)
+				throw new ProtocolError("unittype", reply);
+			String name = t.text();
+			t.skipGroup();
+
+			if (!t.nextGroup())
+				throw new ProtocolError("unittype", reply);
+			list.add(new TypeInfo(name, t));
 		}
-		return list;
+
+		list = Collections.unmodifiableList(list);
+		cache.put("unittype", mapId, list);
+		return parsed("unittype", list);
 	}
 
 	/**
@@ -865,9 +1218,8 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 		String key = UUID.randomUUID().toString();
 		gameOwnerKey = key;
 
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " data[[option][[creategame][mapid=" + mapId
-				+ " gamename=" + gameName + " gameownerkey=" + key + "]]] end:end";
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("creategame").append(" data[[option][[creategame][mapid=").append(mapId).append(" gamename=").append(gameName)
+				.append(" gameownerkey=").append(key).append("]]] end:end"));
 
 		return parseValue(reply, "=", "gameid");
 	}
@@ -887,10 +1239,8 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public String addplayer(String gameId, String playerName) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " data[[option][[addplayer][gameid=" + gameId
-				+ " playername=" + playerName + "]]] end:end";
-
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("addplayer").append(" data[[option][[addplayer][gameid=").append(gameId).append(" playername=")
+				.append(playerName).append("]]] end:end"));
 		return parseValue(reply, "playerid");
 	}
 
@@ -906,8 +1256,8 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public void startgame(String gameId) throws IOException, StatusError, ProtocolError {
-		sendMessage("type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " data[[option][[startgame][gameid=" + gameId
-				+ " gameownerkey=" + gameOwnerKey + "]]] end:end");
+		sendMessage(gameData("startgame").append(" data[[option][[startgame][gameid=").append(gameId).append(" gameownerkey=").append(gameOwnerKey)
+				.append("]]] end:end"));
 	}
 
 
@@ -925,18 +1275,13 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
      *             The reply does not conform to the protocol specification
      */	
     public void delplayer(String gameId, String playerId, String playerDelName) throws IOException, StatusError, ProtocolError {
-        String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId;
-        message += " data[[option][[delplayer][gameid=" + gameId 
-                + " playerdelname=" + playerDelName + " gameownerkey=" + gameOwnerKey + "]]] end:end";
-        
-        sendMessage(message);
+        sendMessage(gameData("delplayer", playerId).append(" data[[option][[delplayer][gameid=").append(gameId).append(" playerdelname=")
+                .append(playerDelName).append(" gameownerkey=").append(gameOwnerKey).append("]]] end:end"));
     }
     
     public void delplayer(String gameId, String playerId) throws IOException, StatusError, ProtocolError {
-        String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId;
-        message += " data[[option][[delplayer][gameid=" + gameId + " playerdelid=" + playerId + "]]] end:end";
-        
-        sendMessage(message);
+        sendMessage(gameData("delplayer", playerId).append(" data[[option][[delplayer][gameid=").append(gameId).append(" playerdelid=").append(playerId)
+                .append("]]] end:end"));
     }
     
     
@@ -954,8 +1299,8 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
      *             The reply does not conform to the protocol specification
      */    
     public void removegame(String gameId) throws IOException, StatusError, ProtocolError {
-        sendMessage("type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " data[[option][[removegame][gameid=" + gameId
-                + " gameownerkey=" + gameOwnerKey + "]]] end:end");
+        sendMessage(gameData("removegame").append(" data[[option][[removegame][gameid=").append(gameId).append(" gameownerkey=").append(gameOwnerKey)
+                .append("]]] end:end"));
         gameOwnerKey = null;
     }
 	
@@ -979,14 +1324,31 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 */
 	// [REQUEST]
 	public GameInfo gameinfo(String gameId, String playerId) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[request][rtype=gameinfo gameid=" + gameId + "]] end:end";
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("gameinfo", playerId).append(" data[[request][rtype=gameinfo gameid=").append(gameId).append("]] end:end"));
 
-		reply = reply.substring(21, reply.length() - 9);
-		GameInfo info = new GameInfo(reply);
+		return parsed("gameinfo", new GameInfo(infoGroup("gameinfo", reply)));
+	}
 
-		return info;
+	/**
+	 * Position a tokenizer in front of the values of a {@code [name][...]}
+	 * reply, as sent for gameinfo and unitinfo requests.
+	 * 
+	 * @param request
+	 *            The type of the request, for error reporting
+	 * @param reply
+	 *            The reply to tokenize
+	 * @return The tokenizer, positioned on the opening brace of the values
+	 * @throws ProtocolError
+	 *             The reply does not contain two groups
+	 */
+	static ReplyTokenizer infoGroup(String request, String reply) throws ProtocolError {
+		ReplyTokenizer t = new ReplyTokenizer(reply);
+		if (!t.nextGroup())
+			throw new ProtocolError(request, reply);
+		t.skipGroup();
+		if (!t.nextGroup())
+			throw new ProtocolError(request, reply);
+		return t;
 	}
 
 	/**
@@ -1003,14 +1365,10 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 * @throws ProtocolError
 	 *             The reply does not conform to the protocol specification
 	 */
-	public int[][] terrainmap(String gameId, String playerId) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[request][rtype=terrainmap gameid=" + gameId + "]] end:end";
-		String reply = sendMessage(message);
-
-		String terrainmap = parseValue(reply, "=", "terrainmap");
+	public MapGrid terrainmap(String gameId, String playerId) throws IOException, StatusError, ProtocolError {
+		String reply = sendMessage(gameData("terrainmap", playerId).append(" data[[request][rtype=terrainmap gameid=").append(gameId).append("]] end:end"));
 
-		return parseIntTable(terrainmap.substring(1, terrainmap.length() - 1));
+		return parsed("terrainmap", parseGrid(reply, indexOfValue(reply, "terrainmap")));
 	}
 
 	/**
@@ -1027,13 +1385,10 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 * @throws ProtocolError
 	 *             The reply does not conform to the protocol specification
 	 */
-	public int[][] unitmap(String gameId, String playerId) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[request][rtype=unitmap gameid=" + gameId + "]] end:end";
-		String reply = sendMessage(message);
+	public MapGrid unitmap(String gameId, String playerId) throws IOException, StatusError, ProtocolError {
+		String reply = sendMessage(gameData("unitmap", playerId).append(" data[[request][rtype=unitmap gameid=").append(gameId).append("]] end:end"));
 
-		String unitmap = parseValue(reply, "=", "unitmap");
-		return parseIntTable(unitmap.substring(1, unitmap.length() - 1));
+		return parsed("unitmap", parseGrid(reply, indexOfValue(reply, "unitmap")));
 	}
 
 	/**
@@ -1053,14 +1408,10 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public UnitInfo unitinfo(String gameId, String playerId, int unitId) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[request][rtype=unitinfo unitid=" + unitId + " gameid=" + gameId + "]] end:end";
-		String reply = sendMessage(message);
-
-		reply = reply.substring(21, reply.length() - 9);
+		String reply = sendMessage(gameData("unitinfo", playerId).append(" data[[request][rtype=unitinfo unitid=").append(unitId).append(" gameid=")
+				.append(gameId).append("]] end:end"));
 
-		UnitInfo info = new UnitInfo(reply);
-		return info;
+		return parsed("unitinfo", new UnitInfo(infoGroup("unitinfo", reply)));
 	}
 
 	/**
@@ -1081,9 +1432,8 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public String playerinfo(String gameId, String playerId, String requestId) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[request][rtype=playerinfo playeridrequest=" + requestId + " gameid=" + gameId + "]] end:end";
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("playerinfo", playerId).append(" data[[request][rtype=playerinfo playeridrequest=").append(requestId)
+				.append(" gameid=").append(gameId).append("]] end:end"));
 
 		String string = splitBrace(reply).get(1);
 
@@ -1121,14 +1471,9 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 */
 	// [ACTION]
 	public void move(String gameId, String playerId, int unitId, List<Field> fields) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[action][[move][unitid=" + unitId + " path=[";
-		for (Field f : fields)
-			message += "[" + f.iIndex + "," + f.jIndex + "]";
-		message += "] gameid=" + gameId + "]]] end:end";
-
 		@SuppressWarnings("unused")
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("move", playerId).append(" data[[action][[move][unitid=").append(unitId).append(" path=")
+				.appendPath(fields).append(" gameid=").append(gameId).append("]]] end:end"));
 	};
 
 	/**
@@ -1154,11 +1499,10 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 */
 	public void trade(String gameId, String playerId, int tradeOfferUnit, int tradePartnerUnit, Inventory giveGoods, Inventory getGoods)
 			throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[action][[trade][gameid=" + gameId + " tradeoffererunitid=" + tradeOfferUnit + " tradepartnerunitid=" + tradePartnerUnit
-				+ " givegoods=" + giveGoods + " getgoods=" + getGoods + " ]]] end:end";
 		@SuppressWarnings("unused")
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("trade", playerId).append(" data[[action][[trade][gameid=").append(gameId).append(" tradeoffererunitid=")
+				.append(tradeOfferUnit).append(" tradepartnerunitid=").append(tradePartnerUnit).append(" givegoods=").appendInventory(giveGoods)
+				.append(" getgoods=").appendInventory(getGoods).append(" ]]] end:end"));
 	};
 
 	/**
@@ -1180,10 +1524,8 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public int attack(String gameId, String playerId, int attackerId, int defenderId) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[action][[attack][attackerid=" + attackerId + " defenderid=" + defenderId + " gameid=" + gameId + "]]] end:end";
-
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("attack", playerId).append(" data[[action][[attack][attackerid=").append(attackerId).append(" defenderid=")
+				.append(defenderId).append(" gameid=").append(gameId).append("]]] end:end"));
 
 		return Integer.parseInt(parseValue(reply, "damage"));
 	};
@@ -1204,10 +1546,9 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 *             The reply does not conform to the protocol specification
 	 */
 	public void endturn(String playerId, int unitId, String gameId) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[action][[endturn][unitid=" + unitId + " gameid=" + gameId + "]]] end:end";
 		@SuppressWarnings("unused")
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("endturn", playerId).append(" data[[action][[endturn][unitid=").append(unitId).append(" gameid=")
+				.append(gameId).append("]]] end:end"));
 	}
 
 	/**
@@ -1227,10 +1568,9 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	 */
 	// [REPLY]
 	public void tradereply(String playerId, String gameId, String response) throws IOException, StatusError, ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[reply][[tradereply][gameid=" + gameId + " response=" + response + "]]] end:end";
 		@SuppressWarnings("unused")
-		String reply = sendMessage(message);
+		String reply = sendMessage(gameData("tradereply", playerId).append(" data[[reply][[tradereply][gameid=").append(gameId).append(" response=")
+				.append(response).append("]]] end:end"));
 	}
 	
 
@@ -1256,16 +1596,15 @@ sendgamedata clientid:CLIENTID clientkey:CLIENTKEY playerid:PLAYERID [data][ ...
 	// [CHAT]
 	public void chat(String playerId, String targetPlayerId, String targetGameId, String messageString) throws IOException, StatusError,
 			ProtocolError {
-		String message = "type:sendgamedata clientid:" + clientId + " clientkey:" + clientKey + " playerid:" + playerId
-				+ " data[[chat][senderplayerid=" + playerId;
+		RequestEncoder request = gameData("chat", playerId).append(" data[[chat][senderplayerid=").append(playerId);
 		if (targetGameId != null)
-			message += " gameidreceiver=" + targetGameId;
+			request.append(" gameidreceiver=").append(targetGameId);
 		if (targetPlayerId != null)
-			message += " playeridreceiver=" + targetPlayerId;
-		message += " message=[" + messageString + "]]] end:end";
+			request.append(" playeridreceiver=").append(targetPlayerId);
+		request.append(" message=[").append(messageString).append("]]] end:end");
 
 		@SuppressWarnings("unused")
-		String reply = sendMessage(message);
+		String reply = sendMessage(request);
 	}
 
 	// MAIN
@@ -56,15 +56,29 @@ public class TypeInfo extends Info{
     public int maxmovement;
     
     
-    TypeInfo (String info) {
-        super(info);
-
-        name = tags.get("name");
+    /**
+     * Construct a new TypeInfo from the key value pairs of the group following the
+     * name of the type.
+     * @param name The name of the type
+     * @param t The tokenizer, positioned on the opening brace of the values
+     */
+    TypeInfo (String name, ReplyTokenizer t) {
+        this.name = name;
+        parse(t);
+    }
 
-        maxhitpoints = Integer.parseInt(tags.get("maxhitpoints"));
-        maxfirepower = Integer.parseInt(tags.get("maxfirepower"));
-        maxcargo = Integer.parseInt(tags.get("maxcargo"));
-        maxmovement = Integer.parseInt(tags.get("maxmovement"));       
+    @Override
+    void parseValue (ReplyTokenizer t) {
+        if (t.is("maxhitpoints"))
+            maxhitpoints = nextInt(t);
+        else if (t.is("maxfirepower"))
+            maxfirepower = nextInt(t);
+        else if (t.is("maxcargo"))
+            maxcargo = nextInt(t);
+        else if (t.is("maxmovement"))
+            maxmovement = nextInt(t);
+        else
+            t.skipValue();
     }
 	
 }
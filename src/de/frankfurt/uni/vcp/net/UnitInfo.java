@@ -51,11 +51,17 @@ public class UnitInfo extends Info{
      */    
     public Player owner;
 
+    /** The name of the {@link #owner}, as reported by the server */
+    public String ownername;
+
     /**
      * A reference to the {@link TypeInfo}, that describes the type of unit this instance
      * belongs to
      */    
     public TypeInfo utype;
+
+    /** The name of the {@link #utype}, as reported by the server */
+    public String utypename;
     
     /**
      * Life status of this unit:  {@code true}, if the unit is dead, {@code false} otherwise
@@ -84,38 +90,60 @@ public class UnitInfo extends Info{
     public Inventory cargo;
 	
 	
-    UnitInfo (String info) {
-        super(info);
-        Game game = Game.getInstance();
-        
-        unitid = Integer.parseInt(tags.get("unitid"));
-        owner = game.getPlayer(tags.get("owner"));
-        utype = game.getUnitType(tags.get("utype"));
-        destroyed = tags.get("destroyed").equals("false");
-        
+    /** Set once the server reported the movement of this unit. */
+    private boolean hasMovement = false;
+
+    /**
+     * Construct a new UnitInfo from the key value pairs up to the end of the
+     * current group.
+     * @param t The tokenizer, positioned in front of the first pair
+     */
+    UnitInfo (ReplyTokenizer t) {
+        parse(t);
+
         // TODO: wirds noch irgendwo verwendet?
-        //movement = Integer.parseInt(tags.get("movement"));
-        String range = tags.get("movement");
-        if (range == null) {
+        if (!hasMovement) {
         	LogHelper.getLogger().info("Movement null!");
+        	movement = -1;
         }
-        movement = (range != null) ? Integer.parseInt(range) : -1;
-        
-        String string;
-        
-     // TODO
-//        string = TCPClient.splitBrace(tags.get("lastmovement")).get(0);
-//        for (String s : TCPClient.splitBrace(string)) {
-//            String[] p = s.split (",");
-//            lastmovement.add(game.getHexMap().getField(Integer.parseInt(p[0]), Integer.parseInt(p[1])));
+    }
+
+    @Override
+    void parseValue (ReplyTokenizer t) {
+        if (t.is("unitid"))
+            unitid = nextInt(t);
+        else if (t.is("owner"))
+            ownername = nextName(t);
+        else if (t.is("utype"))
+            utypename = nextName(t);
+        else if (t.is("destroyed")) {
+            t.next();
+            destroyed = t.is("true");
+        }
+        else if (t.is("movement")) {
+            movement = nextInt(t);
+            hasMovement = true;
+        }
+
+        // TODO
+//        else if (t.is("lastmovement")) {
+//            lastmovement.add(game.getHexMap().getField(...));
 //        }
-        
+
         // POSSIBLY INIVISBLE
-        string = tags.get("hitpoints");
-        if (string != null)
-            hitpoints = Integer.parseInt(string);
-        string = tags.get("cargo");
-        if (string != null)
-            cargo = new Inventory(string);
+        else if (t.is("hitpoints"))
+            hitpoints = nextInt(t);
+        else if (t.is("cargo")) {
+            if (t.next() == ReplyTokenizer.OPEN)
+                cargo = new Inventory(t);
+        }
+        else
+            t.skipValue();
+    }
+
+    @Override
+    public void resolve () {
+        owner = player(ownername);
+        utype = (utypename == null) ? null : Game.getInstance().getUnitType(utypename);
     }
 }
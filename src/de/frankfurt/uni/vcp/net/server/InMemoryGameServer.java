@@ -0,0 +1,1276 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.frankfurt.uni.vcp.config.MapGrid;
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+import de.frankfurt.uni.vcp.net.TCPClient;
+
+/**
+ * <h3>In-memory implementation of the game server protocol</h3>
+ *
+ * <p>
+ * Answers every request documented in {@link TCPClient}: logon, getclients,
+ * getinfo, getdata and the info, option, request, action, reply and chat
+ * parts of sendgamedata. Clients, maps, games, players, units and queued
+ * chat messages are kept in memory, nothing is written to disk.
+ * </p>
+ *
+ * <p>
+ * The rules are kept simple and deterministic, so replies can be predicted
+ * by benchmarks and load tests:
+ * </p>
+ *
+ * <ul>
+ * <li>Every step of a path costs one movement point and must lead to an
+ * adjacent, usable and free field.</li>
+ * <li>Only one unit per turn may move, attack or trade, the active unit.</li>
+ * <li>An attack inflicts the attacker's full firepower.</li>
+ * <li>Movement points are restored, when the owner ends the turn.</li>
+ * <li>The last player with units left wins.</li>
+ * </ul>
+ *
+ * <p>
+ * Single requests can be scripted by {@link #script(String, RequestHandler)},
+ * and every reply can be delayed by {@link #setLatency(long, long)}. The
+ * handler is run by a {@link StandInServer}, see {@link #start(int, boolean)}
+ * and {@link #main(String[])}.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class InMemoryGameServer implements StandInServer.RequestHandler {
+
+	/** The port of the real server, used if none is given to {@link #main(String[])} */
+	public static final int DEFAULT_PORT = 1504;
+
+	/** Number of goods a unit can carry */
+	static final int GOODS = 5;
+
+	/** Adjacent fields in even rows, as in {@link de.frankfurt.uni.vcp.nodes.Field} */
+	private static final int[][] EVEN_OFFSETS = { { +1, +1 }, { 0, +1 }, { +1, 0 }, { -1, 0 }, { +1, -1 }, { 0, -1 } };
+
+	/** Adjacent fields in odd rows, as in {@link de.frankfurt.uni.vcp.nodes.Field} */
+	private static final int[][] ODD_OFFSETS = { { 0, +1 }, { -1, +1 }, { +1, 0 }, { -1, 0 }, { 0, -1 }, { -1, -1 } };
+
+	/** A request was refused, the message is sent as errinfo. */
+	private static class RequestRefused extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		RequestRefused(String errinfo) {
+			super(errinfo);
+		}
+	}
+
+	private static class Client {
+		final String id;
+		final String info;
+		final String key;
+		long last;
+
+		/** Formatted entries of the getdata reply, not yet fetched */
+		final List<String> messages = new LinkedList<String>();
+
+		Client(String id, String info, String key) {
+			this.id = id;
+			this.info = info;
+			this.key = key;
+		}
+	}
+
+	private static class UnitType {
+		final String name;
+		final int maxhitpoints;
+		final int maxfirepower;
+		final int maxcargo;
+		final int maxmovement;
+
+		UnitType(String name, int maxhitpoints, int maxfirepower, int maxcargo, int maxmovement) {
+			this.name = name;
+			this.maxhitpoints = maxhitpoints;
+			this.maxfirepower = maxfirepower;
+			this.maxcargo = maxcargo;
+			this.maxmovement = maxmovement;
+		}
+	}
+
+	private static class Placement {
+		final int i;
+		final int j;
+		final int player;
+		final UnitType type;
+		final int[] cargo;
+
+		Placement(int i, int j, int player, UnitType type, int[] cargo) {
+			this.i = i;
+			this.j = j;
+			this.player = player;
+			this.type = type;
+			this.cargo = cargo;
+		}
+	}
+
+	private static class GameMap {
+		final String id;
+		final MapGrid terrain;
+		final List<Placement> units = new ArrayList<Placement>();
+		int players;
+
+		GameMap(String id, MapGrid terrain) {
+			this.id = id;
+			this.terrain = terrain;
+		}
+
+		boolean isUsable(int i, int j) {
+			return terrain.contains(i, j) && terrain.get(i, j) != 0;
+		}
+	}
+
+	private static class Player {
+		final String id;
+		final String name;
+		final String clientId;
+		boolean turnTaken;
+
+		Player(String id, String name, String clientId) {
+			this.id = id;
+			this.name = name;
+			this.clientId = clientId;
+		}
+	}
+
+	private static class Unit {
+		final int id;
+		final Player owner;
+		final UnitType type;
+		final int[] cargo = new int[GOODS];
+		final List<int[]> lastmovement = new ArrayList<int[]>();
+		int i;
+		int j;
+		int hitpoints;
+		int movement;
+		boolean destroyed;
+
+		Unit(int id, Player owner, UnitType type) {
+			this.id = id;
+			this.owner = owner;
+			this.type = type;
+			this.hitpoints = type.maxhitpoints;
+			this.movement = type.maxmovement;
+		}
+	}
+
+	private static class Game {
+		final String id;
+		final GameMap map;
+		final String ownerKey;
+		final List<Player> players = new ArrayList<Player>();
+		final Map<Integer, Unit> units = new LinkedHashMap<Integer, Unit>();
+
+		boolean started;
+		int turn;
+		int active;
+		Player winner;
+
+		/** The unit that acted in the current turn, {@code null} if none did */
+		Unit activeUnit;
+		String lastAction = "none";
+
+		// TRADE
+		Unit tradeOfferUnit;
+		Unit tradePartnerUnit;
+		int[] tradeGive;
+		int[] tradeGet;
+		String tradeStatusLast = "none";
+
+		Game(String id, GameMap map, String ownerKey) {
+			this.id = id;
+			this.map = map;
+			this.ownerKey = ownerKey;
+		}
+
+		Player getActivePlayer() {
+			return (started && !players.isEmpty()) ? players.get(active) : null;
+		}
+
+		Player getPlayerById(String playerId) {
+			for (Player p : players)
+				if (p.id.equals(playerId))
+					return p;
+			return null;
+		}
+
+		Player getPlayerByName(String name) {
+			for (Player p : players)
+				if (p.name.equals(name))
+					return p;
+			return null;
+		}
+
+		Unit getUnitAt(int i, int j) {
+			for (Unit u : units.values())
+				if (!u.destroyed && u.i == i && u.j == j)
+					return u;
+			return null;
+		}
+	}
+
+	// STATE
+	private final Map<String, Client> clients = new LinkedHashMap<String, Client>();
+	private final Map<String, UnitType> unitTypes = new LinkedHashMap<String, UnitType>();
+	private final Map<String, GameMap> maps = new LinkedHashMap<String, GameMap>();
+	private final Map<String, Game> games = new LinkedHashMap<String, Game>();
+
+	private int nextKey = 1;
+	private int nextPlayer = 1;
+	private int nextUnit = 1;
+
+	// SCRIPTING
+	private final Map<String, StandInServer.RequestHandler> scripts = new ConcurrentHashMap<String, StandInServer.RequestHandler>();
+
+	private final AtomicLong requests = new AtomicLong();
+
+	private volatile long latency = 0;
+	private volatile long latencyJitter = 0;
+	private final Random random;
+
+	/**
+	 * Construct a server without any maps or unit types. The random numbers
+	 * used for the latency jitter are seeded, so runs can be repeated.
+	 *
+	 * @param seed
+	 *            The seed of the latency jitter
+	 */
+	public InMemoryGameServer(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Construct a server knowing the unit types of the original server and a
+	 * small map {@code Two} for two players.
+	 */
+	public InMemoryGameServer() {
+		this(0);
+		addDefaultUnitTypes();
+		addMap("Two", defaultTerrain(16, 12));
+		placeUnits("Two", 2, "fightersmall", "fightermedium", "cargosmall");
+	}
+
+	/**
+	 * Run this server by a new {@link StandInServer}.
+	 *
+	 * @param port
+	 *            The port to listen on, 0 to pick a free one
+	 * @param keepAlive
+	 *            Whether to serve more than one request per connection
+	 * @return The started server
+	 */
+	public StandInServer start(int port, boolean keepAlive) throws IOException {
+		StandInServer server = new StandInServer(port, keepAlive, this);
+		server.start();
+		return server;
+	}
+
+	// SETUP
+
+	/**
+	 * Add the unit types, that the client has models for.
+	 */
+	public synchronized void addDefaultUnitTypes() {
+		addUnitType("fightersmall", 10, 3, 2, 5);
+		addUnitType("fightermedium", 15, 4, 3, 4);
+		addUnitType("fighterheavy", 20, 6, 4, 3);
+		addUnitType("cargosmall", 8, 1, 10, 5);
+		addUnitType("cargoheavy", 12, 1, 20, 3);
+	}
+
+	/**
+	 * Add a unit type, which is reported for every map.
+	 *
+	 * @param name
+	 *            The name of the type
+	 * @param maxhitpoints
+	 *            The hitpoints of a new unit
+	 * @param maxfirepower
+	 *            The damage inflicted by an attack
+	 * @param maxcargo
+	 *            The number of goods a unit can carry
+	 * @param maxmovement
+	 *            The movement points per turn
+	 */
+	public synchronized void addUnitType(String name, int maxhitpoints, int maxfirepower, int maxcargo, int maxmovement) {
+		unitTypes.put(name, new UnitType(name, maxhitpoints, maxfirepower, maxcargo, maxmovement));
+	}
+
+	/**
+	 * Add a map without any units.
+	 *
+	 * @param mapId
+	 *            The id of the map
+	 * @param terrain
+	 *            The terrain, 0 for fields that can not be entered
+	 */
+	public synchronized void addMap(String mapId, MapGrid terrain) {
+		maps.put(mapId, new GameMap(mapId, terrain));
+	}
+
+	/**
+	 * Add a map read from a file of comma separated rows, like
+	 * {@code data/maps/basicmap.csv}.
+	 *
+	 * @param mapId
+	 *            The id of the map
+	 * @param csv
+	 *            The file to read
+	 */
+	public void addMap(String mapId, File csv) throws IOException {
+		List<int[]> rows = new ArrayList<int[]>();
+
+		BufferedReader reader = new BufferedReader(new FileReader(csv));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty())
+					continue;
+
+				String[] values = line.split(",");
+				int[] row = new int[values.length];
+				for (int i = 0; i < values.length; ++i)
+					row[i] = Integer.parseInt(values[i].trim());
+				rows.add(row);
+			}
+		} finally {
+			reader.close();
+		}
+
+		addMap(mapId, MapGrid.fromRows(rows.toArray(new int[rows.size()][])));
+	}
+
+	/**
+	 * Place a unit on a map. It is handed to the player, who joined the game
+	 * as {@code player}-th.
+	 *
+	 * @param mapId
+	 *            The id of the map
+	 * @param i
+	 *            The column of the field
+	 * @param j
+	 *            The row of the field
+	 * @param player
+	 *            The number of the owner, starting with 1
+	 * @param type
+	 *            The name of the unit type
+	 * @param cargo
+	 *            The goods carried initially, {@code null} for none
+	 */
+	public synchronized void addUnit(String mapId, int i, int j, int player, String type, int[] cargo) {
+		GameMap map = maps.get(mapId);
+		UnitType unitType = unitTypes.get(type);
+		if (map == null || unitType == null || player < 1 || !map.isUsable(i, j))
+			throw new IllegalArgumentException("can not place " + type + " of player " + player + " at " + i + "x" + j + " on " + mapId);
+
+		map.units.add(new Placement(i, j, player, unitType, (cargo != null) ? cargo.clone() : new int[GOODS]));
+		map.players = Math.max(map.players, player);
+	}
+
+	/**
+	 * Place one unit of every given type for each player. The map is split
+	 * into vertical bands, one per player, and the units are placed on the
+	 * first usable fields of each band. Cargo units start with two of every
+	 * good.
+	 *
+	 * @param mapId
+	 *            The id of the map
+	 * @param players
+	 *            The number of players
+	 * @param types
+	 *            The names of the unit types
+	 */
+	public synchronized void placeUnits(String mapId, int players, String... types) {
+		GameMap map = maps.get(mapId);
+		if (map == null)
+			throw new IllegalArgumentException("unknown map: " + mapId);
+
+		for (int p = 1; p <= players; ++p) {
+			int band = map.terrain.width / players;
+			int n = 0;
+
+			fields: for (int i = (p - 1) * band; i < p * band; ++i) {
+				for (int j = 0; j < map.terrain.height; ++j) {
+					if (n == types.length)
+						break fields;
+					if (!map.isUsable(i, j) || isPlaced(map, i, j))
+						continue;
+
+					UnitType type = unitTypes.get(types[n]);
+					if (type == null)
+						throw new IllegalArgumentException("unknown unit type: " + types[n]);
+
+					int[] cargo = new int[GOODS];
+					if (type.maxcargo >= 2 * GOODS)
+						Arrays.fill(cargo, 2);
+					addUnit(mapId, i, j, p, types[n++], cargo);
+				}
+			}
+			if (n < types.length)
+				throw new IllegalArgumentException("not enough room for the units of player " + p + " on " + mapId);
+		}
+	}
+
+	private static boolean isPlaced(GameMap map, int i, int j) {
+		for (Placement p : map.units)
+			if (p.i == i && p.j == j)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Create a terrain, which can be entered everywhere but at its border.
+	 *
+	 * @param width
+	 *            The number of columns
+	 * @param height
+	 *            The number of rows
+	 * @return The terrain
+	 */
+	public static MapGrid defaultTerrain(int width, int height) {
+		MapGrid grid = new MapGrid(width, height);
+		for (int i = 1; i < width - 1; ++i)
+			for (int j = 1; j < height - 1; ++j)
+				grid.set(i, j, 1);
+		return grid;
+	}
+
+	/**
+	 * Replace the reply to a kind of request. The script may return
+	 * {@code null} to let the request be handled as usual, e.g. to fail only
+	 * every other request.
+	 *
+	 * @param name
+	 *            The name of the request, see {@link ProtocolRequest#getName()}
+	 * @param script
+	 *            Produces the reply, {@code null} to remove the script
+	 */
+	public void script(String name, StandInServer.RequestHandler script) {
+		if (script == null)
+			scripts.remove(name);
+		else
+			scripts.put(name, script);
+	}
+
+	/**
+	 * Delay every reply, to simulate a remote server.
+	 *
+	 * @param millis
+	 *            The delay in milliseconds
+	 * @param jitter
+	 *            The maximum random deviation from the delay in milliseconds
+	 */
+	public void setLatency(long millis, long jitter) {
+		this.latency = millis;
+		this.latencyJitter = jitter;
+	}
+
+	/**
+	 * Send a system message to the client of a player, like the server does
+	 * for attacks.
+	 *
+	 * @param playerId
+	 *            The id of the receiving player
+	 * @param message
+	 *            The message
+	 * @return {@code true} if the player was found
+	 */
+	public synchronized boolean sendSystemMessage(String playerId, String message) {
+		for (Game game : games.values()) {
+			Player player = game.getPlayerById(playerId);
+			if (player != null) {
+				queue(player.clientId, "system", null, player.id, message);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the number of requests handled so far.
+	 *
+	 * @return The number of requests
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * Get the ids of the games currently known.
+	 *
+	 * @return A copy of the list of game ids
+	 */
+	public synchronized List<String> getGameIds() {
+		return new ArrayList<String>(games.keySet());
+	}
+
+	// HANDLING
+
+	@Override
+	public String handle(String message) {
+		requests.incrementAndGet();
+		delay();
+
+		ProtocolRequest request;
+		try {
+			request = ProtocolRequest.parse(message);
+		} catch (IllegalArgumentException e) {
+			return error("unknown_request_type");
+		}
+
+		StandInServer.RequestHandler script = scripts.get(request.getName());
+		if (script != null) {
+			String reply = script.handle(message);
+			if (reply != null)
+				return reply;
+		}
+
+		synchronized (this) {
+			try {
+				return ok(dispatch(request));
+			} catch (RequestRefused e) {
+				return error(e.getMessage());
+			} catch (RuntimeException e) {
+				LogHelper.getLogger().error("InMemoryGameServer.handle(): " + request + ": " + e);
+				return error(e.toString().replace(' ', '_'));
+			}
+		}
+	}
+
+	private void delay() {
+		long millis = latency;
+		if (latencyJitter > 0) {
+			synchronized (random) {
+				millis += (long) ((2 * random.nextDouble() - 1) * latencyJitter);
+			}
+		}
+		if (millis <= 0)
+			return;
+
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String ok(String info) {
+		return info.isEmpty() ? "status:ok end:end" : "status:ok " + info + " end:end";
+	}
+
+	private static String error(String errinfo) {
+		return "status:error errinfo:" + errinfo + " end:end";
+	}
+
+	private String dispatch(ProtocolRequest r) throws RequestRefused {
+		if (r.type.equals("logon"))
+			return logon(r);
+		if (r.type.equals("getclients"))
+			return getclients();
+
+		Client client = getClient(r);
+
+		if (r.type.equals("getinfo"))
+			return getinfo(r, client);
+		if (r.type.equals("getdata"))
+			return getdata(client);
+		if (!r.type.equals("sendgamedata") || r.category == null)
+			throw new RequestRefused("unknown_request_type");
+
+		String c = r.command;
+		if (r.category.equals("info")) {
+			if ("gamelist".equals(c))
+				return gamelist();
+			if ("maplist".equals(c))
+				return maplist();
+			if ("mappreview".equals(c))
+				return mappreview(r);
+			if ("unittype".equals(c))
+				return unittype(r);
+		} else if (r.category.equals("option")) {
+			if ("creategame".equals(c))
+				return creategame(r);
+			if ("addplayer".equals(c))
+				return addplayer(r, client);
+			if ("startgame".equals(c))
+				return startgame(r);
+			if ("delplayer".equals(c))
+				return delplayer(r);
+			if ("removegame".equals(c))
+				return removegame(r);
+		} else if (r.category.equals("request")) {
+			Game game = getGame(r);
+			Player player = getPlayer(r, game);
+
+			if ("gameinfo".equals(c))
+				return gameinfo(game);
+			if ("terrainmap".equals(c))
+				return "terrainmap=" + grid(game.map.terrain) + " terrainmapinv=" + grid(game.map.terrain);
+			if ("unitmap".equals(c))
+				return unitmap(game);
+			if ("unitinfo".equals(c))
+				return unitinfo(r, game, player);
+			if ("playerinfo".equals(c))
+				return playerinfo(r, game);
+		} else if (r.category.equals("action")) {
+			Game game = getGame(r);
+			Player player = getPlayer(r, game);
+			checkActive(game, player);
+
+			if ("move".equals(c))
+				return move(r, game, player);
+			if ("trade".equals(c))
+				return trade(r, game, player);
+			if ("attack".equals(c))
+				return attack(r, game, player);
+			if ("endturn".equals(c))
+				return endturn(game);
+		} else if (r.category.equals("reply")) {
+			if ("tradereply".equals(c))
+				return tradereply(r);
+		} else if (r.category.equals("chat")) {
+			return chat(r, client);
+		}
+
+		throw new RequestRefused("unknown_request_" + r.category + "_" + c);
+	}
+
+	// CLIENTS
+
+	private String logon(ProtocolRequest r) {
+		String clientId = r.getHeader("clientid");
+		Client client = new Client(clientId, r.getHeader("clientinfo"), "key" + (nextKey++));
+		client.last = System.currentTimeMillis();
+		clients.put(clientId, client);
+
+		return "clientkey:" + client.key;
+	}
+
+	private String getclients() {
+		StringBuilder reply = new StringBuilder("clients[");
+		for (String id : clients.keySet()) {
+			if (reply.length() > "clients[".length())
+				reply.append(',');
+			reply.append(id);
+		}
+		return reply.append(']').toString();
+	}
+
+	private Client getClient(ProtocolRequest r) throws RequestRefused {
+		Client client = clients.get(r.getHeader("clientid"));
+		if (client == null || !client.key.equals(r.getHeader("clientkey")))
+			throw new RequestRefused("invalid_clientkey");
+
+		client.last = System.currentTimeMillis();
+		return client;
+	}
+
+	private String getinfo(ProtocolRequest r, Client client) {
+		Client requested = clients.get(r.getHeader("requestclientid"));
+		if (requested == null)
+			requested = client;
+
+		return "clientinfo:" + requested.info + " clientlast:" + requested.last + " clienttargets[] clientdataitems[]";
+	}
+
+	private String getdata(Client client) {
+		StringBuilder reply = new StringBuilder("data[");
+		for (String message : client.messages)
+			reply.append(message);
+		client.messages.clear();
+		return reply.append(']').toString();
+	}
+
+	/**
+	 * Queue a message for a client.
+	 *
+	 * @param kind
+	 *            {@code chat} or {@code system}
+	 * @param sender
+	 *            The client sending the message, {@code null} for the server
+	 * @param senderPlayerId
+	 *            The player the message is sent by or about
+	 */
+	private void queue(String clientId, String kind, Client sender, String senderPlayerId, String message) {
+		Client client = clients.get(clientId);
+		if (client == null)
+			return;
+
+		client.messages.add("[incomingtime:" + System.currentTimeMillis() + " senderid:" + ((sender != null) ? sender.id : "server") + " data[["
+				+ kind + "][senderplayerid=" + senderPlayerId + " message=[" + message + "]]]]");
+	}
+
+	// INFO
+
+	private String gamelist() {
+		StringBuilder reply = new StringBuilder("gamelist=[");
+		for (String id : games.keySet())
+			reply.append('[').append(id).append(']');
+		return reply.append(']').toString();
+	}
+
+	private String maplist() {
+		StringBuilder reply = new StringBuilder("maplist=[");
+		for (String id : maps.keySet())
+			reply.append('[').append(id).append(']');
+		return reply.append(']').toString();
+	}
+
+	private String mappreview(ProtocolRequest r) throws RequestRefused {
+		GameMap map = maps.get(r.getArgument("mapid"));
+		if (map == null)
+			throw new RequestRefused("previewrequest_for_unknown_map");
+
+		MapGrid units = new MapGrid(map.terrain.width, map.terrain.height);
+		for (Placement p : map.units)
+			units.set(p.i, p.j, p.player);
+
+		return "[mappreview][terrainmappreview=" + grid(map.terrain) + " terrainmapinvpreview=" + grid(map.terrain) + " unitmappreview="
+				+ grid(units) + " unitmapinvpreview=" + grid(units) + "]";
+	}
+
+	private String unittype(ProtocolRequest r) {
+		if (!maps.containsKey(r.getArgument("mapid")))
+			return "unittypeinfo=[types[[]] ]";
+
+		StringBuilder names = new StringBuilder();
+		StringBuilder types = new StringBuilder();
+		for (UnitType t : unitTypes.values()) {
+			if (names.length() > 0)
+				names.append(',');
+			names.append(t.name);
+			types.append(" [").append(t.name).append("][maxhitpoints=").append(t.maxhitpoints).append(" maxfirepower=").append(t.maxfirepower)
+					.append(" maxcargo=").append(t.maxcargo).append(" maxmovement=").append(t.maxmovement).append(']');
+		}
+		return "unittypeinfo=[types[[" + names + "]]" + types + "]";
+	}
+
+	// OPTION
+
+	private String creategame(ProtocolRequest r) throws RequestRefused {
+		String name = r.getArgument("gamename");
+		GameMap map = maps.get(r.getArgument("mapid"));
+
+		if (name == null || games.containsKey(name))
+			throw new RequestRefused("gamename_not_unique");
+		if (map == null)
+			throw new RequestRefused("unknown_mapid");
+
+		// the game list shows the ids, so the name is used as id
+		games.put(name, new Game(name, map, r.getArgument("gameownerkey")));
+		return "gameid=" + name;
+	}
+
+	private String addplayer(ProtocolRequest r, Client client) throws RequestRefused {
+		Game game = getGame(r);
+		String name = r.getArgument("playername");
+
+		if (name == null || game.getPlayerByName(name) != null)
+			throw new RequestRefused("playername_already_exists");
+		if (game.started)
+			throw new RequestRefused("game_already_started");
+
+		// like the original server, the id starts with the name
+		Player player = new Player(name + (1000 + nextPlayer++), name, client.id);
+		game.players.add(player);
+		return "playerid:" + player.id;
+	}
+
+	private String startgame(ProtocolRequest r) throws RequestRefused {
+		Game game = getGame(r);
+		if (game.ownerKey == null || !game.ownerKey.equals(r.getArgument("gameownerkey")))
+			throw new RequestRefused("invalid_ownerkey_to_start_game");
+		if (game.started)
+			return "";
+		if (game.players.size() < Math.max(game.map.players, 1))
+			throw new RequestRefused("not_enough_players_to_start_the_game");
+
+		for (Placement p : game.map.units) {
+			if (p.player > game.players.size())
+				continue;
+
+			Unit unit = new Unit(nextUnit++, game.players.get(p.player - 1), p.type);
+			unit.i = p.i;
+			unit.j = p.j;
+			System.arraycopy(p.cargo, 0, unit.cargo, 0, GOODS);
+			game.units.put(unit.id, unit);
+		}
+
+		game.started = true;
+		game.turn = 1;
+		game.active = 0;
+		return "";
+	}
+
+	private String delplayer(ProtocolRequest r) throws RequestRefused {
+		Game game = getGame(r);
+		Player player;
+
+		if (r.getArgument("playerdelname") != null) {
+			// the owner removes another player
+			if (game.ownerKey == null || !game.ownerKey.equals(r.getArgument("gameownerkey")))
+				throw new RequestRefused("invalid_gameownerkey_or_palyerid_to_delplayer");
+			player = game.getPlayerByName(r.getArgument("playerdelname"));
+		} else {
+			// a player leaves the game
+			player = game.getPlayerById(r.getArgument("playerdelid"));
+			if (player != null && !player.id.equals(r.getHeader("playerid")))
+				throw new RequestRefused("invalid_gameownerkey_or_palyerid_to_delplayer");
+		}
+		if (player == null)
+			throw new RequestRefused("invalid_playerdelid");
+
+		Player active = game.getActivePlayer();
+		int index = game.players.indexOf(player);
+		game.players.remove(index);
+
+		if (game.started) {
+			for (Unit u : game.units.values())
+				if (u.owner == player)
+					u.destroyed = true;
+
+			if (game.players.isEmpty()) {
+				game.active = 0;
+			} else if (active == player) {
+				game.active = index % game.players.size();
+				game.activeUnit = null;
+			} else {
+				game.active = game.players.indexOf(active);
+			}
+			checkWinner(game);
+		}
+		return "";
+	}
+
+	private String removegame(ProtocolRequest r) throws RequestRefused {
+		Game game = games.get(r.getArgument("gameid"));
+		if (game == null)
+			throw new RequestRefused("gamename_unknown");
+		if (game.ownerKey == null || !game.ownerKey.equals(r.getArgument("gameownerkey")))
+			throw new RequestRefused("gameownerkey_not_valid");
+
+		games.remove(game.id);
+		return "";
+	}
+
+	// REQUEST
+
+	private Game getGame(ProtocolRequest r) throws RequestRefused {
+		Game game = games.get(r.getArgument("gameid"));
+		if (game == null)
+			throw new RequestRefused("unkown_gameid");
+		return game;
+	}
+
+	private Player getPlayer(ProtocolRequest r, Game game) throws RequestRefused {
+		String playerId = r.getHeader("playerid");
+		Player player = (playerId != null) ? game.getPlayerById(playerId) : null;
+		if (player == null)
+			throw new RequestRefused(playerId + "_is_not_a_vaild_player");
+		return player;
+	}
+
+	private String gameinfo(Game game) {
+		Player active = game.getActivePlayer();
+		Player partner = (game.tradePartnerUnit != null) ? game.tradePartnerUnit.owner : null;
+
+		StringBuilder reply = new StringBuilder("[gameinfo][");
+		reply.append("gameid=").append(game.id);
+		reply.append(" name=").append(game.id);
+		reply.append(" mapid=").append(game.map.id);
+		reply.append(" gamestatus=").append(game.started ? "started" : "inited");
+		reply.append(" turn=").append(game.turn);
+		reply.append(" winner=").append((game.winner != null) ? game.winner.name : "");
+		reply.append(" activeplayer=").append((active != null) ? active.name : "");
+		reply.append(" activeunit=").append((game.activeUnit != null) ? String.valueOf(game.activeUnit.id) : "");
+		reply.append(" activeunitslastaction=").append(game.lastAction);
+		reply.append(" tradepartner=").append((partner != null) ? partner.name : "");
+		reply.append(" tradepartnerunit=").append((partner != null) ? String.valueOf(game.tradePartnerUnit.id) : "");
+		reply.append(" tradegive=").append((partner != null) ? goods(game.tradeGive) : "");
+		reply.append(" tradeget=").append((partner != null) ? goods(game.tradeGet) : "");
+		reply.append(" tradestatuslast=").append(game.tradeStatusLast);
+
+		reply.append(" playernames=[");
+		for (Player p : game.players)
+			reply.append('[').append(p.name).append(']');
+		reply.append("] turnsTaken=[");
+		for (Player p : game.players)
+			reply.append('[').append(p.turnTaken).append(']');
+		return reply.append("]]").toString();
+	}
+
+	private String unitmap(Game game) {
+		MapGrid units = new MapGrid(game.map.terrain.width, game.map.terrain.height);
+		for (Unit u : game.units.values())
+			if (!u.destroyed)
+				units.set(u.i, u.j, u.id);
+
+		return "unitmap=" + grid(units) + " unitmapinv=" + grid(units);
+	}
+
+	private String unitinfo(ProtocolRequest r, Game game, Player player) throws RequestRefused {
+		Unit unit = getUnit(game, r.getArgument("unitid"), "request_unitinfo_for_unknown_unitid");
+
+		StringBuilder reply = new StringBuilder("[unitinfo][");
+		reply.append("unitid=").append(unit.id);
+		reply.append(" owner=").append(unit.owner.name);
+		reply.append(" utype=").append(unit.type.name);
+		reply.append(" destroyed=").append(unit.destroyed);
+		reply.append(" movement=").append(unit.movement);
+		reply.append(" lastmovement=[");
+		for (int[] step : unit.lastmovement)
+			reply.append('[').append(step[0]).append(',').append(step[1]).append(']');
+		reply.append(']');
+
+		// INVISIBLE TO OTHER PLAYERS
+		if (unit.owner == player) {
+			reply.append(" hitpoints=").append(unit.hitpoints);
+			reply.append(" cargo=").append(goods(unit.cargo));
+		}
+		return reply.append(']').toString();
+	}
+
+	private String playerinfo(ProtocolRequest r, Game game) throws RequestRefused {
+		Player player = game.getPlayerById(r.getArgument("playeridrequest"));
+		if (player == null)
+			throw new RequestRefused(r.getArgument("playeridrequest") + "_is_not_a_vaild_player");
+
+		return "[playerinfo][playerid=" + player.id + " playername=" + player.name + " clientid=" + player.clientId + "]";
+	}
+
+	private Unit getUnit(Game game, String unitId, String errinfo) throws RequestRefused {
+		try {
+			Unit unit = game.units.get(Integer.parseInt(unitId));
+			if (unit != null)
+				return unit;
+		} catch (NumberFormatException e) {
+			// refused below
+		}
+		throw new RequestRefused(errinfo);
+	}
+
+	// ACTION
+
+	private void checkActive(Game game, Player player) throws RequestRefused {
+		if (game.winner != null)
+			throw new RequestRefused("game_ended");
+		if (game.getActivePlayer() != player)
+			throw new RequestRefused("playerid_is_valid_but_only_active_player_or_trade_partner_can_make_action_command");
+	}
+
+	/** Check that a unit belongs to the player and may act in this turn. */
+	private Unit getActingUnit(Game game, Player player, String unitId) throws RequestRefused {
+		Unit unit = getUnit(game, unitId, "unknown_unitid_" + unitId);
+		if (unit.owner != player || unit.destroyed)
+			throw new RequestRefused("wrong_user_" + player.id + "_for_unit_" + unit.id);
+		if (game.activeUnit != null && game.activeUnit != unit)
+			throw new RequestRefused("unit_is_not_active_unit");
+		return unit;
+	}
+
+	private String move(ProtocolRequest r, Game game, Player player) throws RequestRefused {
+		Unit unit = getActingUnit(game, player, r.getArgument("unitid"));
+		List<int[]> path = coordinates(r.getArgument("path"));
+
+		if (path.size() > unit.movement)
+			throw new RequestRefused("not_enough_movement_for_" + path.size() + "_steps");
+
+		int i = unit.i;
+		int j = unit.j;
+		for (int[] step : path) {
+			Unit other = game.getUnitAt(step[0], step[1]);
+			if (!isAdjacent(i, j, step[0], step[1]) || !game.map.isUsable(step[0], step[1]) || (other != null && other != unit))
+				throw new RequestRefused("illegal_move_from_" + i + "x" + j + "_to_" + step[0] + "x" + step[1]);
+			i = step[0];
+			j = step[1];
+		}
+
+		unit.i = i;
+		unit.j = j;
+		unit.movement -= path.size();
+		unit.lastmovement.clear();
+		unit.lastmovement.addAll(path);
+
+		game.activeUnit = unit;
+		game.lastAction = "move";
+		return "";
+	}
+
+	private String trade(ProtocolRequest r, Game game, Player player) throws RequestRefused {
+		Unit offerer = getActingUnit(game, player, r.getArgument("tradeoffererunitid"));
+		Unit partner = getUnit(game, r.getArgument("tradepartnerunitid"), "unknown_unitid_" + r.getArgument("tradepartnerunitid"));
+
+		int[] give = goods(r.getArgument("givegoods"));
+		int[] get = goods(r.getArgument("getgoods"));
+		if (partner.destroyed || partner.owner == player || !isAdjacent(offerer.i, offerer.j, partner.i, partner.j) || !canTrade(offerer, partner, give, get))
+			throw new RequestRefused("amount_of_transfered_goods_in_trade_not_possible");
+
+		game.activeUnit = offerer;
+		game.lastAction = "trade";
+		game.tradeOfferUnit = offerer;
+		game.tradePartnerUnit = partner;
+		game.tradeGive = give;
+		game.tradeGet = get;
+		game.tradeStatusLast = "DND";
+		return "";
+	}
+
+	private static boolean canTrade(Unit offerer, Unit partner, int[] give, int[] get) {
+		int offererLoad = 0;
+		int partnerLoad = 0;
+
+		for (int k = 0; k < GOODS; ++k) {
+			if (give[k] < 0 || get[k] < 0 || give[k] > offerer.cargo[k] || get[k] > partner.cargo[k])
+				return false;
+			offererLoad += offerer.cargo[k] - give[k] + get[k];
+			partnerLoad += partner.cargo[k] + give[k] - get[k];
+		}
+		return offererLoad <= offerer.type.maxcargo && partnerLoad <= partner.type.maxcargo;
+	}
+
+	private String attack(ProtocolRequest r, Game game, Player player) throws RequestRefused {
+		Unit attacker = getActingUnit(game, player, r.getArgument("attackerid"));
+		Unit defender = getUnit(game, r.getArgument("defenderid"), "unknown_unitid_" + r.getArgument("defenderid"));
+
+		if (defender.destroyed || !isAdjacent(attacker.i, attacker.j, defender.i, defender.j))
+			throw new RequestRefused("unit_" + attacker.id + "_trys_attacking_non_neightbouring_unit_" + defender.id);
+
+		int damage = attacker.type.maxfirepower;
+		defender.hitpoints -= damage;
+		if (defender.hitpoints <= 0) {
+			defender.hitpoints = 0;
+			defender.destroyed = true;
+		}
+		attacker.movement = 0;
+
+		game.activeUnit = attacker;
+		game.lastAction = "attack";
+		queue(defender.owner.clientId, "system", null, defender.owner.id, "Unit " + defender.id + " has been attacked by unit " + attacker.id);
+
+		checkWinner(game);
+		return "damage:" + damage;
+	}
+
+	private String endturn(Game game) {
+		Player player = game.getActivePlayer();
+		player.turnTaken = true;
+
+		for (Unit u : game.units.values())
+			if (u.owner == player)
+				u.movement = u.type.maxmovement;
+
+		game.active = (game.active + 1) % game.players.size();
+		if (game.active == 0) {
+			++game.turn;
+			for (Player p : game.players)
+				p.turnTaken = false;
+		}
+		game.activeUnit = null;
+		game.lastAction = "none";
+
+		return "actualplayerid:" + game.getActivePlayer().id + " roundNo=" + game.turn;
+	}
+
+	private void checkWinner(Game game) {
+		Player survivor = null;
+
+		for (Unit u : game.units.values()) {
+			if (u.destroyed)
+				continue;
+			if (survivor != null && survivor != u.owner)
+				return;
+			survivor = u.owner;
+		}
+		game.winner = survivor;
+	}
+
+	// REPLY
+
+	private String tradereply(ProtocolRequest r) throws RequestRefused {
+		Game game = getGame(r);
+		Player player = getPlayer(r, game);
+
+		if (game.tradePartnerUnit == null || game.tradePartnerUnit.owner != player)
+			throw new RequestRefused("playerid_is_not_tradepartnerid");
+
+		String response = r.getArgument("response");
+		if ("accepted".equals(response)) {
+			Unit offerer = game.tradeOfferUnit;
+			Unit partner = game.tradePartnerUnit;
+			if (!canTrade(offerer, partner, game.tradeGive, game.tradeGet))
+				throw new RequestRefused("amount_of_transfered_goods_in_trade_not_possible");
+
+			for (int k = 0; k < GOODS; ++k) {
+				offerer.cargo[k] += game.tradeGet[k] - game.tradeGive[k];
+				partner.cargo[k] += game.tradeGive[k] - game.tradeGet[k];
+			}
+		} else if (!"rejected".equals(response)) {
+			throw new RequestRefused("tradereply_contained_unknown_response");
+		}
+
+		game.tradeStatusLast = response;
+		game.tradeOfferUnit = null;
+		game.tradePartnerUnit = null;
+		game.tradeGive = null;
+		game.tradeGet = null;
+		return "";
+	}
+
+	// CHAT
+
+	private String chat(ProtocolRequest r, Client client) throws RequestRefused {
+		String message = r.getArgument("message");
+		String sender = r.getArgument("senderplayerid");
+
+		String gameId = r.getArgument("gameidreceiver");
+		String playerId = r.getArgument("playeridreceiver");
+
+		if (playerId != null) {
+			for (Game game : games.values()) {
+				Player receiver = game.getPlayerById(playerId);
+				if (receiver != null && clients.containsKey(receiver.clientId)) {
+					queue(receiver.clientId, "chat", client, sender, message);
+					return "";
+				}
+			}
+			throw new RequestRefused("message_send_failed_-_client_not_found");
+		}
+
+		if (gameId != null) {
+			Game game = games.get(gameId);
+			if (game == null || game.players.isEmpty())
+				throw new RequestRefused("no_reciever_found_no_messages_send");
+			for (Player receiver : game.players)
+				queue(receiver.clientId, "chat", client, sender, message);
+			return "";
+		}
+
+		// no receiver at all, the original server sends to everybody
+		for (Client receiver : clients.values())
+			queue(receiver.id, "chat", client, sender, message);
+		return "";
+	}
+
+	// FORMAT
+
+	/** Format a grid as sequence of columns, e.g. {@code [[[1][0]][[1][1]]]}. */
+	private static String grid(MapGrid grid) {
+		StringBuilder string = new StringBuilder(grid.width * grid.height * 3 + 2 * grid.width + 2);
+		string.append('[');
+		for (int i = 0; i < grid.width; ++i) {
+			string.append('[');
+			for (int j = 0; j < grid.height; ++j)
+				string.append('[').append(grid.get(i, j)).append(']');
+			string.append(']');
+		}
+		return string.append(']').toString();
+	}
+
+	/** Format goods as sequence of values, e.g. {@code [[1][0][0][2][0]]}. */
+	private static String goods(int[] goods) {
+		StringBuilder string = new StringBuilder("[");
+		for (int g : goods)
+			string.append('[').append(g).append(']');
+		return string.append(']').toString();
+	}
+
+	/** Parse goods as sent by the client, e.g. {@code 1,0,0,2,0}. */
+	private static int[] goods(String string) throws RequestRefused {
+		int[] goods = new int[GOODS];
+		if (string == null)
+			return goods;
+
+		String[] values = string.split(",");
+		try {
+			for (int k = 0; k < values.length && k < GOODS; ++k)
+				goods[k] = Integer.parseInt(values[k].trim());
+		} catch (NumberFormatException e) {
+			throw new RequestRefused("amount_of_transfered_goods_in_trade_not_possible");
+		}
+		return goods;
+	}
+
+	/** Parse a path as sent by the client, e.g. {@code [1,2][1,3]}. */
+	private static List<int[]> coordinates(String string) throws RequestRefused {
+		List<int[]> list = new ArrayList<int[]>();
+		if (string == null)
+			return list;
+
+		for (String step : TCPClient.splitBrace(string)) {
+			String[] values = step.split(",");
+			try {
+				list.add(new int[] { Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()) });
+			} catch (RuntimeException e) {
+				throw new RequestRefused("illegal_path_" + step.replace(' ', '_'));
+			}
+		}
+		return list;
+	}
+
+	private static boolean isAdjacent(int i, int j, int ni, int nj) {
+		int[][] offsets = (j % 2 == 0) ? EVEN_OFFSETS : ODD_OFFSETS;
+		for (int[] offset : offsets)
+			if (i + offset[0] == ni && j + offset[1] == nj)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Run the server until the process is killed.
+	 *
+	 * @param argv
+	 *            Optionally the port, followed by map files of comma
+	 *            separated rows. Each file is added as map named like the
+	 *            file, with units for two players.
+	 */
+	public static void main(String argv[]) throws Exception {
+		int port = (argv.length > 0) ? Integer.parseInt(argv[0]) : DEFAULT_PORT;
+
+		InMemoryGameServer handler = new InMemoryGameServer();
+		for (int k = 1; k < argv.length; ++k) {
+			File file = new File(argv[k]);
+			String mapId = file.getName().replaceFirst("\\..*$", "");
+			handler.addMap(mapId, file);
+			handler.placeUnits(mapId, 2, "fightersmall", "fightermedium", "cargosmall");
+		}
+
+		StandInServer server = handler.start(port, false);
+		System.out.println("In-memory game server listening on port " + server.getPort());
+
+		// the connections are served by daemon threads
+		Thread.sleep(Long.MAX_VALUE);
+	}
+}
@@ -0,0 +1,219 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net.server;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.frankfurt.uni.vcp.net.ReplyTokenizer;
+
+/**
+ * <h3>A request as sent by the {@link de.frankfurt.uni.vcp.net.TCPClient}</h3>
+ *
+ * <p>
+ * A request consists of a header of {@code key:value} pairs, e.g.
+ * {@code type:sendgamedata clientid:... clientkey:...}, and for
+ * {@code sendgamedata} a data part in one of these forms:
+ * </p>
+ *
+ * <ul>
+ * <li>{@code data[[info][infotype=NAME key=value ...]]}, the same for
+ * {@code request} with {@code rtype=NAME}</li>
+ * <li>{@code data[[option][[NAME][key=value ...]]]}, the same for
+ * {@code action} and {@code reply}</li>
+ * <li>{@code data[[chat][key=value ...]]}</li>
+ * </ul>
+ *
+ * <p>
+ * Values enclosed in braces, like {@code message=[...]} or
+ * {@code path=[[1,2][1,3]]}, are kept as the raw text between the outer
+ * braces.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class ProtocolRequest {
+
+	/** The complete request */
+	public final String message;
+
+	/** The value of {@code type:}, e.g. {@code logon} or {@code sendgamedata} */
+	public final String type;
+
+	/**
+	 * The category of the data part, e.g. {@code info} or {@code action},
+	 * {@code null} if there is none
+	 */
+	public final String category;
+
+	/**
+	 * The name of the request within its category, e.g. {@code gamelist} or
+	 * {@code move}, {@code null} if there is none
+	 */
+	public final String command;
+
+	private final Map<String, String> header;
+
+	private final Map<String, String> arguments;
+
+	private ProtocolRequest(String message, String category, String command, Map<String, String> header, Map<String, String> arguments) {
+		this.message = message;
+		this.type = header.get("type");
+		this.category = category;
+		this.command = command;
+		this.header = Collections.unmodifiableMap(header);
+		this.arguments = Collections.unmodifiableMap(arguments);
+	}
+
+	/**
+	 * Parse a request.
+	 *
+	 * @param message
+	 *            The request as sent by the client
+	 * @return The parsed request
+	 * @throws IllegalArgumentException
+	 *             The request has no type
+	 */
+	public static ProtocolRequest parse(String message) {
+		Map<String, String> header = new HashMap<String, String>();
+		Map<String, String> arguments = new HashMap<String, String>();
+		String category = null;
+		String command = null;
+
+		ReplyTokenizer t = new ReplyTokenizer(message);
+		int token;
+
+		while ((token = t.next()) != ReplyTokenizer.END) {
+			if (t.depth() != 0 && token != ReplyTokenizer.OPEN)
+				continue;
+
+			if (token == ReplyTokenizer.KEY) {
+				// HEADER
+				String key = t.text();
+				header.put(key, nextValue(t));
+			} else if (token == ReplyTokenizer.OPEN && t.depth() == 1) {
+				// DATA: [[category][...]]
+				if (!t.nextGroup() || t.next() != ReplyTokenizer.ATOM) {
+					t.skipGroup();
+					continue;
+				}
+				category = t.text();
+				t.skipGroup();
+
+				if (!t.nextGroup())
+					break;
+				int level = t.depth();
+
+				if (t.next() == ReplyTokenizer.OPEN) {
+					// [[NAME][key=value ...]]
+					if (t.next() == ReplyTokenizer.ATOM)
+						command = t.text();
+					t.skipGroup();
+					if (t.nextGroup()) {
+						t.next();
+						parseArguments(t, t.depth(), arguments);
+					}
+				} else {
+					// [key=value ...]
+					parseArguments(t, level, arguments);
+				}
+			}
+		}
+
+		if (header.get("type") == null)
+			throw new IllegalArgumentException("request without type: " + message);
+
+		// the name of info and request commands is an argument
+		if ("info".equals(category))
+			command = arguments.get("infotype");
+		else if ("request".equals(category))
+			command = arguments.get("rtype");
+		else if ("chat".equals(category))
+			command = "chat";
+
+		return new ProtocolRequest(message, category, command, header, arguments);
+	}
+
+	/**
+	 * Collect the {@code key=value} pairs up to the end of the group at the
+	 * given depth, starting with the current token.
+	 */
+	private static void parseArguments(ReplyTokenizer t, int level, Map<String, String> arguments) {
+		int token = t.token();
+
+		while (token != ReplyTokenizer.END && t.depth() >= level) {
+			if (token == ReplyTokenizer.KEY && t.depth() == level) {
+				String key = t.text();
+				arguments.put(key, nextValue(t));
+			}
+			token = t.next();
+		}
+	}
+
+	/** Read the value following the current key, either flat or as raw group. */
+	private static String nextValue(ReplyTokenizer t) {
+		if (t.next() == ReplyTokenizer.OPEN)
+			return t.readGroup();
+		return t.text();
+	}
+
+	/**
+	 * Get the name identifying the kind of request, e.g. {@code logon},
+	 * {@code gamelist}, {@code gameinfo} or {@code move}.
+	 *
+	 * @return The command for {@code sendgamedata} requests, the type
+	 *         otherwise
+	 */
+	public String getName() {
+		return (command != null) ? command : type;
+	}
+
+	/**
+	 * Get a value of the header.
+	 *
+	 * @param key
+	 *            The key, e.g. {@code clientid}
+	 * @return The value, {@code null} if there is none
+	 */
+	public String getHeader(String key) {
+		return header.get(key);
+	}
+
+	/**
+	 * Get a value of the data part.
+	 *
+	 * @param key
+	 *            The key, e.g. {@code gameid}
+	 * @return The value, {@code null} if there is none
+	 */
+	public String getArgument(String key) {
+		return arguments.get(key);
+	}
+
+	/**
+	 * Get all values of the data part.
+	 *
+	 * @return The unmodifiable map of arguments
+	 */
+	public Map<String, String> getArguments() {
+		return arguments;
+	}
+
+	@Override
+	public String toString() {
+		return "ProtocolRequest " + getName() + " " + arguments;
+	}
+}
@@ -0,0 +1,157 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net.server;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+
+/**
+ * <h3>Records the traffic between a client and the game server</h3>
+ *
+ * <p>
+ * Run inside a {@link StandInServer}, the proxy forwards every request to the
+ * real server on a connection of its own, exactly like the
+ * {@link de.frankfurt.uni.vcp.net.TCPClient} does without pooling, and writes
+ * request, reply and round trip time to a {@link SessionLog}. The recorded
+ * session can be served back by the {@link ReplayServer}.
+ * </p>
+ *
+ * <p>
+ * If the server can not be reached, the connection to the client is closed
+ * without reply, so the client sees the same failure it would have seen
+ * without the proxy. Such requests are not recorded.
+ * </p>
+ *
+ * <p>
+ * The recording is complete only after {@link #close()}.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class RecordingProxy implements StandInServer.RequestHandler, Closeable {
+
+	private final String serverAddress;
+
+	private final int port;
+
+	private final SessionLog.Writer log;
+
+	private final AtomicLong recorded = new AtomicLong();
+
+	/**
+	 * Construct a new proxy.
+	 *
+	 * @param serverAddress
+	 *            The address of the real server
+	 * @param port
+	 *            The port of the real server
+	 * @param file
+	 *            The file to record to, replacing any existing one
+	 * @throws IOException
+	 *             The file can not be created
+	 */
+	public RecordingProxy(String serverAddress, int port, File file) throws IOException {
+		this.serverAddress = serverAddress;
+		this.port = port;
+		this.log = new SessionLog.Writer(file);
+	}
+
+	@Override
+	public String handle(String request) {
+		long start = System.nanoTime();
+		String reply;
+
+		try {
+			Socket socket = new Socket(serverAddress, port);
+			try {
+				DataOutputStream oStream = new DataOutputStream(socket.getOutputStream());
+				oStream.writeUTF(request);
+				oStream.flush();
+				reply = new DataInputStream(socket.getInputStream()).readUTF();
+			} finally {
+				socket.close();
+			}
+		} catch (IOException e) {
+			LogHelper.getLogger().error("RecordingProxy.handle(): " + e.getMessage());
+			throw new IllegalStateException("server not reachable", e);
+		}
+
+		try {
+			log.write(start, System.nanoTime() - start, request, reply);
+			recorded.incrementAndGet();
+		} catch (IOException e) {
+			LogHelper.getLogger().error("RecordingProxy: " + e.getMessage());
+		}
+		return reply;
+	}
+
+	/**
+	 * Get the number of exchanges recorded so far.
+	 *
+	 * @return The number of exchanges
+	 */
+	public long getRecordedCount() {
+		return recorded.get();
+	}
+
+	/**
+	 * Finish the recording. Requests still arriving are forwarded, but no
+	 * longer recorded.
+	 */
+	@Override
+	public void close() throws IOException {
+		log.close();
+	}
+
+	/**
+	 * Record a session until the process is stopped. Point the game to the
+	 * listening port instead of the server.
+	 *
+	 * @param argv
+	 *            The file to record to, the port to listen on, the server
+	 *            address and port; default {@code session.lsr 1505 localhost 1504}
+	 */
+	public static void main(String argv[]) throws Exception {
+		File file = new File((argv.length > 0) ? argv[0] : "session.lsr");
+		int listenPort = (argv.length > 1) ? Integer.parseInt(argv[1]) : 1505;
+		String serverAddress = (argv.length > 2) ? argv[2] : "localhost";
+		int serverPort = (argv.length > 3) ? Integer.parseInt(argv[3]) : 1504;
+
+		final RecordingProxy proxy = new RecordingProxy(serverAddress, serverPort, file);
+		Runtime.getRuntime().addShutdownHook(new Thread("session-log") {
+			@Override
+			public void run() {
+				try {
+					proxy.close();
+				} catch (IOException e) {
+					LogHelper.getLogger().error("RecordingProxy: " + e.getMessage());
+				}
+			}
+		});
+
+		new StandInServer(listenPort, false, proxy).start();
+		System.out.println("recording " + serverAddress + ":" + serverPort + " on port " + listenPort + " to " + file);
+
+		// the server threads are daemons
+		Thread.sleep(Long.MAX_VALUE);
+	}
+}
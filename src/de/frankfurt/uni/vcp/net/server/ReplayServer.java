@@ -0,0 +1,236 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+import de.frankfurt.uni.vcp.net.server.SessionLog.Exchange;
+
+/**
+ * <h3>Serves a recorded session back to the client</h3>
+ *
+ * <p>
+ * The exchanges of a {@link SessionLog} are queued per kind of request, e.g.
+ * {@code gameinfo} or {@code move}. Every request is answered with the reply
+ * of the next recorded request of its kind, preferring one with exactly the
+ * same text among the next {@link #LOOKAHEAD} ones. Once the recorded
+ * requests of a kind are used up, the last reply is repeated, so a client
+ * polling more often than the recorded one still sees the final state. A
+ * kind of request never recorded is answered with {@code status:error}.
+ * </p>
+ *
+ * <p>
+ * The replies are delayed by the recorded round trip times multiplied by a
+ * time scale, 0 replying at once. If the replay is paced, no reply is sent
+ * before its (scaled) recorded time since the first request, so the moves of
+ * the other players arrive at the same pace as in the recorded match.
+ * </p>
+ *
+ * <p>
+ * Replaying the same session to a client sending the same requests always
+ * gives the same replies, which makes it suitable for repeatable profiling.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class ReplayServer implements StandInServer.RequestHandler {
+
+	/** Number of recorded requests searched for an exact match */
+	static final int LOOKAHEAD = 32;
+
+	/** Recorded exchanges per kind of request */
+	private final Map<String, List<Exchange>> exchanges = new HashMap<String, List<Exchange>>();
+
+	/** Index of the next unused exchange per kind of request */
+	private final Map<String, Integer> cursors = new HashMap<String, Integer>();
+
+	private final double timeScale;
+
+	private final boolean paced;
+
+	/** Nano time of the first request, 0 before */
+	private long start = 0;
+
+	private final AtomicLong served = new AtomicLong();
+
+	private final AtomicLong missed = new AtomicLong();
+
+	/**
+	 * Construct a new replay server.
+	 *
+	 * @param session
+	 *            The recorded exchanges, see {@link SessionLog#read(File)}
+	 * @param timeScale
+	 *            Factor applied to the recorded times, 1 for the original
+	 *            timing, 0 to reply at once
+	 * @param paced
+	 *            {@code true} to send no reply before its recorded time
+	 */
+	public ReplayServer(List<Exchange> session, double timeScale, boolean paced) {
+		this.timeScale = timeScale;
+		this.paced = paced;
+
+		for (Exchange exchange : session) {
+			List<Exchange> list = exchanges.get(exchange.getName());
+			if (list == null)
+				exchanges.put(exchange.getName(), list = new ArrayList<Exchange>());
+			list.add(exchange);
+		}
+	}
+
+	/**
+	 * Start a replay server for a recorded file.
+	 *
+	 * @param port
+	 *            The port to listen on, 0 to pick a free one
+	 * @param file
+	 *            The file written by the {@link RecordingProxy}
+	 * @param timeScale
+	 *            Factor applied to the recorded times
+	 * @param paced
+	 *            {@code true} to send no reply before its recorded time
+	 * @return The running stand-in server
+	 * @throws IOException
+	 *             The file can not be read or the port is in use
+	 */
+	public static StandInServer start(int port, File file, double timeScale, boolean paced) throws IOException {
+		StandInServer server = new StandInServer(port, false, new ReplayServer(SessionLog.read(file), timeScale, paced));
+		server.start();
+		return server;
+	}
+
+	@Override
+	public String handle(String request) {
+		String name;
+		try {
+			name = ProtocolRequest.parse(request).getName();
+		} catch (IllegalArgumentException e) {
+			missed.incrementAndGet();
+			return "status:error errinfo:[request without type] end:end";
+		}
+
+		Exchange exchange;
+		long now = System.nanoTime();
+		synchronized (this) {
+			if (start == 0)
+				start = now;
+			exchange = next(name, request);
+		}
+
+		if (exchange == null) {
+			missed.incrementAndGet();
+			LogHelper.getLogger().debug("ReplayServer: not recorded: " + request);
+			return "status:error errinfo:[" + name + " not recorded] end:end";
+		}
+
+		// only the recorded times are scaled, the time passed is real
+		long delay = (long) (exchange.latency * timeScale);
+		if (paced)
+			delay = (long) ((exchange.time + exchange.latency) * timeScale) - TimeUnit.NANOSECONDS.toMicros(now - start);
+		sleep(delay);
+
+		served.incrementAndGet();
+		return exchange.reply;
+	}
+
+	/**
+	 * Pick the exchange answering a request and advance the cursor.
+	 */
+	private Exchange next(String name, String request) {
+		List<Exchange> list = exchanges.get(name);
+		if (list == null)
+			return null;
+
+		Integer cursor = cursors.get(name);
+		int k = (cursor == null) ? 0 : cursor;
+		if (k >= list.size())
+			return list.get(list.size() - 1);
+
+		int match = k;
+		for (int m = k; m < Math.min(k + LOOKAHEAD, list.size()); ++m) {
+			if (list.get(m).request.equals(request)) {
+				match = m;
+				break;
+			}
+		}
+		cursors.put(name, match + 1);
+		return list.get(match);
+	}
+
+	private static void sleep(long micros) {
+		if (micros <= 0)
+			return;
+
+		try {
+			TimeUnit.MICROSECONDS.sleep(micros);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Start over with the first recorded exchanges.
+	 */
+	public synchronized void rewind() {
+		cursors.clear();
+		start = 0;
+	}
+
+	/**
+	 * Get the number of requests answered by a recorded reply.
+	 *
+	 * @return The number of requests
+	 */
+	public long getServedCount() {
+		return served.get();
+	}
+
+	/**
+	 * Get the number of requests, for which nothing was recorded.
+	 *
+	 * @return The number of requests
+	 */
+	public long getMissedCount() {
+		return missed.get();
+	}
+
+	/**
+	 * Serve a recorded session until the process is stopped.
+	 *
+	 * @param argv
+	 *            The recorded file, the port, the time scale and
+	 *            {@code paced}; default {@code session.lsr 1504 1}
+	 */
+	public static void main(String argv[]) throws Exception {
+		File file = new File((argv.length > 0) ? argv[0] : "session.lsr");
+		int port = (argv.length > 1) ? Integer.parseInt(argv[1]) : 1504;
+		double timeScale = (argv.length > 2) ? Double.parseDouble(argv[2]) : 1;
+		boolean paced = (argv.length > 3) && argv[3].equals("paced");
+
+		StandInServer server = start(port, file, timeScale, paced);
+		System.out.println("replaying " + file + " on port " + server.getPort() + ", time scale " + timeScale + (paced ? ", paced" : ""));
+
+		// the server threads are daemons
+		Thread.sleep(Long.MAX_VALUE);
+	}
+}
@@ -0,0 +1,320 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <h3>Binary file of request and reply pairs</h3>
+ *
+ * <p>
+ * Written by the {@link RecordingProxy} and served back by the
+ * {@link ReplayServer}. The file is gzip compressed, which shrinks the many
+ * repeated polls to almost nothing, and consists of
+ * </p>
+ *
+ * <ul>
+ * <li>a header: the magic number {@code LSRL}, the format version as byte and
+ * the wall clock time the recording started as long</li>
+ * <li>one record per exchange: the byte {@code 1}, the microseconds since
+ * the previous request and the round trip time in microseconds as variable
+ * length numbers, followed by request and reply as
+ * {@link DataOutputStream#writeUTF(String) modified UTF-8}, i.e. exactly as
+ * framed on the wire</li>
+ * <li>the byte {@code 0}</li>
+ * </ul>
+ *
+ * <p>
+ * A file cut short, e.g. because the proxy was killed, is read up to the last
+ * complete record.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class SessionLog {
+
+	static final int MAGIC = 0x4C53524C;
+
+	static final int VERSION = 1;
+
+	private static final int RECORD = 1;
+
+	private static final int END = 0;
+
+	/**
+	 * <h3>A single request and its reply</h3>
+	 */
+	public static class Exchange {
+
+		/** Time of the request since the recording started, in microseconds */
+		public final long time;
+
+		/** Time the server took to reply, in microseconds */
+		public final long latency;
+
+		/** The request as sent by the client */
+		public final String request;
+
+		/** The reply as sent by the server */
+		public final String reply;
+
+		private String name;
+
+		/**
+		 * Construct a new exchange.
+		 *
+		 * @param time
+		 *            Time of the request since the recording started, in
+		 *            microseconds
+		 * @param latency
+		 *            Round trip time in microseconds
+		 * @param request
+		 *            The request
+		 * @param reply
+		 *            The reply
+		 */
+		public Exchange(long time, long latency, String request, String reply) {
+			this.time = time;
+			this.latency = latency;
+			this.request = request;
+			this.reply = reply;
+		}
+
+		/**
+		 * Get the kind of the request, see {@link ProtocolRequest#getName()}.
+		 *
+		 * @return The name, e.g. {@code gameinfo}, or {@code ?} if the
+		 *         request can not be parsed
+		 */
+		public synchronized String getName() {
+			if (name == null) {
+				try {
+					name = ProtocolRequest.parse(request).getName();
+				} catch (IllegalArgumentException e) {
+					name = "?";
+				}
+			}
+			return name;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%10.3f s %8d us  %s", time / 1e6, latency, getName());
+		}
+	}
+
+	/**
+	 * <h3>Appends exchanges to a new file</h3>
+	 *
+	 * <p>
+	 * All methods are thread safe.
+	 * </p>
+	 */
+	public static class Writer implements Closeable {
+
+		/** Records buffered before they are flushed to disk */
+		private static final int FLUSH_INTERVAL = 64;
+
+		private final DataOutputStream out;
+
+		/** Nano time the recording started */
+		private final long start;
+
+		/** Time of the last request, in microseconds since the start */
+		private long last = 0;
+
+		private int unflushed = 0;
+
+		private boolean closed = false;
+
+		/**
+		 * Create a new file, replacing any existing one.
+		 *
+		 * @param file
+		 *            The file to write
+		 * @throws IOException
+		 *             The file can not be created
+		 */
+		public Writer(File file) throws IOException {
+			out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file)), 8192, true));
+			start = System.nanoTime();
+
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(System.currentTimeMillis());
+		}
+
+		/**
+		 * Append an exchange.
+		 *
+		 * @param requestNanos
+		 *            {@link System#nanoTime()} when the request was received
+		 * @param latencyNanos
+		 *            Time the server took to reply
+		 * @param request
+		 *            The request
+		 * @param reply
+		 *            The reply
+		 * @throws IOException
+		 *             Writing failed
+		 */
+		public synchronized void write(long requestNanos, long latencyNanos, String request, String reply) throws IOException {
+			if (closed)
+				throw new IOException("session log closed");
+
+			// exchanges completing out of order are recorded as simultaneous
+			long time = Math.max(last, TimeUnit.NANOSECONDS.toMicros(requestNanos - start));
+
+			out.writeByte(RECORD);
+			writeVarLong(out, time - last);
+			writeVarLong(out, TimeUnit.NANOSECONDS.toMicros(Math.max(0, latencyNanos)));
+			out.writeUTF(request);
+			out.writeUTF(reply);
+			last = time;
+
+			if (++unflushed >= FLUSH_INTERVAL) {
+				out.flush();
+				unflushed = 0;
+			}
+		}
+
+		/**
+		 * Write the end marker and close the file.
+		 */
+		@Override
+		public synchronized void close() throws IOException {
+			if (closed)
+				return;
+			closed = true;
+
+			out.writeByte(END);
+			out.close();
+		}
+	}
+
+	/**
+	 * Read all exchanges of a file.
+	 *
+	 * @param file
+	 *            The file written by a {@link Writer}
+	 * @return The exchanges in the order of their requests
+	 * @throws IOException
+	 *             The file can not be read or is not a session log
+	 */
+	public static List<Exchange> read(File file) throws IOException {
+		List<Exchange> exchanges = new ArrayList<Exchange>();
+		FileInputStream stream = new FileInputStream(file);
+
+		try {
+			DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(stream)));
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is no session log");
+			int version = in.readUnsignedByte();
+			if (version != VERSION)
+				throw new IOException(file + " has unknown version " + version);
+			in.readLong();
+
+			long time = 0;
+			while (in.readUnsignedByte() == RECORD) {
+				time += readVarLong(in);
+				long latency = readVarLong(in);
+				String request = in.readUTF();
+				String reply = in.readUTF();
+				exchanges.add(new Exchange(time, latency, request, reply));
+			}
+		} catch (EOFException e) {
+			// cut short, keep the complete records
+		} finally {
+			stream.close();
+		}
+		return exchanges;
+	}
+
+	static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("malformed number");
+	}
+
+	/**
+	 * Print a summary of a session log: the number of requests, the mean
+	 * round trip time and the reply bytes per kind of request.
+	 *
+	 * @param argv
+	 *            The file to summarize, {@code -v} in front to list every
+	 *            exchange as well
+	 */
+	public static void main(String argv[]) throws Exception {
+		boolean verbose = argv.length > 1 && argv[0].equals("-v");
+		if (argv.length == 0) {
+			System.out.println("usage: SessionLog [-v] FILE");
+			return;
+		}
+
+		List<Exchange> exchanges = read(new File(argv[argv.length - 1]));
+		Map<String, long[]> summary = new TreeMap<String, long[]>();
+
+		for (Exchange exchange : exchanges) {
+			if (verbose)
+				System.out.println(exchange);
+
+			long[] s = summary.get(exchange.getName());
+			if (s == null)
+				summary.put(exchange.getName(), s = new long[3]);
+			s[0]++;
+			s[1] += exchange.latency;
+			s[2] += exchange.reply.length();
+		}
+
+		// times never decrease, see Writer.write()
+		long duration = exchanges.isEmpty() ? 0 : exchanges.get(exchanges.size() - 1).time;
+
+		System.out.println(String.format("%d exchanges in %.1f s", exchanges.size(), duration / 1e6));
+		System.out.println(String.format("%-12s %7s %10s %12s", "request", "count", "mean us", "reply chars"));
+		for (Map.Entry<String, long[]> e : summary.entrySet()) {
+			long[] s = e.getValue();
+			System.out.println(String.format("%-12s %7d %10d %12d", e.getKey(), s[0], s[1] / s[0], s[2]));
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.net.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+import de.frankfurt.uni.vcp.net.TCPClient;
+
+/**
+ * <h3>Local stand-in for the game server</h3>
+ *
+ * <p>
+ * Speaks the same framing as the real server: every request and every reply
+ * is a single {@link DataOutputStream#writeUTF(String)} string. The replies
+ * are produced by a pluggable {@link RequestHandler}, e.g. the
+ * {@link InMemoryGameServer} implementing the whole protocol, the
+ * {@link RecordingProxy} recording the traffic to the real server or the
+ * {@link ReplayServer} serving such a recording back.
+ * </p>
+ *
+ * <p>
+ * The server either closes every connection after the first reply, like the
+ * real server does, or keeps it alive for further requests. This allows to
+ * measure both modes of the {@link TCPClient} against each other, see
+ * {@link #main(String[])}.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class StandInServer {
+
+	/**
+	 * Produces the reply to a single request.
+	 */
+	public interface RequestHandler {
+
+		/**
+		 * Answer a request.
+		 *
+		 * @param request
+		 *            The request as sent by the client
+		 * @return The complete reply, including {@code status:} and
+		 *         {@code end:end}
+		 */
+		public String handle(String request);
+	}
+
+	/** Replies {@code status:ok} with a fixed client key to every request. */
+	public static final RequestHandler OK_HANDLER = new RequestHandler() {
+		@Override
+		public String handle(String request) {
+			return "status:ok clientkey:standin end:end";
+		}
+	};
+
+	/** Port to listen on, 0 to pick a free one. */
+	private final int port;
+
+	/** If false, connections are closed after the first reply. */
+	private final boolean keepAlive;
+
+	private final RequestHandler handler;
+
+	private ServerSocket serverSocket;
+
+	private ExecutorService workers;
+
+	/**
+	 * Construct a new stand-in server.
+	 *
+	 * @param port
+	 *            The port to listen on, 0 to pick a free one
+	 * @param keepAlive
+	 *            Whether to serve more than one request per connection
+	 * @param handler
+	 *            Produces the replies
+	 */
+	public StandInServer(int port, boolean keepAlive, RequestHandler handler) {
+		this.port = port;
+		this.keepAlive = keepAlive;
+		this.handler = handler;
+	}
+
+	/**
+	 * Bind the server socket and start accepting connections in the
+	 * background.
+	 */
+	public synchronized void start() throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getByName("localhost"));
+		workers = Executors.newCachedThreadPool(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "standin-server");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		final ServerSocket socket = serverSocket;
+		workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				accept(socket);
+			}
+		});
+	}
+
+	/**
+	 * Get the port the server is listening on.
+	 *
+	 * @return The bound port
+	 */
+	public synchronized int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Check whether connections are kept alive.
+	 *
+	 * @return {@code true} if more than one request is served per connection
+	 */
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Stop accepting connections and close the server socket.
+	 */
+	public synchronized void stop() {
+		try {
+			if (serverSocket != null)
+				serverSocket.close();
+		} catch (IOException e) {
+			LogHelper.getLogger().error("StandInServer.stop(): " + e.getMessage());
+		}
+		if (workers != null)
+			workers.shutdownNow();
+	}
+
+	private void accept(ServerSocket socket) {
+		while (!socket.isClosed()) {
+			try {
+				final Socket connection = socket.accept();
+				connection.setTcpNoDelay(true);
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						serve(connection);
+					}
+				});
+			} catch (SocketException e) {
+				// server socket closed by stop()
+			} catch (IOException e) {
+				LogHelper.getLogger().error("StandInServer.accept(): " + e.getMessage());
+			}
+		}
+	}
+
+	private void serve(Socket connection) {
+		try {
+			DataInputStream iStream = new DataInputStream(connection.getInputStream());
+			DataOutputStream oStream = new DataOutputStream(connection.getOutputStream());
+
+			do {
+				String request = iStream.readUTF();
+				oStream.writeUTF(handler.handle(request));
+				oStream.flush();
+			} while (keepAlive);
+		} catch (EOFException e) {
+			// client closed the connection
+		} catch (IOException e) {
+			LogHelper.getLogger().debug("StandInServer.serve(): " + e.getMessage());
+		} finally {
+			try {
+				connection.close();
+			} catch (IOException e) {
+				// nothing left to clean up
+			}
+		}
+	}
+
+	/**
+	 * Send the same number of requests with and without kept alive
+	 * connections and print the time taken.
+	 *
+	 * @param argv
+	 *            Optionally the number of requests per run
+	 */
+	public static void main(String argv[]) throws Exception {
+		int requests = (argv.length > 0) ? Integer.parseInt(argv[0]) : 2000;
+
+		// warm up, so the JIT does not favor the later runs
+		measure(false, false, requests / 4);
+		measure(true, true, requests / 4);
+
+		report("one socket per request    ", measure(false, false, requests), requests);
+		report("pooled, kept alive        ", measure(true, true, requests), requests);
+		report("pooled, server closes     ", measure(false, true, requests), requests);
+	}
+
+	private static long measure(boolean keepAlive, boolean pooling, int requests) throws Exception {
+		StandInServer server = new StandInServer(0, keepAlive, OK_HANDLER);
+		server.start();
+
+		TCPClient client = new TCPClient("localhost", server.getPort(), TCPClient.CLIENT_INFO);
+		if (pooling)
+			client.enablePooling(1);
+
+		try {
+			client.logon();
+
+			long start = System.nanoTime();
+			for (int i = 0; i < requests; ++i)
+				client.getinfo();
+			return System.nanoTime() - start;
+		} finally {
+			client.disablePooling();
+			server.stop();
+		}
+	}
+
+	private static void report(String mode, long nanos, int requests) {
+		System.out.println(String.format("%s %6d requests %8.1f ms %8.1f us/request", mode, requests, nanos / 1e6, nanos / 1e3
+				/ requests));
+	}
+}
@@ -22,9 +22,6 @@ import java.awt.Graphics2D;
 import java.awt.RadialGradientPaint;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import javax.imageio.ImageIO;
 
 import jme3tools.converters.ImageToAwt;
 
@@ -35,8 +32,11 @@ import com.jme3.terrain.geomipmap.TerrainQuad;
 import com.jme3.terrain.heightmap.AbstractHeightMap;
 import com.jme3.terrain.heightmap.HeightMap;
 import com.jme3.terrain.heightmap.ImageBasedHeightMap;
+import com.jme3.texture.Image;
 import com.jme3.texture.Texture;
 import com.jme3.texture.Texture.WrapMode;
+import com.jme3.texture.Texture2D;
+import com.jme3.texture.plugins.AWTLoader;
 
 import de.frankfurt.uni.vcp.config.MapConfig;
 import de.frankfurt.uni.vcp.helpers.ImageHelper;
@@ -58,13 +58,15 @@ import de.frankfurt.uni.vcp.helpers.ImageHelper;
  * </ol>
  * </p>
  * 
+ * <p>
+ * Both images are converted in memory, so the terrain may be created on any
+ * thread before it is attached to the scene.
+ * </p>
+ * 
  * @author Bernd Sp�th, Wladimir Spindler and Saman Sedighi Rad
  */
 public class DesertHeightMap extends Node {
 
-	public final String MAPS_IMAGE_FOLDER = "data/maps/images/";
-	public final String ALPHA_MAP_FILE_NAME = "alphamap";
-
 	public static final int PATCH_SIZE = 65;
 	public static final float SQRT_3 = sqrt(3);
 
@@ -76,6 +78,12 @@ public class DesertHeightMap extends Node {
 
 	public MapConfig mapConfig;
 
+	/** Grayscale image of the heights, see {@link #createMapImages(int, int)} */
+	private BufferedImage heightMapImage;
+
+	/** Colored image selecting the textures, see {@link #createMapImages(int, int)} */
+	private BufferedImage alphaMapImage;
+
 	public static final int TOPLEFT = 0;
 	public static final int TOPRIGHT = 1;
 	public static final int LEFT = 2;
@@ -99,15 +107,15 @@ public class DesertHeightMap extends Node {
 	 * Creates the complete desert terrain for the map.
 	 * @param mapConfig This holds the <i>logical</i> information of the topology of the terrain that is supposed to be generated.
 	 * @param assetManager Used to for the required {@link Material} and {@link Texture} for the terrain.
-	 * @throws IOException 
 	 */
-	public DesertHeightMap(MapConfig mapConfig, AssetManager assetManager) throws IOException {
+	public DesertHeightMap(MapConfig mapConfig, AssetManager assetManager) {
 		this.mapConfig = mapConfig;
 	    createMapImages (MAP_SIZE, MAP_SIZE);	
+	    AWTLoader loader = new AWTLoader();
 	    
 		// SHADER
 		Material terrainMaterial= new Material(assetManager, "Common/MatDefs/Terrain/Terrain.j3md");
-		terrainMaterial.setTexture("Alpha", assetManager.loadTexture(ALPHA_MAP_FILE_NAME+".png"));		
+		terrainMaterial.setTexture("Alpha", new Texture2D(loader.load(alphaMapImage, true)));		
 
 		// TEXTURES
 	    Texture sand = assetManager.loadTexture("sand.png");
@@ -121,16 +129,17 @@ public class DesertHeightMap extends Node {
 	    terrainMaterial.setFloat("Tex2Scale", 64f);
 	    
 	    // HEIGHTMAP
-	    Texture heightMapImage = assetManager.loadTexture(mapConfig.getMapName() + ".png");
+	    // same conversion as loading the image as texture
+	    Image heightMapImage = loader.load(this.heightMapImage, true);
 	    
-	    AbstractHeightMap heightmap = new ImageBasedHeightMap(ImageToAwt.convert(heightMapImage.getImage(), false, true, 0));
+	    AbstractHeightMap heightmap = new ImageBasedHeightMap(ImageToAwt.convert(heightMapImage, false, true, 0));
 	    heightmap.load();
 
-	    int imageWidth = heightMapImage.getImage().getWidth();
-	    int imageHeight = heightMapImage.getImage().getHeight();
+	    int imageWidth = heightMapImage.getWidth();
+	    int imageHeight = heightMapImage.getHeight();
 	    
-	    float boardWidth = mapConfig.csv[0].length * SQRT_3 + SQRT_3/2;
-	    float boardHeight = 3 * (mapConfig.csv.length/2) + (mapConfig.csv.length % 2) * 2;
+	    float boardWidth = mapConfig.width * SQRT_3 + SQRT_3/2;
+	    float boardHeight = 3 * (mapConfig.height/2) + (mapConfig.height % 2) * 2;
 	    
 	    TerrainQuad terrain = new TerrainQuad("terrain", PATCH_SIZE, imageWidth+1, heightmap.getHeightMap());
 	    terrain.setMaterial(terrainMaterial);
@@ -193,7 +202,7 @@ public class DesertHeightMap extends Node {
 	 * @param imageWidth
 	 * @param imageHeight
 	 */
-	public void createMapImages(int imageWidth, int  imageHeight) throws IOException {
+	public void createMapImages(int imageWidth, int  imageHeight) {
 		int width = mapConfig.width;
 		int height = mapConfig.height;
 		
@@ -226,9 +235,8 @@ public class DesertHeightMap extends Node {
 				}
 			}
 		}
-		heightMapImage = ImageHelper.getBlurredImage(heightMapImage);
-		ImageIO.write(heightMapImage, "png", new File(MAPS_IMAGE_FOLDER + mapConfig.getMapName() + ".png"));
-		ImageIO.write(alphaMapImage, "png", new File(MAPS_IMAGE_FOLDER + ALPHA_MAP_FILE_NAME +".png"));		
+		this.heightMapImage = ImageHelper.getBlurredImage(heightMapImage);
+		this.alphaMapImage = alphaMapImage;
 	}	
 
 }
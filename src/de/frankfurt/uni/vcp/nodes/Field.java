@@ -15,6 +15,7 @@
 package de.frankfurt.uni.vcp.nodes;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,7 +31,6 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
 
 import de.frankfurt.uni.vcp.Clickable;
-import de.frankfurt.uni.vcp.config.MapConfig;
 import de.frankfurt.uni.vcp.enums.MaterialTypes;
 import de.frankfurt.uni.vcp.factories.MaterialFactory;
 import de.frankfurt.uni.vcp.game.Game;
@@ -139,24 +139,33 @@ public class Field extends Node implements Clickable {
 	}
 
 	/**
-	 * Calculate all usable fields connected to a given field.
+	 * Place a unit on this field, or remove it, and let the map know. Use this
+	 * instead of assigning {@link #unit}, or the fields reachable by units
+	 * may be taken from an outdated cache, see {@link HexMap#getReachability()}.
+	 * 
+	 * @param unit
+	 *            The unit standing on this field, {@code null} if none
+	 */
+	public void setUnit(Movable unit) {
+		this.unit = unit;
+		if (getParent() instanceof HexMap)
+			((HexMap) getParent()).occupancyChanged(this);
+	}
+
+	/**
+	 * Calculate all usable fields connected to a given field. Loops on hot
+	 * paths should iterate the {@link HexMap#getAdjacency()} instead, which
+	 * creates no list.
 	 * 
 	 * @return list of usable fields connected to this field
 	 */
 	public List<Field> getNeighbours() {
-		List<Field> list = new LinkedList<Field>();
-
-		HexMap hexMap = Game.getInstance().getHexMap();
-		MapConfig mapConfig = Game.getInstance().getMapConfig();
+		HexAdjacency adjacency = Game.getInstance().getHexMap().getAdjacency();
+		List<Field> list = new ArrayList<Field>(6);
 
-		int[][] offsets = (this.jIndex % 2 == 0) ? evenOffsets : oddOffsets;
-		for (int[] offset : offsets) {
-
-			int i = this.iIndex + offset[0];
-			int j = this.jIndex + offset[1];
-			if (mapConfig.isUsable(i, j))
-				list.add(hexMap.getField(i, j));
-		}
+		int f = adjacency.index(this);
+		for (int k = adjacency.start(f); k < adjacency.end(f); ++k)
+			list.add(adjacency.neighbour(k));
 		return list;
 	}
 
@@ -211,7 +220,9 @@ public class Field extends Node implements Clickable {
 	 * @throws Exception
 	 */
 	public void unselect(String layer) {
-		layers.remove(layer);
+		// clearing a layer unselects every field of the map
+		if (layers.remove(layer) == null)
+			return;
 
 		updateSelection();
 	}
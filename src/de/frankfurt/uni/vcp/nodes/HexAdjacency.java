@@ -0,0 +1,192 @@
+/* This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.frankfurt.uni.vcp.nodes;
+
+/**
+ * <h3>The neighbours of all fields of a {@link HexMap}</h3>
+ *
+ * <p>Every field is numbered {@code j * width + i}. The numbers of the
+ * neighbours of all fields are stored one field after another in a single
+ * array, and a second array holds where the neighbours of every field
+ * begin, so the neighbours of field {@code f} are found at the positions
+ * {@link #start(int)} up to, but excluding, {@link #end(int)}. Only fields
+ * with usable terrain are listed, as by {@link Field#getNeighbours()}, in the
+ * same order.</p>
+ *
+ * <p>The table is built once with the map and never changes, so it may be
+ * read on any thread. Iterating it creates no objects:</p>
+ *
+ * <pre>
+ * int f = adjacency.index(field);
+ * for (int k = adjacency.start(f); k &lt; adjacency.end(f); ++k)
+ *     visit(adjacency.neighbour(k));
+ * </pre>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class HexAdjacency {
+
+	public final int width;
+
+	public final int height;
+
+	/** The fields by number, {@code null} where the terrain is not usable */
+	private final Field[] fields;
+
+	/** Where the neighbours of every field begin, one more entry at the end */
+	private final int[] offsets;
+
+	/** The numbers of the neighbours of all fields */
+	private final int[] neighbours;
+
+	/**
+	 * Build the table for the fields of a map.
+	 *
+	 * @param fields
+	 *            The fields by row and column, {@code null} where the terrain
+	 *            is not usable
+	 * @param width
+	 *            The number of columns
+	 * @param height
+	 *            The number of rows
+	 */
+	public HexAdjacency(Field[][] fields, int width, int height) {
+		int n = width * height;
+
+		this.width = width;
+		this.height = height;
+		this.fields = new Field[n];
+		this.offsets = new int[n + 1];
+
+		for (int j = 0; j < height; ++j)
+			for (int i = 0; i < width; ++i)
+				this.fields[j * width + i] = fields[j][i];
+
+		// count first, then fill
+		for (int f = 0; f < n; ++f)
+			offsets[f + 1] = offsets[f] + collect(f, null, 0);
+
+		this.neighbours = new int[offsets[n]];
+		for (int f = 0; f < n; ++f)
+			collect(f, neighbours, offsets[f]);
+	}
+
+	/**
+	 * Find the usable neighbours of a field.
+	 *
+	 * @return The number of neighbours, written to {@code dest} from
+	 *         {@code pos} on, unless {@code dest} is {@code null}
+	 */
+	private int collect(int f, int[] dest, int pos) {
+		int i = f % width;
+		int j = f / width;
+		int count = 0;
+
+		// unusable fields have no neighbours, and are nobody's neighbour
+		if (fields[f] == null)
+			return 0;
+
+		int[][] offsets = (j % 2 == 0) ? Field.evenOffsets : Field.oddOffsets;
+		for (int[] offset : offsets) {
+			int ni = i + offset[0];
+			int nj = j + offset[1];
+
+			if (ni < 0 || ni >= width || nj < 0 || nj >= height || fields[nj * width + ni] == null)
+				continue;
+			if (dest != null)
+				dest[pos + count] = nj * width + ni;
+			++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Get the number of a field.
+	 *
+	 * @param field
+	 *            The field
+	 * @return The number {@code j * width + i}
+	 */
+	public int index(Field field) {
+		return field.jIndex * width + field.iIndex;
+	}
+
+	/**
+	 * Get the field with a number.
+	 *
+	 * @param index
+	 *            The number of the field
+	 * @return The field, {@code null} if the terrain is not usable
+	 */
+	public Field field(int index) {
+		return fields[index];
+	}
+
+	/**
+	 * Get the number of fields, including the unusable ones.
+	 *
+	 * @return {@code width * height}
+	 */
+	public int size() {
+		return fields.length;
+	}
+
+	/**
+	 * Get the position of the first neighbour of a field.
+	 *
+	 * @param index
+	 *            The number of the field
+	 * @return The position, to be passed to {@link #neighbour(int)}
+	 */
+	public int start(int index) {
+		return offsets[index];
+	}
+
+	/**
+	 * Get the position behind the last neighbour of a field.
+	 *
+	 * @param index
+	 *            The number of the field
+	 * @return The position, equal to {@link #start(int)} if there are no
+	 *         neighbours
+	 */
+	public int end(int index) {
+		return offsets[index + 1];
+	}
+
+	/**
+	 * Get the number of a neighbour.
+	 *
+	 * @param k
+	 *            The position of the neighbour, between {@link #start(int)}
+	 *            and {@link #end(int)}
+	 * @return The number of the neighbouring field
+	 */
+	public int neighbourIndex(int k) {
+		return neighbours[k];
+	}
+
+	/**
+	 * Get a neighbour.
+	 *
+	 * @param k
+	 *            The position of the neighbour, between {@link #start(int)}
+	 *            and {@link #end(int)}
+	 * @return The neighbouring field
+	 */
+	public Field neighbour(int k) {
+		return fields[neighbours[k]];
+	}
+}
@@ -15,8 +15,10 @@
 package de.frankfurt.uni.vcp.nodes;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import static com.jme3.math.FastMath.sqrt;
 
@@ -27,6 +29,13 @@ import com.jme3.renderer.queue.RenderQueue.ShadowMode;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
 
+import de.frankfurt.uni.vcp.algorithmns.CostMap;
+import de.frankfurt.uni.vcp.algorithmns.DistanceOracle;
+import de.frankfurt.uni.vcp.algorithmns.PathEngine;
+import de.frankfurt.uni.vcp.algorithmns.Reachability;
+import de.frankfurt.uni.vcp.algorithmns.RoutePlanner;
+import de.frankfurt.uni.vcp.algorithmns.TerrainCostMap;
+import de.frankfurt.uni.vcp.algorithmns.ThreatMap;
 import de.frankfurt.uni.vcp.config.MapConfig;
 import de.frankfurt.uni.vcp.game.Game;
 import de.frankfurt.uni.vcp.nodes.movables.Movable;
@@ -41,7 +50,7 @@ import de.frankfurt.uni.vcp.units.Player;
  */
 public class HexMap extends Node {
     
-  public static final String[] LAYERS = {"path", "range"};
+  public static final String[] LAYERS = {"path", "threat", "range"};
     
     
     // CONSTANTS
@@ -54,6 +63,33 @@ public class HexMap extends Node {
     private int width;
     private int height;
     private Field[][] fields;
+
+    /** The neighbours of all {@link #fields} */
+    private final HexAdjacency adjacency;
+
+    /** Searches paths on the {@link #fields}, created on first use */
+    private PathEngine pathEngine;
+
+    /** Finds the fields reachable by units, created on first use */
+    private Reachability reachability;
+
+    /** Remembers the path segments of way plannings, created on first use */
+    private RoutePlanner routePlanner;
+
+    /** The threat of the units on the {@link #fields}, created on first use */
+    private ThreatMap threatMap;
+
+    /** The map this one has been built from */
+    private final MapConfig mapConfig;
+
+    /** The costs of the {@link #fields} by unit type, see {@link #getCostMap(String)} */
+    private final Map<String, CostMap> costMaps = new HashMap<String, CostMap> ();
+
+    /** The costs for unit types without a cost map of their own, created on first use */
+    private CostMap defaultCostMap;
+
+    /** The distance oracles by cost map, see {@link #getDistanceOracle(CostMap)} */
+    private final Map<CostMap, DistanceOracle> oracles = new HashMap<CostMap, DistanceOracle> ();
     
     // SELECTION LAYERS
     /**
@@ -80,6 +116,7 @@ public class HexMap extends Node {
       for (String l : LAYERS)
         layerOrder.add (l);
       
+        this.mapConfig = mapConfig;
         width = mapConfig.width;
         height = mapConfig.height;
         
@@ -87,7 +124,7 @@ public class HexMap extends Node {
         for (int j=0; j<mapConfig.height; ++j){
             fields[j] = new Field[mapConfig.width];
             for (int i=0; i<mapConfig.width; ++i) {
-                if (mapConfig.csv[j][i] != 0) {
+                if (mapConfig.get(i, j) != 0) {
                     Field field = new Field (i, j);
                     fields[j][i] = field;
                     this.attachChild(field);
@@ -103,6 +140,7 @@ public class HexMap extends Node {
                 }
             }
         }
+        adjacency = new HexAdjacency (fields, width, height);
 		setShadowMode(ShadowMode.Receive);
     }
     
@@ -117,6 +155,114 @@ public class HexMap extends Node {
     public Field getField (int i, int j) {
         return fields[j][i];
     }
+
+    /**
+     * Get the engine searching paths on the fields of this map. It must only
+     * be used on the render thread.
+     * @return The path engine of this map
+     */
+    public PathEngine getPathEngine () {
+        if (pathEngine == null)
+            pathEngine = new PathEngine (adjacency);
+        return pathEngine;
+    }
+
+    /**
+     * Get the service finding the fields reachable by units on this map. It
+     * must only be used on the render thread.
+     * @return The reachability service of this map
+     */
+    public Reachability getReachability () {
+        if (reachability == null)
+            reachability = new Reachability (adjacency);
+        return reachability;
+    }
+
+    /**
+     * Get the planner remembering the path segments between waypoints on
+     * this map. It must only be used on the render thread.
+     * @return The route planner of this map
+     */
+    public RoutePlanner getRoutePlanner () {
+        if (routePlanner == null)
+            routePlanner = new RoutePlanner (getPathEngine ());
+        return routePlanner;
+    }
+
+    /**
+     * Get the threat of the units on the fields of this map. It must only be
+     * used on the render thread, and is brought up to date by
+     * {@link Game#updateThreatMap()} before it is read.
+     * @return The threat map of this map
+     */
+    public ThreatMap getThreatMap () {
+        if (threatMap == null)
+            threatMap = new ThreatMap (adjacency);
+        return threatMap;
+    }
+
+    /**
+     * Get the cost of entering the fields of this map for a type of units.
+     * Unless set by {@link #setCostMap(String, CostMap)}, the costs are
+     * taken from the values of the map, see {@link TerrainCostMap}.
+     * @param unitType The name of the unit type, {@code null} for the default
+     * @return The cost map
+     */
+    public CostMap getCostMap (String unitType) {
+        CostMap costMap = costMaps.get (unitType);
+        if (costMap != null)
+            return costMap;
+
+        if (defaultCostMap == null)
+            defaultCostMap = new TerrainCostMap (mapConfig);
+        return defaultCostMap;
+    }
+
+    /**
+     * Set the cost of entering the fields of this map for a type of units,
+     * e.g. to slow down camels in the dunes.
+     * @param unitType The name of the unit type
+     * @param costMap The cost map, {@code null} to use the default again
+     */
+    public void setCostMap (String unitType, CostMap costMap) {
+        CostMap previous = (costMap == null) ? costMaps.remove (unitType) : costMaps.put (unitType, costMap);
+        if (previous != null && !costMaps.containsValue (previous))
+            oracles.remove (previous);
+    }
+
+    /**
+     * Get the oracle estimating the cost of paths on this map, built on
+     * first use for every cost map.
+     * @param costMap The cost of entering the fields, see {@link #getCostMap(String)}
+     * @return The distance oracle
+     */
+    public DistanceOracle getDistanceOracle (CostMap costMap) {
+        DistanceOracle oracle = oracles.get (costMap);
+        if (oracle == null) {
+            oracle = new DistanceOracle (getPathEngine (), costMap);
+            oracles.put (costMap, oracle);
+        }
+        return oracle;
+    }
+
+    /**
+     * Report that a unit entered or left a field, see {@link Field#setUnit(Movable)}.
+     * @param field The field
+     */
+    void occupancyChanged (Field field) {
+        if (reachability != null)
+            reachability.occupancyChanged (adjacency.index (field), !field.isUsable ());
+        if (routePlanner != null)
+            routePlanner.occupancyChanged (adjacency.index (field));
+    }
+
+    /**
+     * Get the neighbours of all fields of this map.
+     * @return The adjacency table, built with the map
+     */
+    public HexAdjacency getAdjacency () {
+        return adjacency;
+    }
     
 
     // NEW
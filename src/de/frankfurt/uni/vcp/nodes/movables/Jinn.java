@@ -1,9 +1,10 @@
 package de.frankfurt.uni.vcp.nodes.movables;
 
-import com.jme3.asset.AssetManager;
 import com.jme3.math.FastMath;
 import com.jme3.scene.Spatial;
-import de.frankfurt.uni.vcp.game.Game;
+
+import de.frankfurt.uni.vcp.enums.SpatialTypes;
+import de.frankfurt.uni.vcp.factories.SpatialFactory;
 import de.frankfurt.uni.vcp.net.UnitInfo;
 
 /**
@@ -21,9 +22,8 @@ public class Jinn extends Movable {
 	
 	public Jinn(UnitInfo info) throws Exception {
 		super(info, "Jinn");
-		AssetManager assetManager = Game.getInstance().getAssetManager();
 		
-		Spatial model = assetManager.loadModel("jinn.mesh.xml");
+		Spatial model = SpatialFactory.create(SpatialTypes.JINN);
 		
 		model.scale(0.3f);
 		model.rotate(0f, -FastMath.HALF_PI, 0f);
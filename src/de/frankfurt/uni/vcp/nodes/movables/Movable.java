@@ -2,8 +2,10 @@ package de.frankfurt.uni.vcp.nodes.movables;
 
 import java.io.IOException;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import com.jme3.animation.LoopMode;
 import com.jme3.cinematic.MotionPath;
 import com.jme3.cinematic.events.MotionTrack;
@@ -22,7 +24,11 @@ import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
 
 import de.frankfurt.uni.vcp.Clickable;
-import de.frankfurt.uni.vcp.algorithmns.Dijkstra;
+import de.frankfurt.uni.vcp.algorithmns.CostMap;
+import de.frankfurt.uni.vcp.algorithmns.DStarLite;
+import de.frankfurt.uni.vcp.algorithmns.Dial;
+import de.frankfurt.uni.vcp.algorithmns.RoutePlanner;
+import de.frankfurt.uni.vcp.algorithmns.ThreatMap;
 import de.frankfurt.uni.vcp.enums.FogMode;
 import de.frankfurt.uni.vcp.enums.FollowMode;
 import de.frankfurt.uni.vcp.enums.MaterialTypes;
@@ -33,6 +39,7 @@ import de.frankfurt.uni.vcp.game.Game;
 import de.frankfurt.uni.vcp.gui.controllers.HudScreenController;
 import de.frankfurt.uni.vcp.helpers.LogHelper;
 import de.frankfurt.uni.vcp.meshes.Plane;
+import de.frankfurt.uni.vcp.net.AsyncTCPClient;
 import de.frankfurt.uni.vcp.net.ProtocolError;
 import de.frankfurt.uni.vcp.net.StatusError;
 import de.frankfurt.uni.vcp.net.TCPClient;
@@ -40,6 +47,7 @@ import de.frankfurt.uni.vcp.net.UnitInfo;
 import de.frankfurt.uni.vcp.nodes.Explosion;
 import de.frankfurt.uni.vcp.nodes.Field;
 import de.frankfurt.uni.vcp.nodes.HealthBar;
+import de.frankfurt.uni.vcp.nodes.HexAdjacency;
 import de.frankfurt.uni.vcp.nodes.HexMap;
 import de.frankfurt.uni.vcp.units.Inventory;
 
@@ -56,6 +64,9 @@ import de.frankfurt.uni.vcp.units.Inventory;
  */
 public abstract class Movable extends Node implements Clickable {
 
+	/** Number of shades of red, in which threatened fields are highlighted */
+	public static final int THREAT_LEVELS = 4;
+
 	/**
 	 * Current unit state which determines next available state. This is
 	 * basically implemented as an state machine with transitions
@@ -95,6 +106,12 @@ public abstract class Movable extends Node implements Clickable {
 	/** Saves the undid path segments */
 	private Deque<LinkedList<Field>> undoStack = new LinkedList<LinkedList<Field>>();
 
+	/** Keeps the first path segment passable, see {@link #repairWay()} */
+	private DStarLite replanner;
+
+	/** The occupancy version {@link #ways} was last checked at, see {@link #revalidateWays()} */
+	private int validatedVersion = -1;
+
 	/** Is used to determines who shall be followed */
 	private Movable target = null;
 	
@@ -188,13 +205,55 @@ public abstract class Movable extends Node implements Clickable {
 		if (start == field)
 			return;
 
-		LinkedList<Field> path = new Dijkstra(start, field).getShortestPath();
+		HexMap hexMap = Game.getInstance().getHexMap();
+		CostMap costs = getCostMap();
+		LinkedList<Field> path = hexMap.getRoutePlanner().getSegment(start, field, costs,
+				hexMap.getDistanceOracle(costs));
 		ways.addLast(path);
 
 		undoStack.clear();
 		highlightPath();
 	}
 
+	/**
+	 * Reroute the first path segment of this movables way planning around
+	 * units, that entered it after it was planned. <br>
+	 * The search state is kept for the segment's waypoint, so only the fields
+	 * affected by units coming and going are searched again.
+	 * 
+	 * @return {@code false} if the waypoint cannot be reached any more
+	 */
+	public boolean repairWay() {
+		if (ways.isEmpty() || ways.getFirst().isEmpty())
+			return true;
+
+		HexMap hexMap = Game.getInstance().getHexMap();
+		LinkedList<Field> way = ways.getFirst();
+		Field goal = way.getLast();
+
+		if (replanner == null || replanner.getGoal() != goal) {
+			CostMap costs = getCostMap();
+			replanner = new DStarLite(hexMap.getAdjacency(), costs, hexMap.getDistanceOracle(costs));
+			replanner.plan(getField(), goal);
+		}
+
+		boolean blocked = false;
+		for (Field f : way)
+			if (!f.isUsable() && f.unit != this)
+				blocked = true;
+		if (!blocked)
+			return true;
+
+		LinkedList<Field> path = replanner.repair(getField());
+		if (path == null)
+			return false;
+
+		way.clear();
+		way.addAll(path);
+		highlightPath();
+		return true;
+	}
+
 	/**
 	 * Remove the last waypoint from this movables way planning <br>
 	 * This will also remove any fields lying on the route between this and the
@@ -220,11 +279,56 @@ public abstract class Movable extends Node implements Clickable {
 	 * Add the last waypoint previously removed to this movables way planning
 	 */
 	public void redo() {
-		if (undoStack.size() > 0)
-			ways.addLast(undoStack.removeFirst());
+		if (undoStack.size() > 0) {
+			LinkedList<Field> way = undoStack.removeFirst();
+			Field start = (ways.size() > 0) ? ways.getLast().getLast() : this.getField();
+			HexMap hexMap = Game.getInstance().getHexMap();
+			RoutePlanner planner = hexMap.getRoutePlanner();
+
+			// units may have entered the segment while it was undone
+			if (!planner.isPassable(way, -1)) {
+				CostMap costs = getCostMap();
+				LinkedList<Field> path = planner.getSegment(start, way.getLast(), costs, hexMap.getDistanceOracle(costs));
+				if (path != null)
+					way = path;
+			}
+			ways.addLast(way);
+		}
 		highlightPath();
 	}
 
+	/**
+	 * Search the path segments of this movables way planning again, which
+	 * units entered since they were last checked. <br>
+	 * Only the fields changed since then are checked, and segments are taken
+	 * from the {@link RoutePlanner} of the map, if still passable.
+	 */
+	public void revalidateWays() {
+		HexMap hexMap = Game.getInstance().getHexMap();
+		RoutePlanner planner = hexMap.getRoutePlanner();
+
+		if (planner.getVersion() == validatedVersion)
+			return;
+
+		Field start = this.getField();
+		for (LinkedList<Field> way : ways) {
+			if (way.isEmpty())
+				continue;
+
+			Field end = way.getLast();
+			if (!planner.isPassable(way, validatedVersion)) {
+				CostMap costs = getCostMap();
+				LinkedList<Field> path = planner.getSegment(start, end, costs, hexMap.getDistanceOracle(costs));
+				if (path != null) {
+					way.clear();
+					way.addAll(path);
+				}
+			}
+			start = end;
+		}
+		validatedVersion = planner.getVersion();
+	}
+
 	/**
 	 * Highlight the fields lying on the path of this movables way planning
 	 */
@@ -233,6 +337,9 @@ public abstract class Movable extends Node implements Clickable {
 		try {
 			ColorRGBA color = new ColorRGBA(0f, 1f, 0f, 1f);
 
+			// fields of the same color share one material
+			Map<ColorRGBA, Material> materials = new HashMap<ColorRGBA, Material>();
+
 			int i = 0;
 			float factor = 1f;
 
@@ -252,7 +359,12 @@ public abstract class Movable extends Node implements Clickable {
 					if (i > info.movement)
 						color = new ColorRGBA(1f, 1f, 0f, .2f + factor);
 
-					f.select("path", color);
+					Material material = materials.get(color);
+					if (material == null) {
+						material = MaterialFactory.create(color);
+						materials.put(color, material);
+					}
+					f.select("path", material);
 				}
 			}
 		} catch (Exception e) {
@@ -269,29 +381,7 @@ public abstract class Movable extends Node implements Clickable {
 	 * @return List of readable fields within the given radius.
 	 */
 	public LinkedList<Field> getReachableFields(int k) {
-
-		LinkedList<Field> all = new LinkedList<Field>();
-
-		List<Field> last = new LinkedList<Field>();
-		LinkedList<Field> next = new LinkedList<Field>();
-		last.add(this.getField());
-
-		for (int i = 0; i < k; i++) {
-
-			for (Field f : last) {
-
-				for (Field nf : f.getNeighbours()) {
-					if (!all.contains(nf) && nf.unit == null) {
-						all.add(nf);
-						next.add(nf);
-					}
-				}
-			}
-			last.clear();
-			last.addAll(next);
-			next.clear();
-		}
-		return all;
+		return Game.getInstance().getHexMap().getReachability().getReachableFields(this, getField(), k);
 	}
 
 	/**
@@ -300,6 +390,7 @@ public abstract class Movable extends Node implements Clickable {
 	 * @return
 	 */
 	public LinkedList<Field> getVisibleFields(int k) {
+		HexAdjacency adjacency = Game.getInstance().getHexMap().getAdjacency();
 		
 		LinkedList<Field> all = new LinkedList<Field>();
 
@@ -311,8 +402,10 @@ public abstract class Movable extends Node implements Clickable {
 		for (int i = 0; i < k; i++) {
 
 			for (Field f : last) {
+				int fi = adjacency.index(f);
 
-				for (Field nf : f.getNeighbours()) {
+				for (int n = adjacency.start(fi); n < adjacency.end(fi); ++n) {
+					Field nf = adjacency.neighbour(n);
 
 					if (!all.contains(nf)) {
 						CollisionResults results = new CollisionResults();
@@ -383,6 +476,38 @@ public abstract class Movable extends Node implements Clickable {
 		}
 	}
 
+	/**
+	 * Highlights the fields of the given list, on which the units of the
+	 * other players threaten this movable, see {@link ThreatMap}. The red is
+	 * the stronger, the more of this movable's hitpoints are threatened.
+	 * 
+	 * @param list
+	 */
+	public void highlightThreat(List<Field> list) {
+		Game game = Game.getInstance();
+		ThreatMap threats = game.getHexMap().getThreatMap();
+
+		game.updateThreatMap();
+		try {
+			// fields of the same level share one material
+			Material[] materials = new Material[THREAT_LEVELS];
+
+			for (Field f : list) {
+				float threat = threats.getThreat(f, info.owner);
+				if (threat <= 0f)
+					continue;
+
+				int level = (int) (threat * THREAT_LEVELS / Math.max(1, info.hitpoints));
+				level = Math.min(level, THREAT_LEVELS - 1);
+				if (materials[level] == null)
+					materials[level] = MaterialFactory.create(new ColorRGBA(1f, 0f, 0f, (level + 1f) / THREAT_LEVELS));
+				f.select("threat", materials[level]);
+			}
+		} catch (Exception e) {
+			LogHelper.getLogger().error(e.getMessage());
+		}
+	}
+
 	/**
 	 * Get a list of the fields lying on the path in this movables way planning
 	 * that are still reachable in this turn.
@@ -431,7 +556,57 @@ public abstract class Movable extends Node implements Clickable {
 		if (playerId == null)
 			playerId = game.getDummyPlayerId();
 
-		info = client.unitinfo(gameId, playerId, info.unitid);
+		applyStats(client.unitinfo(gameId, playerId, info.unitid));
+	}
+
+	/**
+	 * Request the unitinfo associated with this movable without blocking the
+	 * render thread. The new info is applied as soon as the reply arrived.
+	 */
+	public void requestStatsUpdate() {
+		requestStatsUpdate(null);
+	}
+
+	/**
+	 * Request the unitinfo associated with this movable without blocking the
+	 * render thread.
+	 *
+	 * @param onUpdated
+	 *            Executed on the render thread after the new info has been
+	 *            applied, may be {@code null}
+	 */
+	public void requestStatsUpdate(final Runnable onUpdated) {
+		Game game = Game.getInstance();
+		String playerId = info.owner.playerId;
+
+		if (playerId == null)
+			playerId = game.getDummyPlayerId();
+
+		game.getAsyncClient().unitinfo(game.getGameId(), playerId, info.unitid, new AsyncTCPClient.Callback<UnitInfo>() {
+			@Override
+			public void onSuccess(UnitInfo result) {
+				applyStats(result);
+				if (onUpdated != null)
+					onUpdated.run();
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				LogHelper.getLogger().error("requestStatsUpdate(): " + e.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Replace the unitinfo associated with this movable and update the health
+	 * bar accordingly.
+	 *
+	 * @param info
+	 *            The unitinfo as reported by the server
+	 */
+	public void applyStats(UnitInfo info) {
+		info.resolve();
+		this.info = info;
 		// float value = Math.max(0, info.utype.maxhitpoints - info.hitpoints);
 		this.healthBar.setPercentage(((float) info.hitpoints)
 				/ ((float) info.utype.maxhitpoints));
@@ -445,13 +620,13 @@ public abstract class Movable extends Node implements Clickable {
 	 * @throws ProtocolError
 	 */
 	public void move() throws IOException, StatusError, ProtocolError {
-		Game game = Game.getInstance();
+		final Game game = Game.getInstance();
 		String gameId = game.getGameId();
-		TCPClient client = game.getClient();
 
 		String playerId = game.getActivePlayer().playerId;
 
 		game.getHexMap().clearLayer("range");
+		game.getHexMap().clearLayer("threat");
 
 		if (game.getActiveUnit() != null)
 			return;
@@ -459,14 +634,28 @@ public abstract class Movable extends Node implements Clickable {
 		if (!canStillAct())
 			return;
 
+		repairWay();
 		List<Field> path = getPathInRange();
 
-		client.move(gameId, playerId, info.unitid, path);
-		getField().unit = null;
-		setMoveMode(PlayerStates.MANUAL_MOVE);
+		// The movement starts, once the server accepted it. Until then the
+		// unit is active already, so a second click doesn't send it again.
 		game.setActiveUnit(this);
-		game.startMovement();
+		game.getAsyncClient().move(gameId, playerId, info.unitid, path, new AsyncTCPClient.Callback<Void>() {
+			@Override
+			public void onSuccess(Void result) {
+				getField().setUnit(null);
+				setMoveMode(PlayerStates.MANUAL_MOVE);
+				game.startMovement();
+				game.hurryGameInfo();
+			}
 
+			@Override
+			public void onFailure(Exception e) {
+				if (game.getActiveUnit() == Movable.this)
+					game.setActiveUnit(null);
+				game.getHud().errorMessage("move(): " + e.getMessage());
+			}
+		});
 	}
 
 	/**
@@ -480,24 +669,32 @@ public abstract class Movable extends Node implements Clickable {
 	 * @throws StatusError
 	 * @throws ProtocolError
 	 */
-	public void attack(Movable target) throws IOException, StatusError,	ProtocolError {
-		Game game = Game.getInstance();
+	public void attack(final Movable target) throws IOException, StatusError,	ProtocolError {
+		final Game game = Game.getInstance();
 		String gameId = game.getGameId();
-		TCPClient client = game.getClient();
 
 		String playerId = game.getActivePlayer().playerId;
-		
+
 		game.setActiveUnit(this);
 		game.setSelectionMode(SelectionMode.ANY);
-		client.attack(gameId, playerId, info.unitid, target.info.unitid);
+		game.getAsyncClient().attack(gameId, playerId, info.unitid, target.info.unitid, new AsyncTCPClient.Callback<Integer>() {
+			@Override
+			public void onSuccess(Integer damage) {
+				setState(PlayerStates.END);
+				game.nextPlayer();
 
-		setState(PlayerStates.END);
-		game.nextPlayer();
+				requestStatsUpdate();
+				target.requestStatsUpdate();
+				game.hurryGameInfo();
 
-		this.updateStats();
-		target.updateStats();
+				game.setSelectionMode(SelectionMode.ANY);
+			}
 
-		game.setSelectionMode(SelectionMode.ANY);
+			@Override
+			public void onFailure(Exception e) {
+				game.getHud().errorMessage("attack(): " + e.getMessage());
+			}
+		});
 	}
 
 	/**
@@ -538,12 +735,8 @@ public abstract class Movable extends Node implements Clickable {
 					getName() + "is following now " + getTarget().getName());
 			if (getFollowMode().equals(FollowMode.FOLLOW)
 					|| getFollowMode().equals(FollowMode.AUTOMATIC_FOLLOW)) {
-				ways.clear();
-				ways.add(getShortestPathToTarget()); // before we follow, we
-														// need a path to the
-														// player
-				ways.getLast().removeLast(); // The field on which the player
-												// stays if not yet added...
+				planWayToTarget(); // before we follow, we need a path to
+									// the player
 			}
 			highlightPath();
 			LogHelper.getLogger().info("Following path: " + ways.toString());
@@ -607,11 +800,8 @@ public abstract class Movable extends Node implements Clickable {
 	public void intercept() {
 		if (this.getFollowMode().equals(FollowMode.INTERCEPT)
 				&& this.getTarget() != null) {
-			ways.clear();
-			ways.add(getShortestPathToTarget()); // before we follow, we need a
-													// path to the player
-			ways.getLast().removeLast(); // The field on which the player stays
-											// if not yet added...
+			planWayToTarget(); // before we follow, we need a path to the
+								// player
 		}
 	}
 
@@ -682,7 +872,7 @@ public abstract class Movable extends Node implements Clickable {
 		if (ways.isEmpty()) {
 			isMoving = false;
 			state = PlayerStates.REACHED;
-			getField().unit = this;
+			getField().setUnit(this);
 			return;
 		}
 
@@ -694,7 +884,7 @@ public abstract class Movable extends Node implements Clickable {
 			if (way.isEmpty())
 				ways.removeFirst();
 			state = PlayerStates.REACHED;
-			getField().unit = this;
+			getField().setUnit(this);
 			return;
 		}
 		if (way.isEmpty()) {
@@ -708,7 +898,10 @@ public abstract class Movable extends Node implements Clickable {
 			// AUSGANG - n�chstes Feld ist nicht begehbar
 			isMoving = false;
 			state = PlayerStates.REACHED;
-			getField().unit = this;
+			getField().setUnit(this);
+			// the server accepted the blocked path, so the detour is taken
+			// with the next move
+			repairWay();
 			return;
 		}
 		Vector3f p1 = getLocalTranslation();
@@ -769,10 +962,13 @@ public abstract class Movable extends Node implements Clickable {
 			game.unitOptions.unfoldOptions(getState());
 		}
 
+		revalidateWays();
 		highlightPath();
-		highlightRange(getReachableFields(info.utype.maxmovement));
+		LinkedList<Field> range = getReachableFields(info.utype.maxmovement);
+		highlightRange(range);
+		highlightThreat(range);
 
-		updateStats();
+		requestStatsUpdate();
 
 		this.attachChild(selectionBorder);
 		healthBar.setLocalTranslation(0f, 3.1f, 0f);
@@ -782,11 +978,13 @@ public abstract class Movable extends Node implements Clickable {
 	}
 	
 	public boolean hasNeighbours(){
-		for(Field f : getField().getNeighbours())
-			if(f.unit!=null)
+		HexAdjacency adjacency = Game.getInstance().getHexMap().getAdjacency();
+		int fi = adjacency.index(getField());
+
+		for (int n = adjacency.start(fi); n < adjacency.end(fi); ++n)
+			if (adjacency.neighbour(n).unit != null)
 				return true;
 		return false;
-				
 	}
 
 	/**
@@ -808,6 +1006,7 @@ public abstract class Movable extends Node implements Clickable {
 
 		hexMap.clearLayer("path");
 		hexMap.clearLayer("range");
+		hexMap.clearLayer("threat");
 
 		hud.hideActions();
 	}
@@ -870,12 +1069,29 @@ public abstract class Movable extends Node implements Clickable {
 	public void setFollowMode(FollowMode followMode) {
 		if (followMode.equals(FollowMode.AUTOMATIC_FOLLOW)
 				|| followMode.equals(FollowMode.FOLLOW)) {
-			this.ways.clear();
-			this.ways.add(this.getShortestPathToTarget());
+			planWayToTarget();
 		}
 		this.followMode = followMode;
 	}
 
+	/**
+	 * Replace the way planning by the shortest path to this movable's
+	 * target. The path ends next to the target, the field on which the
+	 * target stands is not entered. Without a target, or if it cannot be
+	 * reached, the way planning is left empty.
+	 */
+	private void planWayToTarget() {
+		ways.clear();
+
+		LinkedList<Field> path = getShortestPathToTarget();
+		if (path == null || path.isEmpty())
+			return;
+
+		path.removeLast(); // the field on which the target stands
+		if (!path.isEmpty())
+			ways.add(path);
+	}
+
 	/**
 	 * Get the shortest path to this movable's target
 	 * 
@@ -886,11 +1102,26 @@ public abstract class Movable extends Node implements Clickable {
 		if (this.getTarget() == null) {
 			return null;
 		} else {
-			return new Dijkstra(this.getField(), this.getTarget().getField())
-					.getShortestPath();
+			// the oracle knows the way around the terrain, so only the detours
+			// around units are searched
+			CostMap costs = getCostMap();
+			Dial dial = new Dial(this.getField(), this.getTarget().getField(), costs,
+					Game.getInstance().getHexMap().getDistanceOracle(costs));
+			dial.setEndFieldBlocking(false);
+			return dial.getShortestPath();
 		}
 	}
 
+	/**
+	 * Get the cost of entering the fields of the map for this movable's type
+	 * 
+	 * @return The cost map used to plan this movable's paths
+	 */
+	public CostMap getCostMap() {
+		String type = (info == null || info.utype == null) ? null : info.utype.name;
+		return Game.getInstance().getHexMap().getCostMap(type);
+	}
+
 	/**
 	 * Check if this movable is currently moving
 	 * 
@@ -1011,8 +1242,11 @@ public abstract class Movable extends Node implements Clickable {
 	 *         otherwise
 	 */
 	public boolean isAnyUnitInRange() {
-		for (Field f : getField().getNeighbours()) {
-			if (f.getUnitOn() != null)
+		HexAdjacency adjacency = Game.getInstance().getHexMap().getAdjacency();
+		int fi = adjacency.index(getField());
+
+		for (int n = adjacency.start(fi); n < adjacency.end(fi); ++n) {
+			if (adjacency.neighbour(n).getUnitOn() != null)
 				return true;
 		}
 		return false;
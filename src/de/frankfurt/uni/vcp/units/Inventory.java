@@ -1,6 +1,6 @@
 package de.frankfurt.uni.vcp.units;
 
-import de.frankfurt.uni.vcp.net.TCPClient;
+import de.frankfurt.uni.vcp.net.ReplyTokenizer;
 
 public class Inventory {
 
@@ -12,24 +12,41 @@ public class Inventory {
 
 	@Override
 	public String toString() {
-		String s = "[" + items[0];
+		StringBuilder s = new StringBuilder(16).append('[').append(items[0]);
 
 		for (int i = 1; i < 5; ++i)
-			s += "," + items[i];
-		s += "]";
+			s.append(',').append(items[i]);
 
-		return s;
+		return s.append(']').toString();
 	}
 
 	public Inventory() {
 	}
 
 	public Inventory(String string) {
-		string = TCPClient.splitBrace(string).get(0);
+		ReplyTokenizer t = new ReplyTokenizer(string);
+		if (t.next() == ReplyTokenizer.OPEN)
+			parse(t);
+	}
+
+	/**
+	 * Read the amounts of all goods from a list like {@code [[1][0][2][0][0]]}.
+	 * 
+	 * @param t
+	 *            The tokenizer, positioned on the opening brace of the list
+	 */
+	public Inventory(ReplyTokenizer t) {
+		parse(t);
+	}
 
+	private void parse(ReplyTokenizer t) {
 		int i = 0;
-		for (String s : TCPClient.splitBrace(string))
-			items[i++] = Integer.parseInt(s);
+		while (t.nextGroup())
+			if (t.next() != ReplyTokenizer.CLOSE) {
+				if (i < items.length)
+					items[i++] = t.intValue();
+				t.skipGroup();
+			}
 	}
 
 	public String toTradeString() {
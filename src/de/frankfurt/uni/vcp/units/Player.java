@@ -1,6 +1,5 @@
 package de.frankfurt.uni.vcp.units;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,8 +10,6 @@ import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
 
 import de.frankfurt.uni.vcp.enums.PlayerStates;
-import de.frankfurt.uni.vcp.net.ProtocolError;
-import de.frankfurt.uni.vcp.net.StatusError;
 import de.frankfurt.uni.vcp.nodes.Field;
 import de.frankfurt.uni.vcp.nodes.movables.Movable;
 
@@ -55,7 +52,7 @@ public class Player extends Node {
 		this.attachChild(unit);
 		unit.setLocalTranslation((field.getLocalTranslation()));
 		
-		field.unit=unit;
+		field.setUnit(unit);
 		
 	}
 	
@@ -114,14 +111,14 @@ public class Player extends Node {
 
 	/**
 	 * This method updates all information of all units retrieved from the server.
-	 * updateStats() communicates with the server.
-	 * @throws IOException
-	 * @throws StatusError
-	 * @throws ProtocolError
+	 * The units are only added to the batch, the new stats are applied as soon
+	 * as the batch has been submitted and all replies have arrived.
+	 * 
+	 * @param batch the batch refreshing the units of all players
 	 */
-	public void refreshUnits() throws IOException, StatusError, ProtocolError {
+	public void refreshUnits(UnitRefresher.Batch batch) {
 		for (Movable m : units) {
-			m.updateStats();
+			batch.add(m);
 			m.setState(PlayerStates.START);
 		}
 	}
@@ -0,0 +1,212 @@
+package de.frankfurt.uni.vcp.units;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jme3.app.Application;
+
+import de.frankfurt.uni.vcp.helpers.LogHelper;
+import de.frankfurt.uni.vcp.net.TCPClient;
+import de.frankfurt.uni.vcp.net.UnitInfo;
+import de.frankfurt.uni.vcp.nodes.movables.Movable;
+
+/**
+ * <h3>Refreshes the infos of many units at once</h3>
+ *
+ * <p>
+ * At the start of a turn the info of every unit has to be fetched again.
+ * Requested one after another, this takes one round trip per unit. The
+ * refresher sends the requests of a {@link Batch} concurrently on
+ * {@link #THREADS} threads of its own, so the whole batch takes about as long
+ * as the slowest request, and applies all replies together in a single
+ * frame on the render thread.
+ * </p>
+ *
+ * <p>
+ * A unit is refreshed only once per turn, adding it to another batch of the
+ * same turn has no effect.
+ * </p>
+ *
+ * @author Bernd Spaeth, Wladimir Spindler and Saman Sedighi Rad
+ */
+public class UnitRefresher {
+
+	/** Number of concurrent unitinfo requests */
+	public static final int THREADS = 4;
+
+	private final TCPClient client;
+
+	/** Application whose render thread applies the replies */
+	private final Application app;
+
+	private final ExecutorService executor;
+
+	/** The turn of the latest batch, render thread only */
+	private int turn = -1;
+
+	/** Ids of the units requested in {@link #turn}, render thread only */
+	private final Set<Integer> requested = new HashSet<Integer>();
+
+	/**
+	 * <h3>The units refreshed together</h3>
+	 */
+	public class Batch {
+
+		private final String gameId;
+
+		private final String dummyPlayerId;
+
+		private final List<Movable> units = new ArrayList<Movable>();
+
+		private boolean submitted = false;
+
+		private Batch(String gameId, String dummyPlayerId) {
+			this.gameId = gameId;
+			this.dummyPlayerId = dummyPlayerId;
+		}
+
+		/**
+		 * Add a unit, unless it has already been refreshed this turn.
+		 *
+		 * @param unit
+		 *            The unit
+		 * @return {@code false} if the unit is skipped
+		 */
+		public boolean add(Movable unit) {
+			if (submitted)
+				throw new IllegalStateException("batch already submitted");
+
+			if (!requested.add(unit.info.unitid))
+				return false;
+
+			units.add(unit);
+			return true;
+		}
+
+		/**
+		 * Get the number of units to be refreshed.
+		 *
+		 * @return The number of units
+		 */
+		public int size() {
+			return units.size();
+		}
+
+		/**
+		 * Request the infos of all units. Once every reply has arrived, the
+		 * infos are applied on the render thread. A unit whose request failed
+		 * keeps its info and may be added to a batch of the same turn again.
+		 *
+		 * @param onApplied
+		 *            Executed on the render thread after the infos have been
+		 *            applied, may be {@code null}
+		 */
+		public void submit(final Runnable onApplied) {
+			submitted = true;
+
+			if (units.isEmpty()) {
+				if (onApplied != null)
+					onApplied.run();
+				return;
+			}
+
+			final UnitInfo[] infos = new UnitInfo[units.size()];
+			final AtomicInteger remaining = new AtomicInteger(infos.length);
+
+			for (int k = 0; k < infos.length; ++k) {
+				final int index = k;
+				final int unitId = units.get(k).info.unitid;
+				String ownerId = units.get(k).info.owner.playerId;
+				final String playerId = (ownerId == null) ? dummyPlayerId : ownerId;
+
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							infos[index] = client.unitinfo(gameId, playerId, unitId);
+						} catch (Exception e) {
+							LogHelper.getLogger().error("UnitRefresher: unit " + unitId + ": " + e.getMessage());
+						}
+
+						// the last reply hands the batch over
+						if (remaining.decrementAndGet() == 0)
+							apply(infos, onApplied);
+					}
+				});
+			}
+		}
+
+		private void apply(final UnitInfo[] infos, final Runnable onApplied) {
+			app.enqueue(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int k = 0; k < infos.length; ++k) {
+						if (infos[k] != null)
+							units.get(k).applyStats(infos[k]);
+						else
+							requested.remove(units.get(k).info.unitid);
+					}
+					if (onApplied != null)
+						onApplied.run();
+					return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Construct a new refresher.
+	 *
+	 * @param client
+	 *            The client used to fetch the infos
+	 * @param app
+	 *            The application whose render thread applies the infos
+	 */
+	public UnitRefresher(TCPClient client, Application app) {
+		this.client = client;
+		this.app = app;
+		this.executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "unit-refresh-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Start a new batch. Render thread only.
+	 *
+	 * @param turn
+	 *            The current turn, see {@link de.frankfurt.uni.vcp.net.GameInfo#turn}
+	 * @param gameId
+	 *            The id of the game
+	 * @param dummyPlayerId
+	 *            The player requesting units without owner
+	 * @return The empty batch
+	 */
+	public Batch newBatch(int turn, String gameId, String dummyPlayerId) {
+		if (turn != this.turn) {
+			this.turn = turn;
+			requested.clear();
+		}
+		return new Batch(gameId, dummyPlayerId);
+	}
+
+	/**
+	 * Stop the threads. Requests already sent are still applied.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+}